@@ -11,6 +11,7 @@ import java.util.List;
 
 import org.xml.sax.SAXParseException;
 
+import com.wdroome.altomsgs.AltoResp_EndpointCost;
 import com.wdroome.altomsgs.AltoResp_EndpointProp;
 import com.wdroome.util.inet.EndpointAddress;
 import com.wdroome.util.String2;
@@ -280,6 +281,109 @@ public class AltoData
 		return group.getCostMetrics();
 	}
 	
+	/**
+	 * Return the costs between a set of source and destination endpoints.
+	 * This maps all the endpoints to pid indexes in one pass over each array,
+	 * without creating an EndpointAddress for each endpoint,
+	 * and then gets the costs as a dense block from the Cost Map.
+	 * @param networkMapId
+	 * 		The resource id of the Network Map.
+	 * 		If null or "", use the default Network Map.
+	 * @param costMetric
+	 * 		The cost metric. Must not be null.
+	 * @param srcs
+	 * 		The source endpoints: IPV4 or IPV6 addresses, with or without type prefixes.
+	 * @param dests
+	 * 		The destination endpoints.
+	 * @param srcIndexes
+	 * 		If not null, on return this has the pid index for each source endpoint,
+	 * 		or -1 if the endpoint is not valid or is not in a pid.
+	 * 		The length must be at least srcs.length.
+	 * @param destIndexes
+	 * 		If not null, on return this has the pid index for each destination endpoint.
+	 * @return
+	 * 		A new array with the costs, indexed by the positions in srcs and dests,
+	 * 		or null if there is no Cost Map for that network map and metric.
+	 * 		The cost is NaN if it is not known, or if an endpoint is not in a pid.
+	 */
+	public float[][] getEndpointCosts(String networkMapId, String costMetric,
+									  String[] srcs, String[] dests,
+									  int[] srcIndexes, int[] destIndexes)
+	{
+		NetworkGroup group = getGroup(networkMapId);
+		if (group == null) {
+			return null;
+		}
+		NetworkMap networkMap;
+		CostMap costMap;
+		synchronized (group) {
+			networkMap = group.m_networkMap;
+			costMap = group.m_costMaps.get(costMetric);
+		}
+		if (costMap == null) {
+			return null;
+		}
+		int[] iSrcs = networkMap.getPidIndexes(srcs);
+		int[] iDests = networkMap.getPidIndexes(dests);
+		if (srcIndexes != null) {
+			System.arraycopy(iSrcs, 0, srcIndexes, 0, iSrcs.length);
+		}
+		if (destIndexes != null) {
+			System.arraycopy(iDests, 0, destIndexes, 0, iDests.length);
+		}
+		return costMap.getCosts(iSrcs, iDests);
+	}
+	
+	/**
+	 * Set the costs between a set of source and destination endpoints
+	 * in an Endpoint Cost response. The response has a cost for each pair
+	 * of endpoints that are in pids, and the response writes the costs directly
+	 * from the dense block (see {@link AltoResp_EndpointCost#setCosts(String[], String[], float[][])}).
+	 * This does not set the meta fields; that's the caller's responsibility.
+	 * @param networkMapId
+	 * 		The resource id of the Network Map.
+	 * 		If null or "", use the default Network Map.
+	 * @param costMetric
+	 * 		The cost metric. Must not be null.
+	 * @param srcs
+	 * 		The source endpoints: IPV4 or IPV6 addresses, with or without type prefixes.
+	 * @param dests
+	 * 		The destination endpoints.
+	 * @param resp
+	 * 		The response message.
+	 * @return
+	 * 		False if there is no Cost Map for that network map and metric.
+	 * 		In that case, resp is unchanged.
+	 */
+	public boolean setEndpointCosts(String networkMapId, String costMetric,
+									String[] srcs, String[] dests,
+									AltoResp_EndpointCost resp)
+	{
+		int[] srcIndexes = new int[srcs.length];
+		int[] destIndexes = new int[dests.length];
+		float[][] costs = getEndpointCosts(networkMapId, costMetric,
+											srcs, dests, srcIndexes, destIndexes);
+		if (costs == null) {
+			return false;
+		}
+		resp.setCosts(omitUnknown(srcs, srcIndexes), omitUnknown(dests, destIndexes), costs);
+		return true;
+	}
+	
+	/**
+	 * Return a copy of an endpoint array, with null for each endpoint that isn't in a pid.
+	 */
+	private static String[] omitUnknown(String[] endpoints, int[] pidIndexes)
+	{
+		String[] known = new String[endpoints.length];
+		for (int i = 0; i < endpoints.length; i++) {
+			if (pidIndexes[i] >= 0) {
+				known[i] = endpoints[i];
+			}
+		}
+		return known;
+	}
+	
 	/**
 	 * Declare a property name as valid, without setting a value for a specific entity.
 	 * @param prop The new property name.
@@ -1,10 +1,17 @@
 package com.wdroome.altodata;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 import com.wdroome.json.JSONException;
 import com.wdroome.util.inet.EndpointAddress;
 import com.wdroome.util.IErrorLogger;
+import com.wdroome.util.MappedFloatMatrix;
+import com.wdroome.util.ParallelRows;
 import com.wdroome.altomsgs.AltoCostMapInfo;
 import com.wdroome.altomsgs.AltoResp_CostMap;
 import com.wdroome.altomsgs.AltoResp_EndpointCost;
@@ -19,7 +26,27 @@ import com.wdroome.altomsgs.AltoResp_EndpointCost;
  * Also note that cost maps are always numeric. When an ALTO client asks
  * for ordinal costs, other classes ordinalize the CostMap values on the fly.
  * 
- * <p>This class is synchronized.
+ * <p>This class is synchronized. By default, readers and writers
+ * lock the cost array. In snapshot mode, writers never change a published cost array;
+ * instead they copy the rows they change, and publish a new immutable
+ * {@link Snapshot} via a volatile reference. Readers use the current snapshot
+ * without locking, so a feeder thread does not block the readers,
+ * and the readers do not block each other. Updates cost more in snapshot mode,
+ * so feeders should use the bulk setCosts() methods rather than setCost().
+ * 
+ * <p>Alternatively, a CostMap can keep its costs outside the Java heap,
+ * in a {@link MappedFloatMatrix}: either direct ByteBuffers,
+ * or a memory-mapped file. See {@link #CostMap(String,NetworkMap,IErrorLogger,MappedFloatMatrix)}.
+ * Then large cost maps do not burden the garbage collector,
+ * and {@link #load(String,NetworkMap,IErrorLogger,File)} can re-open a saved cost map
+ * almost instantly. Readers and writers lock the matrix, as in the default mode.
+ * Any CostMap can be saved to a file with {@link #save(File)}.
+ * 
+ * <p>Every change creates a new version of the cost map; see {@link #getVersion()}.
+ * A feeder can apply a batch of changes atomically with {@link #applyDelta(CostMapDelta, long)}.
+ * If enabled by {@link #setJournalSize(int)}, the cost map remembers the recently changed cells,
+ * and {@link #getChangesSince(long)} returns the changes after a version,
+ * so a server can send incremental updates instead of the full cost map.
  * 
  * @author wdr
  */
@@ -42,14 +69,150 @@ public class CostMap implements AltoCostMapInfo
 	
 	private int m_nPids;
 	private long m_lastModTime = System.currentTimeMillis();
+	private long m_version = 0;
 	
 	/**
 	 * The costs, indexed by source and destination pid numbers.
 	 * Because we cannot assume that assignment to floats is atomic,
 	 * synch on m_costs whenever accessing this array.
 	 * Child classes may access and update values, but should not replace the array.
+	 * In snapshot mode, the array belongs to the current snapshot,
+	 * and child classes must not change it.
+	 * If the costs are in an off-heap matrix, this is null.
 	 */
 	protected float[][] m_costs;
+	
+	/** True iff we publish snapshots. */
+	private final boolean m_useSnapshots;
+	
+	/** In snapshot mode, the current snapshot. Otherwise null. */
+	private volatile Snapshot m_snapshot = null;
+	
+	/**
+	 * If not null, the costs are in this matrix, and m_costs is null.
+	 * Synch on the matrix when accessing it.
+	 */
+	private MappedFloatMatrix m_store = null;
+	
+	/** If not null, the recent changes. */
+	private volatile CostMapJournal m_journal = null;
+	
+	/**
+	 * An immutable, consistent view of the costs, the PIDs
+	 * and the modification time at one point in time.
+	 */
+	public static final class Snapshot
+	{
+		private final NetworkMap m_map;
+		private final float[][] m_costs;
+		private final long m_lastModTime;
+		private final long m_version;
+		
+		private Snapshot(NetworkMap map, float[][] costs, long lastModTime, long version)
+		{
+			m_map = map;
+			m_costs = costs;
+			m_lastModTime = lastModTime;
+			m_version = version;
+		}
+		
+		/**
+		 * Return the cost from a source pid to a destination pid.
+		 * @param srcPid The name of the source pid.
+		 * @param destPid The name of the destination pid.
+		 * @return The cost. Return -1 if srcPid or destPid aren't valid.
+		 */
+		public double getCost(String srcPid, String destPid)
+		{
+			return getCost(m_map.pidToIndex(srcPid), m_map.pidToIndex(destPid));
+		}
+		
+		/**
+		 * Return the cost from a source pid to a destination pid.
+		 * @param iSrc The index of the source pid.
+		 * @param iDest The index of the destination pid.
+		 * @return The cost. Return -1 if iSrc or iDest aren't valid.
+		 */
+		public double getCost(int iSrc, int iDest)
+		{
+			if (iSrc >= 0 && iDest >= 0) {
+				return float2double(m_costs[iSrc][iDest]);
+			}
+			return -1;
+		}
+		
+		/**
+		 * Return the costs between a set of source and destination pids.
+		 * For large blocks, this reads the source rows in parallel.
+		 * @param srcIndexes The source pid indexes, as from {@link CostMap#pidsToIndexes(String[])}.
+		 * @param destIndexes The destination pid indexes.
+		 * @return A new array with the costs, indexed by the positions
+		 * 		in srcIndexes and destIndexes. The costs are rounded as {@link #getCost(int, int)}
+		 * 		rounds them. The cost is NaN if a pid index is invalid or the cost is negative.
+		 */
+		public float[][] getCosts(final int[] srcIndexes, final int[] destIndexes)
+		{
+			final float[][] costs = new float[srcIndexes.length][destIndexes.length];
+			ParallelRows.run(srcIndexes.length, destIndexes.length, (lo, hi) -> {
+					for (int i = lo; i < hi; i++) {
+						int iSrc = srcIndexes[i];
+						if (iSrc >= 0 && iSrc < m_costs.length) {
+							copyRow(m_costs[iSrc], destIndexes, costs[i]);
+						} else {
+							Arrays.fill(costs[i], Float.NaN);
+						}
+					}
+				});
+			return costs;
+		}
+		
+		/**
+		 * Return the index for a PID name.
+		 * @param pid The pid name.
+		 * @return The index, or -1 if pid isn't valid.
+		 */
+		public int pidToIndex(String pid)
+		{
+			return m_map.pidToIndex(pid);
+		}
+		
+		/**
+		 * Return the number of PIDs in this snapshot.
+		 */
+		public int getNumPids()
+		{
+			return m_costs.length;
+		}
+		
+		/**
+		 * Return the network map for this snapshot.
+		 */
+		public NetworkMap getNetworkMap()
+		{
+			return m_map;
+		}
+		
+		/**
+		 * Return the last modification time of any cost in this snapshot.
+		 * @return The last update time.
+		 */
+		public long getLastModTime()
+		{
+			return m_lastModTime;
+		}
+		
+		/**
+		 * Return the version of this snapshot. The CostMap increments
+		 * the version whenever it changes the costs or the network map,
+		 * so two snapshots with the same version have the same costs.
+		 * Clients can use this, with the network map's vtag, as a version tag.
+		 * @return The version of this snapshot.
+		 */
+		public long getVersion()
+		{
+			return m_version;
+		}
+	}
 		
 	/**
 	 * Create a new cost map associated with a NetworkMap.
@@ -58,6 +221,21 @@ public class CostMap implements AltoCostMapInfo
 	 */
 	public CostMap(String costMetric, NetworkMap map, IErrorLogger errorLogger)
 			throws IllegalStateException
+	{
+		this(costMetric, map, errorLogger, false);
+	}
+	
+	/**
+	 * Create a new cost map associated with a NetworkMap.
+	 * @param map A frozen NetworkMap.
+	 * @param useSnapshots If true, use snapshot mode:
+	 * 		readers do not lock, and writers publish new snapshots.
+	 * 		Child classes which override {@link #refreshCost(int, int)}
+	 * 		cannot use snapshot mode.
+	 * @throws IllegalStateException If map isn't frozen.
+	 */
+	public CostMap(String costMetric, NetworkMap map, IErrorLogger errorLogger, boolean useSnapshots)
+			throws IllegalStateException
 	{
 		if (!map.isFrozen()) {
 			throw new IllegalStateException(getClassLeafName() + " c'tor: NetworkMap is not frozen");
@@ -75,6 +253,161 @@ public class CostMap implements AltoCostMapInfo
 				m_costs[iSrc][iDest] = finitCost;
 			}
 		}
+		m_useSnapshots = useSnapshots;
+		if (m_useSnapshots) {
+			m_snapshot = new Snapshot(m_map, m_costs, m_lastModTime, m_version);
+		}
+	}
+	
+	/**
+	 * Create a new cost map whose costs are in an off-heap matrix.
+	 * The cost map uses the costs already in the matrix,
+	 * and sets the matrix's tag to identify the network map's PIDs.
+	 * Child classes which use m_costs directly cannot use an off-heap matrix.
+	 * @param map A frozen NetworkMap.
+	 * @param store The costs. The size must be the number of PIDs in map.
+	 * 		For a new matrix, the caller should set the costs, e.g., with {@link #setAllCosts(double)}.
+	 * @throws IllegalStateException If map isn't frozen.
+	 * @throws IllegalArgumentException If the size of store is wrong.
+	 */
+	public CostMap(String costMetric, NetworkMap map, IErrorLogger errorLogger, MappedFloatMatrix store)
+			throws IllegalStateException, IllegalArgumentException
+	{
+		if (!map.isFrozen()) {
+			throw new IllegalStateException(getClassLeafName() + " c'tor: NetworkMap is not frozen");
+		}
+		if (store.size() != map.getNumPids()) {
+			throw new IllegalArgumentException(getClassLeafName() + " c'tor: matrix has "
+						+ store.size() + " rows, but NetworkMap has " + map.getNumPids() + " PIDs");
+		}
+		m_costMetric = costMetric;
+		m_map = map;
+		m_nPids = map.getNumPids();
+		m_pids = map.getPidNames();
+		m_costs = null;
+		m_store = store;
+		m_store.setTag(pidsTag(m_pids));
+		if (m_store.getTimestamp() != 0) {
+			m_lastModTime = m_store.getTimestamp();
+		} else {
+			m_store.setTimestamp(m_lastModTime);
+		}
+		m_useSnapshots = false;
+	}
+	
+	/**
+	 * Create a cost map from a file written by {@link #save(File)},
+	 * or by a CostMap using a file-backed matrix.
+	 * The new CostMap maps the file into memory, and keeps its costs there,
+	 * so this is fast, even for large maps, and changes update the file.
+	 * @param costMetric The cost metric.
+	 * @param map A frozen NetworkMap. It must have the same PIDs as the saved cost map.
+	 * @param errorLogger The error logger.
+	 * @param file The file.
+	 * @return The new CostMap.
+	 * @throws IOException If we cannot read the file, or if it does not
+	 * 		have the costs for the PIDs in map.
+	 * @throws IllegalStateException If map isn't frozen.
+	 */
+	public static CostMap load(String costMetric, NetworkMap map, IErrorLogger errorLogger, File file)
+			throws IOException, IllegalStateException
+	{
+		MappedFloatMatrix store = MappedFloatMatrix.open(file);
+		if (store.size() != map.getNumPids() || store.getTag() != pidsTag(map.getPidNames())) {
+			throw new IOException(file + ": costs are not for the PIDs in network map " + map.getMapId());
+		}
+		return new CostMap(costMetric, map, errorLogger, store);
+	}
+	
+	/**
+	 * Write the costs to a new file, which {@link #load(String,NetworkMap,IErrorLogger,File)}
+	 * can read. If the file exists, replace it.
+	 * @param file The file.
+	 * @throws IOException If we cannot write the file.
+	 */
+	public synchronized void save(File file) throws IOException
+	{
+		MappedFloatMatrix copy = MappedFloatMatrix.create(file, m_nPids);
+		copyCosts(copy);
+		copy.force();
+	}
+	
+	/**
+	 * Copy all costs to a matrix, and set its tag and time stamp.
+	 * The caller must synchronize on this object.
+	 */
+	private void copyCosts(MappedFloatMatrix dest)
+	{
+		synchronized (costLock()) {
+			float[] row = new float[m_nPids];
+			for (int iSrc = 0; iSrc < m_nPids; iSrc++) {
+				if (m_store != null) {
+					m_store.getRow(iSrc, row);
+					dest.setRow(iSrc, row);
+				} else {
+					for (int iDest = 0; iDest < m_nPids; iDest++) {
+						refreshCost(iSrc, iDest);
+					}
+					dest.setRow(iSrc, m_costs[iSrc]);
+				}
+			}
+			dest.setTag(pidsTag(m_pids));
+			dest.setTimestamp(m_lastModTime);
+		}
+	}
+	
+	/**
+	 * Return a hash of a list of PID names, to identify a saved cost matrix.
+	 */
+	private static long pidsTag(String[] pids)
+	{
+		long tag = pids.length;
+		for (String pid: pids) {
+			for (int i = 0; i < pid.length(); i++) {
+				tag = 31*tag + pid.charAt(i);
+			}
+			tag = 31*tag + 0xffff;
+		}
+		return tag;
+	}
+	
+	/**
+	 * Return the object to synch on when accessing the costs.
+	 */
+	private Object costLock()
+	{
+		return m_store != null ? m_store : m_costs;
+	}
+	
+	/**
+	 * Return a cost from m_costs or m_store. Caller must synch on costLock().
+	 */
+	private float rawCost(int iSrc, int iDest)
+	{
+		return m_store != null ? m_store.get(iSrc, iDest) : m_costs[iSrc][iDest];
+	}
+	
+	/**
+	 * Set a cost in m_costs or m_store. Caller must synch on costLock().
+	 */
+	private void setRawCost(int iSrc, int iDest, float cost)
+	{
+		if (m_store != null) {
+			m_store.set(iSrc, iDest, cost);
+		} else {
+			m_costs[iSrc][iDest] = cost;
+		}
+	}
+	
+	/**
+	 * Set the last modification time. Caller must synch on costLock().
+	 */
+	private void setLastModTime(long modTime)
+	{
+		m_lastModTime = modTime;
+		if (m_store != null) {
+			m_store.setTimestamp(modTime);
+		}
 	}
 	
 	/**
@@ -82,8 +415,13 @@ public class CostMap implements AltoCostMapInfo
 	 * and setting all costs to NaN, for "unknown",
 	 * this calls {@link #networkMapChanged(NetworkMap,String[],float[][]) networkMapChanged()}
 	 * to copy over the costs for matching PID names.
+	 * <p>
+	 * With an off-heap matrix, this creates a new matrix of the same type,
+	 * and copies the costs itself, without calling networkMapChanged().
+	 * A file-backed matrix is replaced by a new file with the same name.
 	 * @param newMap The new map.
-	 * @throws IllegalStateException If newMap isn't frozen.
+	 * @throws IllegalStateException If newMap isn't frozen,
+	 * 		or if we cannot create the new file for a file-backed matrix.
 	 */
 	public synchronized void setNetworkMap(NetworkMap newMap)
 		throws IllegalStateException
@@ -91,6 +429,15 @@ public class CostMap implements AltoCostMapInfo
 		if (!newMap.isFrozen())
 			throw new IllegalStateException(getClassLeafName()
 							+ ".setNetworkMap(): NetworkMap is not frozen");
+		if (m_store != null) {
+			try {
+				setStoreNetworkMap(newMap);
+			} catch (IOException e) {
+				throw new IllegalStateException(getClassLeafName()
+							+ ".setNetworkMap(): " + e.getMessage());
+			}
+			return;
+		}
 		NetworkMap oldMap = m_map;
 		String[] oldPids = m_pids;
 		float[][] oldCosts = m_costs;
@@ -106,6 +453,68 @@ public class CostMap implements AltoCostMapInfo
 			}
 		}
 		networkMapChanged(oldMap, oldPids, oldCosts);
+		m_version++;
+		resetJournal(oldPids);
+		if (m_useSnapshots) {
+			m_snapshot = new Snapshot(m_map, m_costs, m_lastModTime, m_version);
+		}
+	}
+	
+	/**
+	 * Replace the network map for a cost map with an off-heap matrix.
+	 * The caller has synchronized on this object.
+	 * @param newMap The new map.
+	 * @throws IOException If we cannot create a new file for a file-backed matrix.
+	 */
+	private void setStoreNetworkMap(NetworkMap newMap) throws IOException
+	{
+		String[] newPids = newMap.getPidNames();
+		int nNewPids = newMap.getNumPids();
+		File file = m_store.getFile();
+		File tmpFile = null;
+		MappedFloatMatrix newStore;
+		if (file != null) {
+			tmpFile = new File(file.getPath() + ".tmp");
+			newStore = MappedFloatMatrix.create(tmpFile, nNewPids);
+		} else {
+			newStore = MappedFloatMatrix.allocateDirect(nNewPids);
+		}
+		newStore.fill(Float.NaN);
+		int[] oldIndexes = new int[nNewPids];
+		for (int iNew = 0; iNew < nNewPids; iNew++) {
+			oldIndexes[iNew] = m_map.pidToIndex(newPids[iNew]);
+		}
+		float[] oldRow = new float[m_nPids];
+		float[] newRow = new float[nNewPids];
+		synchronized (m_store) {
+			for (int iNewSrc = 0; iNewSrc < nNewPids; iNewSrc++) {
+				int iOldSrc = oldIndexes[iNewSrc];
+				if (iOldSrc >= 0) {
+					m_store.getRow(iOldSrc, oldRow);
+					for (int iNewDest = 0; iNewDest < nNewPids; iNewDest++) {
+						int iOldDest = oldIndexes[iNewDest];
+						newRow[iNewDest] = iOldDest >= 0 ? oldRow[iOldDest] : Float.NaN;
+					}
+					newStore.setRow(iNewSrc, newRow);
+				}
+			}
+		}
+		newStore.setTag(pidsTag(newPids));
+		newStore.setTimestamp(m_lastModTime);
+		if (file != null) {
+			// Readers of the old matrix keep the old mapping,
+			// even after we replace the file.
+			newStore.force();
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			newStore = MappedFloatMatrix.open(file);
+		}
+		String[] oldPids = m_pids;
+		m_map = newMap;
+		m_nPids = nNewPids;
+		m_pids = newPids;
+		m_store = newStore;
+		m_version++;
+		resetJournal(oldPids);
 	}
 	
 	/**
@@ -114,6 +523,7 @@ public class CostMap implements AltoCostMapInfo
 	 * A child class can override this method to re-create the costs
 	 * via some other mechanism. The caller has synchronized on the object,
 	 * so this method can use simple assignment to update the new cost array.
+	 * In snapshot mode, the new array is not published until this method returns.
 	 * When called, all costs in m_costs have been set to NaN.
 	 * @param oldMap The old NetworkMap.
 	 * @param oldPids The old list of PID names.
@@ -123,13 +533,19 @@ public class CostMap implements AltoCostMapInfo
 									 String[] oldPids,
 									 float[][] oldCosts)
 	{
+		int[] newIndexes = new int[oldPids.length];
+		for (int iOld = 0; iOld < oldPids.length; iOld++) {
+			newIndexes[iOld] = m_map.pidToIndex(oldPids[iOld]);
+		}
 		for (int iOldSrc = 0; iOldSrc < oldPids.length; iOldSrc++) {
-			int iNewSrc = m_map.pidToIndex(oldPids[iOldSrc]);
+			int iNewSrc = newIndexes[iOldSrc];
 			if (iNewSrc >= 0) {
+				float[] oldRow = oldCosts[iOldSrc];
+				float[] newRow = m_costs[iNewSrc];
 				for (int iOldDest = 0; iOldDest < oldPids.length; iOldDest++) {
-					int iNewDest = m_map.pidToIndex(oldPids[iOldDest]);
+					int iNewDest = newIndexes[iOldDest];
 					if (iNewDest >= 0) {
-						m_costs[iNewSrc][iNewDest] = oldCosts[iOldSrc][iOldDest];
+						newRow[iNewDest] = oldRow[iOldDest];
 					}
 				}
 			}
@@ -153,12 +569,16 @@ public class CostMap implements AltoCostMapInfo
 	 */
 	public double getCost(String srcPid, String destPid)
 	{
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot.getCost(srcPid, destPid);
+		}
 		int iSrc = m_map.pidToIndex(srcPid);
 		int iDest = m_map.pidToIndex(destPid);
 		if (iSrc >= 0 && iDest >= 0) {
-			synchronized (m_costs) {
+			synchronized (costLock()) {
 				refreshCost(iSrc, iDest);
-				return float2double(m_costs[iSrc][iDest]);
+				return float2double(rawCost(iSrc, iDest));
 			}
 		}
 		return -1;
@@ -172,16 +592,89 @@ public class CostMap implements AltoCostMapInfo
 	 */	
 	public double getCost(int iSrc, String destPid)
 	{
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot.getCost(iSrc, snapshot.pidToIndex(destPid));
+		}
 		int iDest = m_map.pidToIndex(destPid);
 		if (iSrc >= 0 && iDest >= 0) {
-			synchronized (m_costs) {
+			synchronized (costLock()) {
 				refreshCost(iSrc, iDest);
-				return float2double(m_costs[iSrc][iDest]);
+				return float2double(rawCost(iSrc, iDest));
 			}
 		}
 		return -1;
 	}
 	
+	/**
+	 * Return the costs between a set of source and destination pids,
+	 * as a dense block of floats. For large blocks, this reads the
+	 * source rows in parallel, using the fork/join common pool.
+	 * In snapshot mode, the costs come from one snapshot, and the readers do not lock.
+	 * Otherwise each reader locks the costs while it reads a row.
+	 * @param srcIndexes The source pid indexes, as from {@link #pidsToIndexes(String[])}.
+	 * @param destIndexes The destination pid indexes.
+	 * @return A new array with the costs, indexed by the positions
+	 * 		in srcIndexes and destIndexes. The costs are rounded as {@link #getCost(int, int)}
+	 * 		rounds them. The cost is NaN if a pid index is invalid or the cost is negative,
+	 * 		as in the default {@link AltoCostMapInfo#getCosts(int[], int[])}.
+	 */
+	public float[][] getCosts(final int[] srcIndexes, final int[] destIndexes)
+	{
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot.getCosts(srcIndexes, destIndexes);
+		}
+		final float[][] costs = new float[srcIndexes.length][destIndexes.length];
+		ParallelRows.run(srcIndexes.length, destIndexes.length, (lo, hi) -> {
+				for (int i = lo; i < hi; i++) {
+					readRow(srcIndexes[i], destIndexes, costs[i]);
+				}
+			});
+		return costs;
+	}
+	
+	/**
+	 * Copy selected costs from a row.
+	 * @param row The costs for a source pid.
+	 * @param destIndexes The destination pid indexes.
+	 * @param costs The costs for the destination pids, as from {@link #blockCost(float)},
+	 * 		or NaN for invalid indexes.
+	 */
+	private static void copyRow(float[] row, int[] destIndexes, float[] costs)
+	{
+		for (int j = 0; j < destIndexes.length; j++) {
+			int iDest = destIndexes[j];
+			costs[j] = (iDest >= 0 && iDest < row.length) ? blockCost(row[iDest]) : Float.NaN;
+		}
+	}
+	
+	/**
+	 * In locked mode, read selected costs for a source pid.
+	 * @param iSrc The source pid index.
+	 * @param destIndexes The destination pid indexes.
+	 * @param costs The costs for the destination pids, as from {@link #blockCost(float)},
+	 * 		or NaN for invalid indexes.
+	 */
+	private void readRow(int iSrc, int[] destIndexes, float[] costs)
+	{
+		synchronized (costLock()) {
+			if (iSrc < 0 || iSrc >= m_nPids) {
+				Arrays.fill(costs, Float.NaN);
+			} else {
+				for (int j = 0; j < destIndexes.length; j++) {
+					int iDest = destIndexes[j];
+					if (iDest >= 0 && iDest < m_nPids) {
+						refreshCost(iSrc, iDest);
+						costs[j] = blockCost(rawCost(iSrc, iDest));
+					} else {
+						costs[j] = Float.NaN;
+					}
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Return the cost from a source pid to a destination pid.
 	 * @param iSrc The index of the source pid.
@@ -190,16 +683,20 @@ public class CostMap implements AltoCostMapInfo
 	 */	
 	public double getCost(int iSrc, int iDest)
 	{
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot.getCost(iSrc, iDest);
+		}
 		if (iSrc >= 0 && iDest >= 0) {
-			synchronized (m_costs) {
+			synchronized (costLock()) {
 				refreshCost(iSrc, iDest);
-				return float2double(m_costs[iSrc][iDest]);
+				return float2double(rawCost(iSrc, iDest));
 			}
 		}
 		return -1;
 	}
 	
-	private double float2double(float f)
+	private static double float2double(float f)
 	{
 		if (Float.isNaN(f))
 			return Float.NaN;
@@ -207,6 +704,18 @@ public class CostMap implements AltoCostMapInfo
 			return ((double)Math.round(1000000*(double)f)) / 1000000;
 	}
 	
+	/**
+	 * Return a raw cost as {@link #getCosts(int[], int[])} returns it:
+	 * rounded as {@link #float2double(float)} does, or NaN if the cost is negative.
+	 * This is the same value the default {@link AltoCostMapInfo#getCosts(int[], int[])}
+	 * gets from {@link #getCost(int, int)}.
+	 */
+	private static float blockCost(float f)
+	{
+		double cost = float2double(f);
+		return cost >= 0 ? (float)cost : Float.NaN;
+	}
+	
 	/**
 	 * Return the last modification time of any cost in this cost map
 	 * (system time stamp).
@@ -214,11 +723,148 @@ public class CostMap implements AltoCostMapInfo
 	 */
 	public long getLastModTime()
 	{
-		synchronized (m_costs) {
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot.getLastModTime();
+		}
+		synchronized (costLock()) {
 			return m_lastModTime;
 		}
 	}
 	
+	/**
+	 * Return true iff this cost map uses snapshot mode.
+	 * @return True iff this cost map uses snapshot mode.
+	 */
+	public boolean usesSnapshots()
+	{
+		return m_useSnapshots;
+	}
+	
+	/**
+	 * Return the current version of the costs.
+	 * The version increases every time the costs or the network map change.
+	 * @return The current version of the costs.
+	 */
+	public long getVersion()
+	{
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot.getVersion();
+		}
+		synchronized (costLock()) {
+			return m_version;
+		}
+	}
+	
+	/**
+	 * Remember the last maxChanges changed cells,
+	 * for {@link #getChangesSince(long)}.
+	 * The journal takes about 20 bytes per change, independent of the number of PIDs.
+	 * The journal starts empty, so it only has changes after the current version.
+	 * @param maxChanges The maximum number of changes to remember.
+	 * 		If 0, disable the journal.
+	 */
+	public void setJournalSize(int maxChanges)
+	{
+		synchronized (this) {
+			synchronized (costLock()) {
+				m_journal = maxChanges > 0 ? new CostMapJournal(maxChanges, m_version, m_pids) : null;
+			}
+		}
+	}
+	
+	/**
+	 * Return the maximum number of changes in the journal.
+	 * @return The maximum number of changes in the journal, or 0 if it is disabled.
+	 */
+	public int getJournalSize()
+	{
+		CostMapJournal journal = m_journal;
+		return journal != null ? journal.getMaxEntries() : 0;
+	}
+	
+	/**
+	 * Return the cells which changed after a version of the cost map,
+	 * with their current costs. The client can apply them to a copy of that version
+	 * to get the current version, which is {@link CostMapDelta#getToVersion()}.
+	 * @param version A version returned by {@link #getVersion()} or a previous call.
+	 * @return The changes since that version, or null if we do not have them all.
+	 * 		This happens if the journal is disabled, if it discarded changes after that version,
+	 * 		or if all costs changed, e.g., by {@link #setAllCosts(double)}
+	 * 		or a new network map with different PIDs. Then the client needs the full cost map.
+	 */
+	public CostMapDelta getChangesSince(long version)
+	{
+		CostMapJournal journal = m_journal;
+		return journal != null ? journal.getChangesSince(version) : null;
+	}
+	
+	/**
+	 * Record a changed cell in the journal, if enabled.
+	 * The caller must hold the lock used to update the cell.
+	 * @param version The version after the change.
+	 */
+	private void journal(int iSrc, int iDest, float cost, long version)
+	{
+		CostMapJournal journal = m_journal;
+		if (journal != null) {
+			journal.record(iSrc, iDest, cost, version);
+		}
+	}
+	
+	/**
+	 * Tell the journal that the costs changed without recording the changed cells.
+	 * If the PIDs are the same, the costs did not change,
+	 * so the old changes are still valid. Otherwise discard them.
+	 * The caller must hold the lock used to update m_version.
+	 * @param oldPids The previous PIDs, or null if all costs changed.
+	 */
+	private void resetJournal(String[] oldPids)
+	{
+		CostMapJournal journal = m_journal;
+		if (journal != null) {
+			if (oldPids != null && Arrays.equals(oldPids, m_pids)) {
+				journal.setVersion(m_version);
+			} else {
+				journal.reset(m_version, m_pids);
+			}
+		}
+	}
+	
+	/**
+	 * Return a consistent view of the costs and the modification time.
+	 * Clients which read many costs, such as a filtered cost map request,
+	 * should read them all from one snapshot.
+	 * In snapshot mode, this just returns the current snapshot.
+	 * Otherwise it copies the costs, which takes time and space.
+	 * @return A snapshot of the costs.
+	 */
+	public Snapshot getSnapshot()
+	{
+		Snapshot snapshot = m_snapshot;
+		if (snapshot != null) {
+			return snapshot;
+		}
+		synchronized (this) {
+			synchronized (costLock()) {
+				float[][] costs = new float[m_nPids][];
+				for (int iSrc = 0; iSrc < m_nPids; iSrc++) {
+					if (m_store != null) {
+						costs[iSrc] = new float[m_nPids];
+						m_store.getRow(iSrc, costs[iSrc]);
+					} else {
+						for (int iDest = 0; iDest < m_nPids; iDest++) {
+							refreshCost(iSrc, iDest);
+						}
+						costs[iSrc] = m_costs[iSrc].clone();
+					}
+				}
+				return new Snapshot(m_map, costs, m_lastModTime, m_version);
+			}
+		}
+	}
+	
 	/**
 	 * Called by the various getCost() methods
 	 * before they read m_costs[iSrc][iDest].
@@ -227,6 +873,7 @@ public class CostMap implements AltoCostMapInfo
 	 * and update m_costs[iSrc][iDest] directly.
 	 * The caller has synchronized on m_paths, so the child class
 	 * can use simple assignment.
+	 * This is not called in snapshot mode.
 	 * @param iSrc The source pid.
 	 * @param iDest The destination pid.
 	 */
@@ -253,9 +900,20 @@ public class CostMap implements AltoCostMapInfo
 		int iSrc = m_map.pidToIndex(srcPid);
 		int iDest = m_map.pidToIndex(destPid);
 		if (iSrc >= 0 && iDest >= 0 && (cost >= 0 || Double.isNaN(cost))) {
-			synchronized (m_costs) {
-				m_costs[iSrc][iDest] = (float)cost;
-				m_lastModTime = modTime;
+			synchronized (this) {
+				if (m_useSnapshots) {
+					float[][] costs = m_costs.clone();
+					writableRow(costs, iSrc)[iDest] = (float)cost;
+					journal(iSrc, iDest, (float)cost, m_version + 1);
+					publish(costs, modTime);
+				} else {
+					synchronized (costLock()) {
+						setRawCost(iSrc, iDest, (float)cost);
+						setLastModTime(modTime);
+						m_version++;
+						journal(iSrc, iDest, (float)cost, m_version);
+					}
+				}
 			}
 			return true;
 		} else {
@@ -265,28 +923,19 @@ public class CostMap implements AltoCostMapInfo
 		
 	/**
 	 * Update the cost map with the costs in a CostMap response message.
+	 * The new costs are applied atomically, as with {@link #applyDelta(CostMapDelta, long)}.
 	 * @param data A set of costs.
 	 * @return True iff all pids are valid; false if some are unknown.
 	 */
 	public boolean setCosts(AltoResp_CostMap data)
 	{
 		boolean ret = true;
-		int nUpdates = 0;
+		CostMapDelta delta = new CostMapDelta();
 		for (String srcPid:data.getSrcPIDs()) {
-			int iSrc = m_map.pidToIndex(srcPid);
-			if (iSrc < 0)
-				continue;
 			try {
 				for (String destPid:data.getDestPIDs(srcPid)) {
-					int iDest = m_map.pidToIndex(destPid);
-					if (iDest < 0)
-						continue;
 					try {
-						float newCost = (float)data.getCost(srcPid, destPid);
-						synchronized (m_costs) {
-							m_costs[iSrc][iDest] = newCost;
-							nUpdates++;
-						}
+						delta.add(srcPid, destPid, data.getCost(srcPid, destPid));
 					} catch (JSONException e) {
 						// ignore bad destPid?
 						ret = false;
@@ -297,9 +946,67 @@ public class CostMap implements AltoCostMapInfo
 				ret = false;
 			}
 		}
-		if (nUpdates > 0) {
-			synchronized (m_costs) {
-				m_lastModTime = System.currentTimeMillis();
+		if (!applyDelta(delta, 0)) {
+			ret = false;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Apply a batch of changes atomically: readers see either
+	 * none of the new costs or all of them, and the changes create one new version.
+	 * Ignore changes with unknown PIDs or negative costs.
+	 * @param delta The new costs.
+	 * @param modTime The effective date of this update. If 0, use "now".
+	 * @return True iff all changes were valid.
+	 */
+	public boolean applyDelta(CostMapDelta delta, long modTime)
+	{
+		if (modTime == 0)
+			modTime = System.currentTimeMillis();
+		boolean ret = true;
+		int nChanges = delta.size();
+		synchronized (this) {
+			int[] srcs = new int[nChanges];
+			int[] dests = new int[nChanges];
+			int nValid = 0;
+			for (int i = 0; i < nChanges; i++) {
+				double cost = delta.getCost(i);
+				srcs[i] = m_map.pidToIndex(delta.getSrcPid(i));
+				dests[i] = m_map.pidToIndex(delta.getDestPid(i));
+				if (srcs[i] >= 0 && dests[i] >= 0 && (cost >= 0 || Double.isNaN(cost))) {
+					nValid++;
+				} else {
+					srcs[i] = -1;
+					ret = false;
+				}
+			}
+			if (nValid == 0) {
+				return ret;
+			}
+			long newVersion = m_version + 1;
+			if (m_useSnapshots) {
+				float[][] costs = m_costs.clone();
+				for (int i = 0; i < nChanges; i++) {
+					if (srcs[i] >= 0) {
+						float cost = (float)delta.getCost(i);
+						writableRow(costs, srcs[i])[dests[i]] = cost;
+						journal(srcs[i], dests[i], cost, newVersion);
+					}
+				}
+				publish(costs, modTime);
+			} else {
+				synchronized (costLock()) {
+					for (int i = 0; i < nChanges; i++) {
+						if (srcs[i] >= 0) {
+							float cost = (float)delta.getCost(i);
+							setRawCost(srcs[i], dests[i], cost);
+							journal(srcs[i], dests[i], cost, newVersion);
+						}
+					}
+					setLastModTime(modTime);
+					m_version = newVersion;
+				}
 			}
 		}
 		return ret;
@@ -318,10 +1025,38 @@ public class CostMap implements AltoCostMapInfo
 	 */
 	public AltoResp_EndpointCost setCosts(AltoResp_EndpointCost data)
 	{
-		AltoResp_EndpointCost resp;
-		resp = new AltoResp_EndpointCost();
+		AltoResp_EndpointCost resp = new AltoResp_EndpointCost();
 		resp.setCostMetric(getCostMetric());
 		resp.setCostMode(AltoResp_CostMap.COST_MODE_NUMERICAL);
+		if (m_useSnapshots) {
+			synchronized (this) {
+				float[][] costs = m_costs.clone();
+				if (setCosts(data, costs, resp)) {
+					publish(costs, m_lastModTime);
+				}
+			}
+		} else {
+			synchronized (this) {
+				setCosts(data, null, resp);
+			}
+		}
+		return resp;
+	}
+	
+	/**
+	 * Update the cost map with the costs between the endpoints in an EndpointCost response message.
+	 * @param data A set of endpoint costs.
+	 * @param costs In snapshot mode, a copy of m_costs to update.
+	 * 		The caller will publish it if we return true.
+	 * 		Otherwise null, and we update m_costs in place.
+	 * 		The caller must synchronize on this object.
+	 * @param resp We add the final pairwise costs for all endpoints in "data" to this response.
+	 * @return True iff we updated any costs.
+	 */
+	private boolean setCosts(AltoResp_EndpointCost data, float[][] costs, AltoResp_EndpointCost resp)
+	{
+		long newVersion = m_version + 1;
+		boolean updated = false;
 		for (String srcEndpoint:data.getSrcAddrs()) {
 			EndpointAddress srcAddr;
 			String srcPid;
@@ -351,11 +1086,18 @@ public class CostMap implements AltoCostMapInfo
 						continue;
 					try {
 						float newCost = (float)data.getCost(srcEndpoint, destEndpoint);
-						synchronized (m_costs) {
-							m_costs[iSrc][iDest] = newCost;
-							if (!Double.isNaN(newCost))
-								resp.setCost(srcEndpoint, destEndpoint, newCost);
+						if (costs != null) {
+							writableRow(costs, iSrc)[iDest] = newCost;
+							journal(iSrc, iDest, newCost, newVersion);
+						} else {
+							synchronized (costLock()) {
+								setRawCost(iSrc, iDest, newCost);
+								journal(iSrc, iDest, newCost, newVersion);
+							}
 						}
+						updated = true;
+						if (!Double.isNaN(newCost))
+							resp.setCost(srcEndpoint, destEndpoint, newCost);
 					} catch (JSONException e) {
 						// ignore bad destPid?
 						continue;
@@ -366,7 +1108,12 @@ public class CostMap implements AltoCostMapInfo
 				continue;
 			}
 		}
-		return resp;
+		if (updated && costs == null) {
+			synchronized (costLock()) {
+				m_version = newVersion;
+			}
+		}
+		return updated;
 	}
 	
 	/**
@@ -376,15 +1123,66 @@ public class CostMap implements AltoCostMapInfo
 	public void setAllCosts(double cost)
 	{
 		float fcost = (float)cost;
-		synchronized (m_costs) {
-			for (int iSrc = 0; iSrc < m_nPids; iSrc++) {
-				for (int iDest = 0; iDest < m_nPids; iDest++) {
-					m_costs[iSrc][iDest] = fcost;
+		if (m_useSnapshots) {
+			synchronized (this) {
+				float[][] costs = new float[m_nPids][m_nPids];
+				for (int iSrc = 0; iSrc < m_nPids; iSrc++) {
+					Arrays.fill(costs[iSrc], fcost);
+				}
+				publish(costs, m_lastModTime);
+				resetJournal(null);
+			}
+		} else {
+			synchronized (this) {
+				synchronized (costLock()) {
+					if (m_store != null) {
+						m_store.fill(fcost);
+					} else {
+						for (int iSrc = 0; iSrc < m_nPids; iSrc++) {
+							for (int iDest = 0; iDest < m_nPids; iDest++) {
+								m_costs[iSrc][iDest] = fcost;
+							}
+						}
+					}
+					m_version++;
+					resetJournal(null);
 				}
 			}
 		}
 	}
 	
+	/**
+	 * In snapshot mode, return a row of a new cost array that we can change.
+	 * If the row is still shared with the current snapshot, copy it first.
+	 * The caller must synchronize on this object.
+	 * @param costs A copy of m_costs, which will become the next snapshot.
+	 * @param iSrc The source pid index.
+	 * @return The row of costs for iSrc.
+	 */
+	private float[] writableRow(float[][] costs, int iSrc)
+	{
+		float[] row = costs[iSrc];
+		if (row == m_costs[iSrc]) {
+			row = row.clone();
+			costs[iSrc] = row;
+		}
+		return row;
+	}
+	
+	/**
+	 * In snapshot mode, make a new cost array the current snapshot.
+	 * The caller must synchronize on this object.
+	 * @param costs The new costs.
+	 * @param modTime The modification time for the new snapshot.
+	 */
+	private void publish(float[][] costs, long modTime)
+	{
+		m_costs = costs;
+		m_lastModTime = modTime;
+		m_version++;
+		m_snapshot = new Snapshot(m_map, costs, modTime, m_version);
+	}
+	
 	/**
 	 * Return the number of PIDs in this cost map.
 	 */
@@ -0,0 +1,161 @@
+package com.wdroome.altodata;
+
+import java.util.Arrays;
+
+import com.wdroome.altomsgs.AltoResp_CostMap;
+
+/**
+ * A batch of changes to the costs in a {@link CostMap}.
+ * A feeder creates a CostMapDelta, adds the new costs,
+ * and applies them all at once with {@link CostMap#applyDelta(CostMapDelta, long)}.
+ * {@link CostMap#getChangesSince(long)} returns the cells which changed
+ * after a version of the cost map, as a CostMapDelta,
+ * so a server can send incremental updates rather than the full cost map.
+ * The memory is proportional to the number of changes,
+ * not the number of cells in the cost map.
+ * <p>
+ * This class is not synchronized.
+ * @author wdr
+ */
+public class CostMapDelta
+{
+	private static final int INITIAL_SIZE = 16;
+	
+	private String[] m_srcPids = new String[INITIAL_SIZE];
+	private String[] m_destPids = new String[INITIAL_SIZE];
+	private float[] m_costs = new float[INITIAL_SIZE];
+	private int m_size = 0;
+	
+	private final long m_fromVersion;
+	private final long m_toVersion;
+	
+	/**
+	 * Create a new, empty delta.
+	 */
+	public CostMapDelta()
+	{
+		this(-1, -1);
+	}
+	
+	/**
+	 * Create a new, empty delta for the changes between two versions of a cost map.
+	 * @param fromVersion The earlier version.
+	 * @param toVersion The later version.
+	 */
+	CostMapDelta(long fromVersion, long toVersion)
+	{
+		m_fromVersion = fromVersion;
+		m_toVersion = toVersion;
+	}
+	
+	/**
+	 * Add a new cost. If the delta already has a cost for this pair,
+	 * the last one wins when the delta is applied.
+	 * @param srcPid The source pid.
+	 * @param destPid The destination pid.
+	 * @param cost The new cost.
+	 */
+	public void add(String srcPid, String destPid, double cost)
+	{
+		if (m_size >= m_costs.length) {
+			int newSize = 2*m_costs.length;
+			m_srcPids = Arrays.copyOf(m_srcPids, newSize);
+			m_destPids = Arrays.copyOf(m_destPids, newSize);
+			m_costs = Arrays.copyOf(m_costs, newSize);
+		}
+		m_srcPids[m_size] = srcPid;
+		m_destPids[m_size] = destPid;
+		m_costs[m_size] = (float)cost;
+		m_size++;
+	}
+	
+	/**
+	 * Return the number of changes.
+	 * @return The number of changes.
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Return the source pid of a change.
+	 * @param i The index of the change, from 0 to size()-1.
+	 * @return The source pid of the i'th change.
+	 */
+	public String getSrcPid(int i)
+	{
+		checkIndex(i);
+		return m_srcPids[i];
+	}
+	
+	/**
+	 * Return the destination pid of a change.
+	 * @param i The index of the change, from 0 to size()-1.
+	 * @return The destination pid of the i'th change.
+	 */
+	public String getDestPid(int i)
+	{
+		checkIndex(i);
+		return m_destPids[i];
+	}
+	
+	/**
+	 * Return the new cost of a change.
+	 * @param i The index of the change, from 0 to size()-1.
+	 * @return The new cost of the i'th change.
+	 */
+	public double getCost(int i)
+	{
+		checkIndex(i);
+		float cost = m_costs[i];
+		return Float.isNaN(cost) ? Double.NaN : cost;
+	}
+	
+	private void checkIndex(int i)
+	{
+		if (i < 0 || i >= m_size) {
+			throw new IndexOutOfBoundsException("CostMapDelta: index " + i + " size " + m_size);
+		}
+	}
+	
+	/**
+	 * For a delta returned by {@link CostMap#getChangesSince(long)},
+	 * return the version of the cost map to which the changes apply.
+	 * @return The version of the cost map to which the changes apply,
+	 * 		or -1 if the client created this delta.
+	 */
+	public long getFromVersion()
+	{
+		return m_fromVersion;
+	}
+	
+	/**
+	 * For a delta returned by {@link CostMap#getChangesSince(long)},
+	 * return the version of the cost map after the changes.
+	 * @return The version of the cost map after the changes,
+	 * 		or -1 if the client created this delta.
+	 */
+	public long getToVersion()
+	{
+		return m_toVersion;
+	}
+	
+	/**
+	 * Return the changes as a partial CostMap message.
+	 * Following RFC 8895, a server can send this as a JSON merge patch
+	 * for the "cost-map" field of the full cost map.
+	 * As in {@link AltoResp_CostMap#setCost(String, String, double)},
+	 * a NaN cost appears as the string "NaN".
+	 * The caller must set the meta data.
+	 * @return A partial CostMap message with the new costs.
+	 */
+	public AltoResp_CostMap toAltoResp()
+	{
+		AltoResp_CostMap resp = new AltoResp_CostMap();
+		for (int i = 0; i < m_size; i++) {
+			resp.setCost(m_srcPids[i], m_destPids[i], getCost(i));
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,142 @@
+package com.wdroome.altodata;
+
+import java.util.HashSet;
+
+/**
+ * A bounded journal of the cells which changed in a {@link CostMap}.
+ * Each entry has the source and destination pid indexes, the new cost,
+ * and the cost map version created by the change.
+ * The entries are in primitive circular arrays, so the memory
+ * is proportional to the maximum number of entries, not the size of the cost map.
+ * When the journal is full, the oldest entries are discarded,
+ * and we can no longer answer for versions before them.
+ * <p>
+ * This class is synchronized.
+ * @author wdr
+ */
+class CostMapJournal
+{
+	private final int[] m_srcs;
+	private final int[] m_dests;
+	private final float[] m_costs;
+	private final long[] m_versions;
+	
+	/** The index of the oldest entry. */
+	private int m_first = 0;
+	
+	/** The number of entries. */
+	private int m_size = 0;
+	
+	/** We know all changes after this version. */
+	private long m_baseVersion;
+	
+	/** The last version recorded. */
+	private long m_lastVersion;
+	
+	/** The PID names for the indexes in the entries. */
+	private String[] m_pids;
+	
+	/**
+	 * Create a new journal.
+	 * @param maxEntries The maximum number of entries.
+	 * @param version The current version of the cost map.
+	 * @param pids The current PID names, in index order.
+	 */
+	CostMapJournal(int maxEntries, long version, String[] pids)
+	{
+		m_srcs = new int[maxEntries];
+		m_dests = new int[maxEntries];
+		m_costs = new float[maxEntries];
+		m_versions = new long[maxEntries];
+		m_baseVersion = version;
+		m_lastVersion = version;
+		m_pids = pids;
+	}
+	
+	/**
+	 * Return the maximum number of entries.
+	 */
+	synchronized int getMaxEntries()
+	{
+		return m_costs.length;
+	}
+	
+	/**
+	 * Record a change.
+	 * @param iSrc The source pid index.
+	 * @param iDest The destination pid index.
+	 * @param cost The new cost.
+	 * @param version The version of the cost map after the change.
+	 */
+	synchronized void record(int iSrc, int iDest, float cost, long version)
+	{
+		int max = m_costs.length;
+		if (max == 0) {
+			m_baseVersion = version;
+		} else {
+			int i;
+			if (m_size < max) {
+				i = (m_first + m_size) % max;
+				m_size++;
+			} else {
+				i = m_first;
+				m_first = (m_first + 1) % max;
+				m_baseVersion = m_versions[i];
+			}
+			m_srcs[i] = iSrc;
+			m_dests[i] = iDest;
+			m_costs[i] = cost;
+			m_versions[i] = version;
+		}
+		m_lastVersion = version;
+	}
+	
+	/**
+	 * Discard all entries, because the cost map changed in a way
+	 * we cannot describe cell by cell, such as a new network map.
+	 * @param version The new version of the cost map.
+	 * @param pids The new PID names, in index order.
+	 */
+	synchronized void reset(long version, String[] pids)
+	{
+		m_first = 0;
+		m_size = 0;
+		m_baseVersion = version;
+		m_lastVersion = version;
+		m_pids = pids;
+	}
+	
+	/**
+	 * Note a new version of the cost map which did not change any costs.
+	 * @param version The new version of the cost map.
+	 */
+	synchronized void setVersion(long version)
+	{
+		m_lastVersion = version;
+	}
+	
+	/**
+	 * Return the changes after a version, with the last cost for each cell.
+	 * @param version The version the client has.
+	 * @return The changes, or null if we do not know all changes since that version.
+	 */
+	synchronized CostMapDelta getChangesSince(long version)
+	{
+		if (version < m_baseVersion || version > m_lastVersion) {
+			return null;
+		}
+		CostMapDelta delta = new CostMapDelta(version, m_lastVersion);
+		int max = m_costs.length;
+		HashSet<Long> cells = new HashSet<Long>();
+		for (int n = m_size - 1; n >= 0; n--) {
+			int i = (m_first + n) % max;
+			if (m_versions[i] <= version) {
+				break;
+			}
+			if (cells.add(((long)m_srcs[i] << 32) | m_dests[i])) {
+				delta.add(m_pids[m_srcs[i]], m_pids[m_dests[i]], m_costs[i]);
+			}
+		}
+		return delta;
+	}
+}
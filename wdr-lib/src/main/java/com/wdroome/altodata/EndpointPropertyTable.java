@@ -5,14 +5,16 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.TreeSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 
 import com.wdroome.util.inet.EndpointAddress;
 import com.wdroome.util.inet.EndpointString;
 import com.wdroome.util.inet.CIDRAddress;
 import com.wdroome.util.inet.CIDRString;
+import com.wdroome.util.inet.CIDRTrie;
 
 import com.wdroome.altomsgs.AltoResp_EndpointProp;
 
@@ -21,7 +23,10 @@ import com.wdroome.altomsgs.AltoResp_EndpointProp;
  * You set properties by endpoint and name, or by CIDR and name. 
  * Setting a property by CIDR sets it for all endpoints under that CIDR,
  * unless set by a longer CIDR or by the endpoint.
- * All operations are synchronized, so this class is thread-safe.
+ * Updates are synchronized, so this class is thread-safe.
+ * Lookups use an immutable index of the properties, which is rebuilt
+ * by {@link #finishUpdates()} or by the first lookup after an update.
+ * Once the index is built, lookups do not lock and do not allocate objects.
  * 
  * @author wdr
  */
@@ -33,9 +38,123 @@ public class EndpointPropertyTable
 	private final Set<String> m_propNames = new HashSet<String>();
 	private boolean m_recalcPropNames = false;
 	
-	private final TreeSet<CIDRAddress> m_cidrs = new TreeSet<CIDRAddress>();
-	private final Map<CIDRAddress, CIDRAddress> m_cidrParents = new HashMap<CIDRAddress, CIDRAddress>();
-	private boolean m_recalcCidrParents = false;
+	// The lookup index, or null if it must be rebuilt.
+	// Updates set this to null, and getProp() and finishUpdates() rebuild it.
+	private volatile PropIndex m_index = null;
+	
+	/**
+	 * An immutable index of the property values in the table.
+	 * For each endpoint address, it has a map from property name to value.
+	 * For each CIDR, it has a map with the CIDR's own property values
+	 * plus the values the CIDR inherits from the CIDRs that cover it.
+	 * So the value of a property for an address is the value
+	 * in the longest CIDR that contains the address.
+	 * IP endpoints are stored in a trie as full-length CIDRs,
+	 * so lookups by packed address do not need an EndpointAddress.
+	 */
+	private static class PropIndex
+	{
+		private final Map<EndpointAddress, Map<String,String>> m_endpointProps
+							= new HashMap<EndpointAddress, Map<String,String>>();
+		private final CIDRTrie<Map<String,String>> m_ipEndpointProps
+							= new CIDRTrie<Map<String,String>>();
+		private final CIDRTrie<Map<String,String>> m_cidrProps
+							= new CIDRTrie<Map<String,String>>();
+		
+		/**
+		 * Create the index from the current property values.
+		 * The caller must synchronize on the EndpointPropertyTable.
+		 */
+		private PropIndex(Map<EndpointString, String> endpointProps,
+						  Map<CIDRString, String> cidrProps)
+		{
+			for (Map.Entry<EndpointString, String> ent: endpointProps.entrySet()) {
+				EndpointAddress addr = ent.getKey().m_endpoint;
+				Map<String,String> props = m_endpointProps.get(addr);
+				if (props == null) {
+					props = new HashMap<String,String>();
+					m_endpointProps.put(addr, props);
+				}
+				props.put(ent.getKey().m_string, ent.getValue());
+			}
+			
+			// Move the IP endpoints to the trie. Other endpoints stay in the map.
+			for (Iterator<Map.Entry<EndpointAddress, Map<String,String>>> iter
+						= m_endpointProps.entrySet().iterator(); iter.hasNext(); ) {
+				Map.Entry<EndpointAddress, Map<String,String>> ent = iter.next();
+				EndpointAddress addr = ent.getKey();
+				if (addr.isIPV4() || addr.isIPV6()) {
+					try {
+						m_ipEndpointProps.put(new CIDRAddress(addr), ent.getValue());
+						iter.remove();
+					} catch (UnknownHostException e) {
+						// Shouldn't happen. If it does, leave it in the map.
+					}
+				}
+			}
+			
+			// Collect the property values for each distinct CIDR.
+			Map<CIDRAddress, Map<String,String>> cidr2props
+							= new HashMap<CIDRAddress, Map<String,String>>();
+			for (Map.Entry<CIDRString, String> ent: cidrProps.entrySet()) {
+				CIDRAddress cidr = ent.getKey().m_cidr;
+				Map<String,String> props = cidr2props.get(cidr);
+				if (props == null) {
+					props = new HashMap<String,String>();
+					cidr2props.put(cidr, props);
+				}
+				props.put(ent.getKey().m_string, ent.getValue());
+			}
+			
+			// Add the CIDRs shortest-mask-first, so that when we add a CIDR,
+			// the trie already has the CIDRs that cover it.
+			// Each CIDR inherits the values of the longest CIDR that covers it,
+			// and its own values override the inherited ones.
+			CIDRAddress[] cidrs = cidr2props.keySet().toArray(new CIDRAddress[cidr2props.size()]);
+			Arrays.sort(cidrs);
+			for (int i = cidrs.length - 1; i >= 0; i--) {
+				Map<String,String> props = new HashMap<String,String>();
+				Map<String,String> parentProps = m_cidrProps.longestCover(cidrs[i], false);
+				if (parentProps != null) {
+					props.putAll(parentProps);
+				}
+				props.putAll(cidr2props.get(cidrs[i]));
+				m_cidrProps.put(cidrs[i], props);
+			}
+		}
+		
+		/**
+		 * Return the value of a property for an address, or null.
+		 * Only IP addresses can be in a CIDR, so other endpoints,
+		 * such as pid names, only have their own values.
+		 */
+		private String getProp(EndpointAddress addr, String name)
+		{
+			if (addr.isIPV4() || addr.isIPV6()) {
+				return getProp(addr.getPackedHigh(), addr.getPackedLow(), addr.size(), name);
+			}
+			Map<String,String> props = m_endpointProps.get(addr);
+			return props != null ? props.get(name) : null;
+		}
+		
+		/**
+		 * Return the value of a property for a packed IP address, or null.
+		 */
+		private String getProp(long hi, long lo, int addrLen, String name)
+		{
+			// The endpoint trie only has full-length CIDRs,
+			// so the longest match is an exact match.
+			Map<String,String> props = m_ipEndpointProps.longestMatch(hi, lo, addrLen);
+			if (props != null) {
+				String value = props.get(name);
+				if (value != null) {
+					return value;
+				}
+			}
+			props = m_cidrProps.longestMatch(hi, lo, addrLen);
+			return props != null ? props.get(name) : null;
+		}
+	}
 
 	/**
 	 * Return the value for an endpoint, or if there's no value for the specific endpoint,
@@ -45,67 +164,49 @@ public class EndpointPropertyTable
 	 * @return The value for property "name" for address "addr."
 	 * 		Return null if no value is specified for that property.
 	 */
-	public synchronized String getProp(EndpointAddress addr, String name)
+	public String getProp(EndpointAddress addr, String name)
 	{
-		String value = m_endpointProps.get(new EndpointString(addr, name));
-		if (value != null)
-			return value;
-		
-		setupCidrParents();
-		
-		// Set cidr to the longest cidr covering addr.
-		// Because m_cidrs is a TreeSet, that's the first one that covers it.
-		CIDRAddress cidr = null;
-		for (CIDRAddress xcidr: m_cidrs) {
-			if (addr.isContainedIn(xcidr)) {
-				cidr = xcidr;
-				break;
-			}
+		PropIndex index = m_index;
+		if (index == null) {
+			index = setupIndex();
 		}
-		
-		// Now try cidr, and then walk up the cidr parent tree
-		// until we find a value for this property.
-		for (; cidr != null; cidr = m_cidrParents.get(cidr)) {
-			if ((value = m_cidrProps.get(new CIDRString((CIDRAddress)cidr, name))) != null) {
-				return value;
-			}	
+		return index.getProp(addr, name);
+	}
+
+	/**
+	 * Return the value for a packed IP address, or if there's no value for the specific address,
+	 * the value for the longest CIDR that covers the address.
+	 * Unlike {@link #getProp(EndpointAddress, String)}, the caller does not need to create
+	 * an EndpointAddress: use {@link EndpointAddress#parseIPAddr(CharSequence, int, int, long[], int)}
+	 * to parse the address into a reusable array.
+	 * @param hi The first 64 bits of the address.
+	 * @param lo The last 64 bits of the address (IPV6 only).
+	 * @param addrLen The address length in bytes: 4 for IPV4, 16 for IPV6.
+	 * @param name The property name.
+	 * @return The value for property "name" for the address.
+	 * 		Return null if no value is specified for that property.
+	 */
+	public String getProp(long hi, long lo, int addrLen, String name)
+	{
+		PropIndex index = m_index;
+		if (index == null) {
+			index = setupIndex();
 		}
-		return null;
+		return index.getProp(hi, lo, addrLen, name);
 	}
 
 	/**
-	 * Create the m_cidrParent map if needed.
-	 * The caller must synchronize on this object.
+	 * Create the lookup index if needed, and return it.
 	 * Note this method may take a while to complete.
 	 */
-	private void setupCidrParents()
+	private synchronized PropIndex setupIndex()
 	{
-		if (m_recalcCidrParents) {
-			m_cidrs.clear();
-			m_cidrParents.clear();
-			
-			// First we create a TreeSet with all distinct CIDRs.
-			for (CIDRString cidrString: m_cidrProps.keySet()) {
-				m_cidrs.add(cidrString.m_cidr);
-			}
-			
-			// Now map each CIDR with a value to the longest CIDR that covers it.
-			for (CIDRAddress cidr: m_cidrs) {
-				CIDRAddress longestParent = null;
-				for (CIDRAddress xcidr: m_cidrs) {
-					if (xcidr != cidr && xcidr.covers(cidr)) {
-						if (longestParent == null || xcidr.getMaskLen() > longestParent.getMaskLen()) {
-							longestParent = xcidr;
-						}
-					}
-				}
-				if (longestParent != null) {
-					m_cidrParents.put(cidr, longestParent);
-				}
-			}
-			
-			m_recalcCidrParents = false;
+		PropIndex index = m_index;
+		if (index == null) {
+			index = new PropIndex(m_endpointProps, m_cidrProps);
+			m_index = index;
 		}
+		return index;
 	}
 
 	/**
@@ -241,11 +342,11 @@ public class EndpointPropertyTable
 		if (value != null && !value.equals("")) {
 			if (m_endpointProps.put(key, value) == null) {
 				m_propNames.add(name);
-				m_recalcCidrParents = true;
 			}
+			m_index = null;
 		} else {
-			if (m_endpointProps.remove(key) == null) {
-				m_recalcCidrParents = true;
+			if (m_endpointProps.remove(key) != null) {
+				m_index = null;
 				m_recalcPropNames = true;
 			}
 		}
@@ -265,11 +366,11 @@ public class EndpointPropertyTable
 		if (value != null && !value.equals("")) {
 			if (m_cidrProps.put(key, value) == null) {
 				m_propNames.add(name);
-				m_recalcCidrParents = true;
 			}
+			m_index = null;
 		} else {
-			if (m_cidrProps.remove(key) == null) {
-				m_recalcCidrParents = true;
+			if (m_cidrProps.remove(key) != null) {
+				m_index = null;
 				m_recalcPropNames = true;
 			}
 		}
@@ -284,7 +385,7 @@ public class EndpointPropertyTable
 	 */
 	public synchronized void finishUpdates()
 	{
-		setupCidrParents();
+		setupIndex();
 		setupPropNames();
 	}
 }
@@ -2,11 +2,20 @@ package com.wdroome.altodata;
 
 import java.security.MessageDigest;
 import java.util.*;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.LineNumberReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import com.wdroome.json.JSONException;
 import com.wdroome.altomsgs.AltoResp_NetworkMap;
@@ -16,6 +25,7 @@ import com.wdroome.util.IteratorWithPosition;
 import com.wdroome.util.StringUtils;
 import com.wdroome.util.inet.CIDRAddress;
 import com.wdroome.util.inet.CIDRSet;
+import com.wdroome.util.inet.CIDRTrie;
 import com.wdroome.util.inet.NamedCIDRSet;
 import com.wdroome.util.inet.EndpointAddress;
 import com.wdroome.util.inet.UnknownAddressTypeException;
@@ -31,6 +41,12 @@ public class NetworkMap
 	public static final String MAP_FILE_VTAG_PREFIX = "vtag=";
 	public static final String MAP_FILE_MAP_ID_PREFIX = "map-id=";
 	
+	/** The first four bytes of a binary network map file: "NMAP". */
+	public static final int BINARY_MAGIC = 0x4e4d4150;
+	
+	/** The version of the binary network map format. */
+	public static final int BINARY_VERSION = 1;
+	
 	/**
 	 * A frozen map with one PID, named "DEFAULT",
  	 * which covers all possible endpoints.
@@ -61,6 +77,10 @@ public class NetworkMap
 	private final TreeMap<CIDRAddress,String> m_cidr2pid
 							= new TreeMap<CIDRAddress,String>();
 	
+	// When the map is frozen, this has the same CIDR => PID mapping as m_cidr2pid,
+	// indexed for longest-prefix-match lookups by getPID().
+	private volatile CIDRTrie<String> m_cidrTrie = null;
+	
 	private boolean m_frozen = false;
 	private final String m_mapId;
 	private String m_vtag = null;
@@ -203,7 +223,12 @@ public class NetworkMap
 		}
 		m_pidNames = pidNames.toArray(new String[pidNames.size()]);
 		Arrays.sort(m_pidNames);
-		calcContainingPids0();
+		CIDRTrie<String> cidrTrie = new CIDRTrie<String>();
+		for (Map.Entry<CIDRAddress,String> ent: m_cidr2pid.entrySet()) {
+			cidrTrie.put(ent.getKey(), ent.getValue());
+		}
+		calcContainingPids0(cidrTrie);
+		m_cidrTrie = cidrTrie;
 		m_frozen = true;
 		m_lastModTime = System.currentTimeMillis();
 	}
@@ -228,28 +253,15 @@ public class NetworkMap
 	 * If the parent CIDRs of P are in more than one PID,
 	 * or if a CIDR in P does not have an immediate parent,
 	 * then P does not have an immediate parent PID.
+	 * <p>We find the parent CIDRs with a longest-prefix-match trie of the map's CIDRs,
+	 * so this takes time proportional to the number of CIDRs times the address length,
+	 * rather than the square of the number of CIDRs.
+	 * @param cidrTrie A trie with the CIDR => PID mapping in m_cidr2pid.
 	 */
-	private void calcContainingPids0()
+	private void calcContainingPids0(CIDRTrie<String> cidrTrie)
 	{
 		m_containingPid = new HashMap<String, String>();
 		
-		// Create cidr2parent such that it maps each CIDR to the longest CIDR that covers it.
-		// CIDRs that aren't covered by another CIDR are not in the map.
-		Map<CIDRAddress, CIDRAddress> cidr2parent = new HashMap<CIDRAddress, CIDRAddress>();
-		for (CIDRAddress cidr: m_cidr2pid.keySet()) {
-			CIDRAddress longestParent = null;
-			for (CIDRAddress xcidr: m_cidr2pid.keySet()) {
-				if (xcidr != cidr && xcidr.covers(cidr)) {
-					if (longestParent == null || xcidr.getMaskLen() > cidr.getMaskLen()) {
-						longestParent = xcidr;
-					}
-				}
-			}
-			if (longestParent != null) {
-				cidr2parent.put(cidr, longestParent);
-			}
-		}
-		
 		// For all PIDs:
 		for (Map.Entry<String,CIDRSet> ent: m_pid2cidrs.entrySet()) {
 			String pid = ent.getKey();
@@ -257,17 +269,10 @@ public class NetworkMap
 			String parent = null;
 
 			// For all cidrs in pid:
-			for (CIDRAddress cidr: cidrs.getCIDRs()) {
-				// Get parent CIDR. If none, give up.
-				CIDRAddress parCIDR = cidr2parent.get(cidr);
-				if (parCIDR == null) {
-					parent = null;
-					break;
-				}
-				// Get PID with the parent CIDR.
-				String pidWithCIDR = m_cidr2pid.get(parCIDR);
+			for (CIDRAddress cidr: cidrs) {
+				// Get PID with the parent CIDR. If none, give up.
+				String pidWithCIDR = cidrTrie.longestCover(cidr, false);
 				if (pidWithCIDR == null) {
-					// shouldn't happen
 					parent = null;
 					break;
 				}
@@ -474,7 +479,7 @@ public class NetworkMap
 		if (oldPid != null) {
 			if (oldPid.equals(pid))
 				return oldPid;
-			CIDRSet oldCidrs = getCIDRs(pid, false);
+			CIDRSet oldCidrs = getCIDRs(oldPid, false);
 			if (oldCidrs != null)
 				oldCidrs.remove(cidr);
 		}
@@ -513,7 +518,7 @@ public class NetworkMap
 			if (oldPid != null) {
 				if (oldPid.equals(pid))
 					continue;
-				CIDRSet oldCidrs = getCIDRs(pid, false);
+				CIDRSet oldCidrs = getCIDRs(oldPid, false);
 				if (oldCidrs != null)
 					oldCidrs.remove(cidr);
 			}
@@ -646,17 +651,27 @@ public class NetworkMap
 	 */
 	public String getPID(InetAddress addr)
 	{
+		CIDRTrie<String> cidrTrie = m_cidrTrie;
+		if (cidrTrie != null) {
+			return cidrTrie.longestMatch(addr);
+		}
 		return getPID(new EndpointAddress(addr));
 	}
 	
 	/**
 	 * Return the PID for an internet address.
 	 * That's the PID for the CIDR with the longest mask that covers the address.
+	 * Once the map is frozen, this is a trie lookup whose cost depends
+	 * on the address length rather than the number of CIDRs.
 	 * @param addr An internet address to lookup.
 	 * @return The PID for that address, or null if no CIDR covers "addr".
 	 */
 	public String getPID(EndpointAddress addr)
 	{
+		CIDRTrie<String> cidrTrie = m_cidrTrie;
+		if (cidrTrie != null) {
+			return cidrTrie.longestMatch(addr);
+		}
 		for (Map.Entry<CIDRAddress, String> ent:m_cidr2pid.entrySet()) {
 			if (addr.isContainedIn(ent.getKey())) {
 				return ent.getValue();
@@ -665,6 +680,32 @@ public class NetworkMap
 		return null;
 	}
 	
+	/**
+	 * Return the PID for a packed IP address,
+	 * as returned by {@link EndpointAddress#parseIPAddr(CharSequence, int, int, long[], int)}.
+	 * That's the PID for the CIDR with the longest mask that covers the address.
+	 * This does not create any objects, so request handlers can use it
+	 * to look up many addresses without allocating an EndpointAddress for each.
+	 * @param hi The first 64 bits of the address.
+	 * @param lo The last 64 bits of the address (IPV6 only).
+	 * @param addrLen The address length in bytes: 4 for IPV4, 16 for IPV6.
+	 * @return The PID for that address, or null if no CIDR covers it.
+	 */
+	public String getPID(long hi, long lo, int addrLen)
+	{
+		CIDRTrie<String> cidrTrie = m_cidrTrie;
+		if (cidrTrie != null) {
+			return cidrTrie.longestMatch(hi, lo, addrLen);
+		}
+		for (Map.Entry<CIDRAddress, String> ent:m_cidr2pid.entrySet()) {
+			CIDRAddress cidr = ent.getKey();
+			if (addrLen == 4 ? cidr.containsIPV4((int)(hi >>> 32)) : cidr.containsIPV6(hi, lo)) {
+				return ent.getValue();
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * Return the PIDs in this map.
 	 */
@@ -750,6 +791,39 @@ public class NetworkMap
 			return -1;
 	}
 	
+	/**
+	 * Return the pid indexes for a set of IP addresses. Only works after the map has been frozen.
+	 * This parses each address into a packed form and looks it up in the CIDR trie,
+	 * so it does not create an EndpointAddress or a CIDRAddress for each address.
+	 * @param addrs IPV4 or IPV6 addresses, with or without the "ipv4:" or "ipv6:" prefix.
+	 * @return A new array with the pid index for each element of addrs.
+	 * 		The index is -1 if the address is not a valid IP address
+	 * 		or no CIDR covers it.
+	 * @throws IllegalStateException If the map is not frozen.
+	 * @see EndpointAddress#parseIPAddr(CharSequence, int, int, long[], int)
+	 */
+	public int[] getPidIndexes(String[] addrs)
+	{
+		if (m_pidNames == null)
+			throw new IllegalStateException("NetworkMap.getPidIndexes() only works when frozen.");
+		int[] indexes = new int[addrs.length];
+		long[] packed = new long[2];
+		String prevPid = null;
+		int prevIndex = -1;
+		for (int i = 0; i < addrs.length; i++) {
+			int addrLen = addrs[i] != null ? EndpointAddress.parseIPAddr(addrs[i], packed) : -1;
+			String pid = addrLen > 0 ? getPID(packed[0], packed[1], addrLen) : null;
+			// Requests often list many endpoints in the same pid,
+			// so remember the last one to avoid searching the pid names.
+			if (pid != prevPid) {
+				prevPid = pid;
+				prevIndex = pidToIndex(pid);
+			}
+			indexes[i] = prevIndex;
+		}
+		return indexes;
+	}
+	
 	private static final CIDRAddress m_allIPV4addrs;
 	private static final CIDRAddress m_allIPV6addrs;
 	static {
@@ -959,6 +1033,326 @@ public class NetworkMap
 		return maps;
 	}
 	
+	/**
+	 * Write a frozen map to a file in a compact binary format,
+	 * which {@link #load(File)} can read much faster
+	 * than parsing a text, XML or JSON network map.
+	 * If the file exists, replace it.
+	 * @param file The file.
+	 * @throws IOException If we cannot write the file.
+	 * @throws IllegalStateException If this map is not frozen.
+	 * @see #writeBinary(OutputStream)
+	 */
+	public void save(File file) throws IOException
+	{
+		try (OutputStream out = new FileOutputStream(file)) {
+			writeBinary(out);
+		}
+	}
+	
+	/**
+	 * Write a frozen map in a compact binary format.
+	 * The format has a header with {@link #BINARY_MAGIC}, {@link #BINARY_VERSION},
+	 * the freeze time, the map id and the vtag. Then come the sorted PID names,
+	 * and all CIDRs, in CIDR order, each with the index of its PID
+	 * and the CIDR as written by {@link CIDRAddress#writeBinary(java.io.DataOutput)}.
+	 * Finally, for each PID, the index of its containing PID, or -1,
+	 * so the reader does not need to recalculate it.
+	 * Integers are big-endian, and strings are a length followed by UTF-8 bytes.
+	 * A null map id or vtag is written as length -1.
+	 * @param out The output stream. We do not close it.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws IllegalStateException If this map is not frozen.
+	 */
+	public void writeBinary(OutputStream out) throws IOException
+	{
+		if (!isFrozen())
+			throw new IllegalStateException("NetworkMap.writeBinary(): Only legal after map is frozen.");
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		dout.writeInt(BINARY_MAGIC);
+		dout.writeInt(BINARY_VERSION);
+		dout.writeLong(m_lastModTime);
+		writeBinaryString(dout, m_mapId);
+		writeBinaryString(dout, m_vtag);
+		dout.writeInt(m_pidNames.length);
+		for (String pid: m_pidNames) {
+			writeBinaryString(dout, pid);
+		}
+		dout.writeInt(m_cidr2pid.size());
+		for (Map.Entry<CIDRAddress,String> ent: m_cidr2pid.entrySet()) {
+			dout.writeInt(pidToIndex(ent.getValue()));
+			ent.getKey().writeBinary(dout);
+		}
+		for (String pid: m_pidNames) {
+			String parent = m_containingPid != null ? m_containingPid.get(pid) : null;
+			dout.writeInt(parent != null ? pidToIndex(parent) : -1);
+		}
+		dout.flush();
+	}
+	
+	/**
+	 * Read a network map from a file written by {@link #save(File)}.
+	 * We read the whole file with one bulk read,
+	 * and we do not recalculate the containing PIDs.
+	 * Because the CIDRs are sorted, we build the CIDR map in linear time.
+	 * @param file The file.
+	 * @return A new frozen map, with the vtag and freeze time of the saved map.
+	 * @throws IOException If we cannot read the file, or if it is not a valid network map file.
+	 */
+	public static NetworkMap load(File file) throws IOException
+	{
+		try {
+			return readBinary(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+		} catch (IOException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Read a network map written by {@link #writeBinary(OutputStream)}.
+	 * @param buff The input. On return, the position is after the map.
+	 * @return A new frozen map, with the vtag and freeze time of the saved map.
+	 * @throws IOException If buff does not have a valid network map.
+	 */
+	public static NetworkMap readBinary(ByteBuffer buff) throws IOException
+	{
+		try {
+			if (buff.getInt() != BINARY_MAGIC) {
+				throw new IOException("Not a binary network map");
+			}
+			int version = buff.getInt();
+			if (version != BINARY_VERSION) {
+				throw new IOException("Unknown binary network map version " + version);
+			}
+			long lastModTime = buff.getLong();
+			NetworkMap map = new NetworkMap(readBinaryString(buff));
+			map.m_vtag = readBinaryString(buff);
+			int nPids = buff.getInt();
+			if (nPids < 0 || nPids > buff.remaining()/4) {
+				throw new IOException("Invalid number of PIDs " + nPids);
+			}
+			String[] pidNames = new String[nPids];
+			for (int i = 0; i < nPids; i++) {
+				pidNames[i] = readBinaryString(buff);
+			}
+			int nCIDRs = buff.getInt();
+			if (nCIDRs < 0 || nCIDRs > buff.remaining()/6) {
+				throw new IOException("Invalid number of CIDRs " + nCIDRs);
+			}
+			CIDRAddress[] cidrs = new CIDRAddress[nCIDRs];
+			int[] pidIndexes = new int[nCIDRs];
+			int[] pidSizes = new int[nPids];
+			for (int i = 0; i < nCIDRs; i++) {
+				int iPid = buff.getInt();
+				if (iPid < 0 || iPid >= nPids) {
+					throw new IOException("Invalid PID index " + iPid);
+				}
+				pidIndexes[i] = iPid;
+				pidSizes[iPid]++;
+				cidrs[i] = CIDRAddress.readBinary(buff);
+				if (i > 0 && cidrs[i-1].compareTo(cidrs[i]) >= 0) {
+					throw new IOException("CIDRs are not sorted");
+				}
+			}
+			CIDRAddress[][] pidCIDRs = new CIDRAddress[nPids][];
+			for (int iPid = 0; iPid < nPids; iPid++) {
+				pidCIDRs[iPid] = new CIDRAddress[pidSizes[iPid]];
+				pidSizes[iPid] = 0;
+			}
+			CIDRTrie<String> cidrTrie = new CIDRTrie<String>();
+			for (int i = 0; i < nCIDRs; i++) {
+				int iPid = pidIndexes[i];
+				pidCIDRs[iPid][pidSizes[iPid]++] = cidrs[i];
+				cidrTrie.put(cidrs[i], pidNames[iPid]);
+			}
+			for (int iPid = 0; iPid < nPids; iPid++) {
+				map.m_pid2cidrs.put(pidNames[iPid], CIDRSet.newFrozenSet(pidCIDRs[iPid]));
+			}
+			map.m_cidr2pid.putAll(new SortedCIDRs(cidrs, pidIndexes, pidNames));
+			map.m_containingPid = new HashMap<String,String>();
+			for (String pid: pidNames) {
+				int iParent = buff.getInt();
+				if (iParent >= 0 && iParent < nPids) {
+					map.m_containingPid.put(pid, pidNames[iParent]);
+				}
+			}
+			map.m_pidNames = pidNames;
+			map.m_cidrTrie = cidrTrie;
+			map.m_lastModTime = lastModTime;
+			map.m_frozen = true;
+			return map;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated binary network map");
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid binary network map: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * A read-only view of sorted CIDR and PID arrays as a SortedMap.
+	 * When putAll() adds a SortedMap to an empty TreeMap,
+	 * the TreeMap builds the tree in linear time, instead of adding the entries one by one.
+	 * TreeMap only uses size(), comparator() and the entry iterator.
+	 * Because the map is read-only, subMap(), headMap() and tailMap()
+	 * return copies of the selected range, rather than views.
+	 */
+	private static class SortedCIDRs extends AbstractMap<CIDRAddress,String>
+									implements SortedMap<CIDRAddress,String>
+	{
+		private final CIDRAddress[] m_cidrs;
+		private final int[] m_pidIndexes;
+		private final String[] m_pidNames;
+		
+		private SortedCIDRs(CIDRAddress[] cidrs, int[] pidIndexes, String[] pidNames)
+		{
+			m_cidrs = cidrs;
+			m_pidIndexes = pidIndexes;
+			m_pidNames = pidNames;
+		}
+		
+		@Override
+		public int size()
+		{
+			return m_cidrs.length;
+		}
+		
+		@Override
+		public Comparator<? super CIDRAddress> comparator()
+		{
+			return null;
+		}
+		
+		@Override
+		public Set<Map.Entry<CIDRAddress,String>> entrySet()
+		{
+			return new AbstractSet<Map.Entry<CIDRAddress,String>>() {
+				@Override
+				public int size()
+				{
+					return m_cidrs.length;
+				}
+				
+				@Override
+				public Iterator<Map.Entry<CIDRAddress,String>> iterator()
+				{
+					return new Iterator<Map.Entry<CIDRAddress,String>>() {
+						private int m_next = 0;
+						
+						@Override
+						public boolean hasNext()
+						{
+							return m_next < m_cidrs.length;
+						}
+						
+						@Override
+						public Map.Entry<CIDRAddress,String> next()
+						{
+							if (m_next >= m_cidrs.length) {
+								throw new NoSuchElementException();
+							}
+							int i = m_next++;
+							return new AbstractMap.SimpleImmutableEntry<CIDRAddress,String>(
+												m_cidrs[i], m_pidNames[m_pidIndexes[i]]);
+						}
+					};
+				}
+			};
+		}
+		
+		/**
+		 * Return the index of the first CIDR greater than or equal to key.
+		 * @param key The key.
+		 * @return The index of the first CIDR &gt;= key, or m_cidrs.length if none.
+		 */
+		private int lowerBound(CIDRAddress key)
+		{
+			int i = Arrays.binarySearch(m_cidrs, key);
+			return i >= 0 ? i : -i - 1;
+		}
+		
+		/**
+		 * Return the entries with indexes from (inclusive) to to (exclusive).
+		 */
+		private SortedCIDRs range(int from, int to)
+		{
+			return new SortedCIDRs(Arrays.copyOfRange(m_cidrs, from, to),
+								Arrays.copyOfRange(m_pidIndexes, from, to),
+								m_pidNames);
+		}
+		
+		@Override
+		public SortedMap<CIDRAddress,String> subMap(CIDRAddress fromKey, CIDRAddress toKey)
+		{
+			if (fromKey.compareTo(toKey) > 0) {
+				throw new IllegalArgumentException("SortedCIDRs.subMap: fromKey > toKey");
+			}
+			return range(lowerBound(fromKey), lowerBound(toKey));
+		}
+		
+		@Override
+		public SortedMap<CIDRAddress,String> headMap(CIDRAddress toKey)
+		{
+			return range(0, lowerBound(toKey));
+		}
+		
+		@Override
+		public SortedMap<CIDRAddress,String> tailMap(CIDRAddress fromKey)
+		{
+			return range(lowerBound(fromKey), m_cidrs.length);
+		}
+		
+		@Override
+		public CIDRAddress firstKey()
+		{
+			if (m_cidrs.length == 0) {
+				throw new NoSuchElementException();
+			}
+			return m_cidrs[0];
+		}
+		
+		@Override
+		public CIDRAddress lastKey()
+		{
+			if (m_cidrs.length == 0) {
+				throw new NoSuchElementException();
+			}
+			return m_cidrs[m_cidrs.length - 1];
+		}
+	}
+	
+	/**
+	 * Write a string as a length followed by UTF-8 bytes.
+	 * A null string is written as length -1.
+	 */
+	private static void writeBinaryString(DataOutputStream out, String s) throws IOException
+	{
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Read a string written by {@link #writeBinaryString(DataOutputStream, String)}.
+	 * Return null if the length is -1.
+	 */
+	private static String readBinaryString(ByteBuffer buff) throws IOException
+	{
+		int len = buff.getInt();
+		if (len == -1) {
+			return null;
+		}
+		if (len < 0 || len > buff.remaining()) {
+			throw new IOException("Invalid string length " + len);
+		}
+		byte[] bytes = new byte[len];
+		buff.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
 	/**
 	 *	Return an ascii string with the MD5 digest of a canonical
 	 *	representation of the pids & cidrs in this map.
@@ -74,4 +74,27 @@ public interface AltoCostMapInfo
 	 * @return The cost. Return -1 if srcPid or destPid aren't valid.
 	 */
 	public double getCost(String srcPid, String destPid);
+	
+	/**
+	 * Return the costs between a set of source pids and a set of destination pids,
+	 * as a dense block of floats. The default implementation calls
+	 * {@link #getCost(int, int)} for each pair; implementations should override it
+	 * with a faster version.
+	 * @param srcIndexes The indexes of the source pids.
+	 * @param destIndexes The indexes of the destination pids.
+	 * @return A new array with the costs, indexed by the positions
+	 * 		in srcIndexes and destIndexes. The cost is NaN if a pid index is invalid
+	 * 		or if the cost is not defined.
+	 */
+	public default float[][] getCosts(int[] srcIndexes, int[] destIndexes)
+	{
+		float[][] costs = new float[srcIndexes.length][destIndexes.length];
+		for (int i = 0; i < srcIndexes.length; i++) {
+			for (int j = 0; j < destIndexes.length; j++) {
+				double cost = getCost(srcIndexes[i], destIndexes[j]);
+				costs[i][j] = cost >= 0 ? (float)cost : Float.NaN;
+			}
+		}
+		return costs;
+	}
 }
@@ -52,6 +52,8 @@ public abstract class AltoMsg_Base
 	
 	/**
 	 * Create an object from a JSON lexical analyzer.
+	 * The parser uses the shared {@link JSONStringCache} for keys and short values,
+	 * because ALTO messages repeat the same PID names many times.
 	 * @param lexan The lexical analyzer.
 	 * @throws JSONParseException
 	 * 		If the input cannot be parsed.
@@ -60,7 +62,7 @@ public abstract class AltoMsg_Base
 	 */
 	public AltoMsg_Base(IJSONLexan lexan) throws JSONParseException, JSONValueTypeException
 	{
-		m_json = JSONParser.parseObject(lexan, needPathNames());		
+		m_json = JSONParser.parseObject(lexan, needPathNames(), JSONStringCache.shared());
 	}
 	
 	/**
@@ -120,9 +122,11 @@ public abstract class AltoMsg_Base
 	}
 	
 	/**
-	 * Return a new validator for this message class.
+	 * Return the validator for this message class.
+	 * The validator may be shared by all messages of the class,
+	 * so child classes should not change it.
 	 * The base class returns null.
-	 * @return A new validator for this message class,
+	 * @return The validator for this message class,
 	 * 		or null if there is no validator.
 	 */
 	protected JSONValidate getValidator()
@@ -140,19 +144,17 @@ public abstract class AltoMsg_Base
 	{
 		ArrayList<String> errors = null;
 		if (validator != null && json != null) {
-			synchronized (validator) {
-				validator.collectErrors(null);
-				errors = new ArrayList<String>();
-				validator.collectErrors(errors);
-				try {
-					validator.validate(json);
-				} catch (Exception e) {
-					// Shouldn't happen, but just in case ....
-					errors.add(e.toString());
-				}
-				if (errors.isEmpty()) {
-					errors = null;
-				}
+			// The root path collects the errors, so we do not
+			// have to lock the validator or change its state.
+			errors = new ArrayList<String>();
+			try {
+				validator.validate(json, new JSONValidate.Path("", errors));
+			} catch (Exception e) {
+				// Shouldn't happen, but just in case ....
+				errors.add(e.toString());
+			}
+			if (errors.isEmpty()) {
+				errors = null;
 			}
 		}
 		return errors;
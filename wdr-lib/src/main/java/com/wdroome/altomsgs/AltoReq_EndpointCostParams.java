@@ -303,13 +303,16 @@ public class AltoReq_EndpointCostParams extends AltoMsg_Base
 			)
 		};
 
+	/** The validator for Endpoint Cost Param messages. */
+	private static final JSONValidate_Object ENDPOINT_COST_PARAM_VALIDATOR = new JSONValidate_Object(ENDPOINT_COST_PARAM_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Endpoint Cost Param messages.
+	 * Return the validator for Endpoint Cost Param messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(ENDPOINT_COST_PARAM_FIELD_SPECS);
+		return ENDPOINT_COST_PARAM_VALIDATOR;
 	}
 	
 	/**
@@ -319,6 +322,6 @@ public class AltoReq_EndpointCostParams extends AltoMsg_Base
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(ENDPOINT_COST_PARAM_FIELD_SPECS));
+		return validate(json, ENDPOINT_COST_PARAM_VALIDATOR);
 	}
 }
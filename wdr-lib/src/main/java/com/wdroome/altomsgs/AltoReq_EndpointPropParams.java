@@ -211,13 +211,16 @@ public class AltoReq_EndpointPropParams extends AltoMsg_Base
 				AltoValidators.IP_ADDR_ARRAY),
 		};
 
+	/** The validator for Endpoint Property Param messages. */
+	private static final JSONValidate_Object ENDPOINT_PROP_PARAM_VALIDATOR = new JSONValidate_Object(ENDPOINT_PROP_PARAM_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Endpoint Property Param messages.
+	 * Return the validator for Endpoint Property Param messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(ENDPOINT_PROP_PARAM_FIELD_SPECS);
+		return ENDPOINT_PROP_PARAM_VALIDATOR;
 	}
 	
 	/**
@@ -227,6 +230,6 @@ public class AltoReq_EndpointPropParams extends AltoMsg_Base
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(ENDPOINT_PROP_PARAM_FIELD_SPECS));
+		return validate(json, ENDPOINT_PROP_PARAM_VALIDATOR);
 	}
 }
@@ -303,13 +303,16 @@ public class AltoReq_FilteredCostMap extends AltoMsg_Base
 			)
 		};
 
+	/** The validator for Filtered Cost Param messages. */
+	private static final JSONValidate_Object FILTERED_COST_PARAM_VALIDATOR = new JSONValidate_Object(FILTERED_COST_PARAM_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Filtered Cost Param messages.
+	 * Return the validator for Filtered Cost Param messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(FILTERED_COST_PARAM_FIELD_SPECS);
+		return FILTERED_COST_PARAM_VALIDATOR;
 	}
 	
 	/**
@@ -319,6 +322,6 @@ public class AltoReq_FilteredCostMap extends AltoMsg_Base
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(FILTERED_COST_PARAM_FIELD_SPECS));
+		return validate(json, FILTERED_COST_PARAM_VALIDATOR);
 	}
 }
@@ -202,13 +202,16 @@ public class AltoReq_FilteredNetworkMap extends AltoMsg_Base
 				),
 		};
 
+	/** The validator for Filtered Network Param messages. */
+	private static final JSONValidate_Object FILTERED_NETWORK_PARAM_VALIDATOR = new JSONValidate_Object(FILTERED_NETWORK_PARAM_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Filtered Network Param messages.
+	 * Return the validator for Filtered Network Param messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(FILTERED_NETWORK_PARAM_FIELD_SPECS);
+		return FILTERED_NETWORK_PARAM_VALIDATOR;
 	}
 	
 	/**
@@ -218,6 +221,6 @@ public class AltoReq_FilteredNetworkMap extends AltoMsg_Base
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(FILTERED_NETWORK_PARAM_FIELD_SPECS));
+		return validate(json, FILTERED_NETWORK_PARAM_VALIDATOR);
 	}
 }
@@ -286,13 +286,16 @@ public class AltoResp_CostMap extends AltoResp_Base implements Iterable<String>
 			)
 		};
 
+	/** The validator for Cost Map messages. */
+	private static final JSONValidate_Object COST_MAP_VALIDATOR = new JSONValidate_Object(COST_MAP_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Cost Map messages.
+	 * Return the validator for Cost Map messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(COST_MAP_FIELD_SPECS);
+		return COST_MAP_VALIDATOR;
 	}
 	
 	/**
@@ -302,6 +305,6 @@ public class AltoResp_CostMap extends AltoResp_Base implements Iterable<String>
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(COST_MAP_FIELD_SPECS));
+		return validate(json, COST_MAP_VALIDATOR);
 	}
 }
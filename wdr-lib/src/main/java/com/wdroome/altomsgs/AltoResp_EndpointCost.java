@@ -5,6 +5,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.TreeMap;
+import java.io.IOException;
 import java.io.Reader;
 
 import com.wdroome.json.JSONException;
@@ -14,6 +16,9 @@ import com.wdroome.util.inet.SrcDestAddrs;
 import com.wdroome.json.IJSONLexan;
 import com.wdroome.json.JSONLexan;
 import com.wdroome.json.JSONParseException;
+import com.wdroome.json.JSONValue;
+import com.wdroome.json.JSONValue_Null;
+import com.wdroome.json.JSONWriter;
 import com.wdroome.json.JSONValueTypeException;
 import com.wdroome.json.JSONValue_Array;
 import com.wdroome.json.JSONValue_Object;
@@ -27,6 +32,12 @@ import com.wdroome.json.validate.JSONValidate_Object.SimpleKey;
 
 /**
  * A class representing an ALTO Endpoint Cost response message.
+ * <p>
+ * A server can set the costs one pair at a time, with {@link #setCost(String, String, double)},
+ * or as a dense matrix, with {@link #setCosts(String[], String[], float[][])}.
+ * {@link #writeJSON(JSONWriter)} writes a cost matrix directly,
+ * without creating a JSON object or a hash entry for each pair.
+ * The other methods convert the matrix to JSON objects the first time they need them.
  * @author wdr
  */
 public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<String>
@@ -39,6 +50,12 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 		
 	private final Map<SrcDestAddrs, Double> m_srcDestCosts = new HashMap<SrcDestAddrs, Double>();
 	
+	// If not null, costs set by setCosts() which have not been added to m_map.
+	// The addresses have the type prefix; null addresses are omitted.
+	private String[] m_matrixSrcs = null;
+	private String[] m_matrixDests = null;
+	private float[][] m_matrixCosts = null;
+	
 	/**
 	 * Return the name of the ALTO service that returns response messages
 	 * of this type.
@@ -160,6 +177,7 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public Iterator<String> iterator()
 	{
+		materializeCosts();
 		return m_map.keys();
 	}
 	
@@ -170,6 +188,7 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public String[] getSrcAddrs()
 	{
+		materializeCosts();
 		return m_map.keyArray();
 	}
 	
@@ -181,6 +200,7 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public String[] getDestAddrs(String src) throws JSONException
 	{
+		materializeCosts();
 		return m_map.getObject(EndpointAddress.addPrefix(src)).keyArray();
 	}
 	
@@ -193,6 +213,7 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public double getCost(String src, String dest) throws JSONException
 	{
+		materializeCosts();
 		try {
 			SrcDestAddrs srcDest = new SrcDestAddrs(src, dest);
 			Double cost = m_srcDestCosts.get(srcDest);
@@ -214,6 +235,7 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public double getCost(EndpointAddress src, EndpointAddress dest) throws JSONException
 	{
+		materializeCosts();
 		SrcDestAddrs srcDest = new SrcDestAddrs(src, dest);
 		Double cost = m_srcDestCosts.get(srcDest);
 		if (cost != null)
@@ -229,6 +251,7 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public void setCost(String src, String dest, double cost)
 	{
+		materializeCosts();
 		src = EndpointAddress.addPrefix(src);
 		dest = EndpointAddress.addPrefix(dest);
 		JSONValue_Object srcMap = m_map.getObject(src, null);
@@ -247,6 +270,254 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 		}
 	}
 	
+	/**
+	 * Set the costs between a set of source and destination addrs.
+	 * This saves the arrays, rather than creating a JSON value
+	 * and a hash entry for each pair, and {@link #writeJSON(JSONWriter)}
+	 * writes them directly. So the caller must not change the arrays afterwards.
+	 * @param srcs The source addrs. Null elements are omitted from the response.
+	 * @param dests The destination addrs. Null elements are omitted from the response.
+	 * @param costs The costs. costs[i][j] is the cost from srcs[i] to dests[j].
+	 * 		NaN means the cost is unknown.
+	 * @throws IllegalArgumentException If the costs array does not match srcs and dests.
+	 */
+	public void setCosts(String[] srcs, String[] dests, float[][] costs)
+	{
+		if (costs.length != srcs.length) {
+			throw new IllegalArgumentException("AltoResp_EndpointCost.setCosts: "
+						+ srcs.length + " sources, but " + costs.length + " cost rows");
+		}
+		for (int i = 0; i < costs.length; i++) {
+			if (costs[i].length != dests.length) {
+				throw new IllegalArgumentException("AltoResp_EndpointCost.setCosts: "
+							+ dests.length + " destinations, but " + costs[i].length + " costs");
+			}
+		}
+		materializeCosts();
+		m_matrixSrcs = addPrefixes(srcs);
+		m_matrixDests = addPrefixes(dests);
+		m_matrixCosts = costs;
+	}
+	
+	/**
+	 * Return a new array with the type prefix added to each non-null address.
+	 */
+	private static String[] addPrefixes(String[] addrs)
+	{
+		String[] prefixed = new String[addrs.length];
+		for (int i = 0; i < addrs.length; i++) {
+			if (addrs[i] != null) {
+				prefixed[i] = EndpointAddress.addPrefix(addrs[i]);
+			}
+		}
+		return prefixed;
+	}
+	
+	/**
+	 * If there is a cost matrix from {@link #setCosts(String[], String[], float[][])},
+	 * add its costs to the JSON map and the pair table.
+	 */
+	private void materializeCosts()
+	{
+		float[][] costs = m_matrixCosts;
+		if (costs == null) {
+			return;
+		}
+		m_matrixCosts = null;
+		for (int i = 0; i < costs.length; i++) {
+			if (m_matrixSrcs[i] != null) {
+				for (int j = 0; j < costs[i].length; j++) {
+					if (m_matrixDests[j] != null) {
+						// Use the float's shortest decimal form, as writeJSON() does.
+						float cost = costs[i][j];
+						setCost(m_matrixSrcs[i], m_matrixDests[j],
+								Float.isNaN(cost) ? Double.NaN : Double.parseDouble(Float.toString(cost)));
+					}
+				}
+			}
+		}
+		m_matrixSrcs = null;
+		m_matrixDests = null;
+	}
+	
+	@Override
+	public String getJSON()
+	{
+		materializeCosts();
+		return super.getJSON();
+	}
+	
+	@Override
+	public String toString()
+	{
+		materializeCosts();
+		return super.toString();
+	}
+	
+	@Override
+	public JSONValue_Object getMap(int i)
+	{
+		materializeCosts();
+		return super.getMap(i);
+	}
+	
+	@Override
+	public List<String> validate()
+	{
+		materializeCosts();
+		return super.validate();
+	}
+	
+	/**
+	 * Write the JSON message using client-specified formatting.
+	 * If the costs were set by {@link #setCosts(String[], String[], float[][])},
+	 * and there are no other costs, write the cost matrix directly.
+	 * If there are other costs, from {@link #setCost(String, String, double)}
+	 * or an earlier setCosts() call, add the matrix to them and write the JSON map.
+	 * Either way, the output is the same as for
+	 * the equivalent calls to {@link #setCost(String, String, double)}.
+	 * @param writer A JSON writer provided by the client.
+	 * @throws IOException If writer throws an I/O error.
+	 */
+	@Override
+	public void writeJSON(JSONWriter writer) throws IOException
+	{
+		float[][] costs = m_matrixCosts;
+		if (costs == null || !m_map.isEmpty()) {
+			materializeCosts();
+			super.writeJSON(writer);
+			return;
+		}
+		Map<String,JSONValue> fields = writer.isSorted()
+					? new TreeMap<String,JSONValue>(m_json) : m_json;
+		boolean indent = writer.isIndented();
+		writer.write('{');
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(1);
+		}
+		int n = 0;
+		for (Map.Entry<String,JSONValue> entry: fields.entrySet()) {
+			if (n > 0) {
+				writer.write(',');
+			}
+			if (indent) {
+				writer.writeNewline();
+			}
+			writer.writeQuoted(entry.getKey());
+			writer.write(':');
+			if (entry.getKey().equals(FN_ENDPOINT_COST_MAP)) {
+				writeCostMatrix(writer, costs);
+			} else {
+				JSONValue value = entry.getValue();
+				(value != null ? value : JSONValue_Null.NULL).writeJSON(writer);
+			}
+			n++;
+		}
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(-1);
+		}
+		writer.write('}');
+	}
+	
+	/**
+	 * Write the cost matrix as the value of the endpoint-cost-map field.
+	 * This formats the nested objects the same way {@link JSONValue_Object} does.
+	 */
+	private void writeCostMatrix(JSONWriter writer, float[][] costs) throws IOException
+	{
+		int[] destOrder = writeOrder(m_matrixDests, writer.isSorted());
+		// Like setCost(), omit sources without any destinations.
+		int[] srcOrder = destOrder.length > 0
+					? writeOrder(m_matrixSrcs, writer.isSorted()) : new int[0];
+		boolean indent = writer.isIndented() && srcOrder.length > 0;
+		boolean indentDests = writer.isIndented() && destOrder.length > 5;
+		writer.write('{');
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(1);
+		}
+		for (int i = 0; i < srcOrder.length; i++) {
+			int iSrc = srcOrder[i];
+			if (i > 0) {
+				writer.write(',');
+			}
+			if (indent) {
+				writer.writeNewline();
+			}
+			writer.writeQuoted(m_matrixSrcs[iSrc]);
+			writer.write(':');
+			writer.write('{');
+			if (indentDests) {
+				writer.writeNewline();
+				writer.incrIndent(1);
+			}
+			float[] row = costs[iSrc];
+			for (int j = 0; j < destOrder.length; j++) {
+				int iDest = destOrder[j];
+				if (j > 0) {
+					writer.write(',');
+				}
+				if (indentDests) {
+					writer.writeNewline();
+				}
+				writer.writeQuoted(m_matrixDests[iDest]);
+				writer.write(':');
+				if (Float.isNaN(row[iDest])) {
+					writer.writeQuoted("NaN");
+				} else {
+					writer.writeNumber(row[iDest]);
+				}
+			}
+			if (indentDests) {
+				writer.writeNewline();
+				writer.incrIndent(-1);
+			}
+			writer.write('}');
+		}
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(-1);
+		}
+		writer.write('}');
+	}
+	
+	/**
+	 * Return the indexes of the distinct non-null addrs, in the order to write them.
+	 * If an addr appears more than once, use its first position and its last costs,
+	 * as a JSON object would.
+	 * @param addrs The addrs, with type prefixes.
+	 * @param sorted If true, sort by addr. Otherwise use the order in addrs.
+	 */
+	private static int[] writeOrder(String[] addrs, boolean sorted)
+	{
+		Map<String,Integer> distinct = sorted
+					? new TreeMap<String,Integer>() : new HashMap<String,Integer>();
+		for (int i = 0; i < addrs.length; i++) {
+			if (addrs[i] != null) {
+				distinct.put(addrs[i], i);
+			}
+		}
+		int[] order = new int[distinct.size()];
+		if (sorted) {
+			int n = 0;
+			for (int i: distinct.values()) {
+				order[n++] = i;
+			}
+		} else {
+			// Write each addr at its first position, with its last value.
+			int n = 0;
+			for (int i = 0; i < addrs.length; i++) {
+				Integer last = addrs[i] != null ? distinct.remove(addrs[i]) : null;
+				if (last != null) {
+					order[n++] = last;
+				}
+			}
+		}
+		return order;
+	}
+	
 	/** FieldSpecs to validate Endpoint Cost Map messages. */
 	private static final FieldSpec[] ENDPOINT_COST_MAP_FIELD_SPECS = new FieldSpec[] {
 		
@@ -275,13 +546,16 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 			)
 		};
 
+	/** The validator for Endpoint Cost Map messages. */
+	private static final JSONValidate_Object ENDPOINT_COST_MAP_VALIDATOR = new JSONValidate_Object(ENDPOINT_COST_MAP_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Endpoint Cost Map messages.
+	 * Return the validator for Endpoint Cost Map messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(ENDPOINT_COST_MAP_FIELD_SPECS);
+		return ENDPOINT_COST_MAP_VALIDATOR;
 	}
 	
 	/**
@@ -291,6 +565,6 @@ public class AltoResp_EndpointCost extends AltoResp_Base implements Iterable<Str
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(ENDPOINT_COST_MAP_FIELD_SPECS));
+		return validate(json, ENDPOINT_COST_MAP_VALIDATOR);
 	}
 }
@@ -266,13 +266,16 @@ public class AltoResp_EndpointProp extends AltoResp_Base implements Iterable<Str
 			)
 		};
 
+	/** The validator for Endpoint Property Map messages. */
+	private static final JSONValidate_Object ENDPOINT_PROP_MAP_VALIDATOR = new JSONValidate_Object(ENDPOINT_PROP_MAP_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Endpoint Property Map messages.
+	 * Return the validator for Endpoint Property Map messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(ENDPOINT_PROP_MAP_FIELD_SPECS);
+		return ENDPOINT_PROP_MAP_VALIDATOR;
 	}
 	
 	/**
@@ -282,6 +285,6 @@ public class AltoResp_EndpointProp extends AltoResp_Base implements Iterable<Str
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(ENDPOINT_PROP_MAP_FIELD_SPECS));
+		return validate(json, ENDPOINT_PROP_MAP_VALIDATOR);
 	}
 }
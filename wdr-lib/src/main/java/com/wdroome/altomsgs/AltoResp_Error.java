@@ -197,13 +197,16 @@ public class AltoResp_Error extends AltoResp_Base
 			)
 		};
 
+	/** The validator for Error messages. */
+	private static final JSONValidate_Object ERROR_VALIDATOR = new JSONValidate_Object(ERROR_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Error messages.
+	 * Return the validator for Error messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(ERROR_FIELD_SPECS);
+		return ERROR_VALIDATOR;
 	}
 	
 	/**
@@ -213,6 +216,6 @@ public class AltoResp_Error extends AltoResp_Base
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(ERROR_FIELD_SPECS));
+		return validate(json, ERROR_VALIDATOR);
 	}
 }
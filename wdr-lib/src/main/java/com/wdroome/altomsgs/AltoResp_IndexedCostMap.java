@@ -11,8 +11,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Stack;
 
 
 // import com.wdroome.json.*;
@@ -20,7 +20,9 @@ import com.wdroome.json.JSONException;
 import com.wdroome.json.JSONParseException;
 import com.wdroome.json.IJSONLexan;
 import com.wdroome.json.JSONLexan;
-import com.wdroome.json.GenericJSONScanner;
+import com.wdroome.json.JSONLexanToken;
+import com.wdroome.json.JSONPullParser;
+import com.wdroome.json.JSONValueTypeException;
 import com.wdroome.json.JSONValue;
 import com.wdroome.json.JSONValue_Object;
 import com.wdroome.json.JSONValue_Array;
@@ -81,6 +83,12 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 	/**
 	 * Create an object from a JSON parser.
 	 * Used to decode a received message.
+	 * This reads the input with a {@link JSONPullParser}, and stores each cost
+	 * directly in the cost matrix as it is read. It does not build JSON values
+	 * for the cost-map section, so the memory needed is proportional
+	 * to the number of costs, rather than the size of the input.
+	 * Only the "meta" section is saved as JSON.
+	 * Costs that are null or not numbers are ignored.
 	 * @param lexan The JSON input parser.
 	 * @throws JSONParseException If jsonSrc isn't a valid JSON string.
 	 * @throws IOException If lexan throws it while reading input.
@@ -91,7 +99,105 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 		super();
 		m_costs.setDefaultValue(m_defaultCost);
 		if (lexan != null) {
-			new MyJSONScanner(lexan).scan();
+			JSONPullParser parser = new JSONPullParser(lexan);
+			if (parser.nextEvent() != JSONPullParser.Event.START_OBJECT) {
+				throw new JSONParseException("Cost map response is not a JSON object",
+								parser.currentToken(), null);
+			}
+			try {
+				String key;
+				while ((key = parser.readKey()) != null) {
+					if (key.equals(FN_META)) {
+						readMeta(parser);
+					} else if (key.equals(FN_COST_MAP)) {
+						readCostMap(parser);
+					} else {
+						parser.skipValue();
+					}
+				}
+				// Reject anything after the object: nextEvent() throws if there is another token.
+				parser.nextEvent();
+			} catch (JSONValueTypeException e) {
+				// Shouldn't happen: we only read keys in objects, and numbers from number tokens.
+				throw new JSONParseException(e.getMessage(), parser.currentToken(), parser.currentPath());
+			}
+		}
+	}
+	
+	/**
+	 * Read the value of the "meta" field, and save it in the meta object.
+	 * @param parser The parser. The current event is the "meta" key.
+	 */
+	private void readMeta(JSONPullParser parser) throws JSONParseException
+	{
+		JSONValue value = parser.readValue();
+		if (!(value instanceof JSONValue_Object)) {
+			return;
+		}
+		JSONValue_Object meta = (JSONValue_Object)value;
+		for (Map.Entry<String,JSONValue> entry: meta.entrySet()) {
+			getMeta().put(entry.getKey(), entry.getValue());
+		}
+		JSONValue defaultCost = meta.get(FN_DEFAULT_COST);
+		if (defaultCost instanceof JSONValue_Number) {
+			setDefaultCost(((JSONValue_Number)defaultCost).m_value);
+		}
+	}
+	
+	/**
+	 * Read the value of the "cost-map" field, and save the costs.
+	 * @param parser The parser. The current event is the "cost-map" key.
+	 */
+	private void readCostMap(JSONPullParser parser)
+			throws JSONParseException, JSONValueTypeException
+	{
+		if (parser.nextEvent() != JSONPullParser.Event.START_OBJECT) {
+			skipRest(parser);
+			return;
+		}
+		String srcPid;
+		while ((srcPid = parser.readKey()) != null) {
+			if (parser.nextEvent() != JSONPullParser.Event.START_OBJECT) {
+				skipRest(parser);
+				continue;
+			}
+			int srcIndex = m_srcPids.makeIndex(srcPid);
+			
+			// Rows usually list the destinations in the same order,
+			// so try the index after the previous destination
+			// before looking up the name.
+			int destIndex = -1;
+			String destPid;
+			while ((destPid = parser.readKey()) != null) {
+				if (parser.nextEvent() != JSONPullParser.Event.VALUE) {
+					skipRest(parser);
+					continue;
+				}
+				JSONLexanToken token = parser.currentToken();
+				if (token.m_token != JSONLexanToken.Token.NUMBER
+						&& token.m_token != JSONLexanToken.Token.BIGINT) {
+					continue;
+				}
+				if (destIndex + 1 < m_destPids.size()
+						&& m_destPids.getString(destIndex + 1).equals(destPid)) {
+					destIndex++;
+				} else {
+					destIndex = m_destPids.makeIndex(destPid);
+				}
+				m_costs.set(srcIndex, destIndex, (float)parser.getDouble());
+			}
+		}
+	}
+	
+	/**
+	 * Skip the rest of the value started by the parser's current event.
+	 * A scalar value is already complete, so this only skips arrays and objects.
+	 * @param parser The parser.
+	 */
+	private static void skipRest(JSONPullParser parser) throws JSONParseException
+	{
+		if (parser.currentEvent() != JSONPullParser.Event.VALUE) {
+			parser.skipValue();
 		}
 	}
 	
@@ -157,6 +263,11 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 		m_defaultCost = (float)defaultCost;
 		m_clientSetDefaultCost = true;
 		m_costs.setDefaultValue(m_defaultCost);
+		if (Double.isNaN(defaultCost)) {
+			setMetaValue(FN_DEFAULT_COST, "NaN");
+		} else {
+			setMetaValue(FN_DEFAULT_COST, defaultCost);
+		}
 	}
 	
 	public int getSrcPidIndex(String pid)
@@ -265,144 +376,18 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 		}
 	}
 
-	private class MyJSONScanner extends GenericJSONScanner
-	{
-		private static final String FPATH_META = FN_META;
-		private static final String FPATH_COST_MAP = FN_COST_MAP;
-		private static final String FPATH_DEPENDENT_RESOURCE_ID = FN_META + "." + FN_DEPENDENT_VTAGS + "." + FN_RESOURCE_ID;
-		private static final String FPATH_DEPENDENT_TAG = FN_META + "." + FN_DEPENDENT_VTAGS + "." + FN_TAG;
-		private static final String FPATH_COST_METRIC = FN_META + "." + FN_COST_TYPE + "." + FN_COST_TYPE_METRIC;
-		private static final String FPATH_COST_MODE = FN_META + "." + FN_COST_TYPE + "." + FN_COST_TYPE_MODE;
-		private static final String FPATH_DEFAULT_COST = FN_META + "." + FN_DEFAULT_COST;
-
-		MyJSONScanner(IJSONLexan lexan)
-		{
-			super(lexan);
-		}
-		
-		private String m_srcPid = null;
-		private Stack<JSONValue> m_metaStack = new Stack<JSONValue>();
-		
-		@Override
-		public void enterDictionary() throws JSONParseException
-		{
-			JSONValue topMeta = !m_metaStack.empty() ? m_metaStack.peek() : null;
-			if (topMeta != null
-					|| (inDictionary() && getDictionaryKeyPath().equals(FPATH_META))) {
-				JSONValue_Object newDict = (topMeta != null) ? new JSONValue_Object(): getMeta();
-				m_metaStack.push(newDict);
-				if (topMeta instanceof JSONValue_Object) {
-					((JSONValue_Object) topMeta).put(getTopDictionaryKey(), newDict);
-				} else if (topMeta instanceof JSONValue_Array) {
-					((JSONValue_Array) topMeta).add(newDict);
-				}
-			}
-		}
-
-		@Override
-		public void leaveDictionary() throws JSONParseException
-		{
-			if (!m_metaStack.empty()) {
-				m_metaStack.pop();
-			} else {
-				m_srcPid = null;
-			}
-		}
-
-		@Override
-		public void gotDictionaryValue(JSONValue value) throws JSONParseException
-		{
-			if (m_metaStack.empty()) {
-				if (value instanceof JSONValue_Number) {
-					double dvalue = ((JSONValue_Number)value).m_value;
-					if (getDictionaryKeyPath().equals(FPATH_DEFAULT_COST)) {
-						setDefaultCost(dvalue);
-					} else if (getNestedDictionaryDepth() == 3 && m_srcPid != null) {
-						setCost(m_srcPid, getTopDictionaryKey(), dvalue);
-					}
-				} else if (value instanceof JSONValue_Null) {
-					// Just ignore nulls.
-				} else {
-					// OOPS -- value is something other than a number or null.
-					// Ignore for now?
-				}
-			} else {
-				Object topMeta = m_metaStack.peek();
-				if (topMeta instanceof JSONValue_Object) {
-					((JSONValue_Object)topMeta).put(getTopDictionaryKey(), value);
-				} else if (topMeta instanceof JSONValue_Array) {
-					((JSONValue_Array)topMeta).add(value);
-				}
-				if (value instanceof JSONValue_Number) {
-					double dvalue = ((JSONValue_Number)value).m_value;
-					if (getDictionaryKeyPath().equals(FPATH_DEFAULT_COST)) {
-						setDefaultCost(dvalue);
-					}
-				} else if (value instanceof JSONValue_String) {
-					String svalue = ((JSONValue_String)value).m_value;
-					String path = getDictionaryKeyPath();
-					if (path.equals(FPATH_DEPENDENT_RESOURCE_ID)) {
-						setDependentVtag(svalue, getDependentTag());
-					} else if (path.equals(FPATH_DEPENDENT_TAG)) {
-						setDependentVtag(getDependentResourceId(), svalue);
-					} else if (path.equals(FPATH_COST_METRIC)) {
-						setCostMetric(svalue);
-					} else if (path.equals(FPATH_COST_MODE)) {
-						setCostMode(svalue);
-					}
-				}
-			}
-		}
-
-		@Override
-		public void gotDictionaryKey(String key) throws JSONParseException
-		{
-			if (getParentDictionaryKeyPath().equals(FPATH_COST_MAP)) {
-				m_srcPid = key;
-			}
-		}
-		
-		@Override
-		public void enterArray() throws JSONParseException
-		{
-			Object topMeta = !m_metaStack.empty() ? m_metaStack.peek() : null;
-			if (topMeta != null) {
-				JSONValue_Array newArray = new JSONValue_Array();
-				m_metaStack.push(newArray);
-				if (topMeta instanceof JSONValue_Object) {
-					((JSONValue_Object) topMeta).put(getTopDictionaryKey(), newArray);
-				} else if (topMeta instanceof JSONValue_Array) {
-					((JSONValue_Array) topMeta).add(newArray);
-				}
-			}
-		}
-
-		@Override
-		public void leaveArray() throws JSONParseException
-		{
-			if (!m_metaStack.empty()) {
-				m_metaStack.pop();
-			} else {
-				m_srcPid = null;
-			}
-		}
-
-		@Override
-		public void gotArrayValue(JSONValue value) throws JSONParseException
-		{
-			if (!m_metaStack.empty()) {
-				Object topMeta = m_metaStack.peek();
-				if (topMeta instanceof JSONValue_Array) {
-					((JSONValue_Array)topMeta).add(value);
-				}
-			}
-		}
-	}
-	
 	/**
 	 * Write the JSON message using client-specified formatting.
 	 * Because this class does NOT store the costs in the m_json field,
 	 * we must override the base-class method.
+	 * <p>
+	 * This writes the "meta" section, and then streams the "cost-map" section
+	 * one row at a time, directly from the cost matrix and the pid tables.
+	 * It does not create any JSON values, and the only temporary storage
+	 * is one row of costs and the quoted destination pid names.
+	 * Costs that are not set, or are NaN or the default cost, are omitted.
+	 * Costs are formatted as {@link Float#toString(float)} does, e.g., "5.0".
+	 * If the writer sorts keys, the pids are written in sorted order.
 	 * @param writer A JSON writer provided by the client.
 	 * @throws IOException If writer throws an I/O error.
 	 * @see AltoMsg_Base#writeJSON(JSONWriter)
@@ -416,115 +401,151 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 			writer.writeNewline();
 			writer.incrIndent(1);
 		}
-		
-		writer.write("\"" + FN_COST_MAP + "\": {");
-		writer.incrIndent(1);
-
+		writer.writeQuoted(FN_META);
+		writer.write(':');
+		getMeta().writeJSON(writer);
+		writer.write(',');
+		if (indent) {
+			writer.writeNewline();
+		}
+		writer.writeQuoted(FN_COST_MAP);
+		writer.write(':');
+		writeCostMapRows(writer);
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(-1);
+		}
+		writer.write('}');
+	}
+	
+	/**
+	 * Write the value of the "cost-map" field, one source row at a time.
+	 * @param writer The JSON writer.
+	 * @throws IOException If writer throws an I/O error.
+	 */
+	private void writeCostMapRows(JSONWriter writer) throws IOException
+	{
+		boolean indent = writer.isIndented();
 		int nSrc = m_srcPids.size();
 		int nDest = m_destPids.size();
-		for (int iSrc = 0; iSrc < nSrc; iSrc++) {
+		int[] srcOrder = writeOrder(m_srcPids, writer.isSorted());
+		int[] destOrder = writeOrder(m_destPids, writer.isSorted());
+		float[] row = new float[nDest];
+		
+		// Every row repeats the destination names, so quote them once.
+		String[] destKeys = new String[nDest];
+		for (int iDest = 0; iDest < nDest; iDest++) {
+			destKeys[iDest] = JSONValue_String.quotedString(m_destPids.getString(iDest));
+		}
+		
+		writer.write('{');
+		if (indent) {
+			writer.incrIndent(1);
+		}
+		for (int i = 0; i < nSrc; i++) {
+			int iSrc = srcOrder != null ? srcOrder[i] : i;
+			if (i > 0) {
+				writer.write(',');
+			}
 			if (indent) {
 				writer.writeNewline();
-			};
-			writer.write('"');
-			writer.write(StringUtils.escapeSimpleJSONString(m_srcPids.getString(iSrc)));
-			writer.write("\": {");
+			}
+			writer.writeQuoted(m_srcPids.getString(iSrc));
+			writer.write(':');
+			writer.write('{');
 			if (indent) {
-				writer.writeNewline();
 				writer.incrIndent(1);
 			}
 			int nEntries = 0;
-			for (int iDest = 0; iDest < nDest; iDest++) {
-				float cost = m_costs.get(iSrc, iDest);
-				if (!Float.isNaN(cost) && cost != m_defaultCost) {
-					if (nEntries > 0) {
-						writer.write(',');
+			if (m_costs.getRow(iSrc, nDest, row) > 0) {
+				for (int j = 0; j < nDest; j++) {
+					int iDest = destOrder != null ? destOrder[j] : j;
+					float cost = row[iDest];
+					if (!Float.isNaN(cost) && cost != m_defaultCost) {
+						if (nEntries > 0) {
+							writer.write(',');
+						}
+						if (indent && (nEntries % 5) == 0) {
+							writer.writeNewline();
+						}
+						writer.write(destKeys[iDest]);
+						writer.write(':');
+						writeCost(writer, cost);
+						nEntries++;
 					}
-					if (indent && ((nEntries) % 4) == 0) {
-						writer.writeNewline();
-					} else {
-						writer.write(' ');
-					}
-					writer.write("\"");
-					writer.write(StringUtils.escapeSimpleJSONString(m_destPids.getString(iDest)));
-					writer.write("\": ");
-					writer.write(Float.toString(cost));
-					nEntries++;
 				}
 			}
 			if (indent) {
-				writer.writeNewline();
+				if (nEntries > 0) {
+					writer.writeNewline();
+				}
+				writer.incrIndent(-1);
 			}
 			writer.write('}');
-			if (iSrc+1 < nSrc) {
-				writer.write(',');
-			}
-			writer.incrIndent(-1);
 		}
 		if (indent) {
-			writer.writeNewline();
-		};
-		
-		writer.write("},");
-		if (indent) {
-			writer.writeNewline();
-			writer.incrIndent(-1);
-		}
-		
-		writer.write("\"" + FN_META + "\": ");
-		getMeta().writeJSON(writer);
-		
-		if (indent) {
-			writer.writeNewline();
 			writer.incrIndent(-1);
+			if (nSrc > 0) {
+				writer.writeNewline();
+			}
 		}
 		writer.write('}');
 	}
+	
+	/**
+	 * Write a cost in the same format as {@link Float#toString(float)},
+	 * without creating a string.
+	 * {@link JSONWriter#writeNumber(float)} drops the ".0" from integers,
+	 * so we add it back. Floats of 1e7 or more use exponential notation,
+	 * so they never end in ".0".
+	 */
+	private static void writeCost(JSONWriter writer, float cost) throws IOException
+	{
+		writer.writeNumber(cost);
+		if (cost == Math.rint(cost) && Math.abs(cost) < 1e7f) {
+			writer.write(".0");
+		}
+	}
+	
+	/**
+	 * Return the indexes of the pids in sorted order,
+	 * or null to use index order.
+	 * @param pids The pid names.
+	 * @param sorted If false, return null.
+	 */
+	private static int[] writeOrder(StringIndexer pids, boolean sorted)
+	{
+		if (!sorted) {
+			return null;
+		}
+		String[] names = pids.toArray();
+		Integer[] order = new Integer[names.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+		int[] indexes = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			indexes[i] = order[i];
+		}
+		return indexes;
+	}
 			
 	/**
 	 * Write the cost-map as compact json-encoded data.
+	 * This uses a buffered UTF-8 {@link JSONWriter}, and streams the costs
+	 * as {@link #writeJSON(JSONWriter)} does.
 	 * @param out The stream to write on.
 	 */
 	public void writeJSON(PrintStream out)
 	{
-		out.print("{\"" + FN_META + "\":{");
+		JSONWriter writer = new JSONWriter(out, 0);
 		try {
-			if (m_clientSetDefaultCost)
-				writeKeyValue(out, FN_DEFAULT_COST, getDefaultCost(), ",");
-			writeVtag(out, getDependentResourceId(), getDependentTag(), ",");			
-			writeCostMetricMode(out, getCostMetric(), getCostMode(), null);
-			out.println("}");
-		} catch (Exception e) {
-			out.print("}");
+			writeJSON(writer);
+			writer.flush();
+		} catch (IOException e) {
+			// PrintStream does not throw I/O exceptions.
 		}
-		out.print(",\"" + FN_COST_MAP + "\":{");
-		
-		int nSrc = m_srcPids.size();
-		int nDest = m_destPids.size();
-		String srcSep = "\"";
-		for (int iSrc = 0; iSrc < nSrc; iSrc++) {
-			out.print(srcSep);
-			out.print(StringUtils.escapeSimpleJSONString(m_srcPids.getString(iSrc)));
-			String destSep = "\":{";
-			int nEntries = 0;
-			for (int iDest = 0; iDest < nDest; iDest++) {
-				float cost = m_costs.get(iSrc, iDest);
-				if (!Float.isNaN(cost) && cost != m_defaultCost) {
-					out.print(destSep);
-					out.print("\"");
-					out.print(StringUtils.escapeSimpleJSONString(m_destPids.getString(iDest)));
-					out.print("\":");
-					out.print(cost);
-					nEntries++;
-					destSep = ",";
-				}
-			}
-			if (nEntries == 0)
-				out.print(destSep);
-			srcSep = "},\"";
-		}
-		out.print("}}}");
-		out.flush();
 	}
 	
 	/**
@@ -733,6 +754,31 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 							 AltoCostMapInfo costMap,
 							 String costMode,
 							 boolean fullOrdinal)
+	{
+		writeCostMap(out, costMap, costMode, fullOrdinal, null, null);
+	}
+	
+	/**
+	 * Write compact JSON for a filtered cost-map response message.
+	 * For full ordinal costs, this gets all the costs at once with
+	 * {@link AltoCostMapInfo#getCosts(int[], int[])},
+	 * which may read them in parallel, and ordinalizes them in parallel.
+	 * @param out The output stream.
+	 * @param costMap The source of cost map data.
+	 * @param costMode The mode to give in the message.
+	 * @param fullOrdinal If true and costMode is ordinal,
+	 * 		ordinalize the costs into 1, 2, 3, etc.
+	 * 		If false and costMode is ordinal, round the costs
+	 * 		to the nearest integer.
+	 * @param srcPids The source PIDs. If null, use all PIDs. Ignore unknown PIDs.
+	 * @param destPids The destination PIDs. If null, use all PIDs. Ignore unknown PIDs.
+	 */
+	public static void writeCostMap(PrintStream out,
+							 AltoCostMapInfo costMap,
+							 String costMode,
+							 boolean fullOrdinal,
+							 String[] srcPids,
+							 String[] destPids)
 	{
 		out.print("{\"meta\":{\"dependent-vtags\":[{\"resource-id\":\"");
 		out.print(StringUtils.escapeSimpleJSONString(costMap.getMapId()));
@@ -746,36 +792,42 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 		out.print("\"}}");
 		out.print(",\"cost-map\":{");
 		
-		int nPids = costMap.getNumPids();
-		Ordinalizer ord = null;
+		int[] srcIndexes = pidIndexes(costMap, srcPids);
+		int[] destIndexes = pidIndexes(costMap, destPids);
+		float[][] ordinals = null;
 		boolean intCosts = false;
 		if (AltoResp_CostMap.COST_MODE_ORDINAL.equals(costMode)) {
 			if (fullOrdinal) {
-				ord = new Ordinalizer();
-				for (int iSrc = 0; iSrc < nPids; iSrc++) {
-					for (int iDest = 0; iDest < nPids; iDest++) {
-						double cost = costMap.getCost(iSrc, iDest);
-						if (cost >= 0.0)
-							ord.addValue(cost);
-					}
+				ordinals = costMap.getCosts(srcIndexes, destIndexes);
+				Ordinalizer ord = new Ordinalizer();
+				for (float[] row: ordinals) {
+					ord.addValues(row);
 				}
 				ord.doneAdding();
+				ord.toOrdinals(ordinals);
 			} else {
 				intCosts = true;
 			}
 		}
 		String srcSep = "\"";
-		for (int iSrc = 0; iSrc < nPids; iSrc++) {
+		for (int i = 0; i < srcIndexes.length; i++) {
+			int iSrc = srcIndexes[i];
 			out.print(srcSep);
 			out.print(StringUtils.escapeSimpleJSONString(costMap.indexToPid(iSrc)));
 			String destSep = "\":{";
 			int nEntries = 0;
-			for (int iDest = 0; iDest < nPids; iDest++) {
-				double cost = costMap.getCost(iSrc, iDest);
+			for (int j = 0; j < destIndexes.length; j++) {
+				int iDest = destIndexes[j];
+				double cost;
+				if (ordinals != null) {
+					cost = ordinals[i][j];
+					if (Double.isNaN(cost))
+						cost = -1;
+				} else {
+					cost = costMap.getCost(iSrc, iDest);
+				}
 				if (cost >= 0.0) {
-					if (ord != null)
-						cost = ord.getOrdinal(cost);
-					else if (intCosts)
+					if (intCosts)
 						cost = Math.round(cost);
 					out.print(destSep);
 					out.print("\"");
@@ -783,7 +835,8 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 					out.print("\":");
 					out.print(cost);
 					destSep = ",";
-					nEntries++;				}
+					nEntries++;
+				}
 			}
 			if (nEntries == 0)
 				out.print(destSep);
@@ -791,4 +844,31 @@ public class AltoResp_IndexedCostMap extends AltoResp_Base
 		}
 		out.print("}}}");
 	}
+	
+	/**
+	 * Return the indexes of the valid PIDs in a list.
+	 * @param costMap The source of cost map data.
+	 * @param pids The PID names. If null, use all PIDs.
+	 * @return The indexes of the PIDs, without unknown PIDs.
+	 */
+	private static int[] pidIndexes(AltoCostMapInfo costMap, String[] pids)
+	{
+		int[] indexes;
+		int n = 0;
+		if (pids == null) {
+			indexes = new int[costMap.getNumPids()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[n++] = i;
+			}
+		} else {
+			indexes = new int[pids.length];
+			for (String pid: pids) {
+				int index = costMap.pidToIndex(pid);
+				if (index >= 0) {
+					indexes[n++] = index;
+				}
+			}
+		}
+		return n == indexes.length ? indexes : Arrays.copyOf(indexes, n);
+	}
 }
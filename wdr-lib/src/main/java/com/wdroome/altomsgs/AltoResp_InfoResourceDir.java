@@ -478,13 +478,16 @@ public class AltoResp_InfoResourceDir extends AltoResp_Base
 		)
 	};
 
+	/** The validator for IRD messages. */
+	private static final JSONValidate_Object IRD_VALIDATOR = new JSONValidate_Object(IRD_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for IRD messages.
+	 * Return the validator for IRD messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(IRD_FIELD_SPECS);
+		return IRD_VALIDATOR;
 	}
 	
 	private final static Map<String,String[]> OPTIONAL_ACCEPTS = new HashMap<String,String[]>();
@@ -551,7 +554,7 @@ public class AltoResp_InfoResourceDir extends AltoResp_Base
 	 */
 	public static List<String> validate(JSONValue_Object json, boolean isRootIRD)
 	{
-		List<String> errors = validate(json, new JSONValidate_Object(IRD_FIELD_SPECS));
+		List<String> errors = validate(json, IRD_VALIDATOR);
 		if (errors == null) {
 			errors = new ArrayList<String>();
 		}
@@ -388,13 +388,16 @@ public class AltoResp_NetworkMap extends AltoResp_Base implements Iterable<Strin
 			)
 		};
 
+	/** The validator for Network Map messages. */
+	private static final JSONValidate_Object NETWORK_MAP_VALIDATOR = new JSONValidate_Object(NETWORK_MAP_FIELD_SPECS);
+	
 	/**
-	 * Return a new validator for Cost Map messages.
+	 * Return the validator for Network Map messages.
 	 */
 	@Override
 	protected JSONValidate getValidator()
 	{
-		return new JSONValidate_Object(NETWORK_MAP_FIELD_SPECS);
+		return NETWORK_MAP_VALIDATOR;
 	}
 	
 	/**
@@ -404,6 +407,6 @@ public class AltoResp_NetworkMap extends AltoResp_Base implements Iterable<Strin
 	 */
 	public static List<String> validate(JSONValue_Object json)
 	{
-		return validate(json, new JSONValidate_Object(NETWORK_MAP_FIELD_SPECS));
+		return validate(json, NETWORK_MAP_VALIDATOR);
 	}
 }
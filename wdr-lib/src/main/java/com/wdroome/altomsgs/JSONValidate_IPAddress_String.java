@@ -63,10 +63,10 @@ public class JSONValidate_IPAddress_String extends JSONValidate
 	}
 	
 	/**
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (!super.validate(value, path)) {
 			return false;
@@ -80,7 +80,7 @@ public class JSONValidate_IPAddress_String extends JSONValidate
 			try {
 				new EndpointAddress(svalue, m_requiredPrefixes);
 			} catch (Exception e) {
-				handleValidationError("Invalid IP address '" + svalue + "'" + atPath(path));
+				handleValidationError("Invalid IP address '" + svalue + "'" + atPath(path), path);
 				valid = false;
 			}
 		}
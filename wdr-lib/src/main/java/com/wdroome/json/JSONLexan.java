@@ -7,7 +7,9 @@ import java.io.Reader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.StringReader;
-import java.io.BufferedReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.math.BigInteger;
 
@@ -15,6 +17,16 @@ import java.math.BigInteger;
  * An implementation of the {@link IJSONLexan} interface.
  * Reads JSON from a variety of input sources,
  * as determined by the constructors.
+ * <p>
+ * The lexan reads the input in blocks into a reusable character window,
+ * rather than a character at a time, and it returns shared token objects
+ * for brackets, commas and colons. As a result, it may read past the end
+ * of the JSON value in an InputStream or Reader, unless you give the
+ * content length to the c'tor.
+ * <p>
+ * InputStreams are read one byte per character.
+ * {@link #JSONLexan(ByteBuffer, String)} decodes UTF-8 directly from a byte buffer,
+ * and {@link #mapFile(File)} uses that to read a memory-mapped file.
  * @author wdr
  */
 public class JSONLexan implements IJSONLexan
@@ -26,6 +38,21 @@ public class JSONLexan implements IJSONLexan
 	 */
 	private static int MAX_DIGITS_FOR_DOUBLE = 14;
 	
+	/**
+	 * The maximum number of significant digits that fastParseNumber() handles.
+	 * 10^15 is less than 2^53, so any integer with this many digits is exact as a double.
+	 */
+	private static final int MAX_DIGITS_FOR_FAST_PARSE = 15;
+	
+	/**
+	 * The powers of ten that are exact as doubles.
+	 */
+	private static final double[] POWERS_OF_10 = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+			1e21, 1e22,
+		};
+	
 	private static HashMap<String,JSONLexanToken> RESERVED_WORDS = new HashMap<String, JSONLexanToken>();
 	static {
 		RESERVED_WORDS.put("true", new JSONLexanToken(JSONLexanToken.Token.TRUE));
@@ -33,13 +60,30 @@ public class JSONLexan implements IJSONLexan
 		RESERVED_WORDS.put("null", new JSONLexanToken(JSONLexanToken.Token.NULL));
 	}
 	
+	/**
+	 * The maximum size of the character window.
+	 * If the input is shorter, the window is just large enough to hold it.
+	 */
+	private static final int MAX_BUFF_SIZE = 32*1024;
+	
 	private final InputStream m_inputStream;
 	private final Reader m_reader;
+	private final ByteBuffer m_byteBuffer;
 	private final String m_fileName;
 	private final int m_contentLength;
 	private final long m_size;
 	private boolean m_atEof = false;
 	
+	// The window: m_buff[m_buffPos] through m_buff[m_buffEnd-1]
+	// are the characters that have been read from the source,
+	// but not yet returned by read().
+	private final char[] m_buff;
+	private int m_buffPos = 0;
+	private int m_buffEnd = 0;
+	
+	// Raw bytes for InputStreams; null for other sources.
+	private final byte[] m_byteBuff;
+	
 	private int m_nread = 0;
 	private int m_lineNumber = 1;
 	private int m_lineOffset = 0;
@@ -49,6 +93,9 @@ public class JSONLexan implements IJSONLexan
 	
 	private JSONLexanToken m_peekToken = null;
 	
+	// Scratch buffer for the characters of a number.
+	private char[] m_numChars = new char[32];
+	
 	/**
 	 * Read JSON from an InputStream.
 	 * @param inputStream The InputStream.
@@ -69,11 +116,14 @@ public class JSONLexan implements IJSONLexan
 	{
 		m_inputStream = inputStream;
 		m_reader = null;
+		m_byteBuffer = null;
 		if (fileName != null && fileName.equals(""))
 			fileName = null;
 		m_fileName = fileName;
 		m_contentLength = contentLength;
 		m_size = contentLength;
+		m_buff = new char[buffSize(contentLength)];
+		m_byteBuff = new byte[m_buff.length];
 	}
 	
 	/**
@@ -96,11 +146,14 @@ public class JSONLexan implements IJSONLexan
 	{
 		m_reader = reader;
 		m_inputStream = null;
+		m_byteBuffer = null;
 		if (fileName != null && fileName.equals(""))
 			fileName = null;
 		m_fileName = fileName;
 		m_contentLength = contentLength;
 		m_size = contentLength;
+		m_buff = new char[buffSize(contentLength)];
+		m_byteBuff = null;
 	}
 	
 	/**
@@ -110,11 +163,14 @@ public class JSONLexan implements IJSONLexan
 	 */
 	public JSONLexan(File file) throws FileNotFoundException
 	{
-		m_reader = new BufferedReader(new FileReader(file));
+		m_reader = new FileReader(file);
 		m_inputStream = null;
+		m_byteBuffer = null;
 		m_fileName = file.toString();
 		m_contentLength = -1;
 		m_size = file.length();
+		m_buff = new char[buffSize(m_size)];
+		m_byteBuff = null;
 	}
 	
 	/**
@@ -125,9 +181,66 @@ public class JSONLexan implements IJSONLexan
 	{
 		m_reader = new StringReader(jsonSrc);
 		m_inputStream = null;
+		m_byteBuffer = null;
 		m_fileName = "json-src";
 		m_contentLength = -1;
 		m_size = jsonSrc.length();
+		m_buff = new char[buffSize(m_size)];
+		m_byteBuff = null;
+	}
+	
+	/**
+	 * Read UTF-8 encoded JSON from a byte buffer,
+	 * starting at the buffer's position and ending at its limit.
+	 * The lexan advances the buffer's position as it reads.
+	 * Invalid UTF-8 sequences are read as the Unicode replacement character.
+	 * @param byteBuffer The buffer. This may be a direct or memory-mapped buffer.
+	 * @param fileName The file name, for error messages.
+	 * 			Use null if unknown.
+	 * @see #mapFile(File)
+	 */
+	public JSONLexan(ByteBuffer byteBuffer, String fileName)
+	{
+		m_byteBuffer = byteBuffer;
+		m_inputStream = null;
+		m_reader = null;
+		if (fileName != null && fileName.equals(""))
+			fileName = null;
+		m_fileName = fileName;
+		m_contentLength = -1;
+		m_size = byteBuffer.remaining();
+		// Leave room for a UTF-16 surrogate pair after a full window.
+		m_buff = new char[buffSize(m_size) + 1];
+		m_byteBuff = null;
+	}
+	
+	/**
+	 * Memory-map a file of UTF-8 encoded JSON, and return a lexan that reads it.
+	 * The file must be smaller than 2 gigabytes.
+	 * @param file The file name.
+	 * @return A lexan that reads the mapped file.
+	 * @throws IOException If the file cannot be opened or mapped.
+	 */
+	public static JSONLexan mapFile(File file) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buff = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new JSONLexan(buff, file.toString());
+		}
+	}
+	
+	/**
+	 * Return the size of the character window for an input source.
+	 * @param size The size of the input, if known. If not known, 0 or -1.
+	 */
+	private static int buffSize(long size)
+	{
+		if (size > 0 && size < MAX_BUFF_SIZE) {
+			return (int)size;
+		} else {
+			return MAX_BUFF_SIZE;
+		}
 	}
 
 	/**
@@ -166,17 +279,17 @@ public class JSONLexan implements IJSONLexan
 			case -1:
 				return null;
 			case '[':
-				return new JSONLexanToken(JSONLexanToken.Token.OPEN_SQUARE_BRACKET);
+				return JSONLexanToken.OPEN_SQUARE_BRACKET_TOKEN;
 			case ']':
-				return new JSONLexanToken(JSONLexanToken.Token.CLOSE_SQUARE_BRACKET);
+				return JSONLexanToken.CLOSE_SQUARE_BRACKET_TOKEN;
 			case '{':
-				return new JSONLexanToken(JSONLexanToken.Token.OPEN_CURLY_BRACKET);
+				return JSONLexanToken.OPEN_CURLY_BRACKET_TOKEN;
 			case '}':
-				return new JSONLexanToken(JSONLexanToken.Token.CLOSE_CURLY_BRACKET);
+				return JSONLexanToken.CLOSE_CURLY_BRACKET_TOKEN;
 			case ',':
-				return new JSONLexanToken(JSONLexanToken.Token.COMMA);
+				return JSONLexanToken.COMMA_TOKEN;
 			case ':':
-				return new JSONLexanToken(JSONLexanToken.Token.COLON);
+				return JSONLexanToken.COLON_TOKEN;
 			case '"':
 				return getString();
 			case '-':
@@ -211,28 +324,10 @@ public class JSONLexan implements IJSONLexan
 			m_pushBackValid = false;
 			return m_pushBackChar;			
 		}
-		if (m_contentLength >= 0 && m_nread >= m_contentLength) {
-			return -1;
-		}
-		if (m_atEof) {
-			return -1;
-		}
-		int c;
-		if (m_inputStream != null) {
-			c = m_inputStream.read();
-		} else {
-			c = m_reader.read();
-		}
-		if (c == -1) {
-			if (m_inputStream != null) {
-				try {m_inputStream.close();} catch (Exception e) {};
-			} else {
-				try {m_reader.close();} catch (Exception e) {};
-			}
-			m_atEof = true;
+		if (m_buffPos >= m_buffEnd && !fill()) {
 			return -1;
 		}
-		m_nread++;
+		int c = m_buff[m_buffPos++];
 		if (c == '\r') {
 			m_prevCharWasCR = true;
 			m_lineNumber++;
@@ -251,6 +346,115 @@ public class JSONLexan implements IJSONLexan
 		return c;
 	}
 	
+	/**
+	 * Refill the character window from the input source.
+	 * Never read more than m_contentLength characters.
+	 * At EOF, close the input source.
+	 * @return True if the window has at least one character,
+	 * 		or false at EOF.
+	 */
+	private boolean fill() throws IOException
+	{
+		if (m_atEof) {
+			return false;
+		}
+		int maxRead = m_buff.length;
+		if (m_contentLength >= 0 && m_contentLength - m_nread < maxRead) {
+			maxRead = m_contentLength - m_nread;
+		}
+		if (maxRead <= 0) {
+			// Read the full content length; leave the source open.
+			m_atEof = true;
+			m_buffPos = 0;
+			m_buffEnd = 0;
+			return false;
+		}
+		int n;
+		if (m_inputStream != null) {
+			n = m_inputStream.read(m_byteBuff, 0, maxRead);
+			for (int i = 0; i < n; i++) {
+				m_buff[i] = (char)(m_byteBuff[i] & 0xff);
+			}
+		} else if (m_reader != null) {
+			n = m_reader.read(m_buff, 0, maxRead);
+		} else {
+			n = decodeUTF8();
+		}
+		if (n <= 0) {
+			if (m_inputStream != null) {
+				try {m_inputStream.close();} catch (Exception e) {};
+			} else if (m_reader != null) {
+				try {m_reader.close();} catch (Exception e) {};
+			}
+			m_atEof = true;
+			m_buffPos = 0;
+			m_buffEnd = 0;
+			return false;
+		}
+		m_nread += n;
+		m_buffPos = 0;
+		m_buffEnd = n;
+		return true;
+	}
+	
+	/**
+	 * Decode UTF-8 bytes from m_byteBuffer into the character window.
+	 * The loop handles ASCII characters with one test per byte.
+	 * @return The number of characters in the window, or -1 at EOF.
+	 */
+	private int decodeUTF8()
+	{
+		ByteBuffer src = m_byteBuffer;
+		char[] buff = m_buff;
+		int max = buff.length - 1;
+		int pos = src.position();
+		int limit = src.limit();
+		if (pos >= limit) {
+			return -1;
+		}
+		int n = 0;
+		while (n < max && pos < limit) {
+			int b = src.get(pos++);
+			if (b >= 0) {
+				buff[n++] = (char)b;
+				continue;
+			}
+			int cp;
+			int nExtra;
+			if ((b & 0xe0) == 0xc0) {
+				cp = b & 0x1f;
+				nExtra = 1;
+			} else if ((b & 0xf0) == 0xe0) {
+				cp = b & 0x0f;
+				nExtra = 2;
+			} else if ((b & 0xf8) == 0xf0) {
+				cp = b & 0x07;
+				nExtra = 3;
+			} else {
+				buff[n++] = '\uFFFD';
+				continue;
+			}
+			for (; nExtra > 0 && pos < limit; nExtra--) {
+				int cb = src.get(pos);
+				if ((cb & 0xc0) != 0x80) {
+					break;
+				}
+				cp = (cp << 6) | (cb & 0x3f);
+				pos++;
+			}
+			if (nExtra > 0) {
+				buff[n++] = '\uFFFD';
+			} else if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				buff[n++] = Character.highSurrogate(cp);
+				buff[n++] = Character.lowSurrogate(cp);
+			} else {
+				buff[n++] = (char)cp;
+			}
+		}
+		src.position(pos);
+		return n;
+	}
+	
 	private void pushBack(int c)
 	{
 		m_pushBackChar = c;
@@ -263,6 +467,27 @@ public class JSONLexan implements IJSONLexan
 	 */
 	private JSONLexanToken getString() throws IOException
 	{
+		// Fast path: if the rest of the string is in the window,
+		// and it has no escapes or control characters,
+		// create the String directly from the window.
+		char[] buff = m_buff;
+		int start = m_buffPos;
+		int end = start;
+		int buffEnd = m_buffEnd;
+		while (end < buffEnd) {
+			char c = buff[end];
+			if (c == '"' || c == '\\' || Character.isISOControl(c)) {
+				break;
+			}
+			end++;
+		}
+		if (end < buffEnd && buff[end] == '"') {
+			m_buffPos = end + 1;
+			m_lineOffset += end + 1 - start;
+			m_prevCharWasCR = false;
+			return new JSONLexanToken(new String(buff, start, end - start));
+		}
+		
 		StringBuilder word = new StringBuilder();
 		int c;
 		while (true) {
@@ -325,24 +550,30 @@ public class JSONLexan implements IJSONLexan
 	 */
 	private JSONLexanToken getNumber(int c) throws IOException
 	{
-		StringBuilder word = new StringBuilder();
-		word.append((char)c);
+		char[] chars = m_numChars;
+		int len = 0;
+		chars[len++] = (char)c;
 		boolean isInt = true;
 		boolean scanning = true;
 		while (scanning) {
-			switch (c = read()) {
+			c = read();
+			if (c == '+' || c == '.' || c == 'e' || c == 'E') {
+				isInt = false;
+			}
+			switch (c) {
 			case '+':
 			case '.':
 			case 'e':
 			case 'E':
-				isInt = false;
-				word.append((char)c);
-				break;
-				
 			case '-':
 			case '0': case '1': case '2': case '3': case '4':
 			case '5': case '6': case '7': case '8': case '9':
-				word.append((char)c);
+				if (len >= chars.length) {
+					char[] newChars = new char[2*chars.length];
+					System.arraycopy(chars, 0, newChars, 0, len);
+					m_numChars = chars = newChars;
+				}
+				chars[len++] = (char)c;
 				break;
 				
 			default:
@@ -351,19 +582,20 @@ public class JSONLexan implements IJSONLexan
 			}
 		}
 		pushBack(c);
-		String strWord = word.toString();
-		if (isInt) {
-			int ndigits = strWord.length();
-			if (strWord.charAt(0) == '-') {
-				--ndigits;
+		int ndigits = (chars[0] == '-') ? len-1 : len;
+		if (!isInt || ndigits <= MAX_DIGITS_FOR_DOUBLE) {
+			double value = fastParseNumber(chars, len);
+			if (!Double.isNaN(value)) {
+				return new JSONLexanToken(value);
 			}
-			if (ndigits > MAX_DIGITS_FOR_DOUBLE) {
-				try {
-					return new JSONLexanToken(new BigInteger(strWord));
-				} catch (NumberFormatException e) {
-					// Invalid number -- return error.
-					return new JSONLexanToken(JSONLexanToken.Token.UNKNOWN, strWord);
-				}
+		}
+		String strWord = new String(chars, 0, len);
+		if (isInt && ndigits > MAX_DIGITS_FOR_DOUBLE) {
+			try {
+				return new JSONLexanToken(new BigInteger(strWord));
+			} catch (NumberFormatException e) {
+				// Invalid number -- return error.
+				return new JSONLexanToken(JSONLexanToken.Token.UNKNOWN, strWord);
 			}
 		}
 		try {
@@ -374,6 +606,83 @@ public class JSONLexan implements IJSONLexan
 		}
 	}
 	
+	/**
+	 * Convert a JSON number to a double directly from its characters,
+	 * without creating a String. This only handles numbers which we can convert exactly:
+	 * the number must have the JSON syntax, it must have at most MAX_DIGITS_FOR_FAST_PARSE
+	 * significant digits, and the power of ten must be in the POWERS_OF_10 table.
+	 * Because the digits and the power of ten are exact doubles,
+	 * one multiplication or division gives the correctly rounded result,
+	 * the same as Double.parseDouble().
+	 * @param chars The number's characters.
+	 * @param len The number of characters in chars.
+	 * @return The value, or NaN if the caller must use the general parser.
+	 */
+	private static double fastParseNumber(char[] chars, int len)
+	{
+		int i = 0;
+		boolean negative = false;
+		if (chars[0] == '-') {
+			negative = true;
+			i++;
+		}
+		long mantissa = 0;
+		int ndigits = 0;
+		int scale = 0;
+		int start = i;
+		for (; i < len && chars[i] >= '0' && chars[i] <= '9'; i++) {
+			mantissa = 10*mantissa + (chars[i] - '0');
+			ndigits++;
+		}
+		if (i == start || ndigits > MAX_DIGITS_FOR_FAST_PARSE) {
+			return Double.NaN;
+		}
+		if (i < len && chars[i] == '.') {
+			start = ++i;
+			for (; i < len && chars[i] >= '0' && chars[i] <= '9'; i++) {
+				mantissa = 10*mantissa + (chars[i] - '0');
+				ndigits++;
+				scale--;
+			}
+			if (i == start || ndigits > MAX_DIGITS_FOR_FAST_PARSE) {
+				return Double.NaN;
+			}
+		}
+		if (i < len && (chars[i] == 'e' || chars[i] == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < len && (chars[i] == '+' || chars[i] == '-')) {
+				negativeExp = chars[i] == '-';
+				i++;
+			}
+			int exp = 0;
+			start = i;
+			for (; i < len && chars[i] >= '0' && chars[i] <= '9'; i++) {
+				if (exp < POWERS_OF_10.length) {
+					exp = 10*exp + (chars[i] - '0');
+				}
+			}
+			if (i == start) {
+				return Double.NaN;
+			}
+			scale += negativeExp ? -exp : exp;
+		}
+		if (i != len) {
+			return Double.NaN;
+		}
+		double value = mantissa;
+		if (mantissa == 0 || scale == 0) {
+			// No scaling needed.
+		} else if (scale > 0 && scale < POWERS_OF_10.length) {
+			value *= POWERS_OF_10[scale];
+		} else if (scale < 0 && -scale < POWERS_OF_10.length) {
+			value /= POWERS_OF_10[-scale];
+		} else {
+			return Double.NaN;
+		}
+		return negative ? -value : value;
+	}
+	
 	/**
 	 * Read a reserved word and return the token.
 	 * @param c The first character of the word.
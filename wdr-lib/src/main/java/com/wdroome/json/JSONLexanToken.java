@@ -27,6 +27,18 @@ public class JSONLexanToken
 			UNKNOWN,
 		};
 	
+	/*
+	 * Shared tokens for the punctuation characters.
+	 * Tokens are immutable, so a lexan can return these
+	 * instead of creating a new token for every bracket, comma and colon.
+	 */
+	public static final JSONLexanToken OPEN_CURLY_BRACKET_TOKEN = new JSONLexanToken(Token.OPEN_CURLY_BRACKET);
+	public static final JSONLexanToken CLOSE_CURLY_BRACKET_TOKEN = new JSONLexanToken(Token.CLOSE_CURLY_BRACKET);
+	public static final JSONLexanToken OPEN_SQUARE_BRACKET_TOKEN = new JSONLexanToken(Token.OPEN_SQUARE_BRACKET);
+	public static final JSONLexanToken CLOSE_SQUARE_BRACKET_TOKEN = new JSONLexanToken(Token.CLOSE_SQUARE_BRACKET);
+	public static final JSONLexanToken COLON_TOKEN = new JSONLexanToken(Token.COLON);
+	public static final JSONLexanToken COMMA_TOKEN = new JSONLexanToken(Token.COMMA);
+	
 	/** The type of this token. */
 	public final Token m_token;
 	
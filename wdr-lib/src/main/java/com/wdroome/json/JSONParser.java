@@ -11,6 +11,9 @@ import java.io.File;
 public class JSONParser
 {
 	private boolean m_usePathNames = false;
+	private boolean m_usePrimitiveArrays = false;
+	private JSONStringCache m_stringCache = null;
+	private boolean m_internValues = false;
 	
 	/**
 	 * Parse JSON-encoded input and return the corresponding JSON value.
@@ -50,6 +53,34 @@ public class JSONParser
 		}
 	}
 	
+	/**
+	 * Parse a JSON-encoded string and return the JSON Object it describes,
+	 * using a string cache for the keys and short string values.
+	 * @param lexan A lexical analyzer for the input source.
+	 * @param usePathNames True iff we retain pathnames for objects.
+	 * @param stringCache The string cache, or null.
+	 * @return The JSON object represented by the input.
+	 * @throws JSONParseException
+	 * 		If the input cannot be parsed.
+	 * @throws JSONValueTypeException
+	 * 		If the input is valid JSON, but does not define a JSON Object.
+	 * @see #useStringCache(JSONStringCache, boolean)
+	 */
+	public static JSONValue_Object parseObject(IJSONLexan lexan, boolean usePathNames,
+											   JSONStringCache stringCache)
+			throws JSONParseException, JSONValueTypeException
+	{
+		JSONParser parser = new JSONParser();
+		parser.usePathNames(usePathNames);
+		parser.useStringCache(stringCache, true);
+		JSONValue value = parser.parse(lexan);
+		if (value instanceof JSONValue_Object) {
+			return (JSONValue_Object)value;
+		} else {
+			throw new JSONValueTypeException("Top level is not a JSON Object", null);
+		}
+	}
+	
 	/**
 	 * Parse JSON input and return the value contained therein.
 	 * @param lexan A lexical analyzer to break the input stream into tokens.
@@ -66,12 +97,12 @@ public class JSONParser
 		switch (token.m_token) {
 			case NUMBER:	value = new JSONValue_Number(token.getNumber()); break;
 			case BIGINT:	value = new JSONValue_BigInt(token.getBigInt()); break;
-			case STRING:	value = new JSONValue_String(token.getString()); break;
+			case STRING:	value = new JSONValue_String(stringValue(token)); break;
 			case TRUE:		value = JSONValue_Boolean.TRUE; break;
 			case FALSE:		value = JSONValue_Boolean.FALSE; break;
 			case NULL:		value = JSONValue_Null.NULL; break;
 			case OPEN_CURLY_BRACKET:	value = parseObject(lexan, new JSONValue_Object()); break;
-			case OPEN_SQUARE_BRACKET:	value = parseArray(lexan, new JSONValue_Array()); break;
+			case OPEN_SQUARE_BRACKET:	value = parseArray(lexan); break;
 			default:
 				throw new JSONParseException("Invalid JSON input", token, lexan.lastTokenLocation());
 		}
@@ -97,6 +128,59 @@ public class JSONParser
 		m_usePathNames = usePathNames;
 	}
 
+	/**
+	 * Use a cache of canonical String instances for object keys,
+	 * and optionally for short string values. This saves heap space for
+	 * documents which repeat the same names many times. The cache may be
+	 * shared by many parsers, including parsers in different threads.
+	 * The default is to not use a cache.
+	 * @param stringCache The string cache, or null to not use a cache.
+	 * 		{@link JSONStringCache#shared()} returns a cache shared by all clients.
+	 * @param internValues If true, also use the cache for string values
+	 * 		no longer than the cache's maximum value length.
+	 * 		If false, only use the cache for keys.
+	 */
+	public void useStringCache(JSONStringCache stringCache, boolean internValues)
+	{
+		m_stringCache = stringCache;
+		m_internValues = internValues;
+	}
+	
+	/**
+	 * @return The string cache, or null if we do not use a cache.
+	 * @see #useStringCache(JSONStringCache, boolean)
+	 */
+	public JSONStringCache getStringCache()
+	{
+		return m_stringCache;
+	}
+
+	/**
+	 * @return True iff we return arrays of numbers as primitive arrays.
+	 * @see #usePrimitiveArrays(boolean)
+	 */
+	public boolean usePrimitiveArrays()
+	{
+		return m_usePrimitiveArrays;
+	}
+
+	/**
+	 * Control whether we return non-empty arrays which only contain numbers
+	 * as {@link JSONValue_LongArray}s or {@link JSONValue_DoubleArray}s,
+	 * rather than as {@link JSONValue_Array}s. If all the numbers are integers
+	 * that fit in a long, we use a JSONValue_LongArray; otherwise a JSONValue_DoubleArray.
+	 * Primitive arrays use much less memory, and their JSON output is the same.
+	 * {@link JSONValue_Object#getArray(String)} and {@link JSONValue_Array#getArray(int)}
+	 * replace primitive arrays with equivalent JSONValue_Arrays,
+	 * but clients which cast values directly to JSONValue_Array
+	 * must be prepared for primitive arrays. The default is false.
+	 * @param usePrimitiveArrays True iff we return arrays of numbers as primitive arrays.
+	 */
+	public void usePrimitiveArrays(boolean usePrimitiveArrays)
+	{
+		m_usePrimitiveArrays = usePrimitiveArrays;
+	}
+
 	private JSONValue parseObject(IJSONLexan lexan, JSONValue_Object object) throws JSONParseException
 	{
 		object.usePathNames(m_usePathNames);
@@ -111,6 +195,9 @@ public class JSONParser
 			switch (token.m_token) {
 			case STRING:
 					key = token.getString();
+					if (m_stringCache != null) {
+						key = m_stringCache.intern(key);
+					}
 					break;
 			case CLOSE_CURLY_BRACKET:
 					if (nAdded == 0) {
@@ -149,7 +236,7 @@ public class JSONParser
 					object.put(key, new JSONValue_BigInt(token.getBigInt()));
 					break;
 				case STRING:
-					object.put(key, new JSONValue_String(token.getString()));
+					object.put(key, new JSONValue_String(stringValue(token)));
 					break;
 				case TRUE:
 					object.put(key, JSONValue_Boolean.TRUE);
@@ -164,7 +251,7 @@ public class JSONParser
 					object.put(key, parseObject(lexan, new JSONValue_Object()));
 					break;
 				case OPEN_SQUARE_BRACKET:
-					object.put(key, parseArray(lexan, new JSONValue_Array()));
+					object.put(key, parseArray(lexan));
 					break;
 				default:
 					throw new JSONParseException("Invalid input in JSON object; expecting value",
@@ -188,15 +275,101 @@ public class JSONParser
 		}
 	}
 	
-	private JSONValue parseArray(IJSONLexan lexan, JSONValue_Array array) throws JSONParseException
+	/**
+	 * Parse an array, after the opening bracket.
+	 */
+	private JSONValue parseArray(IJSONLexan lexan) throws JSONParseException
 	{
-		int nAdded = 0;
+		if (m_usePrimitiveArrays) {
+			return parseNumericArray(lexan);
+		} else {
+			return parseArray(lexan, new JSONValue_Array(), null);
+		}
+	}
+	
+	/**
+	 * Parse an array as a primitive array, if all the elements are numbers.
+	 * If we find an element which isn't a number, or if a number cannot be stored
+	 * exactly, copy the numbers to a JSONValue_Array and parse the rest of the array normally.
+	 */
+	private JSONValue parseNumericArray(IJSONLexan lexan) throws JSONParseException
+	{
+		JSONValue_LongArray longs = new JSONValue_LongArray();
+		JSONValue_DoubleArray doubles = null;
+		boolean haveBigInts = false;
 		while (true) {
 			// Read value and add to array.
 			JSONLexanToken token = nextToken(lexan);
 			if (token == null) {
 				throw new JSONParseException("Premature EOF in JSON array", null, null);
 			}
+			boolean added = false;
+			if (token.m_token == JSONLexanToken.Token.NUMBER) {
+				double value = token.getNumber();
+				if (doubles == null && JSONValue_LongArray.isSmallInteger(value)) {
+					longs.add((long)value);
+					added = true;
+				} else if (doubles == null && !haveBigInts) {
+					doubles = new JSONValue_DoubleArray();
+					for (long v: longs) {
+						doubles.add(v);
+					}
+				}
+				if (doubles != null) {
+					doubles.add(value);
+					added = true;
+				}
+			} else if (token.m_token == JSONLexanToken.Token.BIGINT) {
+				if (doubles == null && token.getBigInt().bitLength() < 64) {
+					longs.add(token.getBigInt().longValue());
+					haveBigInts = true;
+					added = true;
+				}
+			} else if (token.m_token == JSONLexanToken.Token.CLOSE_SQUARE_BRACKET
+						&& longs.size() == 0 && doubles == null) {
+				return new JSONValue_Array();
+			}
+			if (!added) {
+				JSONValue_Array array = (doubles != null) ? doubles.toJSONArray() : longs.toJSONArray();
+				return parseArray(lexan, array, token);
+			}
+			
+			// Read comma separator or curly bracket to close array.
+			token = nextToken(lexan);
+			if (token == null) {
+				throw new JSONParseException("Premature EOF in JSON array; expecting ',' or ']'", null, null);
+			}
+			switch (token.m_token) {
+			case COMMA:
+					break;
+			case CLOSE_SQUARE_BRACKET:
+					return (doubles != null) ? doubles : longs;
+			default:
+				throw new JSONParseException("Invalid input in JSON array; expecting ',' or ']'",
+								token, lexan.lastTokenLocation());
+			}
+		}
+	}
+	
+	/**
+	 * Parse the rest of an array.
+	 * @param lexan The input.
+	 * @param array The elements read so far.
+	 * @param token The token for the next element, or null to read it from lexan.
+	 * @return The array.
+	 */
+	private JSONValue parseArray(IJSONLexan lexan, JSONValue_Array array, JSONLexanToken token)
+			throws JSONParseException
+	{
+		int nAdded = array.size();
+		while (true) {
+			// Read value and add to array.
+			if (token == null) {
+				token = nextToken(lexan);
+			}
+			if (token == null) {
+				throw new JSONParseException("Premature EOF in JSON array", null, null);
+			}
 			switch (token.m_token) {
 				case NUMBER:
 					array.add(new JSONValue_Number(token.getNumber()));
@@ -205,7 +378,7 @@ public class JSONParser
 					array.add(new JSONValue_BigInt(token.getBigInt()));
 					break;
 				case STRING:
-					array.add(new JSONValue_String(token.getString()));
+					array.add(new JSONValue_String(stringValue(token)));
 					break;
 				case TRUE:
 					array.add(JSONValue_Boolean.TRUE);
@@ -220,7 +393,7 @@ public class JSONParser
 					array.add(parseObject(lexan, new JSONValue_Object()));
 					break;
 				case OPEN_SQUARE_BRACKET:
-					array.add(parseArray(lexan, new JSONValue_Array()));
+					array.add(parseArray(lexan));
 					break;
 				case CLOSE_SQUARE_BRACKET:
 					if (nAdded == 0) {
@@ -240,6 +413,7 @@ public class JSONParser
 			}
 			switch (token.m_token) {
 			case COMMA:
+					token = null;
 					break;
 			case CLOSE_SQUARE_BRACKET:
 					return array;
@@ -250,6 +424,19 @@ public class JSONParser
 		}
 	}
 	
+	/**
+	 * Return the string value of a STRING token,
+	 * using the string cache if appropriate.
+	 */
+	private String stringValue(JSONLexanToken token)
+	{
+		String value = token.getString();
+		if (m_internValues && m_stringCache != null) {
+			value = m_stringCache.internValue(value);
+		}
+		return value;
+	}
+	
 	/**
 	 * Return next token from the lexical analyzer.
 	 * Convert any IOExceptions to ParseExceptions, with the last known location.
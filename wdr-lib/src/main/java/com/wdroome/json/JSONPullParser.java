@@ -0,0 +1,478 @@
+package com.wdroome.json;
+
+import java.io.IOException;
+
+/**
+ * A "pull" parser for JSON input. The client calls {@link #nextEvent()}
+ * to step through the input, one structural event at a time,
+ * and can use {@link #readDouble()}, {@link #readString()}, {@link #readKey()}
+ * and {@link #skipValue()} to consume values with a specific structure.
+ * Unlike {@link JSONParser}, this class does not build a tree of JSON values,
+ * and unlike {@link JSONScanner}, the client controls the flow.
+ * So a client can walk a very large document, such as a cost map,
+ * using memory in proportion to the data it keeps, rather than the size of the input.
+ * <p>
+ * For example, to read the costs in an ALTO cost map:
+ * <pre>
+ *   JSONPullParser parser = new JSONPullParser(lexan);
+ *   parser.nextEvent();    // START_OBJECT
+ *   String key;
+ *   while ((key = parser.readKey()) != null) {
+ *       if (!key.equals("cost-map")) {
+ *           parser.skipValue();
+ *           continue;
+ *       }
+ *       parser.nextEvent();    // START_OBJECT
+ *       String src;
+ *       while ((src = parser.readKey()) != null) {
+ *           parser.nextEvent();    // START_OBJECT
+ *           String dest;
+ *           while ((dest = parser.readKey()) != null) {
+ *               double cost = parser.readDouble();
+ *               ...
+ *           }
+ *       }
+ *   }
+ * </pre>
+ * The parser verifies that the input is valid JSON,
+ * and throws a JSONParseException at the first error.
+ * @author wdr
+ */
+public class JSONPullParser
+{
+	/** The events returned by {@link JSONPullParser#nextEvent()}. */
+	public static enum Event {
+			/** The start of an object. */
+			START_OBJECT,
+			/** The end of an object. */
+			END_OBJECT,
+			/** The start of an array. */
+			START_ARRAY,
+			/** The end of an array. */
+			END_ARRAY,
+			/** The key of an object member. The next event is the member's value. */
+			KEY,
+			/** A string, number, boolean or null value. */
+			VALUE,
+		};
+
+	/** What the parser expects next. */
+	private enum State {VALUE, VALUE_OR_END, KEY, KEY_OR_END, COMMA_OR_END, DONE};
+
+	private final IJSONLexan m_lexan;
+
+	private State m_state = State.VALUE;
+	private Event m_event = null;
+	private JSONLexanToken m_token = null;
+
+	// The containers enclosing the current event, from outermost to innermost.
+	// For an object, m_keys[i] is the current key. For an array,
+	// m_indexes[i] is the index of the current element.
+	private int m_depth = 0;
+	private boolean[] m_isObject = new boolean[16];
+	private String[] m_keys = new String[16];
+	private int[] m_indexes = new int[16];
+
+	/**
+	 * Create a new parser. This just sets the input.
+	 * @param lexan A stream of JSON tokens.
+	 */
+	public JSONPullParser(IJSONLexan lexan)
+	{
+		m_lexan = lexan;
+	}
+
+	/**
+	 * Advance to the next event.
+	 * @return The next event, or null at the end of the input.
+	 * @throws JSONParseException If the input is not valid JSON, or on an IO error.
+	 */
+	public Event nextEvent() throws JSONParseException
+	{
+		while (true) {
+			JSONLexanToken token = nextToken();
+			switch (m_state) {
+			case VALUE:
+			case VALUE_OR_END:
+				if (token == null) {
+					throw error("Premature EOF; expecting value", null);
+				}
+				if (m_state == State.VALUE_OR_END
+						&& token.m_token == JSONLexanToken.Token.CLOSE_SQUARE_BRACKET) {
+					return endContainer(Event.END_ARRAY);
+				}
+				return startValue(token);
+
+			case KEY:
+			case KEY_OR_END:
+				if (token == null) {
+					throw error("Premature EOF in JSON object; expecting key", null);
+				}
+				if (token.m_token == JSONLexanToken.Token.STRING) {
+					m_keys[m_depth-1] = token.getString();
+					token = nextToken();
+					if (token == null || token.m_token != JSONLexanToken.Token.COLON) {
+						throw error("Invalid input in JSON object; expecting ':'", token);
+					}
+					m_state = State.VALUE;
+					m_token = null;
+					return m_event = Event.KEY;
+				} else if (m_state == State.KEY_OR_END
+						&& token.m_token == JSONLexanToken.Token.CLOSE_CURLY_BRACKET) {
+					return endContainer(Event.END_OBJECT);
+				}
+				throw error("Invalid input in JSON object; expecting key", token);
+
+			case COMMA_OR_END:
+				boolean isObject = m_isObject[m_depth-1];
+				if (token == null) {
+					throw error(isObject ? "Premature EOF in JSON object; expecting ',' or '}'"
+										 : "Premature EOF in JSON array; expecting ',' or ']'", null);
+				}
+				if (token.m_token == JSONLexanToken.Token.COMMA) {
+					m_state = isObject ? State.KEY : State.VALUE;
+					continue;
+				} else if (isObject && token.m_token == JSONLexanToken.Token.CLOSE_CURLY_BRACKET) {
+					return endContainer(Event.END_OBJECT);
+				} else if (!isObject && token.m_token == JSONLexanToken.Token.CLOSE_SQUARE_BRACKET) {
+					return endContainer(Event.END_ARRAY);
+				}
+				throw error(isObject ? "Invalid input in JSON object; expecting ',' or '}'"
+									 : "Invalid input in JSON array; expecting ',' or ']'", token);
+
+			case DONE:
+			default:
+				if (token != null) {
+					throw error("Excess characters after value", token);
+				}
+				m_token = null;
+				return m_event = null;
+			}
+		}
+	}
+
+	/**
+	 * Handle the first token of a value.
+	 * @param token The token.
+	 * @return The event for the value.
+	 * @throws JSONParseException If token cannot start a value.
+	 */
+	private Event startValue(JSONLexanToken token) throws JSONParseException
+	{
+		if (m_depth > 0 && !m_isObject[m_depth-1]) {
+			m_indexes[m_depth-1]++;
+		}
+		switch (token.m_token) {
+		case NUMBER:
+		case BIGINT:
+		case STRING:
+		case TRUE:
+		case FALSE:
+		case NULL:
+			m_token = token;
+			m_state = (m_depth > 0) ? State.COMMA_OR_END : State.DONE;
+			return m_event = Event.VALUE;
+		case OPEN_CURLY_BRACKET:
+			push(true);
+			m_state = State.KEY_OR_END;
+			m_token = null;
+			return m_event = Event.START_OBJECT;
+		case OPEN_SQUARE_BRACKET:
+			push(false);
+			m_state = State.VALUE_OR_END;
+			m_token = null;
+			return m_event = Event.START_ARRAY;
+		default:
+			throw error("Invalid JSON input; expecting value", token);
+		}
+	}
+
+	/**
+	 * Leave the innermost container.
+	 * @param event The END event for the container.
+	 * @return event.
+	 */
+	private Event endContainer(Event event)
+	{
+		m_depth--;
+		m_keys[m_depth] = null;
+		m_state = (m_depth > 0) ? State.COMMA_OR_END : State.DONE;
+		m_token = null;
+		return m_event = event;
+	}
+
+	/**
+	 * Enter a new container.
+	 * @param isObject True for an object, false for an array.
+	 */
+	private void push(boolean isObject)
+	{
+		if (m_depth >= m_isObject.length) {
+			int newLen = 2*m_isObject.length;
+			boolean[] newIsObject = new boolean[newLen];
+			String[] newKeys = new String[newLen];
+			int[] newIndexes = new int[newLen];
+			System.arraycopy(m_isObject, 0, newIsObject, 0, m_depth);
+			System.arraycopy(m_keys, 0, newKeys, 0, m_depth);
+			System.arraycopy(m_indexes, 0, newIndexes, 0, m_depth);
+			m_isObject = newIsObject;
+			m_keys = newKeys;
+			m_indexes = newIndexes;
+		}
+		m_isObject[m_depth] = isObject;
+		m_keys[m_depth] = null;
+		m_indexes[m_depth] = -1;
+		m_depth++;
+	}
+
+	/**
+	 * Return the current event: the event returned by the last call to {@link #nextEvent()}.
+	 * @return The current event, or null before the first event or after the end of the input.
+	 */
+	public Event currentEvent()
+	{
+		return m_event;
+	}
+
+	/**
+	 * Return the current nesting depth of objects and arrays.
+	 * At a START event, the depth includes the new container;
+	 * at an END event, it does not.
+	 * @return The current nesting depth.
+	 */
+	public int getDepth()
+	{
+		return m_depth;
+	}
+
+	/**
+	 * Return the innermost object key.
+	 * @return The key of the current member of the innermost container,
+	 * 		or null if that container is an array or if there is no key yet.
+	 */
+	public String currentKey()
+	{
+		return m_depth > 0 ? m_keys[m_depth-1] : null;
+	}
+
+	/**
+	 * Return the path to the current value. Object keys are separated by periods,
+	 * and array elements are given by their index in square brackets. For example,
+	 * "cost-map.pid1.pid2" or "endpoints[3].address". The top-level value is "".
+	 * For START and END events, this is the path of the object or array.
+	 * For a KEY event, this is the path of the key's value.
+	 * @return The path to the current value.
+	 */
+	public String currentPath()
+	{
+		int n = m_depth;
+		if (m_event == Event.START_OBJECT || m_event == Event.START_ARRAY) {
+			n--;
+		}
+		StringBuilder path = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			if (m_isObject[i]) {
+				if (path.length() > 0) {
+					path.append('.');
+				}
+				path.append(m_keys[i]);
+			} else {
+				path.append('[');
+				path.append(m_indexes[i]);
+				path.append(']');
+			}
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Return the token for the current VALUE event.
+	 * @return The token, or null if the current event is not a VALUE.
+	 */
+	public JSONLexanToken currentToken()
+	{
+		return m_token;
+	}
+
+	/**
+	 * Return the value of the current VALUE event as a double.
+	 * @return The number.
+	 * @throws JSONValueTypeException If the current event is not a number.
+	 */
+	public double getDouble() throws JSONValueTypeException
+	{
+		if (m_token != null) {
+			if (m_token.m_token == JSONLexanToken.Token.NUMBER) {
+				return m_token.getNumber();
+			} else if (m_token.m_token == JSONLexanToken.Token.BIGINT) {
+				return m_token.getBigInt().doubleValue();
+			}
+		}
+		throw new JSONValueTypeException("Value is not a number", currentPath());
+	}
+
+	/**
+	 * Return the value of the current VALUE event as a String.
+	 * @return The string.
+	 * @throws JSONValueTypeException If the current event is not a string.
+	 */
+	public String getString() throws JSONValueTypeException
+	{
+		if (m_token != null && m_token.m_token == JSONLexanToken.Token.STRING) {
+			return m_token.getString();
+		}
+		throw new JSONValueTypeException("Value is not a string", currentPath());
+	}
+
+	/**
+	 * Read the next value, which must be a number.
+	 * @return The number.
+	 * @throws JSONParseException If the input is not valid JSON.
+	 * @throws JSONValueTypeException If the next value is not a number.
+	 */
+	public double readDouble() throws JSONParseException, JSONValueTypeException
+	{
+		nextEvent();
+		return getDouble();
+	}
+
+	/**
+	 * Read the next value, which must be a string.
+	 * @return The string.
+	 * @throws JSONParseException If the input is not valid JSON.
+	 * @throws JSONValueTypeException If the next value is not a string.
+	 */
+	public String readString() throws JSONParseException, JSONValueTypeException
+	{
+		nextEvent();
+		return getString();
+	}
+
+	/**
+	 * Read the next member key of the current object.
+	 * @return The key, or null if we are at the end of the object.
+	 * 		In that case, the current event is END_OBJECT.
+	 * @throws JSONParseException If the input is not valid JSON.
+	 * @throws JSONValueTypeException If we are not in an object.
+	 */
+	public String readKey() throws JSONParseException, JSONValueTypeException
+	{
+		if (m_state != State.KEY && m_state != State.KEY_OR_END
+				&& !(m_state == State.COMMA_OR_END && m_isObject[m_depth-1])) {
+			throw new JSONValueTypeException("Not in a JSON object", currentPath());
+		}
+		return nextEvent() == Event.KEY ? m_keys[m_depth-1] : null;
+	}
+
+	/**
+	 * Skip a value. If the current event is START_OBJECT or START_ARRAY,
+	 * skip the rest of that object or array, up to and including the END event.
+	 * Otherwise skip the next value, including all of its members or elements.
+	 * @throws JSONParseException If the input is not valid JSON,
+	 * 		or if there is no value to skip.
+	 */
+	public void skipValue() throws JSONParseException
+	{
+		Event event = m_event;
+		if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+			event = nextEvent();
+			if (event == Event.VALUE) {
+				return;
+			} else if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+				throw error("No value to skip", null);
+			}
+		}
+		int endDepth = m_depth - 1;
+		while (m_depth > endDepth) {
+			nextEvent();
+		}
+	}
+
+	/**
+	 * Read the next value and return it as a JSONValue.
+	 * If the current event is START_OBJECT or START_ARRAY,
+	 * return the rest of that object or array.
+	 * This is useful for small parts of a large document, such as the "meta" object.
+	 * @return The value.
+	 * @throws JSONParseException If the input is not valid JSON,
+	 * 		or if there is no value to read.
+	 */
+	public JSONValue readValue() throws JSONParseException
+	{
+		if (m_event != Event.START_OBJECT && m_event != Event.START_ARRAY) {
+			nextEvent();
+		}
+		return currentValue();
+	}
+
+	/**
+	 * Return the value that starts with the current event.
+	 * For START events, read the rest of the object or array.
+	 * @return The value.
+	 * @throws JSONParseException If the input is not valid JSON,
+	 * 		or if the current event does not start a value.
+	 */
+	private JSONValue currentValue() throws JSONParseException
+	{
+		if (m_event == Event.VALUE) {
+			return tokenValue(m_token);
+		} else if (m_event == Event.START_OBJECT) {
+			JSONValue_Object object = new JSONValue_Object();
+			while (nextEvent() == Event.KEY) {
+				String key = currentKey();
+				nextEvent();
+				object.put(key, currentValue());
+			}
+			return object;
+		} else if (m_event == Event.START_ARRAY) {
+			JSONValue_Array array = new JSONValue_Array();
+			while (nextEvent() != Event.END_ARRAY) {
+				array.add(currentValue());
+			}
+			return array;
+		} else {
+			throw error("No value to read", null);
+		}
+	}
+
+	/**
+	 * Return the JSONValue for a scalar token.
+	 */
+	private static JSONValue tokenValue(JSONLexanToken token)
+	{
+		switch (token.m_token) {
+			case NUMBER:	return new JSONValue_Number(token.getNumber());
+			case BIGINT:	return new JSONValue_BigInt(token.getBigInt());
+			case STRING:	return new JSONValue_String(token.getString());
+			case TRUE:		return JSONValue_Boolean.TRUE;
+			case FALSE:		return JSONValue_Boolean.FALSE;
+			default:		return JSONValue_Null.NULL;
+		}
+	}
+
+	/**
+	 * Return a new JSONParseException for an error at the current location.
+	 * @param msg A description of the error.
+	 * @param token The offending token (may be null).
+	 * @return A new JSONParseException for the error.
+	 */
+	private JSONParseException error(String msg, JSONLexanToken token)
+	{
+		return new JSONParseException(msg, token, m_lexan.lastTokenLocation());
+	}
+
+	/**
+	 * Return next token from the lexical analyzer.
+	 * Convert any IOExceptions to ParseExceptions, with the last known location.
+	 * @return The next token, or null at EOF.
+	 * @throws JSONParseException If an IO error occurs.
+	 */
+	private JSONLexanToken nextToken() throws JSONParseException
+	{
+		try {
+			return m_lexan.nextToken();
+		} catch (IOException e) {
+			throw new JSONParseException(e.toString(), null, m_lexan.lastTokenLocation());
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.wdroome.json;
+
+/**
+ * A bounded table of canonical String instances, which a {@link JSONParser}
+ * can use for object keys and short string values.
+ * Large JSON documents, such as ALTO cost maps and network maps,
+ * repeat the same PID names and field names many times.
+ * Without a cache, every occurrence is a separate String;
+ * with a cache, they share one instance, so the parsed tree uses much less heap.
+ * <p>
+ * The table is a fixed-size, direct-mapped hash table:
+ * each string has one slot, and a new string replaces whatever string
+ * was in its slot. So the table never grows, and strings which are no longer
+ * used are eventually replaced. The cost is that a lookup may miss
+ * a string that has been replaced, in which case the client just gets
+ * a duplicate, exactly as it would without the cache.
+ * <p>
+ * The table is thread-safe, without locks: Strings are immutable,
+ * so a reader sees either the old or the new string in a slot,
+ * and either is correct. That means one table can be shared
+ * by all the parsers in an application; see {@link #shared()}.
+ * @author wdr
+ */
+public class JSONStringCache
+{
+	/** The default number of slots. */
+	public static final int DEFAULT_CAPACITY = 16*1024;
+
+	/** The default maximum length of string values to intern. */
+	public static final int DEFAULT_MAX_VALUE_LENGTH = 32;
+
+	private static final JSONStringCache g_shared = new JSONStringCache();
+
+	private final String[] m_table;
+	private final int m_mask;
+	private final int m_maxValueLength;
+
+	/**
+	 * Create a cache with the default capacity and value length.
+	 */
+	public JSONStringCache()
+	{
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_VALUE_LENGTH);
+	}
+
+	/**
+	 * Create a new cache.
+	 * @param capacity The number of slots. This is rounded up to a power of two.
+	 * @param maxValueLength The maximum length of a string value
+	 * 		that {@link #internValue(String)} will intern.
+	 * @throws IllegalArgumentException If capacity is not positive.
+	 */
+	public JSONStringCache(int capacity, int maxValueLength)
+	{
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("JSONStringCache: invalid capacity " + capacity);
+		}
+		int len = 1;
+		while (len < capacity) {
+			len *= 2;
+		}
+		m_table = new String[len];
+		m_mask = len - 1;
+		m_maxValueLength = maxValueLength;
+	}
+
+	/**
+	 * Return a cache shared by all clients.
+	 * It has the default capacity and value length.
+	 * @return A cache shared by all clients.
+	 */
+	public static JSONStringCache shared()
+	{
+		return g_shared;
+	}
+
+	/**
+	 * Return the canonical instance of a string.
+	 * @param s The string. May be null.
+	 * @return A string equal to s. If an equal string is in the table, return that instance.
+	 * 		Otherwise add s to the table, and return s.
+	 */
+	public String intern(String s)
+	{
+		if (s == null) {
+			return null;
+		}
+		int h = s.hashCode();
+		int slot = (h ^ (h >>> 16)) & m_mask;
+		String prev = m_table[slot];
+		if (prev != null && prev.equals(s)) {
+			return prev;
+		}
+		m_table[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Return the canonical instance of a string value,
+	 * if it is no longer than the maximum value length.
+	 * @param s The string. May be null.
+	 * @return A string equal to s. If s is short, the value of {@link #intern(String)};
+	 * 		otherwise s itself.
+	 */
+	public String internValue(String s)
+	{
+		if (s == null || s.length() > m_maxValueLength) {
+			return s;
+		}
+		return intern(s);
+	}
+
+	/**
+	 * Return the number of slots in the table.
+	 * @return The number of slots in the table.
+	 */
+	public int getCapacity()
+	{
+		return m_table.length;
+	}
+
+	/**
+	 * Return the maximum length of the values interned by {@link #internValue(String)}.
+	 * @return The maximum length of the values interned by {@link #internValue(String)}.
+	 */
+	public int getMaxValueLength()
+	{
+		return m_maxValueLength;
+	}
+}
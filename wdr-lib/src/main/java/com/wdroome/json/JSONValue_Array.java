@@ -337,6 +337,8 @@ public class JSONValue_Array extends ArrayList<JSONValue> implements JSONValue
 	 * Return an array-valued element.
 	 * If the convert2array flag option is set {@link #setAutoCvt2Array(boolean)}
 	 * automatically convert a scalar value to a new single-element array.
+	 * If the value is a {@link JSONValue_NumericArray},
+	 * replace it with the equivalent JSONValue_Array.
 	 * @param index The element's index.
 	 * @return The array value of the element.
 	 * 		Return null if it's not a JSON array.
@@ -351,6 +353,11 @@ public class JSONValue_Array extends ArrayList<JSONValue> implements JSONValue
 			JSONValue_Array ret = new JSONValue_Array();
 			ret.add(value);
 			return ret;
+		} else if (value instanceof JSONValue_NumericArray) {
+			// Replace it, so that changes to the returned array change this array.
+			JSONValue_Array array = ((JSONValue_NumericArray)value).toJSONArray();
+			set(index, array);
+			return array;
 		} else if (!(value instanceof JSONValue_Array)) {
         	return null;
 		} else {
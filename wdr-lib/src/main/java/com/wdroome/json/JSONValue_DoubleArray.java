@@ -1,29 +1,42 @@
 package com.wdroome.json;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.ListIterator;
-import java.math.BigInteger;
+import java.util.NoSuchElementException;
 
 /**
  * A JSON array which is limited to double values.
+ * The values are stored in a double[], rather than as JSONValue_Number objects.
  * @author wdr
  */
-public class JSONValue_DoubleArray implements JSONValue, Iterable<Double>
+public class JSONValue_DoubleArray extends JSONValue_NumericArray implements Iterable<Double>
 {
-	private final JSONValue_Array m_array;
+	private double[] m_values;
+	private int m_size;
 
 	/**
 	 * Create a new empty array.
 	 */
 	public JSONValue_DoubleArray()
 	{
-		m_array = new JSONValue_Array();
+		m_values = new double[8];
+		m_size = 0;
+	}
+
+	/**
+	 * Create a new array with a copy of the values in a Java array.
+	 * @param values The values.
+	 */
+	public JSONValue_DoubleArray(double[] values)
+	{
+		m_values = values.clone();
+		m_size = values.length;
 	}
 
 	/**
 	 * Create a new Double array from an existing JSON array.
-	 * This class creates a shallow clone of the existing array;
+	 * This class copies the values in the existing array;
 	 * it does not change that array.
 	 * @param array The existing JSON array.
 	 * @param convert If true, replace numeric-valued String elements
@@ -33,73 +46,77 @@ public class JSONValue_DoubleArray implements JSONValue, Iterable<Double>
 	 */
 	public JSONValue_DoubleArray(JSONValue_Array array, boolean convert)
 	{
-		m_array = array != null ? new JSONValue_Array(array) : new JSONValue_Array();
-		for (ListIterator<JSONValue> iter = m_array.listIterator(); iter.hasNext(); ) {
-			JSONValue v = iter.next();
+		m_values = new double[array != null ? array.size() : 0];
+		m_size = 0;
+		if (array == null) {
+			return;
+		}
+		for (JSONValue v: array) {
 			if (v instanceof JSONValue_Number) {
-				// ok!
+				add(((JSONValue_Number)v).m_value);
 			} else if (!convert) {
-				iter.remove();
+				// skip
 			} else if (v instanceof JSONValue_String) {
 				try {
-					iter.set(new JSONValue_Number(Double.parseDouble(((JSONValue_String)v).m_value)));
+					add(Double.parseDouble(((JSONValue_String)v).m_value));
 				} catch (Exception e) {
-					iter.remove();
+					// skip
 				}
 			} else if (v instanceof JSONValue_BigInt) {
-				iter.set(new JSONValue_Number((((JSONValue_BigInt)v).m_value).doubleValue()));
-			} else {
-				iter.remove();
+				add((((JSONValue_BigInt)v).m_value).doubleValue());
 			}
 		}
 	}
-	
+
 	/**
-	 * Return the underlying JSON array.
-	 * @return The underlying JSON array.
+	 * Return a new JSON array with the values in this array.
+	 * Changing the returned array does not change this array.
+	 * @return A new JSON array with JSONValue_Number elements.
+	 * @see #toJSONArray()
 	 */
 	public JSONValue_Array getJSONArray()
 	{
-		return m_array;
+		return toJSONArray();
 	}
-	
+
 	/**
 	 * Return a double-valued element.
 	 * @param index The element's index.
-	 * @return The string value of the element.
-	 * 		Return null if it's not a JSON string.
+	 * @return The value of the element.
 	 * @throws IndexOutOfBoundsException If index is invalid.
 	 */
 	public double get(int index)
 	{
-		JSONValue value = m_array.get(index);
-		return (value instanceof JSONValue_Number) ? ((JSONValue_Number)value).m_value : 0;
+		checkIndex(index, m_size);
+		return m_values[index];
 	}
-	
+
 	/**
-	 * Add a string value to the array.
-	 * Create a {@link JSONValue_String} from the argument.
+	 * Add a value to the end of the array.
 	 * @param value The value.
 	 */
 	public void add(double value)
 	{
-		m_array.add(new JSONValue_Number(value));
+		if (m_size >= m_values.length) {
+			m_values = Arrays.copyOf(m_values, newCapacity(m_values.length, m_size+1));
+		}
+		m_values[m_size++] = value;
 	}
-	
+
 	/**
 	 * Replace an array element.
-	 * Create a {@link JSONValue_Number} from the argument.
 	 * @param index The element's index.
 	 * @param value The value.
+	 * @return The previous value.
 	 * @throws IndexOutOfBoundsException If index is invalid.
 	 */
 	public double set(int index, double value)
 	{
 		double prev = get(index);
-		m_array.set(index, new JSONValue_Number(value));
+		m_values[index] = value;
 		return prev;
 	}
-	
+
 	/**
 	 * Remove an array element.
 	 * @param index The element's index.
@@ -109,86 +126,80 @@ public class JSONValue_DoubleArray implements JSONValue, Iterable<Double>
 	public double remove(int index)
 	{
 		double prev = get(index);
-		m_array.remove(index);
+		System.arraycopy(m_values, index+1, m_values, index, m_size-index-1);
+		m_size--;
 		return prev;
 	}
-	
+
 	/**
-	 * Return the size of the array.
-	 * @return The size of the array.
+	 * @see JSONValue_NumericArray#size()
 	 */
+	@Override
 	public int size()
 	{
-		return m_array.size();
+		return m_size;
 	}
 
-	/* (non-Javadoc)
-	 * @see java.lang.Iterable#iterator()
+	/**
+	 * Return a new Java array with the values in this array.
+	 * @return A new Java array with the values in this array.
 	 */
-	@Override
-	public Iterator<Double> iterator()
+	public double[] toArray()
 	{
-		return new MyIterator();
+		return Arrays.copyOf(m_values, m_size);
 	}
-	
-	private class MyIterator implements Iterator<Double>
-	{
-		private final Iterator<JSONValue> m_arrayIter;
-		
-		private MyIterator()
-		{
-			m_arrayIter = m_array.iterator();
-		}
-		
-		public Double next()
-		{
-			JSONValue value = m_arrayIter.next();
-			return (value instanceof JSONValue_String) ? ((JSONValue_Number)value).m_value : null;		
-		}
 
-		/* (non-Javadoc)
-		 * @see java.util.Iterator#hasNext()
-		 */
-		@Override
-		public boolean hasNext()
-		{
-			return m_arrayIter.hasNext();
-		}
-	}
-
-	/* (non-Javadoc)
-	 * @see JSONValue#isSimple()
+	/**
+	 * Return a JSONValue_Number for an element.
+	 * @see JSONValue_NumericArray#getJSONValue(int)
 	 */
 	@Override
-	public boolean isSimple()
+	public JSONValue getJSONValue(int index)
 	{
-		return false;
+		return new JSONValue_Number(get(index));
 	}
 
-	/* (non-Javadoc)
-	 * @see JSONValue#jsonType()
+	/**
+	 * @see JSONValue_NumericArray#writeElement(JSONWriter, int)
 	 */
 	@Override
-	public String jsonType()
+	void writeElement(JSONWriter writer, int index) throws IOException
 	{
-		return "DoubleArray";
+		writer.writeNumber(m_values[index]);
 	}
 
 	/* (non-Javadoc)
-	 * @see JSONValue#writeJSON(JSONWriter)
+	 * @see java.lang.Iterable#iterator()
 	 */
 	@Override
-	public void writeJSON(JSONWriter writer) throws IOException
+	public Iterator<Double> iterator()
 	{
-		m_array.writeJSON(writer);
+		return new Iterator<Double>() {
+			private int m_next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return m_next < m_size;
+			}
+
+			@Override
+			public Double next()
+			{
+				if (m_next >= m_size) {
+					throw new NoSuchElementException();
+				}
+				return m_values[m_next++];
+			}
+		};
 	}
 
-	/**
-	 * Return a compact JSON encoding of this array.
+	/* (non-Javadoc)
+	 * @see JSONValue#jsonType()
 	 */
 	@Override
-	public String toString()
+	public String jsonType()
 	{
-		return JSONUtil.toJSONString(this, false);
+		return "DoubleArray";
 	}
 }
@@ -0,0 +1,204 @@
+package com.wdroome.json;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A JSON array which is limited to integer values that fit in a long.
+ * The values are stored in a long[], rather than as JSON value objects.
+ * <p>
+ * For JSON output, values with at most 14 digits are equivalent to
+ * {@link JSONValue_Number}s, and larger values are equivalent to {@link JSONValue_BigInt}s.
+ * That's the same rule {@link JSONLexan} uses for integers.
+ * @author wdr
+ */
+public class JSONValue_LongArray extends JSONValue_NumericArray implements Iterable<Long>
+{
+	/**
+	 * Values with this magnitude or larger have more than 14 digits,
+	 * so they are equivalent to JSON BigInts rather than JSON Numbers.
+	 */
+	private static final long MIN_BIGINT_VALUE = 100000000000000L;
+
+	private long[] m_values;
+	private int m_size;
+
+	/**
+	 * Create a new empty array.
+	 */
+	public JSONValue_LongArray()
+	{
+		m_values = new long[8];
+		m_size = 0;
+	}
+
+	/**
+	 * Create a new array with a copy of the values in a Java array.
+	 * @param values The values.
+	 */
+	public JSONValue_LongArray(long[] values)
+	{
+		m_values = values.clone();
+		m_size = values.length;
+	}
+
+	/**
+	 * Return true if a double is an integer which this class
+	 * can store and write as the equivalent JSON Number.
+	 * That is, the value has no fractional part, it is not negative zero,
+	 * and it has at most 14 digits.
+	 * @param value The value.
+	 * @return True iff value is a small integer.
+	 */
+	public static boolean isSmallInteger(double value)
+	{
+		return value > -MIN_BIGINT_VALUE && value < MIN_BIGINT_VALUE
+				&& value == (long)value
+				&& !(value == 0 && Double.doubleToRawLongBits(value) != 0);
+	}
+
+	/**
+	 * Return true if a value is equivalent to a JSON BigInt rather than a JSON Number.
+	 */
+	private static boolean isBigInt(long value)
+	{
+		return value >= MIN_BIGINT_VALUE || value <= -MIN_BIGINT_VALUE;
+	}
+
+	/**
+	 * Return an element.
+	 * @param index The element's index.
+	 * @return The value of the element.
+	 * @throws IndexOutOfBoundsException If index is invalid.
+	 */
+	public long get(int index)
+	{
+		checkIndex(index, m_size);
+		return m_values[index];
+	}
+
+	/**
+	 * Add a value to the end of the array.
+	 * @param value The value.
+	 */
+	public void add(long value)
+	{
+		if (m_size >= m_values.length) {
+			m_values = Arrays.copyOf(m_values, newCapacity(m_values.length, m_size+1));
+		}
+		m_values[m_size++] = value;
+	}
+
+	/**
+	 * Replace an array element.
+	 * @param index The element's index.
+	 * @param value The value.
+	 * @return The previous value.
+	 * @throws IndexOutOfBoundsException If index is invalid.
+	 */
+	public long set(int index, long value)
+	{
+		long prev = get(index);
+		m_values[index] = value;
+		return prev;
+	}
+
+	/**
+	 * Remove an array element.
+	 * @param index The element's index.
+	 * @return The previous value.
+	 * @throws IndexOutOfBoundsException If index is invalid.
+	 */
+	public long remove(int index)
+	{
+		long prev = get(index);
+		System.arraycopy(m_values, index+1, m_values, index, m_size-index-1);
+		m_size--;
+		return prev;
+	}
+
+	/**
+	 * @see JSONValue_NumericArray#size()
+	 */
+	@Override
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Return a new Java array with the values in this array.
+	 * @return A new Java array with the values in this array.
+	 */
+	public long[] toArray()
+	{
+		return Arrays.copyOf(m_values, m_size);
+	}
+
+	/**
+	 * Return a JSONValue_Number or JSONValue_BigInt for an element.
+	 * @see JSONValue_NumericArray#getJSONValue(int)
+	 */
+	@Override
+	public JSONValue getJSONValue(int index)
+	{
+		long value = get(index);
+		if (isBigInt(value)) {
+			return new JSONValue_BigInt(BigInteger.valueOf(value));
+		} else {
+			return new JSONValue_Number(value);
+		}
+	}
+
+	/**
+	 * @see JSONValue_NumericArray#writeElement(JSONWriter, int)
+	 */
+	@Override
+	void writeElement(JSONWriter writer, int index) throws IOException
+	{
+		long value = m_values[index];
+		if (isBigInt(value)) {
+			writer.writeNumber(value);
+		} else {
+			writer.writeNumber((double)value);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<Long> iterator()
+	{
+		return new Iterator<Long>() {
+			private int m_next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return m_next < m_size;
+			}
+
+			@Override
+			public Long next()
+			{
+				if (m_next >= m_size) {
+					throw new NoSuchElementException();
+				}
+				return m_values[m_next++];
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see JSONValue#jsonType()
+	 */
+	@Override
+	public String jsonType()
+	{
+		return "LongArray";
+	}
+}
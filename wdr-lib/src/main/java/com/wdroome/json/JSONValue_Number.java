@@ -57,10 +57,22 @@ public class JSONValue_Number implements JSONValue
 	@Override
 	public String toString()
 	{
-		if (Double.isNaN(m_value) || Double.isInfinite(m_value)) {
+		return toString(m_value);
+	}
+	
+	/**
+	 * Return the JSON string for a number.
+	 * If the value is not a valid number,
+	 * return the string value of the JSON null constant.
+	 * @param value The number.
+	 * @return The JSON string for value.
+	 */
+	public static String toString(double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
 			return JSONValue_Null.NULL.toString();
 		}
-		String s = Double.toString(m_value);
+		String s = Double.toString(value);
 		if (s.endsWith(".0")) {
 			s = s.substring(0, s.length()-2);
 		}
@@ -73,7 +85,7 @@ public class JSONValue_Number implements JSONValue
 	@Override
 	public void writeJSON(JSONWriter writer) throws IOException
 	{
-		writer.write(toString());
+		writer.writeNumber(m_value);
 	}
 	
 	/**
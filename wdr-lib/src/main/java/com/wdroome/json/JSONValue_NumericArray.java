@@ -0,0 +1,138 @@
+package com.wdroome.json;
+
+import java.io.IOException;
+
+/**
+ * Base class for JSON arrays of numbers which store the numbers
+ * in an array of primitive values, rather than as a list of JSONValue objects.
+ * A parser can create these for arrays which only contain numbers;
+ * see {@link JSONParser#usePrimitiveArrays(boolean)}.
+ * The JSON output is the same as that of a {@link JSONValue_Array}
+ * with the equivalent {@link JSONValue_Number} and {@link JSONValue_BigInt} elements.
+ * @see JSONValue_DoubleArray
+ * @see JSONValue_LongArray
+ * @author wdr
+ */
+public abstract class JSONValue_NumericArray implements JSONValue
+{
+	/**
+	 * Return the size of the array.
+	 * @return The size of the array.
+	 */
+	public abstract int size();
+
+	/**
+	 * Return an element as a JSON value.
+	 * @param index The element's index.
+	 * @return A new JSON value for the element.
+	 * @throws IndexOutOfBoundsException If index is invalid.
+	 */
+	public abstract JSONValue getJSONValue(int index);
+
+	/**
+	 * Return a new JSON array with the elements of this array.
+	 * Changing the returned array does not change this array.
+	 * @return A new JSON array with the elements of this array.
+	 */
+	public JSONValue_Array toJSONArray()
+	{
+		int n = size();
+		JSONValue_Array array = new JSONValue_Array(n);
+		for (int i = 0; i < n; i++) {
+			array.add(getJSONValue(i));
+		}
+		return array;
+	}
+
+	/**
+	 * Ensure an array has room for at least minLen elements.
+	 * @param arrayLen The current length of the array.
+	 * @param minLen The minimum length.
+	 * @return The new length, or arrayLen if the array is long enough.
+	 */
+	static int newCapacity(int arrayLen, int minLen)
+	{
+		if (minLen <= arrayLen) {
+			return arrayLen;
+		}
+		return Math.max(minLen, Math.max(8, arrayLen + arrayLen/2));
+	}
+
+	/**
+	 * Check an index.
+	 * @param index The index.
+	 * @param size The size of the array.
+	 * @throws IndexOutOfBoundsException If index is invalid.
+	 */
+	static void checkIndex(int index, int size)
+	{
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+		}
+	}
+
+	/**
+	 * @see JSONValue#isSimple()
+	 */
+	@Override
+	public boolean isSimple()
+	{
+		return false;
+	}
+
+	/**
+	 * Write the array, using the same format as {@link JSONValue_Array#writeJSON(JSONWriter)}
+	 * for an array of numbers.
+	 * @see JSONValue#writeJSON(JSONWriter)
+	 */
+	@Override
+	public void writeJSON(JSONWriter writer) throws IOException
+	{
+		int size = size();
+		int maxPerLine = Integer.MAX_VALUE;
+		boolean indent = false;
+		if (writer.isIndented()) {
+			maxPerLine = 5;
+			indent = size > maxPerLine;
+		}
+		writer.write('[');
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(1);
+		}
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (n > 0) {
+				writer.write(',');
+			}
+			if (n >= maxPerLine) {
+				writer.writeNewline();
+				n = 0;
+			}
+			writeElement(writer, i);
+			n++;
+		}
+		if (indent) {
+			writer.writeNewline();
+			writer.incrIndent(-1);
+		}
+		writer.write(']');
+	}
+
+	/**
+	 * Write the JSON text for an element.
+	 * @param writer The JSON writer.
+	 * @param index The element's index. The caller guarantees it is valid.
+	 * @throws IOException If writer throws an I/O error.
+	 */
+	abstract void writeElement(JSONWriter writer, int index) throws IOException;
+
+	/**
+	 * Return a compact JSON encoding of this array.
+	 */
+	@Override
+	public String toString()
+	{
+		return JSONUtil.toJSONString(this, false);
+	}
+}
@@ -5,13 +5,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.Arrays;
 import java.math.BigInteger;
 import java.math.BigDecimal;
 
+import com.wdroome.util.CompactHashMap;
+
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -19,12 +20,16 @@ import java.sql.Types;
 
 /**
  * A JSON Object, or a dictionary from Strings to JSON values.
- * This is simply a java HashMap that implements the JSONValue marker interface.
+ * This is simply a java Map that implements the JSONValue marker interface.
+ * We use a {@link CompactHashMap} rather than a HashMap,
+ * because most JSON objects are small, and a HashMap
+ * needs a separate node object for every entry.
+ * Iterators return the keys in the order they were added.
  * @author wdr
  */
-public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONValue
+public class JSONValue_Object extends CompactHashMap<String,JSONValue> implements JSONValue
 {
-	private static final long serialVersionUID = 7951974441619152479L;
+	private static final long serialVersionUID = -1722912493038624038L;
 	private boolean m_autoCvt2Array = false;
 	
 	/**
@@ -472,7 +477,8 @@ public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONV
 	/**
 	 * Return an array-valued entry. If the convert2array flag option is set
 	 * {@link #setAutoCvt2Array(boolean)} automatically convert a scalar value
-	 * to a new single-element array.
+	 * to a new single-element array. If the value is a {@link JSONValue_NumericArray},
+	 * replace it with the equivalent JSONValue_Array.
 	 * @param key The entry's key.
 	 * @return The array value of the key.
 	 * @throws JSONFieldMissingException If field is missing.
@@ -490,6 +496,8 @@ public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONV
 			JSONValue_Array ret = new JSONValue_Array();
 			ret.add(value);
 			return ret;
+		} else if (value instanceof JSONValue_NumericArray) {
+			return replaceNumericArray(key, (JSONValue_NumericArray)value);
 		} else if (!(value instanceof JSONValue_Array)) {
         	throw new JSONValueTypeException(
         			"JSONObject[" + JSONValue_String.quotedString(key) + "] is not an Array.",
@@ -502,7 +510,8 @@ public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONV
 	/**
 	 * Return an array-valued entry. If the convert2array flag option is set
 	 * {@link #setAutoCvt2Array(boolean)} automatically convert a scalar value
-	 * to a new single-element array.
+	 * to a new single-element array. If the value is a {@link JSONValue_NumericArray},
+	 * replace it with the equivalent JSONValue_Array.
 	 * @param key The entry's key.
 	 * @param def The default value.
 	 * @return The array value of the key, or def if it doesn't exist or it's not an array.
@@ -516,6 +525,8 @@ public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONV
 			JSONValue_Array ret = new JSONValue_Array();
 			ret.add(value);
 			return ret;
+		} else if (value instanceof JSONValue_NumericArray) {
+			return replaceNumericArray(key, (JSONValue_NumericArray)value);
 		} else if (!(value instanceof JSONValue_Array)) {
         	return def;
 		} else {
@@ -523,6 +534,20 @@ public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONV
 		}
 	}
 
+	/**
+	 * Replace a primitive array value with the equivalent JSONValue_Array,
+	 * so that changes to the returned array change this object.
+	 * @param key The entry's key.
+	 * @param value The entry's current value.
+	 * @return The new array value.
+	 */
+	private JSONValue_Array replaceNumericArray(String key, JSONValue_NumericArray value)
+	{
+		JSONValue_Array array = value.toJSONArray();
+		put(key, array);
+		return array;
+	}
+
 	/**
 	 * Return an object-valued entry.
 	 * @param key The entry's key.
@@ -715,7 +740,7 @@ public class JSONValue_Object extends HashMap<String,JSONValue> implements JSONV
 			if (indent) {
 				writer.writeNewline();
 			}
-			writer.write(JSONValue_String.quotedString(entry.getKey()));
+			writer.writeQuoted(entry.getKey());
 			writer.write(':');
 			value.writeJSON(writer);
 			n++;
@@ -38,7 +38,7 @@ public class JSONValue_String implements JSONValue
 	@Override
 	public void writeJSON(JSONWriter writer) throws IOException
 	{
-		writer.write(quotedString(m_value));
+		writer.writeQuoted(m_value);
 	}
 
 	/**
@@ -0,0 +1,161 @@
+package com.wdroome.json.validate;
+
+/**
+ * A fast matcher for the most common validation regular expression:
+ * a bracketed class of ASCII characters with a repeat count,
+ * such as "[-_.a-zA-Z0-9]{1,64}".
+ * {@link #compile(String)} returns null for any other regular expression,
+ * and the caller should use a {@link java.util.regex.Pattern} instead.
+ * A successful match does not allocate anything.
+ * @author wdr
+ */
+final class CharClassPattern
+{
+	/** Bit c is set iff ASCII character c is in the class. */
+	private final long m_low;
+	private final long m_high;
+	private final int m_minLen;
+	private final int m_maxLen;
+
+	private CharClassPattern(long low, long high, int minLen, int maxLen)
+	{
+		m_low = low;
+		m_high = high;
+		m_minLen = minLen;
+		m_maxLen = maxLen;
+	}
+
+	/**
+	 * Compile a regular expression, if it is a character class with a repeat count.
+	 * The class may have ASCII characters, ranges, and a leading or trailing "-".
+	 * The repeat count may be omitted, or may be "?", "*", "+",
+	 * "{n}", "{n,}" or "{n,m}".
+	 * @param regex The regular expression.
+	 * @return An equivalent CharClassPattern,
+	 * 		or null if regex is not of that form.
+	 */
+	static CharClassPattern compile(String regex)
+	{
+		int len = regex.length();
+		if (len < 3 || regex.charAt(0) != '[') {
+			return null;
+		}
+		long low = 0;
+		long high = 0;
+		int i = 1;
+		while (true) {
+			if (i >= len) {
+				return null;
+			}
+			char c = regex.charAt(i);
+			if (c == ']') {
+				if (i == 1) {
+					return null;
+				}
+				break;
+			}
+			if (c >= 128 || c == '\\' || c == '[' || c == '&' || (c == '^' && i == 1)) {
+				return null;
+			}
+			char last = c;
+			if (c == '-' && i != 1 && i+1 < len && regex.charAt(i+1) != ']') {
+				// A "-" which does not start or end the class, and is not part of a range.
+				return null;
+			}
+			if (c != '-' && i+2 < len && regex.charAt(i+1) == '-' && regex.charAt(i+2) != ']') {
+				last = regex.charAt(i+2);
+				if (last >= 128 || last < c || last == '\\' || last == '[' || last == '&') {
+					return null;
+				}
+				i += 2;
+			}
+			for (char x = c; x <= last; x++) {
+				if (x < 64) {
+					low |= 1L << x;
+				} else {
+					high |= 1L << (x - 64);
+				}
+			}
+			i++;
+		}
+		String count = regex.substring(i+1);
+		int minLen;
+		int maxLen;
+		if (count.isEmpty()) {
+			minLen = 1;
+			maxLen = 1;
+		} else if (count.equals("?")) {
+			minLen = 0;
+			maxLen = 1;
+		} else if (count.equals("*")) {
+			minLen = 0;
+			maxLen = Integer.MAX_VALUE;
+		} else if (count.equals("+")) {
+			minLen = 1;
+			maxLen = Integer.MAX_VALUE;
+		} else if (count.length() >= 3 && count.charAt(0) == '{' && count.endsWith("}")) {
+			String range = count.substring(1, count.length() - 1);
+			int comma = range.indexOf(',');
+			String min = (comma >= 0) ? range.substring(0, comma) : range;
+			String max = (comma >= 0) ? range.substring(comma + 1) : range;
+			if (!isCount(min) || !(isCount(max) || (comma >= 0 && max.isEmpty()))) {
+				return null;
+			}
+			minLen = Integer.parseInt(min);
+			maxLen = max.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(max);
+			if (maxLen < minLen) {
+				return null;
+			}
+		} else {
+			return null;
+		}
+		return new CharClassPattern(low, high, minLen, maxLen);
+	}
+
+	/**
+	 * Return true if a string is a decimal repeat count.
+	 * @param s The string.
+	 * @return True iff s has 1 to 9 decimal digits.
+	 */
+	private static boolean isCount(String s)
+	{
+		if (s.isEmpty() || s.length() > 9) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Test if a string matches the pattern.
+	 * @param s The string.
+	 * @return True iff all of s matches the pattern.
+	 */
+	boolean matches(String s)
+	{
+		int len = s.length();
+		if (len < m_minLen || len > m_maxLen) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 64) {
+				if ((m_low & (1L << c)) == 0) {
+					return false;
+				}
+			} else if (c < 128) {
+				if ((m_high & (1L << (c - 64))) == 0) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+}
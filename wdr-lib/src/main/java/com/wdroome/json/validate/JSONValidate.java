@@ -11,7 +11,7 @@ import com.wdroome.json.*;
  * This is the base class for all validation.
  * This package defines a validator class for each JSON data type.
  * Those validator classes extend this class
- * and override {@link #validate(JSONValue,String)}.
+ * and override {@link #validate(JSONValue,Path)}.
  * Those validator classes be customized by constructor parameters.
  * For example, a client can create an instance of {@link JSONValidate_String}
  * that only allows Strings that match a specified regular expression.
@@ -27,12 +27,130 @@ import com.wdroome.json.*;
  * </p>
  * <p>
  * The default is "stop on first error."
- * To save all errors in a List, call {@link #collectErrors(List)}.
+ * To save all errors in a List, call {@link #collectErrors(List)},
+ * or give a List to the root {@link Path}.
+ * The latter does not change the validator, so several threads
+ * may use the same validator at the same time.
+ * </p>
+ * <p>
+ * Validators pass the location of each value as a {@link Path},
+ * which only builds the path string if a value fails validation.
  * </p>
  * @author wdr
  */
 public abstract class JSONValidate
 {
+	/**
+	 * The location of a value in a JSON tree,
+	 * plus an optional List for validation errors.
+	 * Creating a child path is cheap;
+	 * the path string is only built by {@link #toString()}.
+	 */
+	public static final class Path
+	{
+		private final Path m_parent;
+		private final String m_name;
+		private final int m_index;
+		private final List<String> m_errors;
+		
+		/**
+		 * Create a root path.
+		 * @param root The path of the root value, or "" or null for the actual root.
+		 * @param errors If not null, validators append errors to this List
+		 * 		instead of throwing an exception or using the List
+		 * 		given to {@link JSONValidate#collectErrors(List)}.
+		 * 		The list must support the add(String) method.
+		 */
+		public Path(String root, List<String> errors)
+		{
+			m_parent = null;
+			m_name = (root != null) ? root : "";
+			m_index = -1;
+			m_errors = errors;
+		}
+		
+		/**
+		 * Create a child path.
+		 * @param parent The parent path.
+		 * @param name The object member key, or null for an array element.
+		 * @param index The array index, if name is null.
+		 */
+		private Path(Path parent, String name, int index)
+		{
+			m_parent = parent;
+			m_name = name;
+			m_index = index;
+			m_errors = parent.m_errors;
+		}
+		
+		/**
+		 * Return the path of a member of this object.
+		 * @param name The key of the member.
+		 * @return The new path.
+		 */
+		public Path member(String name)
+		{
+			return new Path(this, name, -1);
+		}
+		
+		/**
+		 * Return the path of an element of this array.
+		 * @param index The index of the element.
+		 * @return The new path.
+		 */
+		public Path element(int index)
+		{
+			return new Path(this, null, index);
+		}
+		
+		/**
+		 * Return the error List given to the root path.
+		 * @return The error List, or null.
+		 */
+		public List<String> getErrors()
+		{
+			return m_errors;
+		}
+		
+		/**
+		 * Return the path as a String.
+		 * @return The path string, in the format used by
+		 * 		{@link JSONValidate#newPath(String, String)}
+		 * 		and {@link JSONValidate#newPath(String, int)}.
+		 */
+		@Override
+		public String toString()
+		{
+			if (m_parent == null) {
+				return m_name;
+			}
+			StringBuilder b = new StringBuilder();
+			appendTo(b);
+			return b.toString();
+		}
+		
+		/**
+		 * Append the path to a buffer.
+		 * @param b The buffer.
+		 */
+		private void appendTo(StringBuilder b)
+		{
+			if (m_parent == null) {
+				b.append(m_name);
+				return;
+			}
+			m_parent.appendTo(b);
+			if (m_name != null) {
+				if (b.length() > 0) {
+					b.append('.');
+				}
+				b.append(m_name);
+			} else {
+				b.append('[').append(m_index).append(']');
+			}
+		}
+	}
+	
 	private final Class m_requiredClass;
 	private final boolean m_nullAllowed;
 	
@@ -105,13 +223,34 @@ public abstract class JSONValidate
 	 */
 	public final boolean validate(JSONValue value) throws JSONValidationException
 	{
-		return validate(value, "");
+		return validate(value, new Path("", null));
 	}
 	
 	/**
 	 * Validate a JSONValue. If valid, return true.
 	 * If not, either throw an exception,
 	 * or else add the error to the List given to {@link #collectErrors(List)}.
+	 * @param value The JSON value to validate against this requirement.
+	 * @param path The JSON path for this value.
+	 * 		Used in the exception message to identify the invalid element
+	 * 		of a possibly large compound JSON object.
+	 * 		Use "" if this is a root element.
+	 * @return True iff "value" passes validation.
+	 * @throws JSONValidationException
+	 * 		If "value" fails validation and the client did not call
+	 * 		{@link #collectErrors(List)} to request
+	 * 		the validation errors to be collected in a list.
+	 * @see #validate(JSONValue, Path)
+	 */
+	public final boolean validate(JSONValue value, String path) throws JSONValidationException
+	{
+		return validate(value, new Path(path, null));
+	}
+	
+	/**
+	 * Validate a JSONValue. If valid, return true.
+	 * If not, either throw an exception, or else add the error
+	 * to the List given to the root path or to {@link #collectErrors(List)}.
 	 * <p>
 	 * The base class returns true as long as "value"
 	 * is an instance of the JSONValue class passed to the constructor.
@@ -123,16 +262,14 @@ public abstract class JSONValidate
 	 * @param path The JSON path for this value.
 	 * 		Used in the exception message to identify the invalid element
 	 * 		of a possibly large compound JSON object.
-	 * 		Use "" if this is a root element.
 	 * @return True iff "value" passes validation.
 	 * 		The base class returns true as long as "value"
 	 * 		is an instance of the JSONValue class passed to the constructor.
 	 * @throws JSONValidationException
-	 * 		If "value" fails validation and the client did not call
-	 * 		{@link #collectErrors(List)} to request
-	 * 		the validation errors to be collected in a list.
+	 * 		If "value" fails validation and neither the root path
+	 * 		nor {@link #collectErrors(List)} gave a list for the validation errors.
 	 */
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (m_nullAllowed && value instanceof JSONValue_Null) {
 			return true;
@@ -140,7 +277,7 @@ public abstract class JSONValidate
 			handleValidationError(
 						"Wrong type: " + classLeafName(value)
 						+ " instead of " + classLeafName(m_requiredClass)
-						+ atPath(path));
+						+ atPath(path), path);
 			return false;
 		} else {
 			return true;
@@ -165,6 +302,34 @@ public abstract class JSONValidate
 		}
 	}
 	
+	/**
+	 * Handle a validation error.
+	 * If the root path has an error List, add the error to that List.
+	 * Otherwise handle it like {@link #handleValidationError(String)}.
+	 * @param msg A string describing the validation error.
+	 * @param path The path of the invalid value.
+	 * @throws JSONValidationException If there is no List for the error.
+	 */
+	protected void handleValidationError(String msg, Path path) throws JSONValidationException
+	{
+		List<String> errors = (path != null) ? path.getErrors() : null;
+		if (errors != null) {
+			errors.add(msg);
+		} else {
+			handleValidationError(msg);
+		}
+	}
+	
+	/**
+	 * Return a string describing the location of the error in the tree.
+	 * @param path The path to the element.
+	 * @return A string of the form " at &lt;path&gt;" or " at root".
+	 */
+	protected String atPath(Path path)
+	{
+		return atPath(path != null ? path.toString() : null);
+	}
+	
 	/**
 	 * Return a string describing the location of the error in the tree.
 	 * @param path The path to the element, or null or "" for the root element.
@@ -77,10 +77,10 @@ public class JSONValidate_Array extends JSONValidate
 	
 	/**
 	 * Validate a JSON value.
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (!super.validate(value, path)) {
 			return false;
@@ -92,14 +92,14 @@ public class JSONValidate_Array extends JSONValidate
 			JSONValue_Array array = (JSONValue_Array)value;
 			int n = array.size();
 			if (n < m_minLength) {
-				handleValidationError("Array len " + n + " < " + m_minLength + atPath(path));
+				handleValidationError("Array len " + n + " < " + m_minLength + atPath(path), path);
 				valid = false;
 			} else if (n > m_maxLength) {
-				handleValidationError("Array len " + n + " > " + m_maxLength + atPath(path));				
+				handleValidationError("Array len " + n + " > " + m_maxLength + atPath(path), path);				
 				valid = false;
 			}
 			for (int i = 0; i < n; i++) {
-				if (!m_elementSpec.validate(array.get(i), newPath(path, i))) {
+				if (!m_elementSpec.validate(array.get(i), path.element(i))) {
 					valid = false;
 				}
 			}
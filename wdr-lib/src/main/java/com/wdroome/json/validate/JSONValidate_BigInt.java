@@ -69,17 +69,17 @@ public class JSONValidate_BigInt extends JSONValidate
 	}
 	
 	/**
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		BigInteger thisValue;
 		if (value instanceof JSONValue_Number) {
 			try {
 				thisValue = ((JSONValue_Number) value).toBigInteger();
 			} catch (Exception e) {
-				handleValidationError("Non-integer " + value + atPath(path));
+				handleValidationError("Non-integer " + value + atPath(path), path);
 				return false;
 			}
 		} else if (!super.validate(value, path)) {
@@ -100,7 +100,7 @@ public class JSONValidate_BigInt extends JSONValidate
 			err = null;
 		}
 		if (err != null) {
-			handleValidationError(err + atPath(path));
+			handleValidationError(err + atPath(path), path);
 			return false;
 		}
 		return true;
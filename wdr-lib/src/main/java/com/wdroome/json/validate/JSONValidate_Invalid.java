@@ -21,15 +21,15 @@ public class JSONValidate_Invalid extends JSONValidate
 	}
 
 	/**
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (!super.validate(value, path)) {
 			return false;
 		}
-		handleValidationError(m_errorMsg + atPath(path));
+		handleValidationError(m_errorMsg + atPath(path), path);
 		return false;
 	}
 }
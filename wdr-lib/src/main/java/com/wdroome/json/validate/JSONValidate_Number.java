@@ -67,10 +67,10 @@ public class JSONValidate_Number extends JSONValidate
 	}
 	
 	/**
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (!super.validate(value, path)) {
 			return false;
@@ -89,7 +89,7 @@ public class JSONValidate_Number extends JSONValidate
 				err = null;
 			}
 			if (err != null) {
-				handleValidationError(err + atPath(path));
+				handleValidationError(err + atPath(path), path);
 				valid = false;
 			}
 		}
@@ -1,9 +1,11 @@
 package com.wdroome.json.validate;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -12,6 +14,11 @@ import com.wdroome.json.*;
 
 /**
  * Validate a JSON Object Dictionary.
+ * <p>
+ * The constructor compiles the field specifications into a hash table
+ * of {@link SimpleKey} names plus a list of the other key tests,
+ * so validating a field with a simple key is one hash lookup,
+ * rather than a test against each field specification in turn.
  * @author wdr
  */
 public class JSONValidate_Object extends JSONValidate
@@ -87,6 +94,15 @@ public class JSONValidate_Object extends JSONValidate
 			}
 		}
 		
+		/**
+		 * Return the key.
+		 * @return The key.
+		 */
+		public String getName()
+		{
+			return m_name;
+		}
+		
 		/** @see IKeyTest#keyMatches(String) */
 		@Override
 		public boolean keyMatches(String key)
@@ -108,6 +124,7 @@ public class JSONValidate_Object extends JSONValidate
 	public static class RegexKey implements IKeyTest
 	{
 		private final Pattern m_pattern;
+		private final CharClassPattern m_charClass;
 		
 		/**
 		 * Create a key test using a regular expression to specify the key names.
@@ -118,11 +135,15 @@ public class JSONValidate_Object extends JSONValidate
 		public RegexKey(String regex) throws PatternSyntaxException
 		{
 			m_pattern = Pattern.compile(regex);
+			m_charClass = CharClassPattern.compile(regex);
 		}
 		
 		/** @see IKeyTest#keyMatches(String) */
 		public boolean keyMatches(String key)
 		{
+			if (m_charClass != null) {
+				return m_charClass.matches(key);
+			}
 			return m_pattern.matcher(key).matches();
 		}
 		
@@ -142,6 +163,12 @@ public class JSONValidate_Object extends JSONValidate
 	
 	private final FieldSpec[] m_fieldSpecs;
 	private final String[] m_requiredFields;
+	
+	/** For each SimpleKey name, the index of the first FieldSpec with that key. */
+	private final HashMap<String,Integer> m_simpleKeyIndexes = new HashMap<String,Integer>();
+	
+	/** The indexes of the FieldSpecs which are not SimpleKeys, in order. */
+	private final int[] m_otherKeyIndexes;
 
 	/**
 	 * Create a validation specification for a JSON Object Dictionary.
@@ -168,12 +195,21 @@ public class JSONValidate_Object extends JSONValidate
 			m_fieldSpecs = new FieldSpec[] {new FieldSpec(new RegexKey(".*"),null)};
 		}
 		HashSet<String> requiredFields = new HashSet<String>();
-		for (FieldSpec fs: m_fieldSpecs) {
+		int[] otherKeyIndexes = new int[m_fieldSpecs.length];
+		int nOtherKeys = 0;
+		for (int i = 0; i < m_fieldSpecs.length; i++) {
+			FieldSpec fs = m_fieldSpecs[i];
 			List<String> rf = fs.m_keyTest.requiredKeys();
 			if (rf != null) {
 				requiredFields.addAll(rf);
 			}
+			if (fs.m_keyTest.getClass() == SimpleKey.class) {
+				m_simpleKeyIndexes.putIfAbsent(((SimpleKey)fs.m_keyTest).getName(), i);
+			} else {
+				otherKeyIndexes[nOtherKeys++] = i;
+			}
 		}
+		m_otherKeyIndexes = Arrays.copyOf(otherKeyIndexes, nOtherKeys);
 		int nrequired = requiredFields.size();
 		if (nrequired > 0) {
 			m_requiredFields = requiredFields.toArray(new String[nrequired]);
@@ -184,10 +220,10 @@ public class JSONValidate_Object extends JSONValidate
 	
 	/**
 	 * Validate a JSON value.
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (!super.validate(value, path)) {
 			return false;
@@ -204,19 +240,14 @@ public class JSONValidate_Object extends JSONValidate
 			// Flag as unknown any fields that don't match a FieldSpec.
 			for (Map.Entry<String, JSONValue> entry: parent.entrySet()) {
 				String name = entry.getKey();
-				boolean knownField = false;
-				for (FieldSpec fieldSpec: m_fieldSpecs) {
-					if (fieldSpec.m_keyTest.keyMatches(name)) {
-						knownField = true;
-						if (fieldSpec.m_valueSpec != null
-								&& !fieldSpec.m_valueSpec.validate(entry.getValue(), newPath(path, name))) {
-							valid = false;
-						}
-						break;
+				FieldSpec fieldSpec = findFieldSpec(name);
+				if (fieldSpec != null) {
+					if (fieldSpec.m_valueSpec != null
+							&& !fieldSpec.m_valueSpec.validate(entry.getValue(), path.member(name))) {
+						valid = false;
 					}
-				}
-				if (!knownField) {
-					handleValidationError("Unknown field \"" + name	+ "\"" + atPath(path));
+				} else {
+					handleValidationError("Unknown field \"" + name	+ "\"" + atPath(path), path);
 					valid = false;
 				}
 			}
@@ -226,7 +257,7 @@ public class JSONValidate_Object extends JSONValidate
 				for (String name : m_requiredFields) {
 					if (parent.get(name) == null) {
 						handleValidationError("Required field \"" + name
-								+ "\" missing" + atPath(path));
+								+ "\" missing" + atPath(path), path);
 						valid = false;
 					}
 				}
@@ -235,6 +266,28 @@ public class JSONValidate_Object extends JSONValidate
 		return valid;
 	}
 	
+	/**
+	 * Return the first FieldSpec whose key test matches a key.
+	 * @param name The key.
+	 * @return The first matching FieldSpec, or null if none match.
+	 */
+	private FieldSpec findFieldSpec(String name)
+	{
+		// Only the non-simple tests before the first matching SimpleKey
+		// can take precedence over it.
+		Integer simpleIndex = m_simpleKeyIndexes.get(name);
+		int limit = (simpleIndex != null) ? simpleIndex : m_fieldSpecs.length;
+		for (int i: m_otherKeyIndexes) {
+			if (i >= limit) {
+				break;
+			}
+			if (m_fieldSpecs[i].m_keyTest.keyMatches(name)) {
+				return m_fieldSpecs[i];
+			}
+		}
+		return (simpleIndex != null) ? m_fieldSpecs[simpleIndex] : null;
+	}
+	
 	/**
 	 * Collect errors in the specified list.
 	 * This method invokes collectErrors()
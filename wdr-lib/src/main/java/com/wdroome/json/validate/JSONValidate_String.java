@@ -20,6 +20,7 @@ public class JSONValidate_String extends JSONValidate
 	
 	private final Set<String> m_validStrings;
 	private final Pattern m_pattern;
+	private final CharClassPattern m_charClass;
 	private final String m_errMsgFmt;
 	
 	/**
@@ -77,6 +78,7 @@ public class JSONValidate_String extends JSONValidate
 	{
 		super(JSONValue_String.class, nullAllowed);
 		m_pattern = (regex != null) ? Pattern.compile(regex) : null;
+		m_charClass = (regex != null) ? CharClassPattern.compile(regex) : null;
 		m_validStrings = null;
 		if (errMsgFmt == null || errMsgFmt.equals("")) {
 			errMsgFmt = "String \"%s\" does not match \"" + regex + "\"";
@@ -106,6 +108,7 @@ public class JSONValidate_String extends JSONValidate
 			m_validStrings = null;
 		}
 		m_pattern = null;
+		m_charClass = null;
 		if (errMsgFmt == null || errMsgFmt.equals("")) {
 			errMsgFmt = "Illegal string \"%s\"";
 		}
@@ -123,14 +126,15 @@ public class JSONValidate_String extends JSONValidate
 		super(JSONValue_String.class, nullAllowed);
 		m_validStrings = validStrings;
 		m_pattern = null;
+		m_charClass = null;
 		m_errMsgFmt = "Illegal string \"%s\"";
 	}
 	
 	/**
-	 * See {@link JSONValidate#validate(JSONValue,String)}.
+	 * See {@link JSONValidate#validate(JSONValue,Path)}.
 	 */
 	@Override
-	public boolean validate(JSONValue value, String path) throws JSONValidationException
+	public boolean validate(JSONValue value, Path path) throws JSONValidationException
 	{
 		if (!super.validate(value, path)) {
 			return false;
@@ -142,12 +146,17 @@ public class JSONValidate_String extends JSONValidate
 			String svalue = ((JSONValue_String)value).m_value;
 			if (m_validStrings != null) {
 				if (!m_validStrings.contains(svalue)) {
-					handleValidationError(String.format(m_errMsgFmt, svalue) + atPath(path));
+					handleValidationError(String.format(m_errMsgFmt, svalue) + atPath(path), path);
+					valid = false;
+				}
+			} else if (m_charClass != null) {
+				if (!m_charClass.matches(svalue)) {
+					handleValidationError(String.format(m_errMsgFmt, svalue) + atPath(path), path);
 					valid = false;
 				}
 			} else if (m_pattern != null) {
 				if (!m_pattern.matcher(svalue).matches()) {
-					handleValidationError(String.format(m_errMsgFmt, svalue) + atPath(path));
+					handleValidationError(String.format(m_errMsgFmt, svalue) + atPath(path), path);
 					valid = false;
 				}
 			}
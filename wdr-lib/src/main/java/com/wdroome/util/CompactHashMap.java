@@ -0,0 +1,472 @@
+package com.wdroome.util;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Map which uses much less memory than a HashMap,
+ * especially for small maps.
+ * The keys and values are stored in one flat array, in insertion order,
+ * with no per-entry objects. For maps with at most MAX_LINEAR_SIZE entries,
+ * a lookup just scans the keys. Larger maps also have an open-addressing
+ * hash index, with linear probing, which maps each key to its position in the array.
+ * <p>
+ * The iterators return the entries in insertion order.
+ * Adding, getting and replacing entries take constant time,
+ * but removing an entry takes time proportional to the size of the map,
+ * because the entries after it move down.
+ * Like HashMap, this class allows null keys and values,
+ * and is not thread-safe.
+ * @param <K> The key type.
+ * @param <V> The value type.
+ * @author wdr
+ */
+public class CompactHashMap<K,V> extends AbstractMap<K,V> implements Cloneable, Serializable
+{
+	private static final long serialVersionUID = 2591858394813530542L;
+
+	/** Maps with more entries than this have a hash index. */
+	private static final int MAX_LINEAR_SIZE = 8;
+
+	private static final Object[] EMPTY_ENTRIES = new Object[0];
+
+	// Key i is m_entries[2*i], and its value is m_entries[2*i+1].
+	private Object[] m_entries;
+	private int m_size = 0;
+
+	// The hash index, or null if m_size <= MAX_LINEAR_SIZE.
+	// The length is a power of two, at least twice m_size.
+	// Each slot is 1 + the position of an entry, or 0 if empty.
+	private int[] m_index = null;
+
+	private transient int m_modCount = 0;
+	private transient Set<Map.Entry<K,V>> m_entrySet = null;
+	private transient Set<K> m_keySet = null;
+	private transient Collection<V> m_values = null;
+
+	/**
+	 * Create an empty map.
+	 */
+	public CompactHashMap()
+	{
+		m_entries = EMPTY_ENTRIES;
+	}
+
+	/**
+	 * Create an empty map with room for a given number of entries.
+	 * @param initialCapacity The initial capacity.
+	 * @throws IllegalArgumentException If initialCapacity is negative.
+	 */
+	public CompactHashMap(int initialCapacity)
+	{
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("CompactHashMap: Illegal capacity " + initialCapacity);
+		}
+		m_entries = initialCapacity > 0 ? new Object[2*initialCapacity] : EMPTY_ENTRIES;
+	}
+
+	/**
+	 * Create a map with the same mappings as another map.
+	 * @param src The source map.
+	 */
+	public CompactHashMap(Map<? extends K, ? extends V> src)
+	{
+		this(src.size());
+		putAll(src);
+	}
+
+	/**
+	 * Return a hash code for a key.
+	 */
+	private static int hash(Object key)
+	{
+		if (key == null) {
+			return 0;
+		}
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Return the position of a key, or -1 if it is not in the map.
+	 */
+	private int findEntry(Object key)
+	{
+		Object[] entries = m_entries;
+		if (m_index == null) {
+			for (int i = 0, n = 2*m_size; i < n; i += 2) {
+				Object k = entries[i];
+				if (k == key || (key != null && key.equals(k))) {
+					return i/2;
+				}
+			}
+			return -1;
+		}
+		int[] index = m_index;
+		int mask = index.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			int e = index[slot];
+			if (e == 0) {
+				return -1;
+			}
+			Object k = entries[2*(e-1)];
+			if (k == key || (key != null && key.equals(k))) {
+				return e-1;
+			}
+		}
+	}
+
+	/**
+	 * Add the entry at position iEntry to the hash index.
+	 */
+	private void indexEntry(int iEntry)
+	{
+		int[] index = m_index;
+		int mask = index.length - 1;
+		int slot = hash(m_entries[2*iEntry]) & mask;
+		while (index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = iEntry + 1;
+	}
+
+	/**
+	 * Rebuild the hash index from scratch, or drop it if the map is small.
+	 */
+	private void rebuildIndex()
+	{
+		if (m_size <= MAX_LINEAR_SIZE) {
+			m_index = null;
+			return;
+		}
+		int len = 4*MAX_LINEAR_SIZE;
+		while (len < 2*m_size) {
+			len *= 2;
+		}
+		m_index = new int[len];
+		for (int i = 0; i < m_size; i++) {
+			indexEntry(i);
+		}
+	}
+
+	/**
+	 * @see Map#size()
+	 */
+	@Override
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * @see Map#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty()
+	{
+		return m_size == 0;
+	}
+
+	/**
+	 * @see Map#get(Object)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key)
+	{
+		int i = findEntry(key);
+		return i >= 0 ? (V)m_entries[2*i+1] : null;
+	}
+
+	/**
+	 * @see Map#containsKey(Object)
+	 */
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return findEntry(key) >= 0;
+	}
+
+	/**
+	 * @see Map#put(Object, Object)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value)
+	{
+		int i = findEntry(key);
+		if (i >= 0) {
+			V oldValue = (V)m_entries[2*i+1];
+			m_entries[2*i+1] = value;
+			return oldValue;
+		}
+		if (2*m_size >= m_entries.length) {
+			int newLen = Math.max(4, m_entries.length + m_entries.length/2);
+			Object[] newEntries = new Object[newLen + (newLen & 1)];
+			System.arraycopy(m_entries, 0, newEntries, 0, 2*m_size);
+			m_entries = newEntries;
+		}
+		m_entries[2*m_size] = key;
+		m_entries[2*m_size+1] = value;
+		m_size++;
+		m_modCount++;
+		if (m_index != null && 2*m_size <= m_index.length) {
+			indexEntry(m_size-1);
+		} else if (m_size > MAX_LINEAR_SIZE) {
+			rebuildIndex();
+		}
+		return null;
+	}
+
+	/**
+	 * @see Map#remove(Object)
+	 */
+	@Override
+	public V remove(Object key)
+	{
+		int i = findEntry(key);
+		return i >= 0 ? removeEntry(i) : null;
+	}
+
+	/**
+	 * Remove the entry at a position.
+	 * @param i The position.
+	 * @return The entry's value.
+	 */
+	@SuppressWarnings("unchecked")
+	private V removeEntry(int i)
+	{
+		V oldValue = (V)m_entries[2*i+1];
+		System.arraycopy(m_entries, 2*i+2, m_entries, 2*i, 2*(m_size-i-1));
+		m_size--;
+		m_entries[2*m_size] = null;
+		m_entries[2*m_size+1] = null;
+		m_modCount++;
+		if (m_index != null) {
+			rebuildIndex();
+		}
+		return oldValue;
+	}
+
+	/**
+	 * @see Map#clear()
+	 */
+	@Override
+	public void clear()
+	{
+		for (int i = 0; i < 2*m_size; i++) {
+			m_entries[i] = null;
+		}
+		m_size = 0;
+		m_index = null;
+		m_modCount++;
+	}
+
+	/**
+	 * Return a shallow copy of this map: the keys and values are not cloned.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object clone()
+	{
+		CompactHashMap<K,V> copy;
+		try {
+			copy = (CompactHashMap<K,V>)super.clone();
+		} catch (CloneNotSupportedException e) {
+			// Shouldn't happen -- we are Cloneable.
+			throw new InternalError(e);
+		}
+		copy.m_entries = m_size > 0 ? m_entries.clone() : EMPTY_ENTRIES;
+		copy.m_index = m_index != null ? m_index.clone() : null;
+		copy.m_entrySet = null;
+		copy.m_keySet = null;
+		copy.m_values = null;
+		return copy;
+	}
+
+	/**
+	 * @see Map#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<K,V>> entrySet()
+	{
+		if (m_entrySet == null) {
+			m_entrySet = new AbstractSet<Map.Entry<K,V>>() {
+				@Override public int size() { return m_size; }
+				@Override public void clear() { CompactHashMap.this.clear(); }
+				@Override public Iterator<Map.Entry<K,V>> iterator()
+				{
+					return new EntryIterator<Map.Entry<K,V>>() {
+						@Override Map.Entry<K,V> get(int i) { return new Entry(i); }
+					};
+				}
+			};
+		}
+		return m_entrySet;
+	}
+
+	/**
+	 * @see Map#keySet()
+	 */
+	@Override
+	public Set<K> keySet()
+	{
+		if (m_keySet == null) {
+			m_keySet = new AbstractSet<K>() {
+				@Override public int size() { return m_size; }
+				@Override public void clear() { CompactHashMap.this.clear(); }
+				@Override public boolean contains(Object key) { return containsKey(key); }
+				@Override public Iterator<K> iterator()
+				{
+					return new EntryIterator<K>() {
+						@Override @SuppressWarnings("unchecked") K get(int i) { return (K)m_entries[2*i]; }
+					};
+				}
+			};
+		}
+		return m_keySet;
+	}
+
+	/**
+	 * @see Map#values()
+	 */
+	@Override
+	public Collection<V> values()
+	{
+		if (m_values == null) {
+			m_values = new AbstractCollection<V>() {
+				@Override public int size() { return m_size; }
+				@Override public void clear() { CompactHashMap.this.clear(); }
+				@Override public Iterator<V> iterator()
+				{
+					return new EntryIterator<V>() {
+						@Override @SuppressWarnings("unchecked") V get(int i) { return (V)m_entries[2*i+1]; }
+					};
+				}
+			};
+		}
+		return m_values;
+	}
+
+	/**
+	 * Base class for iterators over the entries, in insertion order.
+	 * @param <T> The type returned by the iterator.
+	 */
+	private abstract class EntryIterator<T> implements Iterator<T>
+	{
+		private int m_next = 0;
+		private int m_last = -1;
+		private int m_expectedModCount = m_modCount;
+
+		/**
+		 * Return the item for the entry at position i.
+		 */
+		abstract T get(int i);
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_next < m_size;
+		}
+
+		@Override
+		public T next()
+		{
+			if (m_modCount != m_expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (m_next >= m_size) {
+				throw new NoSuchElementException();
+			}
+			m_last = m_next++;
+			return get(m_last);
+		}
+
+		@Override
+		public void remove()
+		{
+			if (m_last < 0) {
+				throw new IllegalStateException();
+			}
+			if (m_modCount != m_expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeEntry(m_last);
+			m_next = m_last;
+			m_last = -1;
+			m_expectedModCount = m_modCount;
+		}
+	}
+
+	/**
+	 * A Map.Entry for the entry at a position.
+	 * setValue() changes the value in the map.
+	 * Like a HashMap entry, it is only valid until the map is structurally modified.
+	 */
+	private class Entry implements Map.Entry<K,V>
+	{
+		private final int m_pos;
+
+		private Entry(int pos)
+		{
+			m_pos = pos;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public K getKey()
+		{
+			return (K)m_entries[2*m_pos];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue()
+		{
+			return (V)m_entries[2*m_pos+1];
+		}
+
+		@Override
+		public V setValue(V value)
+		{
+			V oldValue = getValue();
+			m_entries[2*m_pos+1] = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+			Object key = getKey();
+			Object value = getValue();
+			return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+					&& (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			Object key = getKey();
+			Object value = getValue();
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString()
+		{
+			return getKey() + "=" + getValue();
+		}
+	}
+}
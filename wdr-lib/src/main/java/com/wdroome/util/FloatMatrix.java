@@ -1,16 +1,30 @@
 package com.wdroome.util;
 
+import java.util.Arrays;
+
 /**
  * A large, possibly sparse, matrix of floats.
  * This is designed to handle large matrixes (e.g., tens of millions of entries)
  * and be efficient both in memory and time.
  * Hence we've hard-wired the value type as float,
  * rather than allow arbitrary objects.
+ * <p>
+ * By default the elements are stored in a three-level tree of arrays,
+ * which are only allocated when an element in their range is set.
+ * For a matrix which will be mostly full, {@link #createDense(int)}
+ * creates a matrix which stores all elements in one contiguous array.
+ * A dense matrix uses NaN to mark an unset element,
+ * so setting an element to NaN is the same as unsetting it.
+ * <p>
+ * A sparse matrix uses long element offsets, so the maximum index
+ * can be well over 46,340 (the square root of 2^31).
+ * The level 1 and level 2 arrays grow as elements are set,
+ * so the memory used depends on the populated blocks, not on the maximum index.
  * @author wdr
  */
 public class FloatMatrix
 {
-	public static final int DEF_MAX_INDEX = 32768;
+	public static final int DEF_MAX_INDEX = 1048576;
 	public static final int DEF_LVL2_ARRAY_SIZE = 1024;
 	public static final int DEF_LVL3_ARRAY_SIZE = 1024;
 	
@@ -19,8 +33,14 @@ public class FloatMatrix
 	private final int m_n2;
 	private final int m_n3;
 	
-	private final float[][][] m_data;
-	private final BitArray[][] m_valueSetBits;
+	/** The number of elements covered by a level 2 array: m_n2*m_n3. */
+	private final long m_n23;
+	
+	private float[][][] m_data;
+	private BitArray[][] m_valueSetBits;
+	
+	/** For a dense matrix, all elements, in row order. Null for a sparse matrix. */
+	private final float[] m_dense;
 	
 	private float m_defaultValue = 0;
 	
@@ -34,22 +54,62 @@ public class FloatMatrix
 	 * Create a matrix and specify all tuning parameters.
 	 * @param maxIndex The maximum number of rows or columns.
 	 * 			If 0, use the default.
-	 * @param n2 The size of the "level 2" arrays (pointers to level 3 arrays).
+	 * @param n2 The maximum size of the "level 2" arrays (pointers to level 3 arrays).
 	 * 			If 0, use the default.
 	 * @param n3 The size of the "level 3" arrays (actual floats).
 	 * 			If 0, use the default.
+	 * @throws IllegalArgumentException If the parameters would need
+	 * 			too many level 1 entries.
 	 */
 	public FloatMatrix(int maxIndex, int n2, int n3)
 	{
 		m_maxIndex = maxIndex > 0 ? maxIndex : DEF_MAX_INDEX;
 		m_n2 = n2 > 0 ? n2 : DEF_LVL2_ARRAY_SIZE;
 		m_n3 = n3 > 0 ? n3 : DEF_LVL3_ARRAY_SIZE;
-		m_n1 = (m_maxIndex*m_maxIndex + m_n2*m_n3 - 1) / (m_n2*m_n3);
-		if (m_n1 <= 0) {
+		m_n23 = (long)m_n2*m_n3;
+		long n1 = ((long)m_maxIndex*m_maxIndex + m_n23 - 1) / m_n23;
+		if (n1 <= 0 || n1 > Integer.MAX_VALUE - 8) {
 			throw new IllegalArgumentException("Invalid config parameters");
 		}
-		m_data = new float[m_n1][][];
-		m_valueSetBits = new BitArray[m_n1][];
+		m_n1 = (int)n1;
+		m_data = new float[0][][];
+		m_valueSetBits = new BitArray[0][];
+		m_dense = null;
+	}
+	
+	/**
+	 * Create a dense matrix.
+	 * @param maxIndex The maximum number of rows or columns.
+	 * @param dense The element array, with maxIndex*maxIndex elements.
+	 */
+	private FloatMatrix(int maxIndex, float[] dense)
+	{
+		m_maxIndex = maxIndex;
+		m_n1 = 0;
+		m_n2 = 0;
+		m_n3 = 0;
+		m_n23 = 0;
+		m_data = null;
+		m_valueSetBits = null;
+		m_dense = dense;
+		Arrays.fill(m_dense, Float.NaN);
+	}
+	
+	/**
+	 * Create a dense matrix. This allocates space for all maxIndex*maxIndex
+	 * elements up front, but get() and set() are much faster than for a sparse matrix.
+	 * Note that a dense matrix cannot store NaN: setting an element to NaN unsets it.
+	 * @param maxIndex The maximum number of rows or columns.
+	 * @return A new dense matrix with no elements set.
+	 * @throws IllegalArgumentException If maxIndex is not positive,
+	 * 		or maxIndex*maxIndex exceeds the maximum array size.
+	 */
+	public static FloatMatrix createDense(int maxIndex)
+	{
+		if (maxIndex <= 0 || (long)maxIndex * maxIndex > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Invalid dense matrix size " + maxIndex);
+		}
+		return new FloatMatrix(maxIndex, new float[maxIndex * maxIndex]);
 	}
 	
 	/**
@@ -100,46 +160,28 @@ public class FloatMatrix
 		if (i < 0 || i >= m_maxIndex || j < 0 || j >= m_maxIndex) {
 			throw new IndexOutOfBoundsException(i + "," + j + " out of bounds");
 		}
-		boolean debug = false;
-		int k = i*m_maxIndex + j;
-		if (debug) {
-			System.out.println(i + "," + j + " -> " + k);
-		}
-		int x = k / (m_n2*m_n3);
-		if (debug) {
-			System.out.println("  x " + x);
-		}
-		float[][] v2 = m_data[x];
-		BitArray[] bits2 = m_valueSetBits[x];
-		if (v2 == null) {
-			m_data[x] = v2 = new float[m_n2][];
-			m_valueSetBits[x] = bits2 = new BitArray[m_n2];
-			m_lvl2Arrays++;
-		}
-		int y = (k % (m_n2*m_n3)) / m_n3;
-		if (debug) {
-			System.out.println("  y " + y);
+		if (j+1 >= m_ncols) {
+			m_ncols = j+1;
 		}
-		float[] v3 = v2[y];
-		BitArray bits3 = bits2[y];
-		if (v3 == null) {
-			v2[y] = v3 = new float[m_n3];
-			bits2[y] = bits3 = new BitArray(m_n3);
-			m_lvl3Arrays++;
+		if (i+1 >= m_nrows) {
+			m_nrows = i+1;
 		}
-		int z = k % m_n3;
-		if (debug) {
-			System.out.println("  z " + z);
+		if (m_dense != null) {
+			int k = i*m_maxIndex + j;
+			float prev = m_dense[k];
+			m_dense[k] = v;
+			return prev == prev ? prev : m_defaultValue;
 		}
+		long k = (long)i*m_maxIndex + j;
+		int x = (int)(k / m_n23);
+		int y = (int)(k % m_n23) / m_n3;
+		int z = (int)(k % m_n3);
+		allocate(x, y);
+		float[] v3 = m_data[x][y];
+		BitArray bits3 = m_valueSetBits[x][y];
 		float prev = bits3.isSet(z) ? v3[z] : m_defaultValue;
 		v3[z] = v;
 		bits3.set(z, true);
-		if (i+1 >= m_nrows) {
-			m_nrows = i+1;
-		}
-		if (j+1 >= m_ncols) {
-			m_ncols = j+1;
-		}
 		return prev;
 	}
 	
@@ -155,23 +197,203 @@ public class FloatMatrix
 		if (i < 0 || i >= m_maxIndex || j < 0 || j >= m_maxIndex) {
 			throw new IndexOutOfBoundsException(i + "," + j + " out of bounds");
 		}
-		int k = i*m_maxIndex + j;
-		int x = k / (m_n2*m_n3);
-		float[][] v2 = m_data[x];
+		if (m_dense != null) {
+			float v = m_dense[i*m_maxIndex + j];
+			return v == v ? v : m_defaultValue;
+		}
+		long k = (long)i*m_maxIndex + j;
+		int x = (int)(k / m_n23);
+		float[][] v2 = x < m_data.length ? m_data[x] : null;
 		if (v2 == null) {
 			return m_defaultValue;
 		}
 		BitArray[] bits2 = m_valueSetBits[x];
-		int y = (k % (m_n2*m_n3)) / m_n3;
-		float[] v3 = v2[y];
+		int y = (int)(k % m_n23) / m_n3;
+		float[] v3 = y < v2.length ? v2[y] : null;
 		if (v3 == null) {
 			return m_defaultValue;
 		}
 		BitArray bits3 = bits2[y];
-		int z = k % m_n3;
+		int z = (int)(k % m_n3);
 		return bits3.isSet(z) ? v3[z] : m_defaultValue;
 	}
 	
+	/**
+	 * Make sure the level 3 array for level 1 index x and level 2 index y exists.
+	 * Allocate or grow the level 1 and level 2 arrays as needed.
+	 * @param x The level 1 index.
+	 * @param y The level 2 index.
+	 */
+	private void allocate(int x, int y)
+	{
+		if (x >= m_data.length) {
+			int n = grownSize(m_data.length, x, m_n1);
+			m_data = Arrays.copyOf(m_data, n);
+			m_valueSetBits = Arrays.copyOf(m_valueSetBits, n);
+		}
+		float[][] v2 = m_data[x];
+		BitArray[] bits2 = m_valueSetBits[x];
+		if (v2 == null) {
+			int n = grownSize(0, y, m_n2);
+			m_data[x] = v2 = new float[n][];
+			m_valueSetBits[x] = bits2 = new BitArray[n];
+			m_lvl2Arrays++;
+		} else if (y >= v2.length) {
+			int n = grownSize(v2.length, y, m_n2);
+			m_data[x] = v2 = Arrays.copyOf(v2, n);
+			m_valueSetBits[x] = bits2 = Arrays.copyOf(bits2, n);
+		}
+		if (v2[y] == null) {
+			v2[y] = new float[m_n3];
+			bits2[y] = new BitArray(m_n3);
+			m_lvl3Arrays++;
+		}
+	}
+	
+	/**
+	 * Return the new size for a growable array.
+	 * @param size The current size.
+	 * @param index The index which must fit in the new array.
+	 * @param maxSize The maximum size.
+	 * @return The new size: at least twice the current size
+	 * 		and large enough for index, but not more than maxSize.
+	 */
+	private static int grownSize(int size, int index, int maxSize)
+	{
+		long n = Math.max(Math.max(2L*size, 8), index + 1);
+		return (int)Math.min(n, maxSize);
+	}
+	
+	/**
+	 * Copy the first elements of a row into an array.
+	 * This walks the storage arrays directly, so it is much faster
+	 * than calling {@link #get(int, int)} for each element.
+	 * @param i The row index.
+	 * @param ncols The number of elements to copy, starting with column 0.
+	 * @param dest The values at [i,0] to [i,ncols-1] are stored in dest[0] to dest[ncols-1].
+	 * 		Elements that were never set get the default value.
+	 * @return The number of elements in the row that have been set.
+	 * @throws IndexOutOfBoundsException If i or ncols exceed the maximum allowable index.
+	 */
+	public int getRow(int i, int ncols, float[] dest)
+	{
+		if (i < 0 || i >= m_maxIndex || ncols < 0 || ncols > m_maxIndex) {
+			throw new IndexOutOfBoundsException(i + "," + ncols + " out of bounds");
+		}
+		int nSet = 0;
+		if (m_dense != null) {
+			// Keep this loop simple, so the JIT can unroll and vectorize it.
+			float defaultValue = m_defaultValue;
+			for (int j = 0, k = i*m_maxIndex; j < ncols; j++, k++) {
+				float v = m_dense[k];
+				if (v == v) {
+					dest[j] = v;
+					nSet++;
+				} else {
+					dest[j] = defaultValue;
+				}
+			}
+			return nSet;
+		}
+		int j = 0;
+		while (j < ncols) {
+			long k = (long)i*m_maxIndex + j;
+			int x = (int)(k / m_n23);
+			int y = (int)(k % m_n23) / m_n3;
+			int z = (int)(k % m_n3);
+			int n = Math.min(m_n3 - z, ncols - j);
+			float[][] v2 = x < m_data.length ? m_data[x] : null;
+			float[] v3 = v2 != null && y < v2.length ? v2[y] : null;
+			if (v3 == null) {
+				for (int jEnd = j + n; j < jEnd; j++) {
+					dest[j] = m_defaultValue;
+				}
+			} else {
+				BitArray bits3 = m_valueSetBits[x][y];
+				for (int zEnd = z + n; z < zEnd; z++, j++) {
+					if (bits3.isSet(z)) {
+						dest[j] = v3[z];
+						nSet++;
+					} else {
+						dest[j] = m_defaultValue;
+					}
+				}
+			}
+		}
+		return nSet;
+	}
+	
+	/**
+	 * Copy the first elements of a row into an array.
+	 * @param i The row index.
+	 * @param dest The values at [i,0] to [i,dest.length-1] are stored in dest.
+	 * 		Elements that were never set get the default value.
+	 * @return The number of elements copied from the row that have been set.
+	 * @throws IndexOutOfBoundsException If i or dest.length exceed the maximum allowable index.
+	 * @see #getRow(int, int, float[])
+	 */
+	public int getRow(int i, float[] dest)
+	{
+		return getRow(i, dest.length, dest);
+	}
+	
+	/**
+	 * Set the first elements of a row from an array.
+	 * This is equivalent to calling {@link #set(int, int, float)} for each element,
+	 * but it walks the storage arrays directly.
+	 * @param i The row index.
+	 * @param ncols The number of elements to set, starting with column 0.
+	 * @param src The new values for [i,0] to [i,ncols-1].
+	 * @throws IndexOutOfBoundsException If i or ncols exceed the maximum allowable index.
+	 */
+	public void setRow(int i, int ncols, float[] src)
+	{
+		if (i < 0 || i >= m_maxIndex || ncols < 0 || ncols > m_maxIndex) {
+			throw new IndexOutOfBoundsException(i + "," + ncols + " out of bounds");
+		}
+		if (ncols == 0) {
+			return;
+		}
+		if (i+1 >= m_nrows) {
+			m_nrows = i+1;
+		}
+		if (ncols >= m_ncols) {
+			m_ncols = ncols;
+		}
+		if (m_dense != null) {
+			System.arraycopy(src, 0, m_dense, i*m_maxIndex, ncols);
+			return;
+		}
+		int j = 0;
+		while (j < ncols) {
+			long k = (long)i*m_maxIndex + j;
+			int x = (int)(k / m_n23);
+			int y = (int)(k % m_n23) / m_n3;
+			int z = (int)(k % m_n3);
+			int n = Math.min(m_n3 - z, ncols - j);
+			allocate(x, y);
+			float[] v3 = m_data[x][y];
+			BitArray bits3 = m_valueSetBits[x][y];
+			System.arraycopy(src, j, v3, z, n);
+			for (int zEnd = z + n; z < zEnd; z++) {
+				bits3.set(z, true);
+			}
+			j += n;
+		}
+	}
+	
+	/**
+	 * Set the first elements of a row from an array.
+	 * @param i The row index.
+	 * @param src The new values for [i,0] to [i,src.length-1].
+	 * @throws IndexOutOfBoundsException If i or src.length exceed the maximum allowable index.
+	 * @see #setRow(int, int, float[])
+	 */
+	public void setRow(int i, float[] src)
+	{
+		setRow(i, src.length, src);
+	}
+	
 	/**
 	 * Unset a matrix element. Note that index still exists.
 	 * But get(i,j) will return the default value,
@@ -186,20 +408,26 @@ public class FloatMatrix
 		if (i < 0 || i >= m_maxIndex || j < 0 || j >= m_maxIndex) {
 			throw new IndexOutOfBoundsException(i + "," + j + " out of bounds");
 		}
-		int k = i*m_maxIndex + j;
-		int x = k / (m_n2*m_n3);
-		float[][] v2 = m_data[x];
+		if (m_dense != null) {
+			int k = i*m_maxIndex + j;
+			float prev = m_dense[k];
+			m_dense[k] = Float.NaN;
+			return prev == prev ? prev : m_defaultValue;
+		}
+		long k = (long)i*m_maxIndex + j;
+		int x = (int)(k / m_n23);
+		float[][] v2 = x < m_data.length ? m_data[x] : null;
 		if (v2 == null) {
 			return m_defaultValue;
 		}
 		BitArray[] bits2 = m_valueSetBits[x];
-		int y = (k % (m_n2*m_n3)) / m_n3;
-		float[] v3 = v2[y];
+		int y = (int)(k % m_n23) / m_n3;
+		float[] v3 = y < v2.length ? v2[y] : null;
 		if (v3 == null) {
 			return m_defaultValue;
 		}
 		BitArray bits3 = bits2[y];
-		int z = k % m_n3;
+		int z = (int)(k % m_n3);
 		float prev = bits3.isSet(z) ? v3[z] : m_defaultValue;
 		bits3.set(z, false);
 		if (bits3.allClear()) {
@@ -219,6 +447,10 @@ public class FloatMatrix
 		if (i < 0 || i >= m_maxIndex) {
 			throw new IndexOutOfBoundsException(i + " out of bounds");
 		}
+		if (m_dense != null) {
+			Arrays.fill(m_dense, i*m_maxIndex, i*m_maxIndex + m_ncols, Float.NaN);
+			return;
+		}
 		for (int j = 0; j < m_ncols; j++) {
 			unset(i, j);
 		}
@@ -268,18 +500,22 @@ public class FloatMatrix
 		if (i < 0 || i >= m_maxIndex || j < 0 || j >= m_maxIndex) {
 			throw new IndexOutOfBoundsException(i + "," + j + " out of bounds");
 		}
-		int k = i*m_maxIndex + j;
-		int x = k / (m_n2*m_n3);
-		BitArray[] bits2 = m_valueSetBits[x];
+		if (m_dense != null) {
+			float v = m_dense[i*m_maxIndex + j];
+			return v == v;
+		}
+		long k = (long)i*m_maxIndex + j;
+		int x = (int)(k / m_n23);
+		BitArray[] bits2 = x < m_valueSetBits.length ? m_valueSetBits[x] : null;
 		if (bits2 == null) {
 			return false;
 		}
-		int y = (k % (m_n2*m_n3)) / m_n3;
-		BitArray bits3 = bits2[y];
+		int y = (int)(k % m_n23) / m_n3;
+		BitArray bits3 = y < bits2.length ? bits2[y] : null;
 		if (bits3 == null) {
 			return false;
 		}
-		return bits3.isSet(k % m_n3);
+		return bits3.isSet((int)(k % m_n3));
 	}
 	
 	/**
@@ -312,6 +548,15 @@ public class FloatMatrix
 		return m_maxIndex;
 	}
 
+	/**
+	 * Return true if this is a dense matrix.
+	 * @return True if this matrix was created by {@link #createDense(int)}.
+	 */
+	public boolean isDense()
+	{
+		return m_dense != null;
+	}
+
 	/**
 	 * Return the number of "level 2" arrays allocated for this matrix (for debugging and performance analysis).
 	 * @return The number of "level 2" arrays allocated for this matrix.
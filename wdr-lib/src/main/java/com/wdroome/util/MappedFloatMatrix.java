@@ -0,0 +1,317 @@
+package com.wdroome.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A square matrix of floats, stored in row-major order outside the Java heap,
+ * either in direct ByteBuffers or in a memory-mapped file.
+ * An N x N matrix takes 4*N*N bytes, but the garbage collector never sees them,
+ * and a file-backed matrix can be re-opened almost instantly.
+ * <p>
+ * A file starts with a 32 byte header: a magic number, a format version,
+ * the number of rows, a time stamp and a client-defined tag. Clients can use
+ * the tag to check that a file matches their data, e.g., with a hash of the row names.
+ * The floats follow the header, in native byte order.
+ * <p>
+ * Because a single ByteBuffer cannot exceed 2GB, large matrixes use several buffers,
+ * each with a whole number of rows.
+ * <p>
+ * This class is not synchronized. Note that reads and writes
+ * of individual floats are atomic.
+ * @author wdr
+ */
+public class MappedFloatMatrix
+{
+	/** The number of bytes in the file header. */
+	public static final int HEADER_SIZE = 32;
+
+	private static final int MAGIC = 0x464d4154;	// "FMAT"
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int OFF_MAGIC = 0;
+	private static final int OFF_VERSION = 4;
+	private static final int OFF_SIZE = 8;
+	private static final int OFF_TIMESTAMP = 16;
+	private static final int OFF_TAG = 24;
+
+	private static final long MAX_BUFFER_BYTES = Integer.MAX_VALUE;
+
+	private final int m_n;
+	private final int m_rowsPerBuffer;
+	private final FloatBuffer[] m_rows;
+	private final ByteBuffer[] m_buffers;
+	private final ByteBuffer m_header;
+	private final File m_file;
+
+	/**
+	 * Create a matrix with the given buffers.
+	 */
+	private MappedFloatMatrix(int n, ByteBuffer header, File file, FileChannel channel)
+			throws IOException
+	{
+		m_n = n;
+		m_header = header;
+		m_file = file;
+		m_rowsPerBuffer = rowsPerBuffer(n);
+		int nBuffers = n > 0 ? (n + m_rowsPerBuffer - 1) / m_rowsPerBuffer : 0;
+		m_rows = new FloatBuffer[nBuffers];
+		m_buffers = new ByteBuffer[nBuffers];
+		for (int iBuff = 0; iBuff < nBuffers; iBuff++) {
+			int nRows = Math.min(m_rowsPerBuffer, n - iBuff*m_rowsPerBuffer);
+			long nBytes = 4L * nRows * n;
+			ByteBuffer bytes;
+			if (channel != null) {
+				long offset = HEADER_SIZE + 4L * iBuff * m_rowsPerBuffer * n;
+				bytes = channel.map(FileChannel.MapMode.READ_WRITE, offset, nBytes);
+			} else {
+				bytes = ByteBuffer.allocateDirect((int)nBytes);
+			}
+			m_buffers[iBuff] = bytes;
+			m_rows[iBuff] = bytes.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+	}
+
+	private static int rowsPerBuffer(int n)
+	{
+		if (n <= 0) {
+			return 1;
+		}
+		long rowBytes = 4L * n;
+		return (int)Math.max(1, Math.min(n, MAX_BUFFER_BYTES / rowBytes));
+	}
+
+	/**
+	 * Create a new matrix in direct ByteBuffers.
+	 * The floats are not initialized.
+	 * @param n The number of rows and columns.
+	 * @return The new matrix.
+	 * @throws IllegalArgumentException If n is negative.
+	 */
+	public static MappedFloatMatrix allocateDirect(int n)
+	{
+		if (n < 0) {
+			throw new IllegalArgumentException("MappedFloatMatrix: invalid size " + n);
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		initHeader(header, n);
+		try {
+			return new MappedFloatMatrix(n, header, null, null);
+		} catch (IOException e) {
+			// Shouldn't happen without a file.
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	/**
+	 * Create a new file for a matrix, and map it into memory.
+	 * If the file exists, replace it.
+	 * The floats are initially zero.
+	 * @param file The file.
+	 * @param n The number of rows and columns.
+	 * @return The new matrix.
+	 * @throws IOException If we cannot create or map the file.
+	 * @throws IllegalArgumentException If n is negative.
+	 */
+	public static MappedFloatMatrix create(File file, int n) throws IOException
+	{
+		if (n < 0) {
+			throw new IllegalArgumentException("MappedFloatMatrix: invalid size " + n);
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(0);
+			raf.setLength(HEADER_SIZE + 4L * n * n);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			initHeader(header, n);
+			return new MappedFloatMatrix(n, header, file, channel);
+		}
+	}
+
+	/**
+	 * Map an existing matrix file into memory.
+	 * Changes to the matrix will be written back to the file.
+	 * @param file The file.
+	 * @return The matrix.
+	 * @throws IOException If we cannot read or map the file,
+	 * 		or if it is not a valid matrix file.
+	 */
+	public static MappedFloatMatrix open(File file) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long fileLen = raf.length();
+			if (fileLen < HEADER_SIZE) {
+				throw new IOException(file + ": not a float matrix file");
+			}
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.nativeOrder());
+			if (header.getInt(OFF_MAGIC) != MAGIC) {
+				throw new IOException(file + ": not a float matrix file");
+			}
+			if (header.getInt(OFF_VERSION) != FORMAT_VERSION) {
+				throw new IOException(file + ": unknown float matrix format version "
+								+ header.getInt(OFF_VERSION));
+			}
+			int n = header.getInt(OFF_SIZE);
+			if (n < 0 || fileLen != HEADER_SIZE + 4L * n * n) {
+				throw new IOException(file + ": float matrix file has the wrong length");
+			}
+			return new MappedFloatMatrix(n, header, file, channel);
+		}
+	}
+
+	private static void initHeader(ByteBuffer header, int n)
+	{
+		header.order(ByteOrder.nativeOrder());
+		header.putInt(OFF_MAGIC, MAGIC);
+		header.putInt(OFF_VERSION, FORMAT_VERSION);
+		header.putInt(OFF_SIZE, n);
+		header.putLong(OFF_TIMESTAMP, 0);
+		header.putLong(OFF_TAG, 0);
+	}
+
+	/**
+	 * Return the number of rows and columns.
+	 * @return The number of rows and columns.
+	 */
+	public int size()
+	{
+		return m_n;
+	}
+
+	/**
+	 * Return the backing file.
+	 * @return The backing file, or null if this matrix is in direct buffers.
+	 */
+	public File getFile()
+	{
+		return m_file;
+	}
+
+	/**
+	 * Return an element.
+	 * @param i The row index.
+	 * @param j The column index.
+	 * @return The value of element [i,j].
+	 * @throws IndexOutOfBoundsException If i or j are out of bounds.
+	 */
+	public float get(int i, int j)
+	{
+		if (j < 0 || j >= m_n) {
+			throw new IndexOutOfBoundsException(i + "," + j + " out of bounds");
+		}
+		return m_rows[i / m_rowsPerBuffer].get((i % m_rowsPerBuffer) * m_n + j);
+	}
+
+	/**
+	 * Set an element.
+	 * @param i The row index.
+	 * @param j The column index.
+	 * @param v The new value.
+	 * @throws IndexOutOfBoundsException If i or j are out of bounds.
+	 */
+	public void set(int i, int j, float v)
+	{
+		if (j < 0 || j >= m_n) {
+			throw new IndexOutOfBoundsException(i + "," + j + " out of bounds");
+		}
+		m_rows[i / m_rowsPerBuffer].put((i % m_rowsPerBuffer) * m_n + j, v);
+	}
+
+	/**
+	 * Copy a row into an array.
+	 * @param i The row index.
+	 * @param dest The destination array. Must have at least size() elements.
+	 * @throws IndexOutOfBoundsException If i is out of bounds.
+	 */
+	public void getRow(int i, float[] dest)
+	{
+		FloatBuffer buff = m_rows[i / m_rowsPerBuffer].duplicate();
+		buff.position((i % m_rowsPerBuffer) * m_n);
+		buff.get(dest, 0, m_n);
+	}
+
+	/**
+	 * Copy an array into a row.
+	 * @param i The row index.
+	 * @param src The new values. Must have at least size() elements.
+	 * @throws IndexOutOfBoundsException If i is out of bounds.
+	 */
+	public void setRow(int i, float[] src)
+	{
+		FloatBuffer buff = m_rows[i / m_rowsPerBuffer].duplicate();
+		buff.position((i % m_rowsPerBuffer) * m_n);
+		buff.put(src, 0, m_n);
+	}
+
+	/**
+	 * Set all elements to the same value.
+	 * @param v The value.
+	 */
+	public void fill(float v)
+	{
+		float[] row = new float[m_n];
+		Arrays.fill(row, v);
+		for (int i = 0; i < m_n; i++) {
+			setRow(i, row);
+		}
+	}
+
+	/**
+	 * Return the time stamp in the header.
+	 * @return The time stamp in the header.
+	 */
+	public long getTimestamp()
+	{
+		return m_header.getLong(OFF_TIMESTAMP);
+	}
+
+	/**
+	 * Set the time stamp in the header.
+	 * @param timestamp The new time stamp.
+	 */
+	public void setTimestamp(long timestamp)
+	{
+		m_header.putLong(OFF_TIMESTAMP, timestamp);
+	}
+
+	/**
+	 * Return the client-defined tag in the header.
+	 * @return The client-defined tag in the header.
+	 */
+	public long getTag()
+	{
+		return m_header.getLong(OFF_TAG);
+	}
+
+	/**
+	 * Set the client-defined tag in the header.
+	 * @param tag The new tag.
+	 */
+	public void setTag(long tag)
+	{
+		m_header.putLong(OFF_TAG, tag);
+	}
+
+	/**
+	 * For a file-backed matrix, write all changes to the file.
+	 * For a direct matrix, do nothing.
+	 */
+	public void force()
+	{
+		if (m_file != null) {
+			for (ByteBuffer bytes: m_buffers) {
+				((MappedByteBuffer)bytes).force();
+			}
+			((MappedByteBuffer)m_header).force();
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package com.wdroome.util;
 
-import java.util.HashSet;
 import java.util.Arrays;
 
 /**
@@ -11,11 +10,19 @@ import java.util.Arrays;
  * NOTE: To allow for a potentially large number of distinct values,
  * this class actually converts the doubles to floats,
  * and ordinalizes the float values.
+ * <p>
+ * We accumulate values in a primitive float array. When the array is full,
+ * we sort it and remove duplicates, and only grow the array if that doesn't
+ * free enough space. So the memory is proportional to the number of distinct values,
+ * not the number of values added.
  * @author wdr
  */
 public class Ordinalizer
 {
-	private HashSet<Float> m_accumulatingValues = new HashSet<Float>();
+	private static final int INITIAL_SIZE = 1024;
+	
+	private float[] m_accumulatingValues = new float[INITIAL_SIZE];
+	private int m_nAccumulated = 0;
 	private float[] m_finalValues = null;
 	
 	/**
@@ -27,8 +34,58 @@ public class Ordinalizer
 	{
 		if (m_accumulatingValues == null)
 			throw new IllegalStateException("Ordinalizer.addValue() called after finishing.");
-		if (!Double.isNaN(value))
-			m_accumulatingValues.add((float)value);
+		if (!Double.isNaN(value)) {
+			if (m_nAccumulated >= m_accumulatingValues.length)
+				makeRoom();
+			m_accumulatingValues[m_nAccumulated++] = (float)value;
+		}
+	}
+	
+	/**
+	 * Add an array of values. Ignore NaN values.
+	 * @param values The values to add.
+	 * @throws IllegalStateException If called after {@link #doneAdding()}.
+	 */
+	public void addValues(float[] values)
+	{
+		if (m_accumulatingValues == null)
+			throw new IllegalStateException("Ordinalizer.addValues() called after finishing.");
+		for (float value: values) {
+			if (!Float.isNaN(value)) {
+				if (m_nAccumulated >= m_accumulatingValues.length)
+					makeRoom();
+				m_accumulatingValues[m_nAccumulated++] = value;
+			}
+		}
+	}
+	
+	/**
+	 * Remove duplicate values. If that leaves the array more than half full,
+	 * double its size.
+	 */
+	private void makeRoom()
+	{
+		m_nAccumulated = sortUnique(m_accumulatingValues, m_nAccumulated);
+		if (m_nAccumulated > m_accumulatingValues.length/2) {
+			m_accumulatingValues = Arrays.copyOf(m_accumulatingValues, 2*m_accumulatingValues.length);
+		}
+	}
+	
+	/**
+	 * Sort the first n elements of an array, and remove duplicates.
+	 * Like Float.equals(), this considers 0.0 and -0.0 to be different.
+	 * @return The number of unique values, which are now at the start of the array.
+	 */
+	private static int sortUnique(float[] values, int n)
+	{
+		Arrays.sort(values, 0, n);
+		int nUnique = 0;
+		for (int i = 0; i < n; i++) {
+			if (nUnique == 0 || Float.compare(values[i], values[nUnique-1]) != 0) {
+				values[nUnique++] = values[i];
+			}
+		}
+		return nUnique;
 	}
 	
 	/**
@@ -38,13 +95,9 @@ public class Ordinalizer
 	{
 		if (m_finalValues != null)
 			return;
-		m_finalValues = new float[m_accumulatingValues.size()];
-		int i = 0;
-		for (Float v:m_accumulatingValues) {
-			m_finalValues[i++] = v;
-		}
+		int n = sortUnique(m_accumulatingValues, m_nAccumulated);
+		m_finalValues = Arrays.copyOf(m_accumulatingValues, n);
 		m_accumulatingValues = null; // give it to garbage collector
-		Arrays.sort(m_finalValues);
 	}
 	
 	/**
@@ -61,6 +114,31 @@ public class Ordinalizer
 		return (index >= 0) ? (index + 1) : -1;
 	}
 	
+	/**
+	 * Replace the values in a matrix with their ordinals.
+	 * Leave NaN values and values which were never added as NaN.
+	 * For large matrixes, this processes the rows in parallel.
+	 * @param values The values. The rows may have different lengths.
+	 * @throws IllegalStateException If called before {@link #doneAdding()}.
+	 */
+	public void toOrdinals(final float[][] values)
+	{
+		if (m_finalValues == null)
+			throw new IllegalStateException("toOrdinals() called before finishing.");
+		int cellsPerRow = values.length > 0 && values[0] != null ? values[0].length : 1;
+		ParallelRows.run(values.length, cellsPerRow, (lo, hi) -> {
+				for (int iRow = lo; iRow < hi; iRow++) {
+					float[] row = values[iRow];
+					for (int i = 0; i < row.length; i++) {
+						if (!Float.isNaN(row[i])) {
+							int index = Arrays.binarySearch(m_finalValues, row[i]);
+							row[i] = (index >= 0) ? (index + 1) : Float.NaN;
+						}
+					}
+				}
+			});
+	}
+	
 	/**
 	 * Return the maximum ordinal value. That is, the number of distinct values.
 	 * @throws IllegalStateException If called before {@link #doneAdding()}.
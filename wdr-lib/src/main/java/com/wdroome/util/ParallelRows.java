@@ -0,0 +1,98 @@
+package com.wdroome.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Process the rows of a matrix in parallel, using the common fork/join pool.
+ * The caller gives the number of rows, the work per row, and an action
+ * which processes a range of rows. We split the rows into ranges
+ * with enough cells to be worth a task, and run the action for each range.
+ * Small matrixes are processed in the caller's thread.
+ * The action must be thread-safe for disjoint ranges of rows.
+ * @author wdr
+ */
+public class ParallelRows
+{
+	/**
+	 * Process a range of rows.
+	 */
+	public interface IRowRange
+	{
+		/**
+		 * Process rows lo to hi-1.
+		 * @param lo The first row.
+		 * @param hi One past the last row.
+		 */
+		public void run(int lo, int hi);
+	}
+	
+	/** The default minimum number of cells per task. */
+	public static final int DEFAULT_MIN_CELLS = 16*1024;
+	
+	private static class Task extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int m_lo;
+		private final int m_hi;
+		private final long m_cellsPerRow;
+		private final long m_minCells;
+		private final IRowRange m_action;
+		
+		private Task(int lo, int hi, long cellsPerRow, long minCells, IRowRange action)
+		{
+			m_lo = lo;
+			m_hi = hi;
+			m_cellsPerRow = cellsPerRow;
+			m_minCells = minCells;
+			m_action = action;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (m_hi - m_lo <= 1 || (m_hi - m_lo) * m_cellsPerRow <= m_minCells) {
+				m_action.run(m_lo, m_hi);
+			} else {
+				int mid = (m_lo + m_hi) >>> 1;
+				invokeAll(new Task(m_lo, mid, m_cellsPerRow, m_minCells, m_action),
+						  new Task(mid, m_hi, m_cellsPerRow, m_minCells, m_action));
+			}
+		}
+	}
+	
+	/**
+	 * Process rows 0 to nRows-1 in parallel, with the default task size.
+	 * Return when all rows have been processed.
+	 * @param nRows The number of rows.
+	 * @param cellsPerRow The number of cells in each row.
+	 * @param action The action to run for each range of rows.
+	 */
+	public static void run(int nRows, int cellsPerRow, IRowRange action)
+	{
+		run(nRows, cellsPerRow, DEFAULT_MIN_CELLS, action);
+	}
+	
+	/**
+	 * Process rows 0 to nRows-1 in parallel.
+	 * Return when all rows have been processed.
+	 * If the action throws a RuntimeException, rethrow it.
+	 * @param nRows The number of rows.
+	 * @param cellsPerRow The number of cells in each row.
+	 * @param minCells The minimum number of cells per task.
+	 * @param action The action to run for each range of rows.
+	 */
+	public static void run(int nRows, int cellsPerRow, long minCells, IRowRange action)
+	{
+		long cellsPer = Math.max(1, cellsPerRow);
+		if (nRows <= 0) {
+			return;
+		} else if (nRows == 1 || nRows * cellsPer <= minCells
+					|| ForkJoinPool.getCommonPoolParallelism() <= 1) {
+			action.run(0, nRows);
+		} else {
+			ForkJoinPool.commonPool().invoke(new Task(0, nRows, cellsPer, minCells, action));
+		}
+	}
+}
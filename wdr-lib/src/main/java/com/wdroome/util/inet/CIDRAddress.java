@@ -1,7 +1,6 @@
 package com.wdroome.util.inet;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.TreeSet;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -10,6 +9,14 @@ import java.util.NoSuchElementException;
 import java.net.UnknownHostException;
 import java.net.InetAddress;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 import java.security.MessageDigest;
 
 /**
@@ -20,27 +27,26 @@ import java.security.MessageDigest;
  */
 public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddress>
 {
-	private final String m_addr;	// The base address, in canonical string format.
+	/*
+	 * The address bits are packed into two longs, as a 128 bit unsigned number
+	 * whose high-order bit is the first bit of the address. That is, an IPV4 address
+	 * is the high 32 bits of m_hi, a MAC address is the high 48 bits of m_hi,
+	 * and an IPV6 address is m_hi followed by m_lo. The first m_maskLen bits
+	 * define the address; the remaining bits are always zero.
+	 *
+	 * We do not keep the canonical address string, the raw bytes or the mask;
+	 * we create them when a client asks for them. So a CIDR is one small object,
+	 * and contains() and covers() are a few masked long compares.
+	 */
+	private final long m_hi;		// The first 64 address bits.
+	private final long m_lo;		// The last 64 address bits; 0 unless ipv6.
 
-	private final int m_maskLen;	// The mask length, in bits.
+	private final short m_maskLen;	// The mask length, in bits.
 
-	private final byte[] m_bytes;	// The bits in the raw base address, as a byte array.
-									// The array has the appropriate number of bytes
-									// for the address type: 4 bytes/32 bits for ipv4, 16 bytes/128 bits for ipv6).
-									// The first maskLen bits define the address;
-									// the remaining bits are always zero.
+	private final byte m_addrLen;	// The address length, in bytes: 4 for ipv4, 16 for ipv6, 6 for mac.
 
-	private final byte[] m_mask;	// A bitmap with the first m_maskLen bits on.
-									// Trailing zero bytes are omitted,
-									// so the m_mask array may be shorter than the m_bytes array.
-	
-	private final String m_type; // The type of the base address -- "ipv4" or "ipv6."
-	
-	private final boolean m_ipv4;
-	private final boolean m_ipv6;
-	
 	/**
-	 * A table for creating the bytes in a prefix mask (e.g., m_mask).
+	 * A table for creating the bytes in a prefix mask (e.g., for update()).
 	 * Suppose the first M bits of the mask are on.
 	 * Then the mask has (M+7)/8 bytes.
 	 * The last byte of the mask has the value g_lastMaskByte[M%8],
@@ -53,7 +59,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 			(byte)0x80, (byte)0xc0, (byte)0xe0, (byte)0xf0,
 			(byte)0xf8, (byte)0xfc, (byte)0xfe,
 		};
-	
+
 	/**
 	 * A cache of CIDR masks. The index is the mask length.
 	 * Masks are created when needed; a null entry means a mask
@@ -62,6 +68,14 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	private static final ArrayList<byte[]> g_masks = new ArrayList<byte[]>(129);
 
+	/**
+	 * Big-endian views of byte arrays, for packing addresses.
+	 */
+	private static final VarHandle g_intView
+			= MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle g_longView
+			= MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
 	/**
 	 * Create a CIDR from a string. The string must be a valid IPV4 or IPV6 address
 	 * followed by "/n", where n is the mask length.
@@ -97,37 +111,34 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 			throw new UnknownHostException("CIDR \"" + cidr + "\" does not end in /##");
 		}
 		String addrStr = cidr.substring(0, slashIndex);
-		
+
 		// Get the address byte array.
+		byte[] bytes;
 		try {
-			m_bytes = EndpointAddress.ipAddrStrToBytes(addrStr, addrType);
+			bytes = EndpointAddress.ipAddrStrToBytes(addrStr, addrType);
 		} catch (UnknownAddressTypeException e) {
 			throw e;
 		} catch (UnknownHostException e) {
 			throw new UnknownHostException("CIDR \"" + cidr + "\" must be a numeric ip address " + e.getMessage());
 		}
-		
+
+		int maskLen;
 		try {
-			m_maskLen = Integer.parseInt(cidr.substring(slashIndex+1));
+			maskLen = Integer.parseInt(cidr.substring(slashIndex+1));
 		} catch (Exception e) {
 			throw new UnknownHostException("CIDR \"" + cidr + "\" does not end in /##");
 		}
-		if (m_maskLen > (8*m_bytes.length) || m_maskLen < 0) {
+		if (maskLen > (8*bytes.length) || maskLen < 0) {
 			throw new UnknownHostException("CIDR \"" + cidr + "\" mask length is too long");
 		}
-		
-		// Create the mask and clear all address bits not in the mask.
-		m_mask = createMask(m_maskLen);
-		clearUnmaskedBits(m_bytes, m_mask);
 
-		// Regenerate the canonical address string from the address bits.
-		EndpointAddress baseAddr = new EndpointAddress(m_bytes);
-		m_addr = baseAddr.toIPAddr();
-		m_type = baseAddr.getType();
-		m_ipv4 = baseAddr.isIPV4();
-		m_ipv6 = baseAddr.isIPV6();
+		// Pack the address and clear all address bits not in the mask.
+		m_addrLen = (byte)bytes.length;
+		m_maskLen = (short)maskLen;
+		m_hi = packHigh(bytes) & highMask(maskLen);
+		m_lo = packLow(bytes) & lowMask(maskLen);
 	}
-	
+
 	/**
 	 * Create a CIDRAddress from a byte array and a mask length.
 	 * @param bytes The mask bytes. The array must be 4 or 16 bytes. We copy this array.
@@ -140,28 +151,16 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	{
 		if (bytes.length != 4 && bytes.length != 16) {
 			throw new IllegalArgumentException("CIDR illegal byte array len " + bytes.length);
-		} else if (maskLen > 8*bytes.length) {
+		} else if (maskLen > 8*bytes.length || maskLen < 0) {
 			throw new IllegalArgumentException("CIDR mask len " + maskLen
 											+ " > byte array bit len " + bytes.length);
 		}
-		
-		// Copy the address bytes.
-		m_maskLen = maskLen;
-		m_bytes = new byte[bytes.length];
-		for (int i = 0; i < bytes.length; i++) {
-			m_bytes[i] = bytes[i];
-		}
-		
-		// Create the mask and clear all address bits not in the mask.
-		m_mask = createMask(m_maskLen);
-		clearUnmaskedBits(m_bytes, m_mask);
 
-		// Regenerate the canonical address string from the address bits.
-		EndpointAddress baseAddr = new EndpointAddress(m_bytes);
-		m_addr = baseAddr.toIPAddr();
-		m_type = baseAddr.getType();
-		m_ipv4 = baseAddr.isIPV4();
-		m_ipv6 = baseAddr.isIPV6();
+		// Pack the address and clear all address bits not in the mask.
+		m_addrLen = (byte)bytes.length;
+		m_maskLen = (short)maskLen;
+		m_hi = packHigh(bytes) & highMask(maskLen);
+		m_lo = packLow(bytes) & lowMask(maskLen);
 	}
 
 	/**
@@ -172,29 +171,18 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public CIDRAddress(InetAddress addr, int maskLen)
 	{
-		// Copy the address bytes.
 		byte[] addrBytes = addr.getAddress();
-		m_bytes = new byte[addrBytes.length];
-		for (int i = 0; i < addrBytes.length; i++) {
-			m_bytes[i] = addrBytes[i];
-		}
-
-		// Create the mask and clear all address bits not in the mask.
 		if (maskLen < 0) {
 			maskLen = 0;
 		} else if (maskLen > 8*addrBytes.length) {
 			maskLen = 8*addrBytes.length;
 		}
-		m_maskLen = maskLen;
-		m_mask = createMask(m_maskLen);
-		clearUnmaskedBits(m_bytes, m_mask);
 
-		// Regenerate the canonical address string from the address bits.
-		EndpointAddress baseAddr = new EndpointAddress(addr, m_mask);
-		m_addr = baseAddr.toIPAddr();
-		m_type = baseAddr.getType();
-		m_ipv4 = baseAddr.isIPV4();
-		m_ipv6 = baseAddr.isIPV6();
+		// Pack the address and clear all address bits not in the mask.
+		m_addrLen = (byte)addrBytes.length;
+		m_maskLen = (short)maskLen;
+		m_hi = packHigh(addrBytes) & highMask(maskLen);
+		m_lo = packLow(addrBytes) & lowMask(maskLen);
 	}
 
 	/**
@@ -222,7 +210,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	{
 		this(endpoint.getAddress(), 8*endpoint.size());
 	}
-	
+
 	/**
 	 * Create a CIDRAddress from the leading bits of an existing CIDR.
 	 * @param src The source CIDR.
@@ -233,28 +221,136 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	public CIDRAddress(CIDRAddress src, int maskLen)
 		throws UnknownHostException, IllegalArgumentException
 	{
-		if (maskLen > src.m_maskLen) {
+		if (maskLen > src.m_maskLen || maskLen < 0) {
 			throw new IllegalArgumentException("CIDR mask len " + maskLen
 											+ " > src mask len" + src.m_maskLen);
 		}
-		
-		// Copy the address bytes.
-		m_maskLen = maskLen;
-		m_bytes = new byte[src.m_bytes.length];
-		for (int i = 0; i < src.m_bytes.length; i++) {
-			m_bytes[i] = src.m_bytes[i];
+		m_addrLen = src.m_addrLen;
+		m_maskLen = (short)maskLen;
+		m_hi = src.m_hi & highMask(maskLen);
+		m_lo = src.m_lo & lowMask(maskLen);
+	}
+
+	/**
+	 * Create a CIDRAddress from a packed address.
+	 * @param hi The first 64 address bits.
+	 * @param lo The last 64 address bits.
+	 * @param addrLen The address length in bytes: 4, 6 or 16.
+	 * @param maskLen The number of bits in the mask.
+	 * 		Address bits after the mask are cleared.
+	 */
+	CIDRAddress(long hi, long lo, int addrLen, int maskLen)
+	{
+		m_addrLen = (byte)addrLen;
+		m_maskLen = (short)maskLen;
+		m_hi = hi & highMask(maskLen);
+		m_lo = lo & lowMask(maskLen);
+	}
+
+	/**
+	 * Return the first 64 bits of the packed address.
+	 */
+	long getHighBits()
+	{
+		return m_hi;
+	}
+
+	/**
+	 * Return the last 64 bits of the packed address.
+	 */
+	long getLowBits()
+	{
+		return m_lo;
+	}
+
+	/**
+	 * Return the first 8 bytes of a raw address, packed into a long.
+	 * bytes[0] is the high-order byte. If there are fewer than 8 bytes,
+	 * the low-order bits are zero.
+	 * @param bytes The raw address bytes.
+	 * @return The first 64 bits of the address.
+	 */
+	static long packHigh(byte[] bytes)
+	{
+		switch (bytes.length) {
+			case 4: return ((long)(int)g_intView.get(bytes, 0)) << 32;
+			case 16: return (long)g_longView.get(bytes, 0);
+			default:
+				int n = Math.min(bytes.length, 8);
+				long v = 0;
+				for (int i = 0; i < n; i++) {
+					v |= (bytes[i] & 0xffL) << (56 - 8*i);
+				}
+				return v;
 		}
-		
-		// Create the mask and clear all address bits not in the mask.
-		m_mask = createMask(m_maskLen);
-		clearUnmaskedBits(m_bytes, m_mask);
+	}
+
+	/**
+	 * Return bytes 8 to 15 of a raw address, packed into a long.
+	 * @param bytes The raw address bytes.
+	 * @return The second 64 bits of the address, or 0 if bytes has 8 or fewer bytes.
+	 */
+	static long packLow(byte[] bytes)
+	{
+		if (bytes.length == 16) {
+			return (long)g_longView.get(bytes, 8);
+		}
+		int n = Math.min(bytes.length, 16);
+		long v = 0;
+		for (int i = 8; i < n; i++) {
+			v |= (bytes[i] & 0xffL) << (56 - 8*(i-8));
+		}
+		return v;
+	}
+
+	/**
+	 * Return the part of a prefix mask that applies to the first 64 address bits.
+	 * @param maskLen The mask length, in bits.
+	 * @return A long with the high-order min(maskLen,64) bits on.
+	 */
+	static long highMask(int maskLen)
+	{
+		if (maskLen <= 0) {
+			return 0;
+		} else if (maskLen >= 64) {
+			return -1L;
+		} else {
+			return -1L << (64 - maskLen);
+		}
+	}
+
+	/**
+	 * Return the part of a prefix mask that applies to the second 64 address bits.
+	 * @param maskLen The mask length, in bits.
+	 * @return A long with the high-order maskLen-64 bits on.
+	 */
+	static long lowMask(int maskLen)
+	{
+		return highMask(maskLen - 64);
+	}
+
+	/**
+	 * Return one byte of this CIDR's base address.
+	 * @param i The byte index. Must be less than {@link #getAddressLen()}.
+	 * @return Byte i of the address.
+	 */
+	private byte getAddrByte(int i)
+	{
+		return i < 8 ? (byte)(m_hi >>> (56 - 8*i)) : (byte)(m_lo >>> (56 - 8*(i-8)));
+	}
 
-		// Regenerate the canonical address string from the address bits.
-		EndpointAddress baseAddr = new EndpointAddress(m_bytes);
-		m_addr = baseAddr.toIPAddr();
-		m_type = baseAddr.getType();
-		m_ipv4 = baseAddr.isIPV4();
-		m_ipv6 = baseAddr.isIPV6();
+	/**
+	 * Return the raw bytes of this CIDR's base address.
+	 * The bits after the mask prefix are zero.
+	 * @return A new array with {@link #getAddressLen()} bytes.
+	 */
+	public byte[] getAddrBytes()
+	{
+		byte[] bytes = new byte[m_addrLen];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = getAddrByte(i);
+		}
+		return bytes;
 	}
 
 	/**
@@ -264,7 +360,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 * @param maskLen The number of leading 1 bits.
 	 * @return An array with the maskLen leading 1 bits.
 	 */
-	private byte[] createMask(int maskLen)
+	private static byte[] createMask(int maskLen)
 	{
 		byte[] mask;
 		synchronized (g_masks) {
@@ -288,55 +384,32 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 		}
 		return mask;
 	}
-	
-	/**
-	 * Clear any bits in "bytes" that are not covered by the bits in "mask".
-	 * @param bytes An array of bits. Must be at least as long as "mask."
-	 * @param mask A mask array with leading bits on.
-	 */
-	private void clearUnmaskedBits(byte[] bytes, byte[] mask)
-	{
-		for (int i = 0; i < bytes.length; i++) {
-			if (i < mask.length) {
-				bytes[i] &= mask[i];
-			} else {
-				bytes[i] = 0;
-			}
-		}
-	}
-	
-	// These two fields are sacred to hashCode(). Since the object is idempotent,
-	// the first time hashCode() is called, it calculates the hash,
-	// saves it in m_hash, and sets m_hashCalculated to true.
-	// Subsequent calls just return m_hash.
-	private boolean m_hashCalculated = false;
-	private int m_hash;
 
 	/**
 	 * Return a hashcode for this CIDR.
 	 * The hash includes the mask length as well as the bytes,
 	 * so CIDRs with the same bytes but different mask lengths
 	 * have different hash codes.
+	 * The value is the same as hashing the raw address bytes
+	 * with Arrays.hashCode(), but we do not create the byte array.
 	 */
 	@Override
 	public int hashCode()
 	{
-		if (!m_hashCalculated) {
-			// Thread considerations:
-			// We're assuming that int-assignment (eg, m_hash=hash) is atomic.
-			final int prime = 31;
-			int hash = 1;
-			hash = prime * hash + Arrays.hashCode(m_bytes);
-			hash = prime * hash + m_maskLen;
-			m_hash = hash;
-			m_hashCalculated = true;
+		final int prime = 31;
+		int bytesHash = 1;
+		for (int i = 0; i < m_addrLen; i++) {
+			bytesHash = prime * bytesHash + getAddrByte(i);
 		}
-		return m_hash;
+		int hash = 1;
+		hash = prime * hash + bytesHash;
+		hash = prime * hash + m_maskLen;
+		return hash;
 	}
 
 	/**
 	 * Return true if this CIDR equals another CIDR.
-	 * For equality, the mask lengths and the underlying byte arrays
+	 * For equality, the mask lengths and the underlying addresses
 	 * must be identical.
 	 */
 	@Override
@@ -350,13 +423,10 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 			return false;
 		}
 		CIDRAddress other = (CIDRAddress) obj;
-		if (m_maskLen != other.m_maskLen) {
-			return false;
-		} else if (!Arrays.equals(m_bytes, other.m_bytes)) {
-			return false;
-		} else {
-			return true;
-		}
+		return m_maskLen == other.m_maskLen
+				&& m_addrLen == other.m_addrLen
+				&& m_hi == other.m_hi
+				&& m_lo == other.m_lo;
 	}
 
 	/**
@@ -366,7 +436,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 * If the mask lengths are the same, next we compare on address length,
 	 * with IPv4 addresses being lower than IPv6 addresses.
 	 * Finally, within the same type, we compare the addresses as unsigned bytes.
-	 * 
+	 *
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
 	 */
 	@Override
@@ -377,22 +447,24 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 		} else if (m_maskLen > other.m_maskLen) {
 			return -1;
 		}
-		int addrLen = m_bytes.length;
-		if (addrLen < other.m_bytes.length) {
+		if (m_addrLen < other.m_addrLen) {
 			return -1;
-		} else if (addrLen > other.m_bytes.length) {
+		} else if (m_addrLen > other.m_addrLen) {
 			return +1;
 		}
-		for (int i = 0; i < addrLen; i++) {
-			int x = m_bytes[i] & 0xff;
-			int y = other.m_bytes[i] & 0xff;
-			if (x < y) {
-				return -1;
-			} else if (x > y) {
-				return +1;
-			}
+		return compareAddrBits(this, other);
+	}
+
+	/**
+	 * Compare the address bits of two CIDRs as unsigned numbers.
+	 */
+	private static int compareAddrBits(CIDRAddress o1, CIDRAddress o2)
+	{
+		int cmp = Long.compareUnsigned(o1.m_hi, o2.m_hi);
+		if (cmp == 0) {
+			cmp = Long.compareUnsigned(o1.m_lo, o2.m_lo);
 		}
-		return 0;
+		return cmp < 0 ? -1 : cmp > 0 ? +1 : 0;
 	}
 
 	/**
@@ -402,34 +474,44 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public String getAddr()
 	{
-		return m_addr;
+		try {
+			return new EndpointAddress(getAddrBytes()).toIPAddr();
+		} catch (UnknownHostException e) {
+			// Shouldn't happen: m_addrLen is always valid.
+			return "??";
+		}
 	}
-	
+
 	/**
 	 * Return the address type: ipv4 or ipv6.
 	 * @return The address type: ipv4 or ipv6.
 	 */
 	public String getType()
 	{
-		return m_type;
+		switch (m_addrLen) {
+			case 4: return EndpointAddress.IPV4_PREFIX;
+			case 6: return EndpointAddress.MAC_PREFIX;
+			case 16: return EndpointAddress.IPV6_PREFIX;
+			default: return null;
+		}
 	}
-	
+
 	/**
 	 * Return true iff this is an IPV4 address.
 	 * @return True iff this is an IPV4 address.
 	 */
 	public boolean isIPV4()
 	{
-		return m_ipv4;
+		return m_addrLen == 4;
 	}
-	
+
 	/**
 	 * Return true iff this is an IPV6 address.
 	 * @return True iff this is an IPV6 address.
 	 */
 	public boolean isIPV6()
 	{
-		return m_ipv6;
+		return m_addrLen == 16;
 	}
 
 	/**
@@ -438,7 +520,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public int getAddressLen()
 	{
-		return m_bytes.length;
+		return m_addrLen;
 	}
 
 	/**
@@ -449,7 +531,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	{
 		return m_maskLen;
 	}
-	
+
 	/**
 	 * Test whether an IP address is contained within this CIDR.
 	 * @param addr The address to test.
@@ -459,7 +541,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	{
 		return contains(addr.getAddress());
 	}
-	
+
 	/**
 	 * Test whether an IP address is contained within this CIDR.
 	 * @param bytes The raw bytes of the address to test.
@@ -467,17 +549,60 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public boolean contains(byte[] bytes)
 	{
-		if (bytes.length != m_bytes.length) {
+		if (bytes.length != m_addrLen) {
 			return false;
+		} else if ((packHigh(bytes) & highMask(m_maskLen)) != m_hi) {
+			return false;
+		} else {
+			return m_maskLen <= 64 || (packLow(bytes) & lowMask(m_maskLen)) == m_lo;
 		}
-		for (int i = 0; i < m_mask.length; i++) {
-			if ((bytes[i] & m_mask[i]) != m_bytes[i]) {
-				return false;
-			}
-		}
-		return true;
 	}
-	
+
+	/**
+	 * Test whether an IPV4 address is contained within this CIDR.
+	 * @param addr The address, as an int. The first byte of the address is the high-order byte.
+	 * @return True iff this is an IPV4 CIDR and addr matches it under the mask.
+	 */
+	public boolean containsIPV4(int addr)
+	{
+		return m_addrLen == 4 && ((((long)addr) << 32) & highMask(m_maskLen)) == m_hi;
+	}
+
+	/**
+	 * Test whether an IPV6 address is contained within this CIDR.
+	 * @param hi The first 64 bits of the address.
+	 * @param lo The last 64 bits of the address.
+	 * @return True iff this is an IPV6 CIDR and the address matches it under the mask.
+	 */
+	public boolean containsIPV6(long hi, long lo)
+	{
+		return m_addrLen == 16 && matches(hi, lo, m_maskLen);
+	}
+
+	/**
+	 * Test whether a packed address is contained within this CIDR.
+	 * The caller must ensure the address has the same length as this CIDR.
+	 * @param hi The first 64 bits of the address, as from {@link #packHigh(byte[])}.
+	 * @param lo The last 64 bits of the address, as from {@link #packLow(byte[])}.
+	 * @return True iff the address matches this CIDR under the mask.
+	 */
+	boolean containsPacked(long hi, long lo)
+	{
+		return matches(hi, lo, m_maskLen);
+	}
+
+	/**
+	 * Return true iff the first nbits of a packed address match this CIDR's address.
+	 * @param hi The first 64 bits of the address.
+	 * @param lo The last 64 bits of the address.
+	 * @param nbits The number of bits to compare. Must not be more than m_maskLen.
+	 */
+	private boolean matches(long hi, long lo, int nbits)
+	{
+		return ((hi ^ m_hi) & highMask(nbits)) == 0
+				&& ((lo ^ m_lo) & lowMask(nbits)) == 0;
+	}
+
 	/**
 	 * Test whether this CIDR covers another CIDR.
 	 * That is, whether every address contained in the other CIDR
@@ -489,15 +614,15 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public boolean covers(CIDRAddress other)
 	{
-		if (this.m_bytes.length != other.m_bytes.length) {
+		if (this.m_addrLen != other.m_addrLen) {
 			return false;
 		} else if (this.m_maskLen > other.m_maskLen) {
 			return false;
 		} else {
-			return contains(other.m_bytes);
+			return matches(other.m_hi, other.m_lo, m_maskLen);
 		}
 	}
-	
+
 	/**
 	 * Test whether an IP address is contained within this CIDR.
 	 * @param addr The address to test, as a dotted dec or colon hex string.
@@ -516,7 +641,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	@Override
 	public String toString()
 	{
-		return m_addr + "/" + m_maskLen;
+		return getAddr() + "/" + m_maskLen;
 	}
 	
 	/**
@@ -525,8 +650,8 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	public String toDetailedString()
 	{
 		return toString()
-				+ " bytes=" + catArray(m_bytes)
-				+ " mask=" + catArray(m_mask);
+				+ " bytes=" + catArray(getAddrBytes())
+				+ " mask=" + catArray(createMask(m_maskLen));
 	}
 
 	/**
@@ -535,8 +660,9 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public String toIPAddrWithPrefix()
 	{
-		if (m_type != null) {
-			return m_type + EndpointAddress.PREFIX_SEP + toString();
+		String type = getType();
+		if (type != null) {
+			return type + EndpointAddress.PREFIX_SEP + toString();
 		} else {
 			return toString();
 		}
@@ -552,9 +678,47 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 	 */
 	public void update(MessageDigest digest)
 	{
-		digest.update(m_bytes);
+		digest.update(getAddrBytes());
 		digest.update((byte)'/');
-		digest.update(m_mask);
+		digest.update(createMask(m_maskLen));
+	}
+
+	/**
+	 * Write this CIDR in a compact binary format:
+	 * the address length in bytes (one byte), the mask length (one byte),
+	 * and the address bytes.
+	 * @param out The output.
+	 * @throws IOException If an I/O error occurs.
+	 * @see #readBinary(ByteBuffer)
+	 */
+	public void writeBinary(DataOutput out) throws IOException
+	{
+		out.writeByte(m_addrLen);
+		out.writeByte(m_maskLen);
+		for (int i = 0; i < m_addrLen; i++) {
+			out.writeByte(getAddrByte(i));
+		}
+	}
+	
+	/**
+	 * Read a CIDR written by {@link #writeBinary(DataOutput)}.
+	 * @param buff The input. On return, the position is after the CIDR.
+	 * @return The CIDR.
+	 * @throws UnknownHostException Internal error; shouldn't happen.
+	 * @throws IllegalArgumentException If the address or mask lengths are invalid.
+	 * @throws java.nio.BufferUnderflowException If buff ends in the middle of the CIDR.
+	 */
+	public static CIDRAddress readBinary(ByteBuffer buff)
+			throws UnknownHostException, IllegalArgumentException
+	{
+		int addrLen = buff.get() & 0xff;
+		int maskLen = buff.get() & 0xff;
+		if (addrLen != 4 && addrLen != 16) {
+			throw new IllegalArgumentException("CIDR illegal byte array len " + addrLen);
+		}
+		byte[] bytes = new byte[addrLen];
+		buff.get(bytes);
+		return new CIDRAddress(bytes, maskLen);
 	}
 
 	/**
@@ -609,13 +773,60 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 		} else if (nbits > m_maskLen || nbits > other.m_maskLen) {
 			return false;
 		}
-		byte[] mask = createMask(nbits);
-		for (int i = 0; i < mask.length; i++) {
-			if ((other.m_bytes[i] & mask[i]) != m_bytes[i]) {
-				return false;
-			}
-		}
-		return true;	
+		return matches(other.m_hi, other.m_lo, nbits);
+	}
+
+	/**
+	 * Return the value of one bit in this CIDR's base address.
+	 * Bit 0 is the high-order bit of the first byte.
+	 * @param n The bit number. Must be less than 8*{@link #getAddressLen()}.
+	 * @return 0 or 1.
+	 */
+	int getAddrBit(int n)
+	{
+		return getAddrBit(m_hi, m_lo, n);
+	}
+
+	/**
+	 * Return the value of one bit in a raw address.
+	 * Bit 0 is the high-order bit of bytes[0].
+	 * @param bytes The raw address bytes.
+	 * @param n The bit number. Must be less than 8*bytes.length.
+	 * @return 0 or 1.
+	 */
+	static int getAddrBit(byte[] bytes, int n)
+	{
+		return (bytes[n >> 3] >> (7 - (n & 0x7))) & 0x1;
+	}
+
+	/**
+	 * Return the value of one bit in a packed address.
+	 * Bit 0 is the high-order bit of hi.
+	 * @param hi The first 64 address bits.
+	 * @param lo The last 64 address bits.
+	 * @param n The bit number. Must be less than 128.
+	 * @return 0 or 1.
+	 */
+	static int getAddrBit(long hi, long lo, int n)
+	{
+		return (int)((n < 64 ? hi >>> (63 - n) : lo >>> (127 - n)) & 0x1);
+	}
+
+	/**
+	 * Return the length of the longest common prefix of this CIDR and another CIDR.
+	 * That is, the largest n such that {@link #addrBitsMatch(CIDRAddress, int)} is true.
+	 * @param other Another CIDR. Must have the same address length as this CIDR.
+	 * @return The number of leading bits the two CIDRs share.
+	 * 		This is never more than either mask length.
+	 */
+	int commonPrefixLen(CIDRAddress other)
+	{
+		int maxBits = Math.min(m_maskLen, other.m_maskLen);
+		long diff = m_hi ^ other.m_hi;
+		int nbits = diff != 0
+				? Long.numberOfLeadingZeros(diff)
+				: 64 + Long.numberOfLeadingZeros(m_lo ^ other.m_lo);
+		return Math.min(nbits, maxBits);
 	}
 
 	/**
@@ -629,19 +840,14 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 		@Override
 		public int compare(CIDRAddress o1, CIDRAddress o2)
 		{
-			if (o1.m_bytes.length < o2.m_bytes.length) {
+			if (o1.m_addrLen < o2.m_addrLen) {
 				return -1;
-			} else if (o1.m_bytes.length > o2.m_bytes.length) {
+			} else if (o1.m_addrLen > o2.m_addrLen) {
 				return 1;
 			}
-			for (int i = 0; i < o1.m_bytes.length; i++) {
-				int b1 = o1.m_bytes[i] & 0xff;
-				int b2 = o2.m_bytes[i] & 0xff;
-				if (b1 < b2) {
-					return -1;
-				} else if (b1 > b2) {
-					return 1;
-				}
+			int cmp = compareAddrBits(o1, o2);
+			if (cmp != 0) {
+				return cmp;
 			}
 			if (o1.m_maskLen < o2.m_maskLen) {
 				return -1;
@@ -726,7 +932,7 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 		
 		private InetAddressIterator()
 		{
-			if (!m_ipv4) {
+			if (!isIPV4()) {
 				throw new IllegalArgumentException(
 						"CIDRAddress: InetAddress iterator only defined for IPv4 addresses.");
 			} else if (m_maskLen < 8) {
@@ -734,14 +940,8 @@ public class CIDRAddress implements Comparable<CIDRAddress>, Iterable<InetAddres
 						"CIDRAddress: mask len " + m_maskLen + " too short.");
 			}
 			m_remaining = (int)(1L<<(32 - m_maskLen));
-			if (m_bytes[0] == 127) {
-				m_remaining = 2;
-			}
-			m_next =  ((long)(m_bytes[0] & 0xff) << 24)
-					+ ((long)(m_bytes[1] & 0xff) << 16)
-					+ ((long)(m_bytes[2] & 0xff) <<  8)
-					+ ((long)(m_bytes[3] & 0xff)      );
-			if (m_bytes[0] == 127) {
+			m_next = m_hi >>> 32;
+			if ((m_next >>> 24) == 127) {
 				m_remaining = 1;
 				m_next++;
 			}
@@ -0,0 +1,402 @@
+package com.wdroome.util.inet;
+
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reduce a large set of CIDRs to the smallest equivalent set,
+ * by removing CIDRs that are covered by other CIDRs
+ * and combining adjacent CIDRs. Clients add CIDRs one at a time,
+ * and then get the aggregated CIDRs in address order.
+ * <p>
+ * The CIDRs are stored as packed numbers in primitive arrays,
+ * rather than as CIDRAddress objects: IPV4 CIDRs take 8 bytes each,
+ * IPV6 CIDRs take 17. To aggregate, we sort the arrays once,
+ * and then merge the CIDRs with a stack in a single pass.
+ * The stack is the front of the sorted array, so aggregation does not allocate memory.
+ * When an array fills up, we aggregate what we have before growing the array,
+ * so memory is bounded by the size of the result rather than the number of CIDRs added
+ * (e.g., a full BGP table from several peers).
+ * <p>
+ * This class is not synchronized.
+ * @author wdr
+ */
+public class CIDRAggregator
+{
+	private static final int INITIAL_SIZE = 1024;
+
+	/**
+	 * The IPV4 CIDRs. Each is a long with the address in bits 8-39 and
+	 * the mask length in bits 0-7. So sorting the longs sorts the CIDRs
+	 * by address, and by mask length within the same address.
+	 */
+	private long[] m_ipv4 = new long[INITIAL_SIZE];
+	private int m_nIPV4 = 0;
+
+	/** The IPV6 CIDRs. */
+	private final WideCIDRs m_ipv6 = new WideCIDRs(16);
+
+	/** Other CIDRs, e.g., MAC addresses. */
+	private final WideCIDRs m_mac = new WideCIDRs(6);
+
+	/** True iff all the arrays have been aggregated. */
+	private boolean m_aggregated = true;
+
+	private long m_nAdded = 0;
+
+	/**
+	 * CIDRs with addresses longer than 32 bits, stored as parallel arrays.
+	 * See CIDRAddress for the packed format.
+	 */
+	private static class WideCIDRs
+	{
+		private final int m_addrLen;
+		private long[] m_hi = new long[0];
+		private long[] m_lo = new long[0];
+		private byte[] m_maskLen = new byte[0];
+		private int m_size = 0;
+
+		private WideCIDRs(int addrLen)
+		{
+			m_addrLen = addrLen;
+		}
+
+		private void add(long hi, long lo, int maskLen)
+		{
+			if (m_size >= m_hi.length) {
+				aggregate();
+				if (m_size >= m_hi.length/2) {
+					int newLen = Math.max(INITIAL_SIZE, 2*m_hi.length);
+					m_hi = Arrays.copyOf(m_hi, newLen);
+					m_lo = Arrays.copyOf(m_lo, newLen);
+					m_maskLen = Arrays.copyOf(m_maskLen, newLen);
+				}
+			}
+			m_hi[m_size] = hi;
+			m_lo[m_size] = lo;
+			m_maskLen[m_size] = (byte)maskLen;
+			m_size++;
+		}
+
+		/**
+		 * Sort the CIDRs and merge them in place.
+		 */
+		private void aggregate()
+		{
+			sort(0, m_size);
+			int top = -1;
+			for (int i = 0; i < m_size; i++) {
+				long hi = m_hi[i];
+				long lo = m_lo[i];
+				int maskLen = m_maskLen[i] & 0xff;
+				if (top >= 0 && covers(top, hi, lo, maskLen)) {
+					continue;
+				}
+				top++;
+				m_hi[top] = hi;
+				m_lo[top] = lo;
+				m_maskLen[top] = (byte)maskLen;
+
+				// While the top two CIDRs are siblings, replace them with their parent.
+				while (top >= 1) {
+					int len = m_maskLen[top] & 0xff;
+					if (len == 0 || (m_maskLen[top-1] & 0xff) != len) {
+						break;
+					}
+					long bitHi = len <= 64 ? 1L << (64 - len) : 0;
+					long bitLo = len > 64 ? 1L << (128 - len) : 0;
+					if ((m_hi[top-1] & bitHi) != 0 || (m_lo[top-1] & bitLo) != 0
+							|| (m_hi[top-1] | bitHi) != m_hi[top]
+							|| (m_lo[top-1] | bitLo) != m_lo[top]) {
+						break;
+					}
+					top--;
+					m_maskLen[top] = (byte)(len - 1);
+				}
+			}
+			m_size = top + 1;
+		}
+
+		/**
+		 * Return true iff CIDR i covers a CIDR.
+		 */
+		private boolean covers(int i, long hi, long lo, int maskLen)
+		{
+			int len = m_maskLen[i] & 0xff;
+			return len <= maskLen
+					&& ((hi ^ m_hi[i]) & CIDRAddress.highMask(len)) == 0
+					&& ((lo ^ m_lo[i]) & CIDRAddress.lowMask(len)) == 0;
+		}
+
+		/**
+		 * Compare CIDRs i and j by address, and then by mask length.
+		 */
+		private int compare(int i, int j)
+		{
+			int cmp = Long.compareUnsigned(m_hi[i], m_hi[j]);
+			if (cmp == 0) {
+				cmp = Long.compareUnsigned(m_lo[i], m_lo[j]);
+				if (cmp == 0) {
+					cmp = (m_maskLen[i] & 0xff) - (m_maskLen[j] & 0xff);
+				}
+			}
+			return cmp;
+		}
+
+		private void swap(int i, int j)
+		{
+			long t = m_hi[i];
+			m_hi[i] = m_hi[j];
+			m_hi[j] = t;
+			t = m_lo[i];
+			m_lo[i] = m_lo[j];
+			m_lo[j] = t;
+			byte b = m_maskLen[i];
+			m_maskLen[i] = m_maskLen[j];
+			m_maskLen[j] = b;
+		}
+
+		/**
+		 * Sort CIDRs [lo,hi) in place with a three-way quicksort.
+		 * We recurse on the smaller partition, so the stack depth is O(log n).
+		 */
+		private void sort(int lo, int hi)
+		{
+			while (hi - lo > 16) {
+				// Median of three, moved to lo.
+				int mid = (lo + hi) >>> 1;
+				if (compare(mid, lo) < 0) {
+					swap(mid, lo);
+				}
+				if (compare(hi-1, lo) < 0) {
+					swap(hi-1, lo);
+				}
+				if (compare(hi-1, mid) < 0) {
+					swap(hi-1, mid);
+				}
+				swap(lo, mid);
+
+				// Partition into [lo,lt) < pivot, [lt,gt) == pivot, [gt,hi) > pivot.
+				// The pivot stays at lt as the partition proceeds.
+				int lt = lo;
+				int gt = hi;
+				int i = lo + 1;
+				while (i < gt) {
+					int cmp = compare(i, lt);
+					if (cmp < 0) {
+						swap(i++, lt++);
+					} else if (cmp > 0) {
+						swap(i, --gt);
+					} else {
+						i++;
+					}
+				}
+				if (lt - lo < hi - gt) {
+					sort(lo, lt);
+					lo = gt;
+				} else {
+					sort(gt, hi);
+					hi = lt;
+				}
+			}
+			for (int i = lo + 1; i < hi; i++) {
+				for (int j = i; j > lo && compare(j, j-1) < 0; j--) {
+					swap(j, j-1);
+				}
+			}
+		}
+
+		private void forEach(Consumer<CIDRAddress> consumer)
+		{
+			for (int i = 0; i < m_size; i++) {
+				consumer.accept(new CIDRAddress(m_hi[i], m_lo[i], m_addrLen, m_maskLen[i] & 0xff));
+			}
+		}
+	}
+
+	/**
+	 * Create a new, empty aggregator.
+	 */
+	public CIDRAggregator()
+	{
+	}
+
+	/**
+	 * Add a CIDR.
+	 * @param cidr The CIDR.
+	 */
+	public void add(CIDRAddress cidr)
+	{
+		switch (cidr.getAddressLen()) {
+			case 4:
+				addIPV4((int)(cidr.getHighBits() >>> 32), cidr.getMaskLen());
+				break;
+			case 16:
+				m_ipv6.add(cidr.getHighBits(), cidr.getLowBits(), cidr.getMaskLen());
+				m_aggregated = false;
+				m_nAdded++;
+				break;
+			default:
+				m_mac.add(cidr.getHighBits(), cidr.getLowBits(), cidr.getMaskLen());
+				m_aggregated = false;
+				m_nAdded++;
+				break;
+		}
+	}
+
+	/**
+	 * Add a CIDR.
+	 * @param cidr The CIDR, as "address/length".
+	 * @throws UnknownHostException If cidr isn't a valid CIDR.
+	 */
+	public void add(String cidr) throws UnknownHostException
+	{
+		add(new CIDRAddress(cidr));
+	}
+
+	/**
+	 * Add an IPV4 CIDR.
+	 * @param addr The address. The first byte of the address is the high-order byte.
+	 * 		Bits after the mask are ignored.
+	 * @param maskLen The mask length.
+	 * @throws IllegalArgumentException If maskLen is not in [0,32].
+	 */
+	public void addIPV4(int addr, int maskLen)
+	{
+		if (maskLen < 0 || maskLen > 32) {
+			throw new IllegalArgumentException("CIDR mask len " + maskLen + " > 32");
+		}
+		if (m_nIPV4 >= m_ipv4.length) {
+			m_nIPV4 = aggregateIPV4(m_ipv4, m_nIPV4);
+			if (m_nIPV4 >= m_ipv4.length/2) {
+				m_ipv4 = Arrays.copyOf(m_ipv4, 2*m_ipv4.length);
+			}
+		}
+		long bits = (addr & 0xffffffffL) & (CIDRAddress.highMask(maskLen) >>> 32);
+		m_ipv4[m_nIPV4++] = (bits << 8) | maskLen;
+		m_aggregated = false;
+		m_nAdded++;
+	}
+
+	/**
+	 * Add an IPV6 CIDR.
+	 * @param hi The first 64 address bits.
+	 * @param lo The last 64 address bits.
+	 * 		Bits after the mask are ignored.
+	 * @param maskLen The mask length.
+	 * @throws IllegalArgumentException If maskLen is not in [0,128].
+	 */
+	public void addIPV6(long hi, long lo, int maskLen)
+	{
+		if (maskLen < 0 || maskLen > 128) {
+			throw new IllegalArgumentException("CIDR mask len " + maskLen + " > 128");
+		}
+		m_ipv6.add(hi & CIDRAddress.highMask(maskLen), lo & CIDRAddress.lowMask(maskLen), maskLen);
+		m_aggregated = false;
+		m_nAdded++;
+	}
+
+	/**
+	 * Sort and merge IPV4 CIDRs in place.
+	 * @param cidrs The packed CIDRs.
+	 * @param n The number of CIDRs in the array.
+	 * @return The number of CIDRs after aggregation. They are at the start of the array.
+	 */
+	private static int aggregateIPV4(long[] cidrs, int n)
+	{
+		Arrays.sort(cidrs, 0, n);
+		int top = -1;
+		for (int i = 0; i < n; i++) {
+			long cidr = cidrs[i];
+			if (top >= 0) {
+				// Does the top CIDR cover this one?
+				int topLen = (int)(cidrs[top] & 0xff);
+				long mask = CIDRAddress.highMask(topLen) >>> 24;
+				if (topLen <= (int)(cidr & 0xff) && ((cidr ^ cidrs[top]) & mask) == 0) {
+					continue;
+				}
+			}
+			cidrs[++top] = cidr;
+
+			// While the top two CIDRs are siblings, replace them with their parent.
+			while (top >= 1) {
+				int len = (int)(cidrs[top] & 0xff);
+				if (len == 0 || (int)(cidrs[top-1] & 0xff) != len) {
+					break;
+				}
+				long bit = 1L << (8 + 32 - len);
+				if ((cidrs[top-1] & bit) != 0 || (cidrs[top-1] | bit) != cidrs[top]) {
+					break;
+				}
+				top--;
+				cidrs[top] = (cidrs[top] & ~0xffL) | (len - 1);
+			}
+		}
+		return top + 1;
+	}
+
+	/**
+	 * Aggregate the CIDRs added so far. Clients do not need to call this;
+	 * the methods that return CIDRs call it as needed.
+	 */
+	public void aggregate()
+	{
+		if (!m_aggregated) {
+			m_nIPV4 = aggregateIPV4(m_ipv4, m_nIPV4);
+			m_ipv6.aggregate();
+			m_mac.aggregate();
+			m_aggregated = true;
+		}
+	}
+
+	/**
+	 * Return the number of CIDRs added to this aggregator.
+	 * @return The number of CIDRs added, including duplicates.
+	 */
+	public long getNumAdded()
+	{
+		return m_nAdded;
+	}
+
+	/**
+	 * Return the number of aggregated CIDRs.
+	 * @return The number of aggregated CIDRs.
+	 */
+	public int size()
+	{
+		aggregate();
+		return m_nIPV4 + m_ipv6.m_size + m_mac.m_size;
+	}
+
+	/**
+	 * Pass the aggregated CIDRs to a consumer, in the order
+	 * given by {@link CIDRAddress.AddressByteComparator}.
+	 * This creates CIDRAddress objects one at a time,
+	 * so clients can write a very large result without holding all of it in memory.
+	 * @param consumer The consumer.
+	 */
+	public void forEach(Consumer<CIDRAddress> consumer)
+	{
+		aggregate();
+		for (int i = 0; i < m_nIPV4; i++) {
+			long cidr = m_ipv4[i];
+			consumer.accept(new CIDRAddress((cidr >>> 8) << 32, 0, 4, (int)(cidr & 0xff)));
+		}
+		m_mac.forEach(consumer);
+		m_ipv6.forEach(consumer);
+	}
+
+	/**
+	 * Return the aggregated CIDRs, in the order
+	 * given by {@link CIDRAddress.AddressByteComparator}.
+	 * @return A new array with the aggregated CIDRs.
+	 */
+	public CIDRAddress[] getCIDRs()
+	{
+		CIDRAddress[] cidrs = new CIDRAddress[size()];
+		int[] n = new int[] {0};
+		forEach(cidr -> cidrs[n[0]++] = cidr);
+		return cidrs;
+	}
+}
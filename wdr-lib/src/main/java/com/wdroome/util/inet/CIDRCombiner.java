@@ -2,10 +2,13 @@ package com.wdroome.util.inet;
 
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 /**
  * Utility command to reduce a set of CIDRs
@@ -24,15 +27,22 @@ public class CIDRCombiner
 	 * 		An argument may have more than one CIDR separated by white space or commas.
 	 * 		"-" means read CIDRs from stdin. An input line may have more than one CIDR
 	 * 		separated by white space or commas. Ignore blank lines and lines starting with "#".
+	 * 		If the first argument is "-s", use streaming mode, for very large inputs
+	 * 		such as BGP tables: skip the CIDRSet, pass each CIDR to a {@link CIDRAggregator}
+	 * 		as we read it, and write the result directly from the aggregator.
+	 * 		In streaming mode, the input count includes duplicate CIDRs.
 	 * @throws IOException On I/O error reading standard input (shouldn't happen).
 	 */
 	public static void main(String[] args) throws IOException
 	{
-		CIDRSet cidrSet = new CIDRSet();
-		
 		if (args == null || args.length == 0) {
 			args = new String[] {"-"};
+		} else if (args[0].equals("-s")) {
+			stream(Arrays.copyOfRange(args, 1, args.length));
+			return;
 		}
+
+		CIDRSet cidrSet = new CIDRSet();
 		for (String cidrs: args) {
 			if (cidrs.equals("-")) {
 				readStdin(cidrSet);
@@ -57,6 +67,61 @@ public class CIDRCombiner
 		}
 	}
 
+	/**
+	 * Combine CIDRs in streaming mode.
+	 * @param args The CIDR arguments, as for {@link #main(String[])}.
+	 * @throws IOException On I/O error reading standard input (shouldn't happen).
+	 */
+	private static void stream(String[] args) throws IOException
+	{
+		if (args.length == 0) {
+			args = new String[] {"-"};
+		}
+		CIDRAggregator aggregator = new CIDRAggregator();
+		for (String cidrs: args) {
+			if (cidrs.equals("-")) {
+				LineNumberReader rdr = new LineNumberReader(new InputStreamReader(System.in));
+				String line;
+				while ((line = rdr.readLine()) != null) {
+					line = line.trim();
+					if (line.equals("") || line.startsWith("#")) {
+						continue;
+					}
+					addCidrs(aggregator, line);
+				}
+			} else {
+				addCidrs(aggregator, cidrs);
+			}
+		}
+		long nInputCidrs = aggregator.getNumAdded();
+		int nOutputCidrs = aggregator.size();
+		if (nOutputCidrs == nInputCidrs) {
+			System.out.println(nInputCidrs + " CIDRs in: No CIDRs can be combined.");
+		} else {
+			System.out.println(nInputCidrs + " CIDRs in => " + nOutputCidrs + " CIDRs out");
+		}
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+		aggregator.forEach(cidr -> out.println("\t" + cidr));
+		out.flush();
+	}
+
+	/**
+	 * Add a list of CIDRs, separated by white space or commas, to an aggregator.
+	 * Print a message for each invalid CIDR.
+	 */
+	private static void addCidrs(CIDRAggregator aggregator, String cidrs)
+	{
+		for (String s: cidrs.split("[ \t\n\r,]+")) {
+			if (!s.equals("")) {
+				try {
+					aggregator.add(s);
+				} catch (UnknownHostException e) {
+					System.err.println(e.getMessage());
+				}
+			}
+		}
+	}
+
 	private static void readStdin(CIDRSet cidrSet) throws IOException
 	{
 		LineNumberReader rdr = new LineNumberReader(new InputStreamReader(System.in));
@@ -1,9 +1,13 @@
 package com.wdroome.util.inet;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 
 import com.wdroome.util.ArrayIterator;
@@ -14,6 +18,14 @@ import com.wdroome.util.ArrayIterator;
  * The set can be frozen, or rendered immutable.
  * At that point we copy the CIDRs to a simple array,
  * and you can no longer add or remove CIDRs.
+ * <p>
+ * A frozen set keeps the array sorted by address, so iteration returns
+ * the CIDRs in that order, and {@link #contains(CIDRAddress)} is a binary search.
+ * A frozen set also keeps the CIDRs that are not covered by other CIDRs in the set.
+ * Those are sorted, non-overlapping address ranges, so {@link #covers(CIDRAddress)}
+ * is a binary search too, and {@link #fullyCovers(CIDRSet)} takes O(n log m) time
+ * rather than O(n*m). {@link #union(CIDRSet)}, {@link #intersection(CIDRSet)}
+ * and {@link #difference(CIDRSet)} merge the sorted arrays in linear time.
  * Frozen CIDRSets are thread-safe. Mutable CIDRSets are not.
  * We assume the client provides synchronization for mutable CIRDSets.
  * @author wdr
@@ -24,6 +36,13 @@ public class CIDRSet implements Iterable<CIDRAddress>
 	// When the set is "frozen", we set m_array to the CIDRs and remove m_set.
 	private CIDRAddress[] m_array = null;
 	private Set<CIDRAddress> m_set = new HashSet<CIDRAddress>();
+
+	// When the set is frozen, the CIDRs in m_array which are not covered
+	// by any other CIDR in the set. Usually this is the same array as m_array.
+	private CIDRAddress[] m_cover = null;
+
+	// The order of m_array and m_cover.
+	private static final Comparator<CIDRAddress> g_addrOrder = new CIDRAddress.AddressByteComparator();
 	
 	// When the set is frozen, this is the final hash code from m_set.
 	private int m_hashCode = 0;
@@ -101,6 +120,110 @@ public class CIDRSet implements Iterable<CIDRAddress>
 		}
 	}
 	
+	/**
+	 * Create a new frozen set from a sorted array of distinct CIDRs.
+	 * @param cidrs The CIDRs, sorted by g_addrOrder.
+	 * 		We use this array; the caller must not change it.
+	 * @param hashCode The hash code of a Set with those CIDRs.
+	 */
+	private CIDRSet(CIDRAddress[] cidrs, int hashCode)
+	{
+		m_array = cidrs;
+		m_cover = uncoveredCIDRs(cidrs);
+		m_hashCode = hashCode;
+		m_set = null;
+	}
+
+	/**
+	 * Return the CIDRs in a sorted array which are not covered by another CIDR in the array.
+	 * Because two CIDRs are either disjoint or one covers the other,
+	 * the result is a sorted array of non-overlapping address ranges.
+	 * @param sorted The CIDRs, sorted by g_addrOrder.
+	 * @return The uncovered CIDRs, in order. If every CIDR is uncovered,
+	 * 		return "sorted" rather than a copy.
+	 */
+	private static CIDRAddress[] uncoveredCIDRs(CIDRAddress[] sorted)
+	{
+		// A CIDR sorts after every CIDR that covers it. And if an uncovered CIDR covers
+		// the current CIDR, it must be the last uncovered CIDR we found,
+		// because the uncovered CIDRs are disjoint.
+		CIDRAddress[] cover = null;
+		int nCover = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			CIDRAddress cidr = sorted[i];
+			if (i > 0) {
+				CIDRAddress last = (cover != null) ? cover[nCover-1] : sorted[i-1];
+				if (last.covers(cidr)) {
+					if (cover == null) {
+						cover = Arrays.copyOf(sorted, sorted.length);
+						nCover = i;
+					}
+					continue;
+				}
+			}
+			if (cover != null) {
+				cover[nCover++] = cidr;
+			}
+		}
+		return (cover != null) ? Arrays.copyOf(cover, nCover) : sorted;
+	}
+	
+	/**
+	 * Create a new frozen set from an array of CIDRs,
+	 * without the cost of creating a mutable set and then freezing it.
+	 * @param cidrs The CIDRs. They must be distinct.
+	 * 		We sort and use this array; the caller must not change it.
+	 * @return A new frozen set with those CIDRs.
+	 */
+	public static CIDRSet newFrozenSet(CIDRAddress[] cidrs)
+	{
+		Arrays.sort(cidrs, g_addrOrder);
+		int hashCode = 0;
+		for (CIDRAddress cidr: cidrs) {
+			hashCode += cidr.hashCode();
+		}
+		return new CIDRSet(cidrs, hashCode);
+	}
+	
+	/**
+	 * Write the CIDRs in a compact binary format:
+	 * the number of CIDRs (a 4-byte int), followed by each CIDR
+	 * as written by {@link CIDRAddress#writeBinary(DataOutput)}.
+	 * @param out The output.
+	 * @throws IOException If an I/O error occurs.
+	 * @see #readBinary(ByteBuffer)
+	 */
+	public void writeBinary(DataOutput out) throws IOException
+	{
+		out.writeInt(size());
+		for (CIDRAddress cidr: this) {
+			cidr.writeBinary(out);
+		}
+	}
+	
+	/**
+	 * Read a set written by {@link #writeBinary(DataOutput)}.
+	 * This does not check for duplicate CIDRs.
+	 * @param buff The input. On return, the position is after the set.
+	 * @return A new frozen set.
+	 * @throws UnknownHostException Internal error; shouldn't happen.
+	 * @throws IllegalArgumentException If the input has an invalid CIDR.
+	 * @throws java.nio.BufferUnderflowException If buff ends in the middle of the set.
+	 */
+	public static CIDRSet readBinary(ByteBuffer buff)
+			throws UnknownHostException, IllegalArgumentException
+	{
+		int nCIDRs = buff.getInt();
+		if (nCIDRs < 0 || nCIDRs > buff.remaining()/2) {
+			throw new IllegalArgumentException("CIDRSet illegal size " + nCIDRs);
+		}
+		CIDRAddress[] cidrs = new CIDRAddress[nCIDRs];
+		for (int i = 0; i < nCIDRs; i++) {
+			cidrs[i] = CIDRAddress.readBinary(buff);
+		}
+		return newFrozenSet(cidrs);
+	}
+	
 	/**
 	 * Return the number of CIDRs in the set.
 	 */
@@ -157,12 +280,7 @@ public class CIDRSet implements Iterable<CIDRAddress>
 		if (addr == null) {
 			return false;
 		} else if (m_array != null) {
-			for (CIDRAddress a:m_array) {
-				if (a.equals(addr)) {
-					return true;
-				}
-			}
-			return false;
+			return Arrays.binarySearch(m_array, addr, g_addrOrder) >= 0;
 		} else {
 			return m_set.contains(addr);
 		}
@@ -191,12 +309,15 @@ public class CIDRSet implements Iterable<CIDRAddress>
 		if (addr == null) {
 			return false;
 		} else if (m_array != null) {
-			for (CIDRAddress a:m_array) {
-				if (a.covers(addr) && (allowEqualCIDRs || !a.equals(addr))) {
-					return true;
-				}
+			// If any CIDR covers addr, so does the uncovered CIDR which contains it,
+			// and that's the last uncovered CIDR that sorts at or before addr.
+			// If that CIDR equals addr, no other CIDR can cover addr.
+			int i = Arrays.binarySearch(m_cover, addr, g_addrOrder);
+			if (i >= 0) {
+				return allowEqualCIDRs;
 			}
-			return false;
+			i = -i - 2;
+			return i >= 0 && m_cover[i].covers(addr);
 		} else {
 			for (CIDRAddress a:m_set) {
 				if (a.covers(addr) && (allowEqualCIDRs || !a.equals(addr))) {
@@ -240,6 +361,104 @@ public class CIDRSet implements Iterable<CIDRAddress>
 		}
 		return false;
 	}
+
+	/**
+	 * Return the CIDRs in this set or another set.
+	 * This is a set operation on the CIDRs themselves,
+	 * not on the addresses they contain. For example,
+	 * the union of 10.0.0.0/8 and 10.1.0.0/16 has both CIDRs.
+	 * @param other Another set.
+	 * @return A new frozen set with the CIDRs in either set.
+	 */
+	public CIDRSet union(CIDRSet other)
+	{
+		return merge(other, true, true, true);
+	}
+
+	/**
+	 * Return the CIDRs in both this set and another set.
+	 * This is a set operation on the CIDRs themselves,
+	 * not on the addresses they contain.
+	 * @param other Another set.
+	 * @return A new frozen set with the CIDRs in both sets.
+	 */
+	public CIDRSet intersection(CIDRSet other)
+	{
+		return merge(other, false, true, false);
+	}
+
+	/**
+	 * Return the CIDRs in this set but not in another set.
+	 * This is a set operation on the CIDRs themselves,
+	 * not on the addresses they contain.
+	 * @param other Another set.
+	 * @return A new frozen set with the CIDRs in this set which are not in "other".
+	 */
+	public CIDRSet difference(CIDRSet other)
+	{
+		return merge(other, true, false, false);
+	}
+
+	/**
+	 * Merge the sorted CIDRs in this set and another set.
+	 * @param other The other set.
+	 * @param keepThisOnly Keep CIDRs that are only in this set.
+	 * @param keepBoth Keep CIDRs that are in both sets.
+	 * @param keepOtherOnly Keep CIDRs that are only in the other set.
+	 * @return A new frozen set with the CIDRs we kept.
+	 */
+	private CIDRSet merge(CIDRSet other, boolean keepThisOnly, boolean keepBoth, boolean keepOtherOnly)
+	{
+		CIDRAddress[] a = sortedCIDRs();
+		CIDRAddress[] b = other.sortedCIDRs();
+		CIDRAddress[] dest = new CIDRAddress[a.length + b.length];
+		int nDest = 0;
+		int hashCode = 0;
+		int ia = 0;
+		int ib = 0;
+		while (ia < a.length || ib < b.length) {
+			int cmp;
+			if (ia >= a.length) {
+				cmp = +1;
+			} else if (ib >= b.length) {
+				cmp = -1;
+			} else {
+				cmp = g_addrOrder.compare(a[ia], b[ib]);
+			}
+			CIDRAddress cidr;
+			boolean keep;
+			if (cmp < 0) {
+				cidr = a[ia++];
+				keep = keepThisOnly;
+			} else if (cmp > 0) {
+				cidr = b[ib++];
+				keep = keepOtherOnly;
+			} else {
+				cidr = a[ia++];
+				ib++;
+				keep = keepBoth;
+			}
+			if (keep) {
+				dest[nDest++] = cidr;
+				hashCode += cidr.hashCode();
+			}
+		}
+		return new CIDRSet(Arrays.copyOf(dest, nDest), hashCode);
+	}
+
+	/**
+	 * Return the CIDRs in this set, sorted by g_addrOrder.
+	 * For a frozen set, return the array itself, rather than a copy.
+	 */
+	private CIDRAddress[] sortedCIDRs()
+	{
+		if (m_array != null) {
+			return m_array;
+		}
+		CIDRAddress[] cidrs = m_set.toArray(new CIDRAddress[m_set.size()]);
+		Arrays.sort(cidrs, g_addrOrder);
+		return cidrs;
+	}
 	
 	/**
 	 * Add a new CIDR to the set.
@@ -330,68 +549,28 @@ public class CIDRSet implements Iterable<CIDRAddress>
 			
 			// Simple case, just make the array.
 			m_array = m_set.toArray(new CIDRAddress[nCIDRs]);
+			Arrays.sort(m_array, g_addrOrder);
+			m_cover = uncoveredCIDRs(m_array);
 			m_hashCode = m_set.hashCode();
 			m_set = null;
 			return false;
 		} else {
 			
-			// Squeeze out any redundancy.
-			int nOriginalCIDRs = nCIDRs;
-			CIDRAddress[] src = m_set.toArray(new CIDRAddress[nCIDRs]);
-			CIDRAddress[] dest = new CIDRAddress[nCIDRs];
-			Arrays.sort(src, new CIDRAddress.AddressByteComparator());
-			
-			// Copy src to dest, skipping any CIDRs that are covered.
-			int iDest = 0;			
-			for (int iSrc = 0; iSrc < nCIDRs; iSrc++) {
-				dest[iDest] = src[iSrc];
-				for (iSrc++; iSrc < nCIDRs && dest[iDest].covers(src[iSrc]); iSrc++) {
-					;
-				}
-				iSrc--;
-				iDest++;
-			}
-			// System.out.println("XXX: deleted " + (nCIDRs - iDest) + "/" + nCIDRs + " covered cidrs");
-			
-			// Combine adjacent CIDRs when possible. Repeat until no changes.
-			while (true) {
-				CIDRAddress[] tmp;
-				tmp = src;
-				src = dest;
-				dest = tmp;
-				nCIDRs = iDest;
-				iDest = 0;
-				for (int iSrc = 0; iSrc < nCIDRs; iSrc++) {
-					CIDRAddress cidr = src[iSrc];
-					if (iSrc + 1 < nCIDRs
-							&& cidr.getAddressLen() == src[iSrc+1].getAddressLen()
-							&& cidr.getMaskLen() > 0
-							&& cidr.getMaskLen() == src[iSrc+1].getMaskLen()
-							&& cidr.addrBitsMatch(src[iSrc+1], cidr.getMaskLen()-1)) {
-						try {
-							// System.out.println("XXX: merging " + cidr + " and " + src[iSrc+1]);
-							cidr = new CIDRAddress(cidr, cidr.getMaskLen() - 1);
-							iSrc++;
-						} catch (Exception e) {
-							// Shouldn't happen.
-						}
-					}
-					dest[iDest++] = cidr;
-				}
-				if (iDest == nCIDRs) {
-					break;
-				}
-				nCIDRs = iDest;
+			// Squeeze out any redundancy. The aggregator returns sorted,
+			// uncovered CIDRs, so they are also the cover array.
+			CIDRAggregator aggregator = new CIDRAggregator();
+			for (CIDRAddress cidr: m_set) {
+				aggregator.add(cidr);
 			}
-			
-			// Finish up.
-			m_array = new CIDRAddress[nCIDRs];
-			for (int i = 0; i < nCIDRs; i++) {
-				m_array[i] = dest[i];
+			m_array = aggregator.getCIDRs();
+			int hashCode = 0;
+			for (CIDRAddress cidr: m_array) {
+				hashCode += cidr.hashCode();
 			}
-			m_hashCode = m_array.hashCode();
+			m_cover = m_array;
+			m_hashCode = hashCode;
 			m_set = null;
-			return nCIDRs != nOriginalCIDRs;
+			return m_array.length != nCIDRs;
 		}
 	}
 	
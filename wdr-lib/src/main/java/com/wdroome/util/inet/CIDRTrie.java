@@ -0,0 +1,299 @@
+package com.wdroome.util.inet;
+
+import java.net.InetAddress;
+
+/**
+ * A longest-prefix-match table that maps CIDRs to values.
+ * The CIDRs are stored in a path-compressed binary trie (a Patricia trie),
+ * with separate tries for IPV4 and IPV6 CIDRs.
+ * A lookup examines at most one node per distinct prefix length on the path
+ * to the address, so the cost is proportional to the number of address bits,
+ * rather than the number of CIDRs in the table. Lookups do not allocate any objects.
+ * <p>
+ * Adding CIDRs is not thread-safe; we assume the client provides synchronization
+ * while the table is being built. Once the table is complete,
+ * concurrent lookups are safe.
+ * @param <V> The type of the values associated with the CIDRs.
+ * @author wdr
+ */
+public class CIDRTrie<V>
+{
+	/**
+	 * A node in the trie. Every node has a CIDR prefix,
+	 * and every CIDR in the subtree under a node is covered by the node's prefix.
+	 * Nodes for CIDRs added by the client have a non-null value.
+	 * Branch nodes, created where two CIDRs diverge, have a null value.
+	 */
+	private static class Node<V>
+	{
+		private final CIDRAddress m_cidr;
+		private V m_value;
+		private Node<V> m_zero = null;	// Subtree whose next bit is 0.
+		private Node<V> m_one = null;	// Subtree whose next bit is 1.
+
+		private Node(CIDRAddress cidr, V value)
+		{
+			m_cidr = cidr;
+			m_value = value;
+		}
+
+		private Node<V> getChild(int bit)
+		{
+			return bit == 0 ? m_zero : m_one;
+		}
+
+		private void setChild(int bit, Node<V> child)
+		{
+			if (bit == 0) {
+				m_zero = child;
+			} else {
+				m_one = child;
+			}
+		}
+	}
+
+	private Node<V> m_ipv4Root = null;
+	private Node<V> m_ipv6Root = null;
+	private int m_size = 0;
+
+	/**
+	 * Create a new, empty table.
+	 */
+	public CIDRTrie()
+	{
+	}
+
+	/**
+	 * Return the number of CIDRs in the table.
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Add a CIDR to the table, or change the value of an existing CIDR.
+	 * @param cidr The CIDR.
+	 * @param value The value for the CIDR. Must not be null.
+	 * @return The previous value for the CIDR, or null.
+	 * @throws IllegalArgumentException If value is null.
+	 */
+	public V put(CIDRAddress cidr, V value)
+	{
+		if (value == null) {
+			throw new IllegalArgumentException("CIDRTrie.put(): value cannot be null");
+		}
+		boolean ipv4 = cidr.getAddressLen() == 4;
+		Node<V> parent = null;
+		Node<V> node = ipv4 ? m_ipv4Root : m_ipv6Root;
+		while (node != null) {
+			int common = node.m_cidr.commonPrefixLen(cidr);
+			int nodeMaskLen = node.m_cidr.getMaskLen();
+			if (common == nodeMaskLen && common == cidr.getMaskLen()) {
+				// Same CIDR: replace the value.
+				V oldValue = node.m_value;
+				node.m_value = value;
+				if (oldValue == null) {
+					m_size++;
+				}
+				return oldValue;
+			} else if (common == nodeMaskLen) {
+				// Node covers cidr: descend.
+				int bit = cidr.getAddrBit(nodeMaskLen);
+				Node<V> child = node.getChild(bit);
+				if (child == null) {
+					node.setChild(bit, new Node<V>(cidr, value));
+					m_size++;
+					return null;
+				}
+				parent = node;
+				node = child;
+			} else {
+				Node<V> newNode;
+				if (common == cidr.getMaskLen()) {
+					// cidr covers node: put cidr above node.
+					newNode = new Node<V>(cidr, value);
+					newNode.setChild(node.m_cidr.getAddrBit(common), node);
+				} else {
+					// They diverge: create a branch node with their common prefix.
+					try {
+						newNode = new Node<V>(new CIDRAddress(cidr, common), null);
+					} catch (Exception e) {
+						// Shouldn't happen: common is less than cidr's mask length.
+						throw new IllegalStateException("CIDRTrie.put(): " + e);
+					}
+					newNode.setChild(node.m_cidr.getAddrBit(common), node);
+					newNode.setChild(cidr.getAddrBit(common), new Node<V>(cidr, value));
+				}
+				replaceChild(ipv4, parent, node, newNode);
+				m_size++;
+				return null;
+			}
+		}
+		replaceChild(ipv4, null, null, new Node<V>(cidr, value));
+		m_size++;
+		return null;
+	}
+
+	/**
+	 * Replace a node in the trie.
+	 * @param ipv4 True for the IPV4 trie, false for the IPV6 trie.
+	 * @param parent The parent of oldNode, or null if oldNode is the root.
+	 * @param oldNode The node to replace.
+	 * @param newNode The replacement.
+	 */
+	private void replaceChild(boolean ipv4, Node<V> parent, Node<V> oldNode, Node<V> newNode)
+	{
+		if (parent == null) {
+			if (ipv4) {
+				m_ipv4Root = newNode;
+			} else {
+				m_ipv6Root = newNode;
+			}
+		} else if (parent.m_zero == oldNode) {
+			parent.m_zero = newNode;
+		} else {
+			parent.m_one = newNode;
+		}
+	}
+
+	/**
+	 * Return the value of a CIDR in the table. This is an exact match,
+	 * not a longest-prefix match.
+	 * @param cidr The CIDR.
+	 * @return The value for cidr, or null if cidr is not in the table.
+	 */
+	public V get(CIDRAddress cidr)
+	{
+		Node<V> node = findNode(cidr);
+		return node != null ? node.m_value : null;
+	}
+
+	/**
+	 * Return the node with a CIDR, or null if there is no such node.
+	 */
+	private Node<V> findNode(CIDRAddress cidr)
+	{
+		Node<V> node = getRoot(cidr.getAddressLen());
+		int maskLen = cidr.getMaskLen();
+		while (node != null) {
+			int nodeMaskLen = node.m_cidr.getMaskLen();
+			if (nodeMaskLen > maskLen || !node.m_cidr.covers(cidr)) {
+				return null;
+			} else if (nodeMaskLen == maskLen) {
+				return node;
+			}
+			node = node.getChild(cidr.getAddrBit(nodeMaskLen));
+		}
+		return null;
+	}
+
+	/**
+	 * Return the value of the longest CIDR in the table that covers another CIDR.
+	 * @param cidr The CIDR to test.
+	 * @param allowEqualCIDRs If true, consider that a CIDR covers itself.
+	 * 			If false, only return CIDRs with shorter masks than cidr.
+	 * @return The value of the longest CIDR in the table that covers cidr,
+	 * 		or null if no CIDR in the table covers cidr.
+	 */
+	public V longestCover(CIDRAddress cidr, boolean allowEqualCIDRs)
+	{
+		Node<V> node = getRoot(cidr.getAddressLen());
+		int maskLen = cidr.getMaskLen();
+		V best = null;
+		while (node != null && node.m_cidr.covers(cidr)) {
+			int nodeMaskLen = node.m_cidr.getMaskLen();
+			if (nodeMaskLen == maskLen) {
+				if (allowEqualCIDRs && node.m_value != null) {
+					best = node.m_value;
+				}
+				break;
+			}
+			if (node.m_value != null) {
+				best = node.m_value;
+			}
+			node = node.getChild(cidr.getAddrBit(nodeMaskLen));
+		}
+		return best;
+	}
+
+	/**
+	 * Return the value of the longest CIDR that contains an address.
+	 * @param addr The raw bytes of an IPV4 or IPV6 address.
+	 * @return The value of the longest CIDR in the table that contains addr,
+	 * 		or null if no CIDR contains addr.
+	 */
+	public V longestMatch(byte[] addr)
+	{
+		return longestMatch(CIDRAddress.packHigh(addr), CIDRAddress.packLow(addr), addr.length);
+	}
+
+	/**
+	 * Return the value of the longest CIDR that contains a packed address,
+	 * as returned by {@link EndpointAddress#parseIPAddr(CharSequence, int, int, long[], int)}.
+	 * @param hi The first 64 bits of the address.
+	 * @param lo The last 64 bits of the address (IPV6 only).
+	 * @param addrLen The address length in bytes: 4 for IPV4, 16 for IPV6.
+	 * @return The value of the longest CIDR in the table that contains the address,
+	 * 		or null if no CIDR contains it.
+	 */
+	public V longestMatch(long hi, long lo, int addrLen)
+	{
+		Node<V> node = getRoot(addrLen);
+		if (node == null) {
+			return null;
+		}
+		int nbits = 8*addrLen;
+		V best = null;
+		while (node != null && node.m_cidr.containsPacked(hi, lo)) {
+			if (node.m_value != null) {
+				best = node.m_value;
+			}
+			int nodeMaskLen = node.m_cidr.getMaskLen();
+			if (nodeMaskLen >= nbits) {
+				break;
+			}
+			node = node.getChild(CIDRAddress.getAddrBit(hi, lo, nodeMaskLen));
+		}
+		return best;
+	}
+
+	/**
+	 * Return the value of the longest CIDR that contains an address.
+	 * @param addr An IPV4 or IPV6 address.
+	 * @return The value of the longest CIDR in the table that contains addr,
+	 * 		or null if no CIDR contains addr.
+	 * @throws IllegalStateException If the address is a pid name.
+	 */
+	public V longestMatch(EndpointAddress addr)
+	{
+		byte[] bytes = addr.getAddressNoCopy();
+		if (bytes == null) {
+			throw new IllegalStateException("Endpoint.getAddress() is undefined for pid names.");
+		}
+		return longestMatch(bytes);
+	}
+
+	/**
+	 * Return the value of the longest CIDR that contains an address.
+	 * @param addr An IPV4 or IPV6 address.
+	 * @return The value of the longest CIDR in the table that contains addr,
+	 * 		or null if no CIDR contains addr.
+	 */
+	public V longestMatch(InetAddress addr)
+	{
+		return longestMatch(addr.getAddress());
+	}
+
+	/**
+	 * Return the root of the trie for an address length, or null.
+	 */
+	private Node<V> getRoot(int addrLen)
+	{
+		switch (addrLen) {
+			case 4: return m_ipv4Root;
+			case 16: return m_ipv6Root;
+			default: return null;
+		}
+	}
+}
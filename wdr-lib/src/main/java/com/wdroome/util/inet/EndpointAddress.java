@@ -338,7 +338,45 @@ public class EndpointAddress implements Cloneable, Comparable<EndpointAddress>
 		}
 		return v;
 	}
-	
+
+	/**
+	 * Return the raw bytes of the address, without copying them.
+	 * Callers must not modify the returned array.
+	 * @return The raw address bytes, or null for pid addresses.
+	 */
+	byte[] getAddressNoCopy()
+	{
+		return m_address;
+	}
+
+	/**
+	 * Return the first 64 bits of the address, packed into a long,
+	 * as for {@link #parseIPAddr(CharSequence, int, int, long[], int)}.
+	 * @return The first 64 address bits.
+	 * @throws IllegalStateException If the address is a pid name.
+	 */
+	public long getPackedHigh()
+	{
+		if (m_address == null) {
+			throw new IllegalStateException("Endpoint.getAddress() is undefined for pid names.");
+		}
+		return CIDRAddress.packHigh(m_address);
+	}
+
+	/**
+	 * Return the last 64 bits of an IPV6 address, packed into a long,
+	 * as for {@link #parseIPAddr(CharSequence, int, int, long[], int)}.
+	 * @return The last 64 address bits, or 0 if this isn't an IPV6 address.
+	 * @throws IllegalStateException If the address is a pid name.
+	 */
+	public long getPackedLow()
+	{
+		if (m_address == null) {
+			throw new IllegalStateException("Endpoint.getAddress() is undefined for pid names.");
+		}
+		return CIDRAddress.packLow(m_address);
+	}
+
 	/**
 	 * If this is a PID name, return the name.
 	 * @return The PID name in the address.
@@ -864,6 +902,202 @@ public class EndpointAddress implements Cloneable, Comparable<EndpointAddress>
 		return arr;
 	}
 		
+	/**
+	 * Parse an IPV4 or IPV6 address into a packed pair of longs, without creating any objects.
+	 * The address is a 128 bit number whose high-order bit is the first bit of the address:
+	 * an IPV4 address is the high 32 bits of the first long, and the second long is 0.
+	 * This is the packed format used by {@link CIDRAddress#containsIPV6(long, long)},
+	 * {@link CIDRTrie#longestMatch(long, long, int)}, etc.
+	 * <p>
+	 * This parser is stricter than {@link #ipAddrStrToBytes(String, String)}:
+	 * it does not accept empty IPV4 bytes (e.g., "1..2.3"), MAC addresses or scope ids.
+	 * @param src The address string, with or without an "ipv4:" or "ipv6:" prefix.
+	 * 		Without a prefix, we assume IPV6 if the address has a colon.
+	 * @param start The index of the first character of the address in src.
+	 * @param end The index after the last character of the address.
+	 * @param dest The packed address is stored in dest[destOffset] and dest[destOffset+1].
+	 * 		If the address is invalid, dest is unchanged.
+	 * @param destOffset The index in dest.
+	 * @return The address length in bytes, 4 or 16, or -1 if src isn't a valid address.
+	 */
+	public static int parseIPAddr(CharSequence src, int start, int end, long[] dest, int destOffset)
+	{
+		boolean ipv6;
+		if (startsWith(src, start, end, IPV4_PREFIX)) {
+			start += IPV4_PREFIX.length() + 1;
+			ipv6 = false;
+		} else if (startsWith(src, start, end, IPV6_PREFIX)) {
+			start += IPV6_PREFIX.length() + 1;
+			ipv6 = true;
+		} else {
+			ipv6 = false;
+			for (int i = start; i < end; i++) {
+				if (src.charAt(i) == ':') {
+					ipv6 = true;
+					break;
+				}
+			}
+		}
+		if (!ipv6) {
+			long addr = parseIPV4(src, start, end);
+			if (addr < 0) {
+				return -1;
+			}
+			dest[destOffset] = addr << 32;
+			dest[destOffset+1] = 0;
+			return 4;
+		} else {
+			return parseIPV6(src, start, end, dest, destOffset);
+		}
+	}
+
+	/**
+	 * Parse an IPV4 or IPV6 address into a packed pair of longs.
+	 * @param src The address string, with or without an "ipv4:" or "ipv6:" prefix.
+	 * @param dest The packed address is stored in dest[0] and dest[1].
+	 * @return The address length in bytes, 4 or 16, or -1 if src isn't a valid address.
+	 * @see #parseIPAddr(CharSequence, int, int, long[], int)
+	 */
+	public static int parseIPAddr(CharSequence src, long[] dest)
+	{
+		return parseIPAddr(src, 0, src.length(), dest, 0);
+	}
+
+	/**
+	 * Return true iff src[start,end) starts with an address type and the separator.
+	 */
+	private static boolean startsWith(CharSequence src, int start, int end, String addrType)
+	{
+		int len = addrType.length();
+		if (end - start <= len || src.charAt(start + len) != PREFIX_SEP_CHAR) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (src.charAt(start + i) != addrType.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse a dotted-decimal IPV4 address.
+	 * @return The address as an unsigned 32 bit value, or -1 if the address is invalid.
+	 */
+	private static long parseIPV4(CharSequence src, int start, int end)
+	{
+		long addr = 0;
+		int nBytes = 0;
+		int value = 0;
+		int nDigits = 0;
+		for (int i = start; i < end; i++) {
+			char c = src.charAt(i);
+			if (c >= '0' && c <= '9') {
+				value = 10*value + (c - '0');
+				if (++nDigits > 3 || value > 0xff) {
+					return -1;
+				}
+			} else if (c == '.' && nDigits > 0 && nBytes < 3) {
+				addr = (addr << 8) | value;
+				nBytes++;
+				value = 0;
+				nDigits = 0;
+			} else {
+				return -1;
+			}
+		}
+		if (nDigits == 0 || nBytes != 3) {
+			return -1;
+		}
+		return (addr << 8) | value;
+	}
+
+	/**
+	 * Parse a colon-hex IPV6 address, which may end with a dotted-decimal IPV4 address.
+	 * @return 16, or -1 if the address is invalid.
+	 */
+	private static int parseIPV6(CharSequence src, int start, int end, long[] dest, int destOffset)
+	{
+		// Groups before the "::" go directly into hi and lo.
+		// Groups after the "::" are shifted into tailHi and tailLo,
+		// which are or'ed into the low-order bits at the end.
+		long hi = 0;
+		long lo = 0;
+		long tailHi = 0;
+		long tailLo = 0;
+		int nHead = 0;
+		int nTail = 0;
+		boolean inTail = false;
+		int i = start;
+		if (end - start >= 2 && src.charAt(start) == ':' && src.charAt(start+1) == ':') {
+			inTail = true;
+			i += 2;
+		}
+		while (i < end) {
+			int groupStart = i;
+			int value = 0;
+			for (; i < end; i++) {
+				int digit = Character.digit(src.charAt(i), 16);
+				if (digit < 0) {
+					break;
+				}
+				value = (value << 4) | digit;
+			}
+			int nGroups;
+			long groups;
+			if (i < end && src.charAt(i) == '.') {
+				groups = parseIPV4(src, groupStart, end);
+				if (groups < 0) {
+					return -1;
+				}
+				nGroups = 2;
+				i = end;
+			} else if (i == groupStart || i - groupStart > 4) {
+				return -1;
+			} else {
+				groups = value;
+				nGroups = 1;
+			}
+			for (int k = nGroups - 1; k >= 0; k--) {
+				long group = (groups >>> (16*k)) & 0xffff;
+				if (!inTail) {
+					if (nHead >= 8) {
+						return -1;
+					} else if (nHead < 4) {
+						hi |= group << (48 - 16*nHead);
+					} else {
+						lo |= group << (48 - 16*(nHead - 4));
+					}
+					nHead++;
+				} else {
+					if (nHead + ++nTail > 7) {
+						return -1;
+					}
+					tailHi = (tailHi << 16) | (tailLo >>> 48);
+					tailLo = (tailLo << 16) | group;
+				}
+			}
+			if (i == end) {
+				break;
+			} else if (src.charAt(i) != ':' || ++i == end) {
+				return -1;
+			} else if (src.charAt(i) == ':') {
+				if (inTail) {
+					return -1;
+				}
+				inTail = true;
+				i++;
+			}
+		}
+		// "::" must replace at least one group.
+		if (inTail ? (nHead + nTail > 7) : (nHead != 8)) {
+			return -1;
+		}
+		dest[destOffset] = hi | tailHi;
+		dest[destOffset+1] = lo | tailLo;
+		return 16;
+	}
+
 	/**
 	 * Return true if src appears to have a (possibly unknown) address type prefix.
 	 * That is, the string before the first ":" is alphanumeric
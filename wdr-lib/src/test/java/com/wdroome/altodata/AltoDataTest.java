@@ -0,0 +1,77 @@
+package com.wdroome.altodata;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+
+import com.wdroome.json.JSONException;
+import com.wdroome.json.JSONWriter;
+import com.wdroome.altomsgs.AltoResp_EndpointCost;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class AltoDataTest
+{
+	private static AltoData makeData() throws UnknownHostException
+	{
+		NetworkMap map = new NetworkMap("NET");
+		map.addCIDRs("PID0", "10.0.0.0/24");
+		map.addCIDRs("PID1", "10.0.1.0/24 2001:db8::/32");
+		map.addCIDRs("PID2", "10.0.2.0/24");
+		map.freeze();
+		AltoData data = new AltoData(null);
+		data.setNetworkMap(map);
+		data.setDefaultNetworkMapId("NET");
+		CostMap costMap = new CostMap("routingcost", map, null);
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				costMap.setCost("PID" + i, "PID" + j, 10*i + j, 0);
+			}
+		}
+		data.setCostMap(costMap);
+		return data;
+	}
+	
+	@Test
+	public void testGetEndpointCosts() throws UnknownHostException
+	{
+		AltoData data = makeData();
+		String[] srcs = {"10.0.2.5", "ipv6:2001:db8::1", "11.0.0.1", "bogus"};
+		String[] dests = {"10.0.0.1", "ipv4:10.0.1.1", "10.0.2.1"};
+		int[] srcIndexes = new int[srcs.length];
+		int[] destIndexes = new int[dests.length];
+		float[][] costs = data.getEndpointCosts(null, "routingcost", srcs, dests, srcIndexes, destIndexes);
+		assertArrayEquals(new int[] {2, 1, -1, -1}, srcIndexes);
+		assertArrayEquals(new int[] {0, 1, 2}, destIndexes);
+		assertEquals(20, costs[0][0], 0);
+		assertEquals(22, costs[0][2], 0);
+		assertEquals(11, costs[1][1], 0);
+		assertTrue(Float.isNaN(costs[2][0]));
+		assertTrue(Float.isNaN(costs[3][2]));
+		assertNull(data.getEndpointCosts(null, "hopcount", srcs, dests, null, null));
+		assertNull(data.getEndpointCosts("NOMAP", "routingcost", srcs, dests, null, null));
+	}
+	
+	@Test
+	public void testSetEndpointCosts() throws UnknownHostException, JSONException, IOException
+	{
+		AltoData data = makeData();
+		AltoResp_EndpointCost resp = new AltoResp_EndpointCost();
+		resp.setCostMetric("routingcost");
+		resp.setCostMode("numerical");
+		assertFalse(data.setEndpointCosts(null, "hopcount", new String[0], new String[0], resp));
+		assertTrue(data.setEndpointCosts(null, "routingcost",
+						new String[] {"10.0.0.7", "11.0.0.1"},
+						new String[] {"10.0.1.1", "2001:db8::5"}, resp));
+		StringBuilder buff = new StringBuilder();
+		resp.writeJSON(new JSONWriter(buff));
+		assertEquals("{\"meta\":{\"cost-type\":{\"cost-metric\":\"routingcost\",\"cost-mode\":\"numerical\"}},"
+					+ "\"endpoint-cost-map\":{\"ipv4:10.0.0.7\":{\"ipv4:10.0.1.1\":1,\"ipv6:2001:db8::5\":1}}}",
+					buff.toString());
+		assertEquals(1, resp.getCost("10.0.0.7", "2001:db8::5"), 0);
+	}
+}
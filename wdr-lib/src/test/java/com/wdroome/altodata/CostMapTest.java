@@ -0,0 +1,341 @@
+package com.wdroome.altodata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnknownHostException;
+
+import com.wdroome.json.JSONException;
+import com.wdroome.altomsgs.AltoResp_CostMap;
+import com.wdroome.altomsgs.AltoResp_EndpointCost;
+import com.wdroome.altomsgs.AltoResp_IndexedCostMap;
+import com.wdroome.util.MappedFloatMatrix;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class CostMapTest
+{
+	private static NetworkMap makeMap(String... pids) throws UnknownHostException
+	{
+		NetworkMap map = new NetworkMap("DUMMY");
+		for (int i = 0; i < pids.length; i++) {
+			map.addCIDRs(pids[i], "10." + (i / 256) + "." + (i % 256) + ".0/24");
+		}
+		map.freeze();
+		return map;
+	}
+
+	@Test
+	public void testSnapshots() throws UnknownHostException, JSONException
+	{
+		NetworkMap map = makeMap("PID0", "PID1", "PID2");
+		CostMap costMap = new CostMap("routingcost", map, null, true);
+		assertTrue(costMap.usesSnapshots());
+		CostMap.Snapshot snap0 = costMap.getSnapshot();
+		assertEquals("initial", 1.0, snap0.getCost("PID0", "PID2"), 0);
+
+		assertTrue(costMap.setCost("PID0", "PID2", 5, 1000));
+		assertFalse(costMap.setCost("PID0", "PIDX", 5, 1000));
+		CostMap.Snapshot snap1 = costMap.getSnapshot();
+		assertNotSame(snap0, snap1);
+		assertEquals("old snapshot", 1.0, snap0.getCost("PID0", "PID2"), 0);
+		assertEquals("new snapshot", 5.0, snap1.getCost("PID0", "PID2"), 0);
+		assertEquals("getCost", 5.0, costMap.getCost("PID0", "PID2"), 0);
+		assertEquals("getCost", 5.0, costMap.getCost(0, 2), 0);
+		assertEquals("modtime", 1000, snap1.getLastModTime());
+		assertEquals("modtime", 1000, costMap.getLastModTime());
+		assertTrue("version", snap1.getVersion() > snap0.getVersion());
+		assertEquals("bad pid", -1, costMap.getCost("PID0", "PIDX"), 0);
+
+		AltoResp_CostMap resp = new AltoResp_CostMap();
+		resp.setCost("PID1", "PID0", 7);
+		resp.setCost("PID1", "PID1", 8);
+		resp.setCost("PID2", "PID0", 9);
+		assertTrue(costMap.setCosts(resp));
+		CostMap.Snapshot snap2 = costMap.getSnapshot();
+		assertEquals("snap1", 1.0, snap1.getCost("PID1", "PID0"), 0);
+		assertEquals("snap2", 7.0, snap2.getCost("PID1", "PID0"), 0);
+		assertEquals("snap2", 8.0, snap2.getCost("PID1", "PID1"), 0);
+		assertEquals("snap2", 9.0, snap2.getCost("PID2", "PID0"), 0);
+		assertEquals("snap2", 5.0, snap2.getCost("PID0", "PID2"), 0);
+
+		costMap.setAllCosts(3);
+		assertEquals("snap2", 7.0, snap2.getCost("PID1", "PID0"), 0);
+		assertEquals("setAllCosts", 3.0, costMap.getCost("PID1", "PID0"), 0);
+
+		costMap.setNetworkMap(makeMap("PID1", "PID3"));
+		CostMap.Snapshot snap3 = costMap.getSnapshot();
+		assertEquals("new map", 2, snap3.getNumPids());
+		assertEquals("new map", 3.0, snap3.getCost("PID1", "PID1"), 0);
+		assertTrue("new map", Double.isNaN(snap3.getCost("PID1", "PID3")));
+		assertEquals("new map", -1, snap3.getCost("PID0", "PID1"), 0);
+		assertEquals("snap2", 3, snap2.getNumPids());
+	}
+
+	@Test
+	public void testLockedSnapshot() throws UnknownHostException
+	{
+		CostMap costMap = new CostMap("routingcost", makeMap("PID0", "PID1"), null);
+		assertFalse(costMap.usesSnapshots());
+		costMap.setCost("PID0", "PID1", 4, 2000);
+		CostMap.Snapshot snap = costMap.getSnapshot();
+		costMap.setCost("PID0", "PID1", 6, 3000);
+		assertEquals("snapshot", 4.0, snap.getCost("PID0", "PID1"), 0);
+		assertEquals("snapshot", 2000, snap.getLastModTime());
+		assertEquals("getCost", 6.0, costMap.getCost("PID0", "PID1"), 0);
+		assertEquals("modtime", 3000, costMap.getLastModTime());
+	}
+
+	@Test
+	public void testDirectStore() throws UnknownHostException
+	{
+		MappedFloatMatrix store = MappedFloatMatrix.allocateDirect(3);
+		CostMap costMap = new CostMap("routingcost", makeMap("PID0", "PID1", "PID2"), null, store);
+		costMap.setAllCosts(2);
+		assertTrue(costMap.setCost("PID2", "PID1", 4, 5000));
+		assertEquals("getCost", 4.0, costMap.getCost("PID2", "PID1"), 0);
+		assertEquals("getCost", 2.0, costMap.getCost(1, 2), 0);
+		assertEquals("store", 4.0f, store.get(2, 1), 0);
+		assertEquals("modtime", 5000, store.getTimestamp());
+
+		AltoResp_CostMap resp = new AltoResp_CostMap();
+		resp.setCost("PID0", "PID0", 7);
+		assertTrue(costMap.setCosts(resp));
+		CostMap.Snapshot snap = costMap.getSnapshot();
+		assertEquals("snapshot", 7.0, snap.getCost("PID0", "PID0"), 0);
+
+		costMap.setNetworkMap(makeMap("PID2", "PID1", "PID9"));
+		assertEquals("new map", 4.0, costMap.getCost("PID2", "PID1"), 0);
+		assertTrue("new map", Double.isNaN(costMap.getCost("PID9", "PID1")));
+		assertEquals("new map", -1, costMap.getCost("PID0", "PID0"), 0);
+	}
+
+	@Test
+	public void testSaveLoad() throws IOException
+	{
+		File file = File.createTempFile("costmap", ".fmat");
+		try {
+			NetworkMap map = makeMap("PID0", "PID1", "PID2");
+			CostMap costMap = new CostMap("routingcost", map, null);
+			costMap.setCost("PID0", "PID2", 9, 6000);
+			costMap.save(file);
+
+			CostMap loaded = CostMap.load("routingcost", map, null, file);
+			assertEquals("loaded", 9.0, loaded.getCost("PID0", "PID2"), 0);
+			assertEquals("loaded", 1.0, loaded.getCost("PID1", "PID2"), 0);
+			assertEquals("modtime", 6000, loaded.getLastModTime());
+			loaded.setCost("PID1", "PID2", 3, 7000);
+
+			CostMap reloaded = CostMap.load("routingcost", map, null, file);
+			assertEquals("reloaded", 3.0, reloaded.getCost("PID1", "PID2"), 0);
+
+			reloaded.setNetworkMap(makeMap("PID1", "PID2"));
+			assertEquals("new map", 3.0, reloaded.getCost("PID1", "PID2"), 0);
+			reloaded = CostMap.load("routingcost", makeMap("PID1", "PID2"), null, file);
+			assertEquals("new map", 3.0, reloaded.getCost("PID1", "PID2"), 0);
+			try {
+				CostMap.load("routingcost", map, null, file);
+				fail("loaded with wrong network map");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testDelta() throws UnknownHostException, JSONException
+	{
+		for (boolean useSnapshots: new boolean[] {false, true}) {
+			CostMap costMap = new CostMap("routingcost", makeMap("PID0", "PID1", "PID2"), null, useSnapshots);
+			assertNull("no journal", costMap.getChangesSince(costMap.getVersion()));
+			costMap.setJournalSize(3);
+			long v0 = costMap.getVersion();
+			assertEquals("empty", 0, costMap.getChangesSince(v0).size());
+
+			CostMapDelta delta = new CostMapDelta();
+			delta.add("PID0", "PID1", 5);
+			delta.add("PID1", "PID0", 6);
+			delta.add("PIDX", "PID0", 7);
+			delta.add("PID0", "PID1", 8);
+			assertFalse("bad pid", costMap.applyDelta(delta, 1000));
+			long v1 = costMap.getVersion();
+			assertEquals("one version", v0 + 1, v1);
+			assertEquals("applyDelta", 8.0, costMap.getCost("PID0", "PID1"), 0);
+			assertEquals("applyDelta", 6.0, costMap.getCost("PID1", "PID0"), 0);
+			assertEquals("modtime", 1000, costMap.getLastModTime());
+
+			CostMapDelta changes = costMap.getChangesSince(v0);
+			assertEquals("changes", 2, changes.size());
+			assertEquals("changes", v0, changes.getFromVersion());
+			assertEquals("changes", v1, changes.getToVersion());
+			CostMap copy = new CostMap("routingcost", makeMap("PID0", "PID1", "PID2"), null);
+			assertTrue(copy.applyDelta(changes, 0));
+			assertEquals("copy", 8.0, copy.getCost("PID0", "PID1"), 0);
+			assertEquals("copy", 6.0, copy.getCost("PID1", "PID0"), 0);
+			assertEquals("toAltoResp", 6.0, changes.toAltoResp().getCost("PID1", "PID0"), 0);
+
+			costMap.setCost("PID2", "PID2", 9, 2000);
+			changes = costMap.getChangesSince(v1);
+			assertEquals("setCost", 1, changes.size());
+			assertEquals("setCost", "PID2", changes.getSrcPid(0));
+			assertEquals("setCost", 9.0, changes.getCost(0), 0);
+			assertNull("discarded", costMap.getChangesSince(v0));
+
+			long v2 = costMap.getVersion();
+			costMap.setNetworkMap(makeMap("PID0", "PID1", "PID2"));
+			assertEquals("same pids", 0, costMap.getChangesSince(v2).size());
+			assertEquals("same pids", 1, costMap.getChangesSince(v1).size());
+			costMap.setNetworkMap(makeMap("PID0", "PID1"));
+			assertNull("new pids", costMap.getChangesSince(v2));
+			long v3 = costMap.getVersion();
+			costMap.setAllCosts(1);
+			assertNull("setAllCosts", costMap.getChangesSince(v3));
+			assertEquals("setAllCosts", 0, costMap.getChangesSince(costMap.getVersion()).size());
+		}
+	}
+
+	@Test
+	public void testEndpointCostVersions() throws UnknownHostException, JSONException
+	{
+		for (boolean useSnapshots: new boolean[] {false, true}) {
+			CostMap costMap = new CostMap("routingcost", makeMap("PID0", "PID1", "PID2"), null, useSnapshots);
+			costMap.setJournalSize(100);
+			long v0 = costMap.getVersion();
+			
+			// No endpoint is in a pid, so nothing changes.
+			AltoResp_EndpointCost data = new AltoResp_EndpointCost();
+			data.setCost("192.0.2.1", "192.0.2.2", 5);
+			costMap.setCosts(data);
+			assertEquals("no update", v0, costMap.getVersion());
+			assertEquals("no update", 0, costMap.getChangesSince(costMap.getVersion()).size());
+			
+			data = new AltoResp_EndpointCost();
+			data.setCost("10.0.0.1", "10.0.1.1", 4);
+			data.setCost("10.0.0.1", "192.0.2.2", 5);
+			AltoResp_EndpointCost resp = costMap.setCosts(data);
+			assertEquals("resp", 4.0, resp.getCost("10.0.0.1", "10.0.1.1"), 0);
+			assertEquals("update", v0 + 1, costMap.getVersion());
+			assertEquals("update", 4.0, costMap.getCost("PID0", "PID1"), 0);
+			CostMapDelta changes = costMap.getChangesSince(v0);
+			assertEquals("changes", 1, changes.size());
+			assertEquals("changes", v0 + 1, changes.getToVersion());
+		}
+	}
+
+	@Test
+	public void testFullOrdinal() throws IOException, JSONException
+	{
+		for (boolean useSnapshots: new boolean[] {false, true}) {
+			CostMap costMap = new CostMap("routingcost", makeMap("PID0", "PID1", "PID2"), null, useSnapshots);
+			costMap.setAllCosts(1);
+			AltoResp_EndpointCost data = new AltoResp_EndpointCost();
+			data.setCost("10.0.0.1", "10.0.1.1", -5);
+			data.setCost("10.0.0.1", "10.0.2.1", 1.0000001);
+			data.setCost("10.0.1.1", "10.0.2.1", 3);
+			costMap.setCosts(data);
+			
+			// getCosts() rounds costs as getCost() does, and omits negative costs.
+			float[][] costs = costMap.getCosts(new int[] {0, 1}, new int[] {1, 2});
+			assertTrue("negative", Float.isNaN(costs[0][0]));
+			assertEquals("rounded", 1.0f, costs[0][1], 0);
+			assertEquals("3", 3.0f, costs[1][1], 0);
+			
+			ByteArrayOutputStream buff = new ByteArrayOutputStream();
+			PrintStream out = new PrintStream(buff);
+			AltoResp_IndexedCostMap.writeCostMap(out, costMap, "ordinal", true, null, null);
+			out.close();
+			AltoResp_IndexedCostMap ordinals = new AltoResp_IndexedCostMap(
+							new ByteArrayInputStream(buff.toByteArray()), -1);
+			assertTrue("PID0=>PID1", Double.isNaN(ordinals.getCost("PID0", "PID1")));
+			assertEquals("PID0=>PID2", 1, ordinals.getCost("PID0", "PID2"), 0);
+			assertEquals("PID1=>PID2", 2, ordinals.getCost("PID1", "PID2"), 0);
+			assertEquals("PID2=>PID2", 1, ordinals.getCost("PID2", "PID2"), 0);
+		}
+	}
+
+	@Test
+	public void testGetCosts() throws UnknownHostException
+	{
+		String[] pids = new String[300];
+		for (int i = 0; i < pids.length; i++) {
+			pids[i] = String.format("PID%03d", i);
+		}
+		for (boolean useSnapshots: new boolean[] {false, true}) {
+			CostMap costMap = new CostMap("routingcost", makeMap(pids), null, useSnapshots);
+			CostMapDelta delta = new CostMapDelta();
+			for (int i = 0; i < pids.length; i++) {
+				for (int j = 0; j < pids.length; j++) {
+					delta.add(pids[i], pids[j], i + j/1000.0);
+				}
+			}
+			delta.add(pids[5], pids[7], Double.NaN);
+			costMap.applyDelta(delta, 0);
+			
+			int[] srcIndexes = costMap.pidsToIndexes(pids);
+			int[] destIndexes = costMap.pidsToIndexes(new String[] {"PID007", "PIDX", "PID299"});
+			float[][] costs = costMap.getCosts(srcIndexes, destIndexes);
+			assertEquals(pids.length, costs.length);
+			for (int i = 0; i < pids.length; i++) {
+				assertEquals(3, costs[i].length);
+				if (i != 5) {
+					assertEquals(pids[i], (float)(i + 0.007), costs[i][0], 0);
+				}
+				assertTrue(pids[i], Float.isNaN(costs[i][1]));
+				assertEquals(pids[i], (float)(i + 0.299), costs[i][2], 0);
+			}
+			assertTrue("NaN cost", Float.isNaN(costs[5][0]));
+			
+			costs = costMap.getCosts(new int[] {-1, 2}, new int[] {1});
+			assertTrue("bad src", Float.isNaN(costs[0][0]));
+			assertEquals("src 2", 2.001f, costs[1][0], 0);
+		}
+	}
+
+	@Test
+	public void testConcurrentVersions() throws Exception
+	{
+		// setAllCosts() holds the cost lock for a while on a big map,
+		// which gives applyDelta() time to read a stale version.
+		final int nOps = 500;
+		String[] pids = new String[400];
+		for (int i = 0; i < pids.length; i++) {
+			pids[i] = "PID" + i;
+		}
+		final CostMap costMap = new CostMap("routingcost", makeMap(pids), null);
+		costMap.setJournalSize(100);
+		long v0 = costMap.getVersion();
+		Thread setAll = new Thread(() -> {
+			for (int i = 0; i < nOps; i++) {
+				costMap.setAllCosts(i);
+			}
+		});
+		Thread deltas = new Thread(() -> {
+			for (int i = 0; i < nOps; i++) {
+				CostMapDelta delta = new CostMapDelta();
+				delta.add("PID0", "PID1", i);
+				costMap.applyDelta(delta, 1000);
+			}
+		});
+		setAll.start();
+		deltas.start();
+		long prev = v0;
+		while (setAll.isAlive() || deltas.isAlive()) {
+			long version = costMap.getVersion();
+			assertTrue("version went backwards", version >= prev);
+			prev = version;
+		}
+		setAll.join();
+		deltas.join();
+		// Each operation must get its own version.
+		assertEquals("versions", v0 + 2*nOps, costMap.getVersion());
+	}
+}
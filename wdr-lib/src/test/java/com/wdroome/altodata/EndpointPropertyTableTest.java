@@ -0,0 +1,96 @@
+package com.wdroome.altodata;
+
+import java.net.*;
+
+import com.wdroome.altodata.EndpointPropertyTable;
+import com.wdroome.util.inet.EndpointAddress;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class EndpointPropertyTableTest
+{
+	private static EndpointPropertyTable makeTable() throws UnknownHostException
+	{
+		EndpointPropertyTable table = new EndpointPropertyTable();
+		table.setProp("10.0.0.0/8", "color", "red");
+		table.setProp("10.0.0.0/8", "size", "big");
+		table.setProp("10.1.0.0/16", "color", "green");
+		table.setProp("10.1.2.0/24", "shape", "round");
+		table.setProp("10.1.2.3", "color", "blue");
+		table.setProp("2001:db8::/32", "color", "purple");
+		return table;
+	}
+
+	private static String getProp(EndpointPropertyTable table, String addr, String name)
+			throws UnknownHostException
+	{
+		return table.getProp(new EndpointAddress(addr), name);
+	}
+
+	@Test
+	public void testGetProp() throws UnknownHostException
+	{
+		EndpointPropertyTable table = makeTable();
+		for (int iPass = 0; iPass < 2; iPass++) {
+			assertEquals("10.1.2.3 color", "blue", getProp(table, "10.1.2.3", "color"));
+			assertEquals("10.1.2.3 shape", "round", getProp(table, "10.1.2.3", "shape"));
+			assertEquals("10.1.2.3 size", "big", getProp(table, "10.1.2.3", "size"));
+			assertEquals("10.1.2.4 color", "green", getProp(table, "10.1.2.4", "color"));
+			assertEquals("10.1.3.4 color", "green", getProp(table, "10.1.3.4", "color"));
+			assertEquals("10.1.3.4 shape", null, getProp(table, "10.1.3.4", "shape"));
+			assertEquals("10.2.3.4 color", "red", getProp(table, "10.2.3.4", "color"));
+			assertEquals("11.2.3.4 color", null, getProp(table, "11.2.3.4", "color"));
+			assertEquals("2001:db8::1 color", "purple", getProp(table, "2001:db8::1", "color"));
+			table.finishUpdates();
+		}
+	}
+
+	@Test
+	public void testGetPropPid() throws UnknownHostException
+	{
+		EndpointAddress pid = new EndpointAddress("pid:PID1", true);
+		EndpointPropertyTable table = new EndpointPropertyTable();
+		table.setProp("10.1.2.3", "color", "blue");
+		assertEquals("no CIDRs", null, table.getProp(pid, "color"));
+		table = makeTable();
+		assertEquals("CIDRs", null, table.getProp(pid, "color"));
+	}
+
+	@Test
+	public void testGetPropPacked() throws UnknownHostException
+	{
+		EndpointPropertyTable table = makeTable();
+		table.setProp("2001:db8::1", "color", "orange");
+		long[] packed = new long[2];
+		for (String addr: new String[] {"10.1.2.3", "10.1.2.4", "10.2.3.4", "11.2.3.4",
+										"2001:db8::1", "2001:db8::2"}) {
+			int addrLen = EndpointAddress.parseIPAddr(addr, packed);
+			for (String name: new String[] {"color", "shape", "size"}) {
+				assertEquals(addr + " " + name, getProp(table, addr, name),
+							table.getProp(packed[0], packed[1], addrLen, name));
+			}
+		}
+		assertEquals("orange", getProp(table, "2001:db8::1", "color"));
+		assertEquals("purple", getProp(table, "2001:db8::2", "color"));
+	}
+
+	@Test
+	public void testUpdates() throws UnknownHostException
+	{
+		EndpointPropertyTable table = makeTable();
+		table.finishUpdates();
+		assertEquals("10.1.3.4 color", "green", getProp(table, "10.1.3.4", "color"));
+		table.setProp("10.1.0.0/16", "color", null);
+		assertEquals("10.1.3.4 color", "red", getProp(table, "10.1.3.4", "color"));
+		table.setProp("10.0.0.0/8", "color", "orange");
+		assertEquals("10.1.3.4 color", "orange", getProp(table, "10.1.3.4", "color"));
+		table.setProp("10.1.2.3", "color", null);
+		assertEquals("10.1.2.3 color", "orange", getProp(table, "10.1.2.3", "color"));
+		assertEquals("size", 4, table.size());
+	}
+}
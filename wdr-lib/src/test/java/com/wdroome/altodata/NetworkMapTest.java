@@ -1,6 +1,11 @@
 package com.wdroome.altodata;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
 
 import com.wdroome.json.JSONException;
@@ -133,6 +138,24 @@ public class NetworkMapTest
 		}
 	}
 	
+	@Test
+	public void testGetPIDPacked() throws UnknownHostException
+	{
+		NetworkMap map = makeMap(false);
+		map.addCIDRs("PID3", "2001:db8::/32");
+		long[] packed = new long[2];
+		for (int i = 0; i < 2; i++) {
+			for (String addr: new String[] {"127.0.0.1", "192.0.2.27", "198.51.100.1",
+											"198.51.100.129", "ipv6:2001:db8::1", "2001:db9::1"}) {
+				int addrLen = EndpointAddress.parseIPAddr(addr, packed);
+				assertEquals(addr, map.getPID(new EndpointAddress(addr)),
+							map.getPID(packed[0], packed[1], addrLen));
+			}
+			assertEquals("PID3", map.getPID(packed[0] ^ (1L << 32), packed[1], 16));
+			map.freeze();
+		}
+	}
+	
 	@Test
 	public void testCheckFullCoverage() throws UnknownHostException
 	{
@@ -182,6 +205,67 @@ public class NetworkMapTest
 		}
 	}
 	
+	@Test
+	public void testSaveLoad() throws IOException
+	{
+		NetworkMap map = makeMap(false);
+		map.addCIDRs("PID3", "192.0.2.128/25 192.0.3.0/28");
+		map.addCIDRs("PID4", "2001:db8::/32");
+		map.addCIDRs("PID\u00e9", "");
+		map.freeze("vtag-1", null);
+		File file = File.createTempFile("netmap", ".bin");
+		try {
+			map.save(file);
+			NetworkMap loaded = NetworkMap.load(file);
+			assertTrue("frozen", loaded.isFrozen());
+			assertEquals("map id", map.getMapId(), loaded.getMapId());
+			assertEquals("vtag", "vtag-1", loaded.getVtag());
+			assertEquals("modtime", map.getLastModTime(), loaded.getLastModTime());
+			assertArrayEquals("pids", map.getPidNames(), loaded.getPidNames());
+			for (String pid: map.allPids()) {
+				assertEquals(pid, map.getCIDRs(pid), loaded.getCIDRs(pid));
+				assertEquals(pid, map.getContainingPid(pid), loaded.getContainingPid(pid));
+			}
+			assertEquals("PID3 parent", "PID1", loaded.getContainingPid("PID3"));
+			assertEquals("192.0.2.200", "PID3", loaded.getPID(new EndpointAddress("192.0.2.200")));
+			assertEquals("2001:db8::1", "PID4", loaded.getPID(new EndpointAddress("2001:db8::1")));
+			assertEquals("10.0.0.1", "PID0", loaded.getPID(new EndpointAddress("10.0.0.1")));
+			
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			try {
+				NetworkMap.readBinary(ByteBuffer.wrap(bytes, 0, bytes.length - 3));
+				fail("read truncated map");
+			} catch (IOException e) {
+				// expected
+			}
+			bytes[0] = 'X';
+			try {
+				NetworkMap.readBinary(ByteBuffer.wrap(bytes));
+				fail("read bad magic number");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testSaveLoadNullId() throws IOException
+	{
+		NetworkMap map = new NetworkMap((String)null);
+		map.addCIDRs("PID1", "192.0.2.0/24");
+		map.addCIDRs("PID0", "0.0.0.0/0");
+		map.freeze();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map.writeBinary(out);
+		NetworkMap loaded = NetworkMap.readBinary(ByteBuffer.wrap(out.toByteArray()));
+		assertNull("map id", loaded.getMapId());
+		assertEquals("vtag", map.getVtag(), loaded.getVtag());
+		assertArrayEquals("pids", map.getPidNames(), loaded.getPidNames());
+		assertEquals("192.0.2.1", "PID1", loaded.getPID(new EndpointAddress("192.0.2.1")));
+	}
+	
 	@Test
 	public void testUnnormalizedCIDRs() throws UnknownHostException
 	{
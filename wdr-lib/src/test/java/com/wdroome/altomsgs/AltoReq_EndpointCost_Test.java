@@ -1,8 +1,10 @@
 package com.wdroome.altomsgs;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 import com.wdroome.json.JSONException;
+import com.wdroome.json.JSONWriter;
 import com.wdroome.altomsgs.*;
 
 import org.junit.*;
@@ -122,6 +124,108 @@ public class AltoReq_EndpointCost_Test extends CommonTestMethods
 		assertEquals("Def-cost", 42, map1.getDefaultCost(), 0.001);
 	}
 
+	private static String writeJSON(AltoResp_EndpointCost resp, boolean sorted, boolean indented)
+			throws IOException
+	{
+		StringBuilder buff = new StringBuilder();
+		JSONWriter writer = new JSONWriter(buff);
+		writer.setSorted(sorted);
+		if (indented) {
+			writer.setIndents("  ", "");
+		}
+		resp.writeJSON(writer);
+		return buff.toString();
+	}
+	
+	@Test
+	public void testSetCosts() throws JSONException, IOException
+	{
+		String[] srcs = new String[] {"1.1.1.3", "ipv6:2001:db8::1", null, "1.1.1.1"};
+		String[] dests = new String[] {"1.1.1.1", "1.1.1.2", "1.1.1.3", "1.1.1.4",
+										"1.1.1.5", "1.1.1.6", null, "1.1.1.2"};
+		float[][] costs = new float[srcs.length][dests.length];
+		for (int i = 0; i < srcs.length; i++) {
+			for (int j = 0; j < dests.length; j++) {
+				costs[i][j] = i + j/10.0f;
+			}
+		}
+		costs[0][3] = Float.NaN;
+		
+		AltoResp_EndpointCost pairs = new AltoResp_EndpointCost();
+		pairs.setCostMode("numerical");
+		pairs.setCostMetric("routingcost");
+		for (int i = 0; i < srcs.length; i++) {
+			for (int j = 0; j < dests.length; j++) {
+				if (srcs[i] != null && dests[j] != null) {
+					pairs.setCost(srcs[i], dests[j],
+							Float.isNaN(costs[i][j]) ? Double.NaN : Double.parseDouble(Float.toString(costs[i][j])));
+				}
+			}
+		}
+		for (boolean sorted: new boolean[] {false, true}) {
+			for (boolean indented: new boolean[] {false, true}) {
+				AltoResp_EndpointCost matrix = new AltoResp_EndpointCost();
+				matrix.setCostMode("numerical");
+				matrix.setCostMetric("routingcost");
+				matrix.setCosts(srcs, dests, costs);
+				assertEquals("sorted=" + sorted + " indented=" + indented,
+						writeJSON(pairs, sorted, indented), writeJSON(matrix, sorted, indented));
+			}
+		}
+		
+		AltoResp_EndpointCost matrix = new AltoResp_EndpointCost();
+		matrix.setCostMode("numerical");
+		matrix.setCostMetric("routingcost");
+		matrix.setCosts(srcs, dests, costs);
+		assertEquals("1.1.1.3=>1.1.1.3", 0.2, matrix.getCost("1.1.1.3", "1.1.1.3"), 0);
+		assertEquals("1.1.1.1=>1.1.1.2", 3.7, matrix.getCost("1.1.1.1", "1.1.1.2"), 0);
+		assertEquals("src-Addrs", "String[ipv4:1.1.1.1,ipv4:1.1.1.3,ipv6:2001:db8::1]",
+				catArray(sort(matrix.getSrcAddrs())));
+		assertEquals("toString", pairs.toString(), matrix.toString());
+		assertEquals("validate", pairs.validate(), matrix.validate());
+		
+		// No known destinations: the sources are omitted, as with setCost().
+		AltoResp_EndpointCost noDests = new AltoResp_EndpointCost();
+		noDests.setCostMode("numerical");
+		noDests.setCostMetric("routingcost");
+		noDests.setCosts(srcs, new String[] {null, null}, new float[srcs.length][2]);
+		AltoResp_EndpointCost empty = new AltoResp_EndpointCost();
+		empty.setCostMode("numerical");
+		empty.setCostMetric("routingcost");
+		for (boolean indented: new boolean[] {false, true}) {
+			assertEquals("no dests, indented=" + indented,
+					writeJSON(empty, true, indented), writeJSON(noDests, true, indented));
+		}
+	}
+	
+	@Test
+	public void testMixedSetCosts() throws JSONException, IOException
+	{
+		// setCost() followed by setCosts().
+		AltoResp_EndpointCost pairs = new AltoResp_EndpointCost();
+		pairs.setCost("1.1.1.1", "2.2.2.2", 5);
+		pairs.setCost("3.3.3.3", "4.4.4.4", 7);
+		AltoResp_EndpointCost mixed = new AltoResp_EndpointCost();
+		mixed.setCost("1.1.1.1", "2.2.2.2", 5);
+		mixed.setCosts(new String[] {"3.3.3.3"}, new String[] {"4.4.4.4"}, new float[][] {{7}});
+		for (boolean indented: new boolean[] {false, true}) {
+			assertEquals("setCost+setCosts indented=" + indented,
+					writeJSON(pairs, true, indented), writeJSON(mixed, true, indented));
+		}
+		
+		// Two setCosts() calls.
+		pairs.setCost("1.1.1.1", "4.4.4.4", 8);
+		AltoResp_EndpointCost twice = new AltoResp_EndpointCost();
+		twice.setCosts(new String[] {"1.1.1.1"}, new String[] {"2.2.2.2", "4.4.4.4"},
+						new float[][] {{5, 8}});
+		twice.setCosts(new String[] {"3.3.3.3"}, new String[] {"4.4.4.4"}, new float[][] {{7}});
+		for (boolean indented: new boolean[] {false, true}) {
+			assertEquals("setCosts twice indented=" + indented,
+					writeJSON(pairs, true, indented), writeJSON(twice, true, indented));
+		}
+		assertEquals("getJSON", pairs.getJSON(), twice.getJSON());
+	}
+	
 	public static void main(String[] args) throws JSONException
 	{
 		AltoResp_EndpointCost map0 = new AltoResp_EndpointCost();
@@ -9,6 +9,7 @@ import com.wdroome.json.JSONParseException;
 import com.wdroome.json.JSONValueTypeException;
 import com.wdroome.altomsgs.*;
 import com.wdroome.json.JSONValue_Object;
+import com.wdroome.json.JSONWriter;
 
 import org.junit.*;
 
@@ -405,6 +406,100 @@ public class AltoResp_IndexedCostMap_Test extends CommonTestMethods
 		}
 	}
 
+	@Test
+	public void testWriteJSONWriter() throws JSONException, IOException
+	{
+		AltoResp_IndexedCostMap map0 = new AltoResp_IndexedCostMap();
+		map0.setDefaultCost(7);
+		map0.setDependentVtag("id", "12349876");
+		map0.setCostMode("numerical");
+		map0.setCostMetric("routingcost");
+		map0.setCost("PID2", "PID1", 5);
+		map0.setCost("PID2", "PID3", 7);
+		map0.setCost("PID1", "PID1", 1.5);
+		map0.setCost("PID1", "PID3", 2);
+		map0.setCost("PID3", "PID1", Double.NaN);
+		
+		StringBuilder buff = new StringBuilder();
+		map0.writeJSON(new JSONWriter(buff));
+		assertEquals("compact",
+				"{\"meta\":{\"default-cost\":7,"
+					+ "\"dependent-vtags\":[{\"resource-id\":\"id\",\"tag\":\"12349876\"}],"
+					+ "\"cost-type\":{\"cost-mode\":\"numerical\",\"cost-metric\":\"routingcost\"}},"
+					+ "\"cost-map\":{\"PID2\":{\"PID1\":5.0},\"PID1\":{\"PID1\":1.5,\"PID3\":2.0},\"PID3\":{}}}",
+				buff.toString());
+		
+		for (boolean indented: new boolean[] {false, true}) {
+			buff = new StringBuilder();
+			JSONWriter writer = new JSONWriter(buff);
+			writer.setSorted(true);
+			if (indented) {
+				writer.setIndents("  ", "");
+			}
+			map0.writeJSON(writer);
+			AltoResp_IndexedCostMap map1 = new AltoResp_IndexedCostMap(buff.toString());
+			assertEquals("sorted", "String[PID1,PID2,PID3]", catArray(map1.getSrcPIDs()));
+			assertEquals("sorted", "String[PID1,PID3]", catArray(map1.getDestPIDs()));
+			assertEquals("default-cost", 7, map1.getDefaultCost(), 0);
+			assertEquals("map-vtag", "12349876", map1.getDependentTag());
+			assertEquals("PID1=>PID1", 1.5, map1.getCost("PID1", "PID1"), 0);
+			assertEquals("PID2=>PID1", 5, map1.getCost("PID2", "PID1"), 0);
+			assertEquals("PID2=>PID3", 7, map1.getCost("PID2", "PID3"), 0);
+			assertEquals("PID3=>PID1", 7, map1.getCost("PID3", "PID1"), 0);
+		}
+	}
+
+	@Test
+	public void testStreamingParse() throws JSONException, IOException
+	{
+		String jsonSrc =
+				  "{\"extra\": [1, {\"cost-map\": {\"X\": {\"Y\": 3}}}],"
+				+ " \"cost-map\": {"
+				+ "  \"PID1\": {\"PID1\": 1, \"PID2\": \"NaN\", \"PID3\": null, \"PID4\": [2]},"
+				+ "  \"PID2\": {\"PID2\": 4, \"PID1\": 3e2, \"PID3\": {\"x\": 1}},"
+				+ "  \"PID3\": 17"
+				+ " },"
+				+ " \"meta\": {\"default-cost\": 9,"
+				+ "   \"cost-type\": {\"cost-metric\": \"hopcount\", \"cost-mode\": \"ordinal\"},"
+				+ "   \"dependent-vtags\": [{\"resource-id\": \"map\", \"tag\": \"42\"}]}"
+				+ "}";
+		AltoResp_IndexedCostMap map = new AltoResp_IndexedCostMap(jsonSrc);
+		assertEquals("cost-metric", "hopcount", map.getCostMetric());
+		assertEquals("cost-mode", "ordinal", map.getCostMode());
+		assertEquals("map-id", "map", map.getDependentResourceId());
+		assertEquals("map-vtag", "42", map.getDependentTag());
+		assertEquals("default-cost", 9, map.getDefaultCost(), 0);
+		assertEquals("srcs", "String[PID1,PID2]", catArray(map.getSrcPIDs()));
+		assertEquals("dests", "String[PID1,PID2]", catArray(map.getDestPIDs()));
+		assertEquals("PID1=>PID1", 1, map.getCost("PID1", "PID1"), 0);
+		assertEquals("PID1=>PID2", 9, map.getCost("PID1", "PID2"), 0);
+		assertEquals("PID2=>PID1", 300, map.getCost("PID2", "PID1"), 0);
+		assertEquals("PID2=>PID2", 4, map.getCost("PID2", "PID2"), 0);
+		assertEquals("X=>Y", 9, map.getCost("X", "Y"), 0);
+		
+		try {
+			new AltoResp_IndexedCostMap("{\"cost-map\": {\"PID1\": {\"PID1\": 1,}}}");
+			fail("Parsed invalid JSON");
+		} catch (JSONParseException e) {
+			// expected
+		}
+		try {
+			new AltoResp_IndexedCostMap("[1, 2]");
+			fail("Parsed an array");
+		} catch (JSONParseException e) {
+			// expected
+		}
+		for (String trailing: new String[] {" xx", " {\"a\": 1}", ", 1", "}"}) {
+			try {
+				new AltoResp_IndexedCostMap("{\"cost-map\": {}}" + trailing);
+				fail("Parsed trailing input '" + trailing + "'");
+			} catch (JSONParseException e) {
+				// expected
+			}
+		}
+		new AltoResp_IndexedCostMap("{\"cost-map\": {}}  \n");
+	}
+
 	private static class TestAltoCostMapInfo implements AltoCostMapInfo
 	{
 		private final int m_nPids;
@@ -503,6 +598,27 @@ public class AltoResp_IndexedCostMap_Test extends CommonTestMethods
 		}
 	}
 	
+	@Test
+	public void testFilteredOrdinal() throws JSONException, IOException
+	{
+		TestAltoCostMapInfo cminfo = new TestAltoCostMapInfo(50);
+		ByteArrayOutputStream buff = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buff);
+		String[] srcPids = new String[] {cminfo.indexToPid(3), "BADPID", cminfo.indexToPid(1)};
+		String[] destPids = new String[] {cminfo.indexToPid(49), cminfo.indexToPid(0)};
+		AltoResp_IndexedCostMap.writeCostMap(out, cminfo, "ordinal", true, srcPids, destPids);
+		out.close();
+		
+		AltoResp_IndexedCostMap map1 = new AltoResp_IndexedCostMap(
+						new ByteArrayInputStream(buff.toByteArray()), -1);
+		assertEquals("cost-mode", "ordinal", map1.getCostMode());
+		assertEquals("nsrcs", 2, map1.getSrcPIDs().length);
+		assertEquals("1=>0", 1, map1.getCost(cminfo.indexToPid(1), cminfo.indexToPid(0)), 0);
+		assertEquals("1=>49", 2, map1.getCost(cminfo.indexToPid(1), cminfo.indexToPid(49)), 0);
+		assertEquals("3=>0", 3, map1.getCost(cminfo.indexToPid(3), cminfo.indexToPid(0)), 0);
+		assertEquals("3=>49", 4, map1.getCost(cminfo.indexToPid(3), cminfo.indexToPid(49)), 0);
+	}
+	
 	public static void main(String[] args) throws JSONException, IOException
 	{
 		AltoResp_IndexedCostMap map0 = new AltoResp_IndexedCostMap();
@@ -0,0 +1,141 @@
+package com.wdroome.json;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class JSONLexanTest
+{
+	private static List<String> tokens(IJSONLexan lexan) throws IOException
+	{
+		List<String> tokens = new ArrayList<String>();
+		JSONLexanToken token;
+		while ((token = lexan.nextToken()) != null) {
+			tokens.add(token.m_token + ":" + token);
+		}
+		return tokens;
+	}
+
+	@Test
+	public void testSources() throws IOException
+	{
+		String json = "{\"a\": [1, 2.5, -3e2, true, false, null],\r\n"
+					+ " \"b\\tc\": \"x\\u0041y\", \"café\": \"€😀\"}";
+		String[] expected = new String[] {
+				"OPEN_CURLY_BRACKET:OPEN_CURLY_BRACKET",
+				"STRING:\"a\"", "COLON:COLON",
+				"OPEN_SQUARE_BRACKET:OPEN_SQUARE_BRACKET",
+				"NUMBER:1.0", "COMMA:COMMA", "NUMBER:2.5", "COMMA:COMMA", "NUMBER:-300.0", "COMMA:COMMA",
+				"TRUE:TRUE", "COMMA:COMMA", "FALSE:FALSE", "COMMA:COMMA", "NULL:NULL",
+				"CLOSE_SQUARE_BRACKET:CLOSE_SQUARE_BRACKET", "COMMA:COMMA",
+				"STRING:\"b\tc\"", "COLON:COLON", "STRING:\"xAy\"", "COMMA:COMMA",
+				"STRING:\"café\"", "COLON:COLON", "STRING:\"€😀\"",
+				"CLOSE_CURLY_BRACKET:CLOSE_CURLY_BRACKET",
+		};
+		assertArrayEquals("String", expected, tokens(new JSONLexan(json)).toArray());
+		assertArrayEquals("Reader", expected,
+					tokens(new JSONLexan(new StringReader(json))).toArray());
+		assertArrayEquals("ByteBuffer", expected,
+					tokens(new JSONLexan(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)), null))
+							.toArray());
+		ByteBuffer direct = ByteBuffer.allocateDirect(json.length() * 4);
+		direct.put(json.getBytes(StandardCharsets.UTF_8));
+		direct.flip();
+		assertArrayEquals("direct ByteBuffer", expected, tokens(new JSONLexan(direct, null)).toArray());
+	}
+
+	@Test
+	public void testContentLength() throws IOException, JSONException
+	{
+		String json = "[1,2,3][4,5]";
+		InputStream in = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+		JSONValue value = JSONParser.parse(new JSONLexan(in, null, 7), false);
+		assertEquals("first", "[1,2,3]", value.toString());
+		value = JSONParser.parse(new JSONLexan(in, null, 5), false);
+		assertEquals("second", "[4,5]", value.toString());
+	}
+
+	@Test
+	public void testLongInput() throws IOException, JSONException
+	{
+		// Long enough that strings span the lexan's buffer boundaries.
+		StringBuilder b = new StringBuilder();
+		b.append('[');
+		int n = 20000;
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				b.append(",\n");
+			}
+			b.append("\"stré-" + i + "\"");
+		}
+		b.append(']');
+		String json = b.toString();
+		for (JSONLexan lexan: new JSONLexan[] {
+					new JSONLexan(json),
+					new JSONLexan(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)), "json-src")}) {
+			JSONValue_Array arr = (JSONValue_Array)JSONParser.parse(lexan, false);
+			assertEquals("size", n, arr.size());
+			for (int i = 0; i < n; i++) {
+				assertEquals("elem " + i, "stré-" + i, ((JSONValue_String)arr.get(i)).m_value);
+			}
+			assertEquals("location", "offset 13 of line " + n + " in file json-src",
+						lexan.lastTokenLocation());
+		}
+	}
+
+	@Test
+	public void testNumbers() throws IOException
+	{
+		String[] numbers = new String[] {
+				"0", "-0", "1", "-1", "12345678901234", "-12345678901234",
+				"0.1", "0.3", "-2.5", "3.14159", "123456789012345.0", "1234567890123456.0",
+				"0.000001", "0.00000000000000000001", "1e22", "1e23", "1.7976931348623157e308",
+				"4.9e-324", "1e-400", "1E5", "1e+5", "2.5E-3", "0e999", "100e-22",
+				"9007199254740993.0", "0.1234567890123456789",
+			};
+		for (String number: numbers) {
+			JSONLexanToken token = new JSONLexan(number).nextToken();
+			assertEquals(number, JSONLexanToken.Token.NUMBER, token.m_token);
+			assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+						Double.doubleToLongBits(token.getNumber()));
+		}
+		Random rand = new Random(54321);
+		for (int i = 0; i < 10000; i++) {
+			String number = (rand.nextInt(1000000) - 500000) + "." + rand.nextInt(100000);
+			if (rand.nextBoolean()) {
+				number += "e" + (rand.nextInt(60) - 30);
+			}
+			JSONLexanToken token = new JSONLexan(number).nextToken();
+			assertEquals(number, Double.parseDouble(number), token.getNumber(), 0.0);
+		}
+
+		JSONLexanToken token = new JSONLexan("123456789012345").nextToken();
+		assertEquals("bigint", JSONLexanToken.Token.BIGINT, token.m_token);
+		assertEquals("bigint", new BigInteger("123456789012345"), token.getBigInt());
+		for (String bad: new String[] {"1-2", "-", "1e", "1.2.3", "--1"}) {
+			token = new JSONLexan(bad + " ").nextToken();
+			assertEquals(bad, JSONLexanToken.Token.UNKNOWN, token.m_token);
+			assertEquals(bad, bad, token.getString());
+		}
+	}
+
+	@Test
+	public void testErrors() throws IOException
+	{
+		JSONLexanToken token = new JSONLexan("\"abc\u0085def\"").nextToken();
+		assertEquals("control char", "Invalid control character 0x85 in string", token.getString());
+		token = new JSONLexan("\"abc").nextToken();
+		assertEquals("eof", "Premature EOF in string", token.getString());
+	}
+}
@@ -0,0 +1,133 @@
+package com.wdroome.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class JSONPullParserTest
+{
+	private static final String COST_MAP =
+			"{\"meta\": {\"dependent-vtags\": [{\"resource-id\": \"my-map\", \"tag\": \"1234\"}],"
+			+ " \"cost-type\": {\"cost-mode\": \"numerical\", \"cost-metric\": \"routingcost\"}},"
+			+ " \"cost-map\": {\"PID1\": {\"PID1\": 1, \"PID2\": 5.5},"
+			+ " \"PID2\": {}, \"PID3\": {\"PID1\": 20, \"PID3\": 123456789012345}}}";
+
+	@Test
+	public void testEvents() throws JSONException
+	{
+		JSONPullParser parser = new JSONPullParser(
+						new JSONLexan("{\"a\": [1, \"x\", {\"b\": null}], \"c\": []}"));
+		List<String> events = new ArrayList<String>();
+		JSONPullParser.Event event;
+		while ((event = parser.nextEvent()) != null) {
+			String s = event + "@" + parser.currentPath();
+			if (event == JSONPullParser.Event.VALUE) {
+				s += "=" + parser.currentToken();
+			}
+			events.add(s);
+		}
+		String[] expected = new String[] {
+				"START_OBJECT@",
+				"KEY@a",
+				"START_ARRAY@a",
+				"VALUE@a[0]=1.0",
+				"VALUE@a[1]=\"x\"",
+				"START_OBJECT@a[2]",
+				"KEY@a[2].b",
+				"VALUE@a[2].b=NULL",
+				"END_OBJECT@a[2]",
+				"END_ARRAY@a",
+				"KEY@c",
+				"START_ARRAY@c",
+				"END_ARRAY@c",
+				"END_OBJECT@",
+			};
+		assertArrayEquals(expected, events.toArray());
+		assertEquals("after end", null, parser.nextEvent());
+	}
+
+	@Test
+	public void testCostMap() throws JSONException
+	{
+		JSONPullParser parser = new JSONPullParser(new JSONLexan(COST_MAP));
+		assertEquals(JSONPullParser.Event.START_OBJECT, parser.nextEvent());
+		StringBuilder costs = new StringBuilder();
+		String key;
+		while ((key = parser.readKey()) != null) {
+			if (!key.equals("cost-map")) {
+				parser.skipValue();
+				continue;
+			}
+			assertEquals(JSONPullParser.Event.START_OBJECT, parser.nextEvent());
+			String src;
+			while ((src = parser.readKey()) != null) {
+				assertEquals(JSONPullParser.Event.START_OBJECT, parser.nextEvent());
+				String dest;
+				while ((dest = parser.readKey()) != null) {
+					costs.append(parser.currentPath() + "=" + parser.readDouble() + ";");
+					assertEquals("src", src, parser.currentPath().split("\\.")[1]);
+					assertEquals("dest", dest, parser.currentKey());
+				}
+			}
+		}
+		assertEquals("cost-map.PID1.PID1=1.0;cost-map.PID1.PID2=5.5;"
+					+ "cost-map.PID3.PID1=20.0;cost-map.PID3.PID3=1.23456789012345E14;",
+					costs.toString());
+		assertEquals(null, parser.nextEvent());
+	}
+
+	@Test
+	public void testReadValue() throws JSONException
+	{
+		JSONPullParser parser = new JSONPullParser(new JSONLexan(COST_MAP));
+		parser.nextEvent();
+		assertEquals("meta", parser.readKey());
+		JSONValue meta = parser.readValue();
+		assertEquals("meta",
+				"{\"cost-type\":{\"cost-metric\":\"routingcost\",\"cost-mode\":\"numerical\"},"
+				+ "\"dependent-vtags\":[{\"resource-id\":\"my-map\",\"tag\":\"1234\"}]}",
+				JSONUtil.toJSONString(meta, true, false));
+		assertEquals("cost-map", parser.readKey());
+		assertEquals(JSONPullParser.Event.START_OBJECT, parser.nextEvent());
+		parser.skipValue();
+		assertEquals(JSONPullParser.Event.END_OBJECT, parser.currentEvent());
+		assertEquals("cost-map", parser.currentPath());
+		assertEquals(null, parser.readKey());
+		assertEquals(null, parser.nextEvent());
+
+		JSONValue value = new JSONPullParser(new JSONLexan(COST_MAP)).readValue();
+		JSONValue expected = JSONParser.parse(new JSONLexan(COST_MAP), false);
+		assertEquals("whole", JSONUtil.toJSONString(expected, true, false),
+					JSONUtil.toJSONString(value, true, false));
+	}
+
+	@Test
+	public void testErrors() throws JSONException
+	{
+		for (String json: new String[] {"{\"a\" 1}", "[1 2]", "[1,]", "{\"a\":1,}", "[1", "1 2", "{1:2}", "]"}) {
+			JSONPullParser parser = new JSONPullParser(new JSONLexan(json));
+			try {
+				while (parser.nextEvent() != null) {
+				}
+				fail(json + ": no exception");
+			} catch (JSONParseException e) {
+				// expected
+			}
+		}
+		JSONPullParser parser = new JSONPullParser(new JSONLexan("{\"a\": \"x\"}"));
+		parser.nextEvent();
+		parser.readKey();
+		try {
+			parser.readDouble();
+			fail("readDouble of string");
+		} catch (JSONValueTypeException e) {
+			assertEquals("field", "a", e.getField());
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.wdroome.json;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class JSONStringCacheTest
+{
+	@Test
+	public void testIntern()
+	{
+		JSONStringCache cache = new JSONStringCache(100, 4);
+		assertEquals(128, cache.getCapacity());
+		String a = new String("pid1");
+		String b = new String("pid1");
+		assertSame(a, cache.intern(a));
+		assertSame(a, cache.intern(b));
+		assertNull(cache.intern(null));
+
+		String longValue = new String("longer");
+		assertSame(longValue, cache.internValue(longValue));
+		assertNotSame(longValue, cache.internValue(new String("longer")));
+		assertSame(a, cache.internValue(new String("pid1")));
+	}
+
+	@Test
+	public void testParser() throws JSONException
+	{
+		JSONStringCache cache = new JSONStringCache();
+		String json = "{\"pid1\": {\"pid2\": 1, \"pid3\": \"pid2\"}, \"pid2\": [\"pid3\"]}";
+		JSONValue_Object obj1 = JSONParser.parseObject(new JSONLexan(json), false, cache);
+		JSONValue_Object obj2 = JSONParser.parseObject(new JSONLexan(json), false, cache);
+		assertEquals(obj1.toString(), obj2.toString());
+
+		String key1 = null;
+		for (String key: obj1.getObject("pid1").keySet()) {
+			if (key.equals("pid2")) {
+				key1 = key;
+			}
+		}
+		String key2 = null;
+		for (String key: obj2.keySet()) {
+			if (key.equals("pid2")) {
+				key2 = key;
+			}
+		}
+		assertNotNull(key1);
+		assertSame(key1, key2);
+		assertSame(key1, obj2.getObject("pid1").getString("pid3"));
+		assertSame(obj1.getArray("pid2").getString(0),
+					obj2.getArray("pid2").getString(0));
+
+		JSONParser parser = new JSONParser();
+		parser.useStringCache(cache, false);
+		JSONValue_Object obj3 = (JSONValue_Object)parser.parse(new JSONLexan("{\"pid3\": \"pid2\"}"));
+		assertNotSame(key1, obj3.getString("pid3"));
+	}
+}
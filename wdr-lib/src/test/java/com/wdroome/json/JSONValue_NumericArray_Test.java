@@ -0,0 +1,103 @@
+package com.wdroome.json;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class JSONValue_NumericArray_Test
+{
+	private static JSONValue parse(String json, boolean usePrimitiveArrays) throws JSONParseException
+	{
+		JSONParser parser = new JSONParser();
+		parser.usePrimitiveArrays(usePrimitiveArrays);
+		return parser.parse(new JSONLexan(json));
+	}
+
+	/**
+	 * Parse json with and without primitive arrays,
+	 * verify the output is the same, and return the primitive version.
+	 */
+	private static JSONValue parseBoth(String json) throws JSONParseException
+	{
+		JSONValue primitive = parse(json, true);
+		JSONValue generic = parse(json, false);
+		assertEquals(json + " compact", JSONUtil.toJSONString(generic, false),
+						JSONUtil.toJSONString(primitive, false));
+		assertEquals(json + " indented", JSONUtil.toJSONString(generic, true),
+						JSONUtil.toJSONString(primitive, true));
+		return primitive;
+	}
+
+	@Test
+	public void testParse() throws JSONParseException
+	{
+		assertEquals("long", JSONValue_LongArray.class, parseBoth("[1, -2, 3, 4, 5, 6, 7]").getClass());
+		assertEquals("double", JSONValue_DoubleArray.class, parseBoth("[1, 2.5, 3e20, -0]").getClass());
+		assertEquals("double first", JSONValue_DoubleArray.class, parseBoth("[0.5, 2, 3]").getClass());
+		assertEquals("bigint", JSONValue_LongArray.class,
+						parseBoth("[1, 123456789012345, -9223372036854775808, 12345678]").getClass());
+		assertEquals("1e15", JSONValue_DoubleArray.class, parseBoth("[1, 1e15]").getClass());
+		assertEquals("bigint+double", JSONValue_Array.class,
+						parseBoth("[123456789012345, 1.5]").getClass());
+		assertEquals("huge bigint", JSONValue_Array.class,
+						parseBoth("[1, 12345678901234567890]").getClass());
+		assertEquals("mixed", JSONValue_Array.class, parseBoth("[1, 2, \"x\", 3]").getClass());
+		assertEquals("empty", JSONValue_Array.class, parseBoth("[]").getClass());
+		parseBoth("{\"a\": [[1,2],[3.5,4]], \"b\": [[1, null], []], \"c\": [1, {\"d\": [2]}]}");
+
+		JSONValue_LongArray longs = (JSONValue_LongArray)parse("[1, 123456789012345]", true);
+		assertEquals("long 0", 1, longs.get(0));
+		assertEquals("long 1", 123456789012345L, longs.get(1));
+		assertEquals("long 1 value", JSONValue_BigInt.class, longs.getJSONValue(1).getClass());
+
+		for (String bad: new String[] {"[1,]", "[1.5,]", "[1 2]", "[1,2"}) {
+			try {
+				parse(bad, true);
+				fail(bad + ": no exception");
+			} catch (JSONParseException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testGetArray() throws JSONException
+	{
+		JSONValue_Object obj = (JSONValue_Object)parse("{\"a\": [1, 2, 3], \"b\": [[1.5]]}", true);
+		assertTrue("a primitive", obj.get("a") instanceof JSONValue_LongArray);
+		JSONValue_Array a = obj.getArray("a");
+		a.add(new JSONValue_String("x"));
+		assertSame("a replaced", a, obj.get("a"));
+		assertEquals("a", "[1,2,3,\"x\"]", obj.get("a").toString());
+		JSONValue_Array b0 = obj.getArray("b").getArray(0);
+		b0.add(2);
+		assertEquals("b", "[[1.5,2]]", obj.get("b").toString());
+	}
+
+	@Test
+	public void testDoubleArray()
+	{
+		JSONValue_DoubleArray darr = new JSONValue_DoubleArray(new double[] {1, 2.5});
+		for (int i = 0; i < 20; i++) {
+			darr.add(i);
+		}
+		assertEquals("size", 22, darr.size());
+		assertEquals("remove", 2.5, darr.remove(1), 0);
+		assertEquals("set", 1, darr.set(0, -1), 0);
+		double sum = 0;
+		for (double d: darr) {
+			sum += d;
+		}
+		assertEquals("sum", 189, sum, 0);
+		assertEquals("toArray", 21, darr.toArray().length);
+		try {
+			darr.get(21);
+			fail("get(21)");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.wdroome.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class JSONWriterTest
+{
+	private static final String TEST_JSON =
+				"{\"pid1\": [1, 2.5, -0.001, 1e7, 12345678901234567890, \"x\"],"
+				+ " \"caf\\u00e9 \\ud83d\\ude00\": {\"a\\\"b\": true, \"c\": null, \"d\": 0.1},"
+				+ " \"long\": \"" + "0123456789".repeat(150) + "\"}";
+
+	@Test
+	public void testNumbers() throws IOException
+	{
+		checkDouble(0);
+		checkDouble(-0.0);
+		checkDouble(1);
+		checkDouble(-17);
+		checkDouble(2.5);
+		checkDouble(0.1);
+		checkDouble(0.001);
+		checkDouble(1e-4);
+		checkDouble(9999999.5);
+		checkDouble(1e7);
+		checkDouble(1.0/3);
+		checkDouble(123.456);
+		checkDouble(Double.NaN);
+		checkDouble(Double.POSITIVE_INFINITY);
+
+		checkFloat(0.1f, "0.1");
+		checkFloat(1.0f, "1");
+		checkFloat(-2.25f, "-2.25");
+		checkFloat(1.0f/3, "0.33333334");
+		checkFloat(1e8f, "1.0E8");
+		checkFloat(Float.NaN, "null");
+
+		StringBuilder buff = new StringBuilder();
+		JSONWriter writer = new JSONWriter(buff);
+		writer.writeNumber(Long.MIN_VALUE);
+		writer.write(',');
+		writer.writeNumber(1234567890123L);
+		assertEquals(Long.MIN_VALUE + ",1234567890123", buff.toString());
+	}
+
+	private void checkDouble(double value) throws IOException
+	{
+		StringBuilder buff = new StringBuilder();
+		new JSONWriter(buff).writeNumber(value);
+		assertEquals(Double.toString(value), JSONValue_Number.toString(value), buff.toString());
+	}
+
+	private void checkFloat(float value, String expected) throws IOException
+	{
+		StringBuilder buff = new StringBuilder();
+		new JSONWriter(buff).writeNumber(value);
+		assertEquals(Float.toString(value), expected, buff.toString());
+	}
+
+	@Test
+	public void testUTF8() throws JSONParseException, IOException
+	{
+		JSONValue value = JSONParser.parse(new JSONLexan(TEST_JSON), false);
+		String expected = JSONUtil.toJSONString(value, true);
+
+		ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+		JSONWriter writer = new JSONWriter(ostream, 100);
+		writer.setSorted(true);
+		writer.setIndented(true);
+		value.writeJSON(writer);
+		writer.write("é😀");
+		writer.flush();
+		assertEquals(expected + "é😀",
+					new String(ostream.toByteArray(), StandardCharsets.UTF_8));
+
+		ostream = new ByteArrayOutputStream();
+		writer = new JSONWriter(Channels.newChannel(ostream), 0);
+		writer.setSorted(true);
+		writer.setIndented(true);
+		value.writeJSON(writer);
+		assertEquals(0, ostream.size());
+		writer.flush();
+		assertEquals(expected, new String(ostream.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testLongTokens() throws IOException
+	{
+		// Record each write, to check that long strings are not split.
+		final ArrayList<String> writes = new ArrayList<String>();
+		ByteArrayOutputStream ostream = new ByteArrayOutputStream() {
+			@Override
+			public void write(byte[] b, int off, int len)
+			{
+				writes.add(new String(b, off, len, StandardCharsets.UTF_8));
+				super.write(b, off, len);
+			}
+		};
+		String plain = "é0123456789".repeat(200);
+		String escaped = "\"\t/".repeat(500);
+		JSONWriter writer = new JSONWriter(ostream, 1024);
+		writer.write('[');
+		writer.writeQuoted(plain);
+		writer.write(',');
+		writer.writeQuoted(escaped);
+		writer.write(',');
+		writer.write(plain);
+		writer.write(']');
+		writer.flush();
+		String quotedPlain = JSONValue_String.quotedString(plain);
+		String quotedEscaped = JSONValue_String.quotedString(escaped);
+		assertEquals("[" + quotedPlain + "," + quotedEscaped + "," + plain + "]",
+					new String(ostream.toByteArray(), StandardCharsets.UTF_8));
+		for (String token: new String[] {quotedPlain, quotedEscaped, plain}) {
+			boolean found = false;
+			for (String w: writes) {
+				found = found || w.contains(token);
+			}
+			assertTrue("Split: " + token.substring(0, 20), found);
+		}
+	}
+
+	@Test
+	public void testQuoted() throws IOException
+	{
+		String[] strs = {"", "pid1", "a\"b\\c/d", "\t\r\n\b\f", "~éሴ", "\u0001~"};
+		for (String s: strs) {
+			StringBuilder buff = new StringBuilder();
+			new JSONWriter(buff).writeQuoted(s);
+			assertEquals(s, JSONValue_String.quotedString(s), buff.toString());
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.wdroome.json.validate;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import com.wdroome.json.validate.*;
+import com.wdroome.json.validate.JSONValidate_Object.FieldSpec;
+import com.wdroome.json.validate.JSONValidate_Object.RegexKey;
+import com.wdroome.json.validate.JSONValidate_Object.SimpleKey;
+import com.wdroome.json.*;
+
+/**
+ * @author wdr
+ */
+public class JSONValidate_Object_Test
+{
+	private static JSONValidate_Object makeValidator()
+	{
+		return new JSONValidate_Object(new FieldSpec[] {
+				new FieldSpec(new SimpleKey("name", true), new JSONValidate_String()),
+				new FieldSpec(new RegexKey("x-.*"), new JSONValidate_Number()),
+				// Never used: the regex above comes first.
+				new FieldSpec(new SimpleKey("x-count", false), new JSONValidate_String()),
+				new FieldSpec(new SimpleKey("items", false),
+						new JSONValidate_Array(new JSONValidate_Object(new FieldSpec[] {
+								new FieldSpec(new SimpleKey("id", true), new JSONValidate_Number()),
+						}))),
+				new FieldSpec(new SimpleKey("name", false), new JSONValidate_Number()),
+			});
+	}
+
+	@Test
+	public void testValid() throws JSONException, JSONValidationException
+	{
+		JSONValidate_Object validator = makeValidator();
+		JSONValue_Object obj = JSONParser.parseObject(new JSONLexan(
+				"{\"name\": \"abc\", \"x-count\": 3, \"x-y\": 4,"
+				+ " \"items\": [{\"id\": 1}, {\"id\": 2}]}"), false);
+		assertTrue(validator.validate(obj));
+		ArrayList<String> errors = new ArrayList<String>();
+		assertTrue(validator.validate(obj, new JSONValidate.Path("", errors)));
+		assertEquals("errors", 0, errors.size());
+	}
+
+	@Test
+	public void testErrors() throws JSONException, JSONValidationException
+	{
+		JSONValidate_Object validator = makeValidator();
+		JSONValue_Object obj = JSONParser.parseObject(new JSONLexan(
+				"{\"x-count\": \"3\", \"other\": 4,"
+				+ " \"items\": [{\"id\": 1}, {\"id\": \"2\"}, {}]}"), false);
+		ArrayList<String> errors = new ArrayList<String>();
+		assertFalse(validator.validate(obj, new JSONValidate.Path("msg", errors)));
+		Collections.sort(errors);
+		assertEquals("[Required field \"id\" missing at msg.items[2],"
+					+ " Required field \"name\" missing at msg,"
+					+ " Unknown field \"other\" at msg,"
+					+ " Wrong type: JSONValue_String instead of JSONValue_Number at msg.items[1].id,"
+					+ " Wrong type: JSONValue_String instead of JSONValue_Number at msg.x-count]",
+					errors.toString());
+
+		// The path's list does not change the validator,
+		// so without a list, the first error throws an exception.
+		assertNull(validator.getErrors());
+		try {
+			validator.validate(obj);
+			fail("No exception");
+		} catch (JSONValidationException e) {
+			// expected
+		}
+
+		// A list given to collectErrors() is used when the path has no list.
+		errors.clear();
+		validator.collectErrors(errors);
+		assertFalse(validator.validate(obj));
+		assertEquals("collectErrors", 5, errors.size());
+		assertTrue(errors.toString(), errors.contains("Unknown field \"other\" at (root)"));
+	}
+
+	@Test
+	public void testPath()
+	{
+		JSONValidate.Path root = new JSONValidate.Path("", null);
+		assertEquals("", root.toString());
+		assertEquals("a", root.member("a").toString());
+		assertEquals("[3]", root.element(3).toString());
+		assertEquals("a[3].b", root.member("a").element(3).member("b").toString());
+		JSONValidate.Path prefix = new JSONValidate.Path("top", null);
+		assertEquals("top.a[0][1]", prefix.member("a").element(0).element(1).toString());
+		assertEquals(JSONValidate.newPath("top", "a"), prefix.member("a").toString());
+		assertEquals(JSONValidate.newPath("top", 2), prefix.element(2).toString());
+	}
+}
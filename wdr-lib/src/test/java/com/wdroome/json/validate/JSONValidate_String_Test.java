@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 import com.wdroome.json.validate.*;
 import com.wdroome.json.*;
@@ -72,5 +73,33 @@ public class JSONValidate_String_Test
 				"String \"String 1a\" does not match \"String [0-9]\" at (root)",
 				errors.get(0));
 	}
-
+	
+	@Test
+	public void testCharClassPattern()
+	{
+		String[] simple = {
+				"[-:@_.a-zA-Z0-9]{1,64}", "[\u0021-\u007e]{1,64}", "[a-c]", "[abc-]+",
+				"[-a]*", "[x^]?", "[0-9]{3}", "[0-9]{2,}", "[+--]{0,2}",
+			};
+		String[] notSimple = {
+				"(eq|le)[0-9]+", "[^a]", "[a-c-e]", "[\\w]+", "[a]{1,2}?", "[a]{,2}",
+				"[a&&b]", "[ab", "[]a]", "[a-c]{2,1}", "[a]x", "ipv4:[0-9]{1,3}",
+			};
+		String[] tests = {
+				"", "a", "b", "abc", "abcd", "-", "a-", "^", "x^", "123", "12", "1234",
+				"+", ",", "--", "+,-", "pid:1@x_y.z", "PID 1", "\u00e9t\u00e9", "\n", "~!",
+				"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa",
+			};
+		for (String regex: simple) {
+			CharClassPattern fast = CharClassPattern.compile(regex);
+			assertNotNull(regex, fast);
+			Pattern pattern = Pattern.compile(regex);
+			for (String test: tests) {
+				assertEquals(regex + " " + test, pattern.matcher(test).matches(), fast.matches(test));
+			}
+		}
+		for (String regex: notSimple) {
+			assertNull(regex, CharClassPattern.compile(regex));
+		}
+	}
 }
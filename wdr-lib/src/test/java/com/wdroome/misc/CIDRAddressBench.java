@@ -0,0 +1,111 @@
+package com.wdroome.misc;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.wdroome.util.inet.CIDRAddress;
+
+/**
+ * Measure the heap used by CIDRAddress objects, and the time for
+ * contains() and covers() tests. The CIDRs are random: half IPV4 /24s,
+ * and half IPV6 /48s.
+ * <p>
+ * Usage: CIDRAddressBench [nCIDRs]
+ * <br>
+ * The default is 100000 CIDRs.
+ * @author wdr
+ */
+public class CIDRAddressBench
+{
+	private static final int NPASSES = 5;
+	private static final int NREPEATS = 10;
+
+	private static long usedHeap()
+	{
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int nCIDRs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		Random rand = new Random(nCIDRs);
+		String[] specs = new String[nCIDRs];
+		byte[][] addrs = new byte[nCIDRs][];
+		for (int i = 0; i < nCIDRs; i++) {
+			if ((i & 1) == 0) {
+				int addr = rand.nextInt();
+				specs[i] = ((addr >> 24) & 0xff) + "." + ((addr >> 16) & 0xff)
+								+ "." + ((addr >> 8) & 0xff) + ".0/24";
+				addrs[i] = new byte[] {(byte)(addr >> 24), (byte)(addr >> 16),
+										(byte)(addr >> 8), (byte)addr};
+			} else {
+				addrs[i] = new byte[16];
+				rand.nextBytes(addrs[i]);
+				specs[i] = String.format("%x:%x:%x::/48",
+								((addrs[i][0] & 0xff) << 8) | (addrs[i][1] & 0xff),
+								((addrs[i][2] & 0xff) << 8) | (addrs[i][3] & 0xff),
+								((addrs[i][4] & 0xff) << 8) | (addrs[i][5] & 0xff));
+			}
+		}
+
+		// Measure the heap with and without a second copy of the CIDRs.
+		CIDRAddress[] cidrs = new CIDRAddress[nCIDRs];
+		CIDRAddress[] copy = new CIDRAddress[nCIDRs];
+		for (int i = 0; i < nCIDRs; i++) {
+			cidrs[i] = new CIDRAddress(specs[i]);
+			copy[i] = new CIDRAddress(specs[i]);
+		}
+		long withCopyBytes = usedHeap();
+		Arrays.fill(copy, null);
+		long cidrBytes = withCopyBytes - usedHeap();
+		System.out.println(nCIDRs + " CIDRs: " + cidrBytes/1024 + " KB, "
+					+ cidrBytes/nCIDRs + " bytes/CIDR");
+
+		CIDRAddress[] hosts = new CIDRAddress[nCIDRs];
+		for (int i = 0; i < nCIDRs; i++) {
+			hosts[i] = new CIDRAddress(addrs[i], 8*addrs[i].length);
+		}
+		for (int pass = 0; pass < NPASSES; pass++) {
+			// Test each CIDR against its own address and a neighbor's.
+			int nFound = 0;
+			long startTS = System.nanoTime();
+			for (int rep = 0; rep < NREPEATS; rep++) {
+				for (int i = 0; i < nCIDRs; i++) {
+					if (cidrs[i].contains(addrs[i])) {
+						nFound++;
+					}
+					if (cidrs[i].contains(addrs[(i + 2) % nCIDRs])) {
+						nFound++;
+					}
+				}
+			}
+			long containsNS = System.nanoTime() - startTS;
+			int nCovered = 0;
+			startTS = System.nanoTime();
+			for (int rep = 0; rep < NREPEATS; rep++) {
+				for (int i = 0; i < nCIDRs; i++) {
+					if (cidrs[i].covers(hosts[i])) {
+						nCovered++;
+					}
+					if (cidrs[i].covers(hosts[(i + 2) % nCIDRs])) {
+						nCovered++;
+					}
+				}
+			}
+			long coversNS = System.nanoTime() - startTS;
+			long nTests = 2L * NREPEATS * nCIDRs;
+			System.out.println("pass " + pass + ": contains " + (containsNS/nTests) + " ns ("
+						+ nFound + " found), covers " + (coversNS/nTests) + " ns ("
+						+ nCovered + " covered)");
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.wdroome.misc;
+
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.wdroome.altodata.NetworkMap;
+import com.wdroome.util.inet.CIDRAddress;
+import com.wdroome.util.inet.CIDRSet;
+
+/**
+ * Time the containing-PID calculation done by {@link NetworkMap#freeze()}
+ * on synthetic network maps, and compare it with the original n-squared algorithm.
+ * Both algorithms must give the same containing PIDs.
+ * <p>
+ * Usage: ContainingPidsBench [max-cidrs-for-old-algorithm [nCIDRs ...]]
+ * <br>
+ * The default sizes are 1000, 10000 and 100000 CIDRs.
+ * The old algorithm is skipped for maps with more than max-cidrs-for-old-algorithm CIDRs
+ * (default 100000), because it takes many minutes for the largest map.
+ * @author wdr
+ */
+public class ContainingPidsBench
+{
+	private static final int CIDRS_PER_PID = 10;
+
+	/**
+	 * Create an unfrozen map with about nCIDRs CIDRs, with CIDRS_PER_PID CIDRs per PID.
+	 * A quarter of the CIDRs are /20s in "outer" PIDs.
+	 * The rest are /28s in "inner" PIDs. Most inner PIDs are sub-nets
+	 * of the /20s in one outer PID, so they have a containing PID,
+	 * but every fifth inner PID mixes sub-nets of two outer PIDs, so it does not.
+	 * There's also a default PID with 0.0.0.0/0.
+	 */
+	private static NetworkMap makeMap(int nCIDRs) throws UnknownHostException
+	{
+		Random rand = new Random(nCIDRs);
+		NetworkMap map = new NetworkMap("bench-" + nCIDRs);
+		map.addCIDRs("default", "0.0.0.0/0");
+		int nOuterCIDRs = nCIDRs/4;
+		int nOuterPids = (nOuterCIDRs + CIDRS_PER_PID - 1) / CIDRS_PER_PID;
+		for (int i = 0; i < nOuterCIDRs; i++) {
+			map.addCIDR("outer-" + (i / CIDRS_PER_PID), new CIDRAddress(outerAddr(i), 20));
+		}
+		for (int i = 0; i < nCIDRs - nOuterCIDRs; i++) {
+			int innerPid = i / CIDRS_PER_PID;
+			int outerPid = innerPid % nOuterPids;
+			if (innerPid % 5 == 0 && (i % 2) == 0) {
+				outerPid = (outerPid + 1) % nOuterPids;
+			}
+			int outerCIDR = Math.min(outerPid * CIDRS_PER_PID + rand.nextInt(CIDRS_PER_PID),
+									 nOuterCIDRs - 1);
+			byte[] bytes = outerAddr(outerCIDR);
+			bytes[2] |= rand.nextInt(16);
+			bytes[3] = (byte)(rand.nextInt(16) << 4);
+			map.addCIDR("inner-" + innerPid, new CIDRAddress(bytes, 28));
+		}
+		return map;
+	}
+
+	/**
+	 * Return the base address of the i'th outer /20 CIDR.
+	 */
+	private static byte[] outerAddr(int i)
+	{
+		int addr = (i + 1) << 12;
+		return new byte[] {(byte)(addr >> 24), (byte)(addr >> 16), (byte)(addr >> 8), (byte)addr};
+	}
+
+	/**
+	 * The original containing-PID calculation, which compares every CIDR with every other CIDR.
+	 * @param map A frozen network map.
+	 * @return A map from each PID to its containing PID.
+	 */
+	private static Map<String,String> oldContainingPids(NetworkMap map)
+	{
+		TreeMap<CIDRAddress,String> cidr2pid = new TreeMap<CIDRAddress,String>();
+		for (Map.Entry<CIDRAddress,String> ent: map.allCIDREntries()) {
+			cidr2pid.put(ent.getKey(), ent.getValue());
+		}
+		Map<CIDRAddress, CIDRAddress> cidr2parent = new HashMap<CIDRAddress, CIDRAddress>();
+		for (CIDRAddress cidr: cidr2pid.keySet()) {
+			for (CIDRAddress xcidr: cidr2pid.keySet()) {
+				if (xcidr != cidr && xcidr.covers(cidr)) {
+					cidr2parent.put(cidr, xcidr);
+					break;
+				}
+			}
+		}
+		Map<String,String> containingPid = new HashMap<String,String>();
+		for (Map.Entry<String,CIDRSet> ent: map.allPidEntries()) {
+			String parent = null;
+			for (CIDRAddress cidr: ent.getValue()) {
+				CIDRAddress parCIDR = cidr2parent.get(cidr);
+				String pidWithCIDR = (parCIDR != null) ? cidr2pid.get(parCIDR) : null;
+				if (pidWithCIDR == null) {
+					parent = null;
+					break;
+				} else if (parent == null) {
+					parent = pidWithCIDR;
+				} else if (!parent.equals(pidWithCIDR)) {
+					parent = null;
+					break;
+				}
+			}
+			if (parent != null) {
+				containingPid.put(ent.getKey(), parent);
+			}
+		}
+		return containingPid;
+	}
+
+	public static void main(String[] args) throws UnknownHostException
+	{
+		int maxOldCIDRs = 100000;
+		int[] sizes = new int[] {1000, 10000, 100000};
+		if (args.length > 0) {
+			maxOldCIDRs = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				sizes[i-1] = Integer.parseInt(args[i]);
+			}
+		}
+		for (int nCIDRs: sizes) {
+			NetworkMap map = makeMap(nCIDRs);
+			long startTS = System.nanoTime();
+			map.freeze();
+			long newNS = System.nanoTime() - startTS;
+			System.out.println(nCIDRs + " CIDRs: freeze: " + (newNS/1000000) + " millisec");
+			if (nCIDRs > maxOldCIDRs) {
+				continue;
+			}
+			startTS = System.nanoTime();
+			Map<String,String> oldParents = oldContainingPids(map);
+			long oldNS = System.nanoTime() - startTS;
+			System.out.println(nCIDRs + " CIDRs: old containing-pid calc: " + (oldNS/1000000) + " millisec");
+			int nDiffs = 0;
+			for (String pid: map.allPids()) {
+				String newParent = map.getContainingPid(pid);
+				String oldParent = oldParents.get(pid);
+				if (newParent == null ? oldParent != null : !newParent.equals(oldParent)) {
+					nDiffs++;
+				}
+			}
+			System.out.println(nCIDRs + " CIDRs: " + oldParents.size() + " contained pids, "
+							+ nDiffs + " differences");
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.wdroome.misc;
+
+import java.util.Random;
+
+import com.wdroome.util.FloatMatrix;
+
+/**
+ * Compare sparse and dense {@link FloatMatrix}es on a read-heavy cost map workload.
+ * For each matrix type, fill an NxN matrix, and then time random get()s,
+ * a scan of every element with get(), and a scan of every row with getRow().
+ * <p>
+ * Usage: FloatMatrixBench [nPids [nPasses]]
+ * <br>
+ * The default is a 3000x3000 matrix and 5 passes.
+ * @author wdr
+ */
+public class FloatMatrixBench
+{
+	private static final int NRANDOM = 10000000;
+
+	private static FloatMatrix makeMatrix(boolean dense, int nPids)
+	{
+		FloatMatrix m = dense ? FloatMatrix.createDense(nPids) : new FloatMatrix(nPids);
+		m.setDefaultValue(Float.NaN);
+		Random rand = new Random(nPids);
+		float[] row = new float[nPids];
+		for (int i = 0; i < nPids; i++) {
+			for (int j = 0; j < nPids; j++) {
+				row[j] = rand.nextInt(1000);
+			}
+			m.setRow(i, row);
+		}
+		return m;
+	}
+
+	public static void main(String[] args)
+	{
+		int nPids = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		int nPasses = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int[] randomIndexes = new int[2*NRANDOM];
+		Random rand = new Random(42);
+		for (int k = 0; k < randomIndexes.length; k++) {
+			randomIndexes[k] = rand.nextInt(nPids);
+		}
+		float[] row = new float[nPids];
+		long nCells = (long)nPids * nPids;
+		for (boolean dense: new boolean[] {false, true}) {
+			String type = dense ? "dense " : "sparse";
+			long startTS = System.nanoTime();
+			FloatMatrix m = makeMatrix(dense, nPids);
+			System.out.println(type + " fill " + nPids + "x" + nPids + ": "
+						+ (System.nanoTime() - startTS)/1000000 + " ms");
+			for (int pass = 0; pass < nPasses; pass++) {
+				double sum = 0;
+				startTS = System.nanoTime();
+				for (int k = 0; k < randomIndexes.length; k += 2) {
+					sum += m.get(randomIndexes[k], randomIndexes[k+1]);
+				}
+				long randomNS = System.nanoTime() - startTS;
+				startTS = System.nanoTime();
+				for (int i = 0; i < nPids; i++) {
+					for (int j = 0; j < nPids; j++) {
+						sum += m.get(i, j);
+					}
+				}
+				long scanNS = System.nanoTime() - startTS;
+				startTS = System.nanoTime();
+				for (int i = 0; i < nPids; i++) {
+					m.getRow(i, row);
+					sum += row[i];
+				}
+				long rowNS = System.nanoTime() - startTS;
+				System.out.printf("%s pass %d: random get %.2f ns, scan get %.2f ns, getRow %.2f ns/cell (%.0f)%n",
+							type, pass, (double)randomNS/NRANDOM, (double)scanNS/nCells,
+							(double)rowNS/nCells, sum);
+			}
+		}
+	}
+}
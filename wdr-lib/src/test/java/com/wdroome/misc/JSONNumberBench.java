@@ -0,0 +1,161 @@
+package com.wdroome.misc;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.wdroome.json.JSONLexan;
+import com.wdroome.json.JSONLexanToken;
+
+/**
+ * Time how fast {@link JSONLexan} reads number-heavy JSON documents.
+ * The test document is a synthetic NxN ALTO cost map,
+ * with a mix of integer and decimal costs. We time the lexan over the whole document.
+ * For comparison, we also time a scanner which skips everything but the numbers,
+ * and converts each number with a copy of the lexan's old number loop:
+ * append each character to a new StringBuilder, and then call Double.parseDouble().
+ * That scanner does less work than the old lexan did,
+ * so its time is a lower bound on the old lexan's time.
+ * <p>
+ * Usage: JSONNumberBench [nPids [nPasses]]
+ * <br>
+ * The default is a 5000x5000 cost map and 3 passes.
+ * The document is written to a temporary file, which is memory-mapped,
+ * so large maps do not need a large heap.
+ * @author wdr
+ */
+public class JSONNumberBench
+{
+	/**
+	 * Write an NxN cost map to a temporary file, and return the file.
+	 */
+	private static File makeCostMap(int nPids) throws IOException
+	{
+		File file = File.createTempFile("costmap-", ".json");
+		file.deleteOnExit();
+		Random rand = new Random(nPids);
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+									new FileOutputStream(file), StandardCharsets.UTF_8), 64*1024)) {
+			out.write("{\"meta\":{\"cost-type\":{\"cost-mode\":\"numerical\",\"cost-metric\":\"routingcost\"}},");
+			out.write("\"cost-map\":{");
+			for (int src = 0; src < nPids; src++) {
+				if (src > 0) {
+					out.write(',');
+				}
+				out.write("\"pid" + src + "\":{");
+				for (int dest = 0; dest < nPids; dest++) {
+					if (dest > 0) {
+						out.write(',');
+					}
+					out.write("\"pid" + dest + "\":");
+					if ((dest % 2) == 0) {
+						out.write(Integer.toString(rand.nextInt(1000)));
+					} else {
+						out.write(Integer.toString(rand.nextInt(1000)) + "." + rand.nextInt(1000));
+					}
+				}
+				out.write('}');
+			}
+			out.write("}}");
+		}
+		return file;
+	}
+
+	/**
+	 * Read all tokens in a file with a JSONLexan.
+	 * @return The sum of the numbers, so the work cannot be optimized away.
+	 */
+	private static double lexFile(File file) throws IOException
+	{
+		JSONLexan lexan = JSONLexan.mapFile(file);
+		double sum = 0;
+		JSONLexanToken token;
+		while ((token = lexan.nextToken()) != null) {
+			if (token.m_token == JSONLexanToken.Token.NUMBER) {
+				sum += token.getNumber();
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Read the numbers in a file with the lexan's old number conversion.
+	 * Skip strings and punctuation, and convert each number
+	 * with a StringBuilder and Double.parseDouble(), as the old lexan did.
+	 * @return The sum of the numbers.
+	 */
+	private static double parseDoubleFile(File file) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		double sum = 0;
+		int i = 0;
+		while (i < bytes.length) {
+			int c = bytes[i++];
+			if (c == '"') {
+				while (i < bytes.length && bytes[i++] != '"') {
+					// skip the string
+				}
+			} else if (c == '-' || (c >= '0' && c <= '9')) {
+				// The old JSONLexan.getNumber() loop.
+				StringBuilder word = new StringBuilder();
+				word.append((char)c);
+				boolean scanning = true;
+				while (scanning && i < bytes.length) {
+					switch (c = bytes[i]) {
+					case '+':
+					case '.':
+					case 'e':
+					case 'E':
+					case '-':
+					case '0': case '1': case '2': case '3': case '4':
+					case '5': case '6': case '7': case '8': case '9':
+						word.append((char)c);
+						i++;
+						break;
+					default:
+						scanning = false;
+						break;
+					}
+				}
+				sum += Double.parseDouble(word.toString());
+			}
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int nPids = 5000;
+		int nPasses = 3;
+		if (args.length > 0) {
+			nPids = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			nPasses = Integer.parseInt(args[1]);
+		}
+		long startTS = System.nanoTime();
+		File file = makeCostMap(nPids);
+		long nNumbers = (long)nPids * nPids;
+		System.out.println(nPids + "x" + nPids + " cost map: " + file.length() + " bytes, created in "
+						+ ((System.nanoTime() - startTS)/1000000) + " millisec");
+		for (int pass = 0; pass < nPasses; pass++) {
+			startTS = System.nanoTime();
+			double sum = lexFile(file);
+			long lexNS = System.nanoTime() - startTS;
+			startTS = System.nanoTime();
+			double refSum = parseDoubleFile(file);
+			long refNS = System.nanoTime() - startTS;
+			System.out.println("Pass " + pass + ": lexan: " + (lexNS/1000000) + " millisec, "
+						+ String.format("%.1f", (double)lexNS/nNumbers) + " ns/number; "
+						+ "old number loop only: " + (refNS/1000000) + " millisec, "
+						+ String.format("%.1f", (double)refNS/nNumbers) + " ns/number"
+						+ (sum == refSum ? "" : "  SUMS DIFFER: " + sum + " " + refSum));
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.wdroome.misc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.wdroome.json.JSONException;
+import com.wdroome.json.JSONLexan;
+import com.wdroome.json.JSONParser;
+import com.wdroome.json.JSONValue;
+import com.wdroome.json.JSONValue_Array;
+import com.wdroome.json.JSONValue_Object;
+
+/**
+ * Measure the heap used by parsed JSON objects.
+ * The test input is a set of synthetic QLab "/cueLists" replies,
+ * each with a few cue lists with nested group cues.
+ * We parse the replies and hold the results, and measure the heap.
+ * Then we do the same thing with a copy of the trees in which each
+ * JSON object is a HashMap, as JSONValue_Object used to be, and compare the two.
+ * Most of the heap is for the leaves -- the key strings and the values --
+ * and they are the same in both cases. So we also measure the heap
+ * for the leaves alone, and compare the heap used by the structure
+ * of the trees (maps and arrays) without the leaves.
+ * <p>
+ * Usage: JSONObjectMemoryBench [nReplies [nCuesPerReply]]
+ * <br>
+ * The defaults are 200 replies with 500 cues each.
+ * @author wdr
+ */
+public class JSONObjectMemoryBench
+{
+	private static final String[] CUE_TYPES = {"Audio", "Video", "Light", "Network", "Fade", "Wait", "Memo"};
+	private static final String[] COLORS = {"none", "red", "green", "blue", "orange", "purple"};
+
+	/**
+	 * A HashMap with the same extra fields as JSONValue_Object.
+	 */
+	private static class HashMapObject extends HashMap<String,Object>
+	{
+		private static final long serialVersionUID = 1L;
+		@SuppressWarnings("unused")
+		private boolean m_autoCvt2Array = false;
+		@SuppressWarnings("unused")
+		private String m_pathName = null;
+	}
+
+	/**
+	 * Return the JSON for a QLab /cueLists reply.
+	 */
+	private static String makeReply(Random rand, int nCues)
+	{
+		StringBuilder b = new StringBuilder();
+		b.append("{\"workspace_id\":\"" + uniqueId(rand) + "\",\"address\":\"/cueLists\",\"status\":\"ok\",");
+		b.append("\"data\":[");
+		int nLists = 3;
+		int cueNum = 1;
+		for (int iList = 0; iList < nLists; iList++) {
+			if (iList > 0) {
+				b.append(',');
+			}
+			b.append("{\"uniqueID\":\"" + uniqueId(rand) + "\",\"number\":\"\",\"name\":\"Main Cue List "
+						+ iList + "\",\"listName\":\"Main Cue List " + iList + "\",\"type\":\"Cue List\","
+						+ "\"colorName\":\"none\",\"flagged\":false,\"armed\":true,\"cues\":[");
+			int nGroups = nCues / nLists / 5;
+			for (int iGroup = 0; iGroup < nGroups; iGroup++) {
+				if (iGroup > 0) {
+					b.append(',');
+				}
+				appendCue(b, rand, "Group", cueNum++);
+				b.setLength(b.length() - 1);
+				b.append(",\"cues\":[");
+				for (int iCue = 0; iCue < 4; iCue++) {
+					if (iCue > 0) {
+						b.append(',');
+					}
+					appendCue(b, rand, CUE_TYPES[rand.nextInt(CUE_TYPES.length)], cueNum++);
+				}
+				b.append("]}");
+			}
+			b.append("]}");
+		}
+		b.append("]}");
+		return b.toString();
+	}
+
+	/**
+	 * Append the JSON for a simple cue.
+	 */
+	private static void appendCue(StringBuilder b, Random rand, String type, int cueNum)
+	{
+		b.append("{\"uniqueID\":\"" + uniqueId(rand) + "\",\"number\":\"" + cueNum
+					+ "\",\"name\":\"" + type + " cue " + cueNum + "\",\"listName\":\"" + type + " cue " + cueNum
+					+ "\",\"type\":\"" + type + "\",\"colorName\":\"" + COLORS[rand.nextInt(COLORS.length)]
+					+ "\",\"flagged\":" + rand.nextBoolean() + ",\"armed\":true}");
+	}
+
+	/**
+	 * Return a random QLab unique ID.
+	 */
+	private static String uniqueId(Random rand)
+	{
+		return String.format("%08X-%04X-%04X-%04X-%012X", rand.nextInt(), rand.nextInt(0x10000),
+						rand.nextInt(0x10000), rand.nextInt(0x10000), rand.nextLong() & 0xffffffffffffL);
+	}
+
+	/**
+	 * Return a copy of a JSON value in which the objects are HashMaps.
+	 * The leaf values are shared.
+	 */
+	private static Object toHashMaps(JSONValue value)
+	{
+		if (value instanceof JSONValue_Object) {
+			JSONValue_Object obj = (JSONValue_Object)value;
+			HashMapObject copy = new HashMapObject();
+			for (Map.Entry<String,JSONValue> ent: obj.entrySet()) {
+				copy.put(ent.getKey(), toHashMaps(ent.getValue()));
+			}
+			return copy;
+		} else if (value instanceof JSONValue_Array) {
+			JSONValue_Array arr = (JSONValue_Array)value;
+			List<Object> copy = new ArrayList<Object>(arr.size());
+			for (JSONValue elem: arr) {
+				copy.add(toHashMaps(elem));
+			}
+			return copy;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Add the keys and leaf values in a JSON value to a list.
+	 */
+	private static void addLeaves(JSONValue value, List<Object> leaves)
+	{
+		if (value instanceof JSONValue_Object) {
+			for (Map.Entry<String,JSONValue> ent: ((JSONValue_Object)value).entrySet()) {
+				leaves.add(ent.getKey());
+				addLeaves(ent.getValue(), leaves);
+			}
+		} else if (value instanceof JSONValue_Array) {
+			for (JSONValue elem: (JSONValue_Array)value) {
+				addLeaves(elem, leaves);
+			}
+		} else {
+			leaves.add(value);
+		}
+	}
+
+	/**
+	 * Return the bytes in use in the heap, after garbage collection.
+	 */
+	private static long usedHeap()
+	{
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws JSONException
+	{
+		int nReplies = 200;
+		int nCues = 500;
+		if (args.length > 0) {
+			nReplies = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			nCues = Integer.parseInt(args[1]);
+		}
+		Random rand = new Random(nReplies);
+		List<String> replies = new ArrayList<String>();
+		for (int i = 0; i < nReplies; i++) {
+			replies.add(makeReply(rand, nCues));
+		}
+
+		long baseBytes = usedHeap();
+		long startTS = System.nanoTime();
+		List<Object> parsed = new ArrayList<Object>();
+		for (String reply: replies) {
+			parsed.add(JSONParser.parse(new JSONLexan(reply), false));
+		}
+		long parseNS = System.nanoTime() - startTS;
+		long compactBytes = usedHeap() - baseBytes;
+		System.out.println(nReplies + " replies: parsed in " + (parseNS/1000000) + " millisec, "
+					+ compactBytes/1024 + " KB");
+		parsed.clear();
+
+		baseBytes = usedHeap();
+		for (String reply: replies) {
+			parsed.add(toHashMaps(JSONParser.parse(new JSONLexan(reply), false)));
+		}
+		long hashMapBytes = usedHeap() - baseBytes;
+		System.out.println(nReplies + " replies as HashMaps: " + hashMapBytes/1024 + " KB");
+		parsed.clear();
+
+		baseBytes = usedHeap();
+		List<Object> leaves = new ArrayList<Object>();
+		for (String reply: replies) {
+			addLeaves(JSONParser.parse(new JSONLexan(reply), false), leaves);
+		}
+		Object[] leafArray = leaves.toArray();
+		leaves = null;
+		long leafBytes = usedHeap() - baseBytes - 4L*leafArray.length;
+		System.out.println(nReplies + " replies: " + leafArray.length + " keys and leaf values, "
+					+ leafBytes/1024 + " KB");
+		System.out.println(String.format("Total: JSONValue_Object uses %.1f%% less heap",
+					100.0*(hashMapBytes - compactBytes)/hashMapBytes));
+		System.out.println(String.format("Structure without leaves: %d KB vs %d KB, %.1f%% less heap",
+					(compactBytes - leafBytes)/1024, (hashMapBytes - leafBytes)/1024,
+					100.0*(hashMapBytes - compactBytes)/(hashMapBytes - leafBytes)));
+	}
+}
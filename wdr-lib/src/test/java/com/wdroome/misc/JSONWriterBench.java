@@ -0,0 +1,119 @@
+package com.wdroome.misc;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.wdroome.json.JSONException;
+import com.wdroome.json.JSONWriter;
+import com.wdroome.altomsgs.AltoResp_IndexedCostMap;
+
+/**
+ * Time how fast {@link JSONWriter} writes a large ALTO cost map.
+ * The test message is a synthetic NxN {@link AltoResp_IndexedCostMap},
+ * with a mix of integer and decimal costs. We write it to a stream which discards
+ * the output, first with a JSONWriter on a BufferedWriter,
+ * which is how clients used to write messages,
+ * and then with a JSONWriter which encodes UTF-8 into its own buffer.
+ * <p>
+ * Usage: JSONWriterBench [nPids [nPasses]]
+ * <br>
+ * The default is a 5000x5000 cost map and 3 passes.
+ * @author wdr
+ */
+public class JSONWriterBench
+{
+	/**
+	 * An OutputStream which counts and discards the bytes.
+	 */
+	private static class NullOutputStream extends OutputStream
+	{
+		private long m_nBytes = 0;
+		
+		@Override
+		public void write(int b)
+		{
+			m_nBytes++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			m_nBytes += len;
+		}
+	}
+	
+	private static AltoResp_IndexedCostMap makeCostMap(int nPids) throws JSONException
+	{
+		AltoResp_IndexedCostMap costMap = new AltoResp_IndexedCostMap();
+		costMap.setDependentVtag("my-network-map", "1234567890");
+		costMap.setCostMode("numerical");
+		costMap.setCostMetric("routingcost");
+		String[] pids = new String[nPids];
+		for (int i = 0; i < nPids; i++) {
+			pids[i] = "pid" + i;
+		}
+		Random rand = new Random(nPids);
+		for (int src = 0; src < nPids; src++) {
+			for (int dest = 0; dest < nPids; dest++) {
+				if ((dest % 2) == 0) {
+					costMap.setCost(pids[src], pids[dest], rand.nextInt(1000));
+				} else {
+					costMap.setCost(pids[src], pids[dest], rand.nextInt(1000) + rand.nextInt(100)/100.0);
+				}
+			}
+		}
+		return costMap;
+	}
+	
+	private static long writeWithWriter(AltoResp_IndexedCostMap costMap) throws IOException
+	{
+		NullOutputStream ostream = new NullOutputStream();
+		Writer out = new BufferedWriter(new OutputStreamWriter(ostream, StandardCharsets.UTF_8),
+										JSONWriter.DEFAULT_BUFFER_SIZE);
+		costMap.writeJSON(new JSONWriter(out));
+		out.flush();
+		return ostream.m_nBytes;
+	}
+	
+	private static long writeWithBytes(AltoResp_IndexedCostMap costMap) throws IOException
+	{
+		NullOutputStream ostream = new NullOutputStream();
+		JSONWriter writer = new JSONWriter(ostream, JSONWriter.DEFAULT_BUFFER_SIZE);
+		costMap.writeJSON(writer);
+		writer.flush();
+		return ostream.m_nBytes;
+	}
+
+	public static void main(String[] args) throws IOException, JSONException
+	{
+		int nPids = 5000;
+		int nPasses = 3;
+		if (args.length > 0) {
+			nPids = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			nPasses = Integer.parseInt(args[1]);
+		}
+		long startTS = System.nanoTime();
+		AltoResp_IndexedCostMap costMap = makeCostMap(nPids);
+		System.out.println(nPids + "x" + nPids + " cost map created in "
+						+ ((System.nanoTime() - startTS)/1000000) + " millisec");
+		for (int pass = 0; pass < nPasses; pass++) {
+			startTS = System.nanoTime();
+			long writerBytes = writeWithWriter(costMap);
+			long writerNS = System.nanoTime() - startTS;
+			startTS = System.nanoTime();
+			long bytes = writeWithBytes(costMap);
+			long bytesNS = System.nanoTime() - startTS;
+			System.out.println("Pass " + pass + ": BufferedWriter: " + (writerNS/1000000) + " millisec; "
+						+ "UTF-8 buffer: " + (bytesNS/1000000) + " millisec; "
+						+ bytes + " bytes"
+						+ (writerBytes == bytes ? "" : "  SIZES DIFFER: " + writerBytes));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.wdroome.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.wdroome.altodata.NetworkMap;
+import com.wdroome.util.BasicStringIterator;
+
+/**
+ * Compare the time to create a network map from text CIDR specifications
+ * with the time to load the same map from the binary format
+ * written by {@link NetworkMap#save(File)}.
+ * <p>
+ * Usage: NetworkMapLoadBench [nCIDRs ...]
+ * <br>
+ * The default sizes are 10000 and 100000 CIDRs.
+ * @author wdr
+ */
+public class NetworkMapLoadBench
+{
+	private static final int CIDRS_PER_PID = 10;
+	private static final int NPASSES = 5;
+	
+	/**
+	 * Return the specification of a map with about nCIDRs random /24 and /28 CIDRs,
+	 * with CIDRS_PER_PID CIDRs per PID, and a default PID.
+	 */
+	private static ArrayList<String> makeSpec(int nCIDRs)
+	{
+		Random rand = new Random(nCIDRs);
+		ArrayList<String> spec = new ArrayList<String>();
+		spec.add("default");
+		spec.add("0.0.0.0/0");
+		spec.add("::/0");
+		for (int i = 0; i < nCIDRs; i++) {
+			if (i % CIDRS_PER_PID == 0) {
+				spec.add("pid-" + (i / CIDRS_PER_PID));
+			}
+			int addr = rand.nextInt();
+			if (rand.nextBoolean()) {
+				spec.add(((addr >> 24) & 0xff) + "." + ((addr >> 16) & 0xff)
+								+ "." + ((addr >> 8) & 0xff) + ".0/24");
+			} else {
+				spec.add(((addr >> 24) & 0xff) + "." + ((addr >> 16) & 0xff)
+								+ "." + ((addr >> 8) & 0xff) + "." + (addr & 0xf0) + "/28");
+			}
+		}
+		return spec;
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		int[] sizes = new int[] {10000, 100000};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		File file = File.createTempFile("netmap", ".bin");
+		file.deleteOnExit();
+		for (int nCIDRs: sizes) {
+			ArrayList<String> spec = makeSpec(nCIDRs);
+			NetworkMap map = null;
+			long bestText = Long.MAX_VALUE;
+			for (int pass = 0; pass < NPASSES; pass++) {
+				long startTS = System.nanoTime();
+				map = NetworkMap.createNetworkMap("bench", new BasicStringIterator(spec), null);
+				bestText = Math.min(bestText, System.nanoTime() - startTS);
+			}
+			map.save(file);
+			long bestBinary = Long.MAX_VALUE;
+			NetworkMap loaded = null;
+			for (int pass = 0; pass < NPASSES; pass++) {
+				long startTS = System.nanoTime();
+				loaded = NetworkMap.load(file);
+				bestBinary = Math.min(bestBinary, System.nanoTime() - startTS);
+			}
+			int nDiffs = 0;
+			for (String pid: map.allPids()) {
+				if (!map.getCIDRs(pid).equals(loaded.getCIDRs(pid))) {
+					nDiffs++;
+				}
+				String parent = map.getContainingPid(pid);
+				if (parent == null ? loaded.getContainingPid(pid) != null
+								   : !parent.equals(loaded.getContainingPid(pid))) {
+					nDiffs++;
+				}
+			}
+			System.out.println(nCIDRs + " CIDRs: text: " + (bestText/1000000) + " millisec,"
+						+ " binary: " + (bestBinary/1000000) + " millisec"
+						+ " (" + file.length() + " bytes), "
+						+ nDiffs + " differences");
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.wdroome.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class CompactHashMapTest
+{
+	@Test
+	public void testSmall()
+	{
+		CompactHashMap<String,Integer> map = new CompactHashMap<String,Integer>();
+		assertTrue("empty", map.isEmpty());
+		assertEquals("put a", null, map.put("a", 1));
+		assertEquals("put b", null, map.put("b", 2));
+		assertEquals("put c", null, map.put("c", 3));
+		assertEquals("put a", Integer.valueOf(1), map.put("a", 10));
+		assertEquals("put null", null, map.put(null, 4));
+		assertEquals("size", 4, map.size());
+		assertEquals("get a", Integer.valueOf(10), map.get("a"));
+		assertEquals("get null", Integer.valueOf(4), map.get(null));
+		assertEquals("get x", null, map.get("x"));
+		assertEquals("toString", "{a=10, b=2, c=3, null=4}", map.toString());
+		assertEquals("remove b", Integer.valueOf(2), map.remove("b"));
+		assertEquals("keys", "[a, c, null]", map.keySet().toString());
+		assertEquals("values", "[10, 3, 4]", map.values().toString());
+
+		for (Map.Entry<String,Integer> ent: map.entrySet()) {
+			ent.setValue(ent.getValue() + 1);
+		}
+		Map<String,Integer> expected = new HashMap<String,Integer>();
+		expected.put("a", 11);
+		expected.put("c", 4);
+		expected.put(null, 5);
+		assertEquals("equals", expected, map);
+		assertEquals("hashCode", expected.hashCode(), map.hashCode());
+
+		@SuppressWarnings("unchecked")
+		CompactHashMap<String,Integer> copy = (CompactHashMap<String,Integer>)map.clone();
+		copy.put("d", 6);
+		assertEquals("orig size", 3, map.size());
+		assertEquals("copy size", 4, copy.size());
+	}
+
+	@Test
+	public void testRandom()
+	{
+		Random rand = new Random(1234);
+		CompactHashMap<String,Integer> map = new CompactHashMap<String,Integer>();
+		Map<String,Integer> expected = new HashMap<String,Integer>();
+		for (int i = 0; i < 20000; i++) {
+			String key = "k" + rand.nextInt(500);
+			int op = rand.nextInt(10);
+			if (op < 6) {
+				assertEquals("put " + key, expected.put(key, i), map.put(key, i));
+			} else if (op < 8) {
+				assertEquals("remove " + key, expected.remove(key), map.remove(key));
+			} else {
+				assertEquals("get " + key, expected.get(key), map.get(key));
+			}
+			assertEquals("size", expected.size(), map.size());
+		}
+		assertEquals("equals", expected, map);
+
+		Iterator<String> iter = map.keySet().iterator();
+		while (iter.hasNext()) {
+			String key = iter.next();
+			if (map.get(key) % 2 == 0) {
+				iter.remove();
+				expected.remove(key);
+			}
+		}
+		assertEquals("after iter.remove", expected, map);
+		map.clear();
+		assertEquals("clear", 0, map.size());
+		assertEquals("clear get", null, map.get("k1"));
+	}
+}
@@ -1,5 +1,7 @@
 package com.wdroome.util;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.*;
 
 import org.junit.Test;
@@ -111,6 +113,151 @@ public class FloatMatrixTest
 		assertTrue("(0,1) is NaN", Double.isNaN(m.get(0,1)));
 	}
 
+	/**
+	 * Test method for {@link FloatMatrix#getRow(int, int, float[])}.
+	 */
+	@Test
+	public void testGetRow()
+	{
+		// Small level 3 arrays, so rows span several of them.
+		FloatMatrix m = new FloatMatrix(100, 4, 16);
+		m.setDefaultValue(-1);
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j < 100; j += (i % 7) + 1) {
+				m.set(i, j, 1000*i + j);
+			}
+		}
+		m.unset(20, 40);
+		float[] row = new float[100];
+		for (int i = 0; i < 100; i++) {
+			int nSet = 0;
+			for (int j = 0; j < 100; j++) {
+				if (m.isSet(i, j) && j < 90) {
+					nSet++;
+				}
+			}
+			assertEquals("nSet " + i, nSet, m.getRow(i, 90, row));
+			for (int j = 0; j < 90; j++) {
+				assertEquals("get " + i + "," + j, m.get(i, j), row[j], 0);
+			}
+		}
+		assertEquals("unset row", 0, new FloatMatrix(100).getRow(5, 100, row));
+		assertEquals("unset row", 0, row[99], 0);
+	}
+	
+	@Test
+	public void testDense()
+	{
+		FloatMatrix sparse = new FloatMatrix(100, 4, 16);
+		FloatMatrix dense = FloatMatrix.createDense(100);
+		assertTrue(dense.isDense());
+		assertFalse(sparse.isDense());
+		for (FloatMatrix m: new FloatMatrix[] {sparse, dense}) {
+			m.setDefaultValue(-1);
+			for (int i = 0; i < 90; i++) {
+				for (int j = 0; j < 80; j += (i % 7) + 1) {
+					assertEquals("set " + i + "," + j, -1, m.set(i, j, 1000*i + j), 0);
+				}
+			}
+			assertEquals("re-set", 5, m.set(0, 5, 7), 0);
+			assertEquals("unset", 7, m.unset(0, 5), 0);
+			assertEquals("unset", -1, m.unset(0, 5), 0);
+			m.unsetRow(14);
+			m.unsetCol(21);
+		}
+		assertEquals("nRows", sparse.getNrows(), dense.getNrows());
+		assertEquals("nCols", sparse.getNcols(), dense.getNcols());
+		assertEquals("lvl3 arrays", 0, dense.getLvl3Arrays());
+		float[] sparseRow = new float[100];
+		float[] denseRow = new float[100];
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j < 100; j++) {
+				assertEquals("get " + i + "," + j, sparse.get(i, j), dense.get(i, j), 0);
+				assertEquals("isSet " + i + "," + j, sparse.isSet(i, j), dense.isSet(i, j));
+			}
+			assertEquals("getRow " + i, sparse.getRow(i, sparseRow), dense.getRow(i, denseRow));
+			assertArrayEquals("getRow " + i, sparseRow, denseRow, 0);
+		}
+		
+		float[] src = new float[70];
+		for (int j = 0; j < src.length; j++) {
+			src[j] = j + 0.5f;
+		}
+		for (FloatMatrix m: new FloatMatrix[] {sparse, dense}) {
+			m.setRow(95, src);
+			m.setRow(3, 20, src);
+			assertEquals("nRows", 96, m.getNrows());
+			assertEquals("nSet", 70, m.getRow(95, 80, sparseRow));
+			for (int j = 0; j < 80; j++) {
+				assertEquals("setRow " + j, j < 70 ? j + 0.5f : -1, sparseRow[j], 0);
+				assertEquals("setRow " + j, j < 20 ? j + 0.5f : m.isSet(3, j) ? 3000 + j : -1,
+								m.get(3, j), 0);
+			}
+		}
+		
+		dense.set(7, 7, Float.NaN);
+		assertFalse("NaN unsets", dense.isSet(7, 7));
+		assertEquals("NaN unsets", -1, dense.get(7, 7), 0);
+		try {
+			FloatMatrix.createDense(50000);
+			fail("createDense(50000) should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testLargeIndex()
+	{
+		// Offsets of elements in the last rows are far beyond 2^31.
+		int maxIndex = 300000;
+		FloatMatrix m = new FloatMatrix(maxIndex);
+		m.setDefaultValue(-1);
+		int[] rows = {0, 1, 46341, 123456, 250000, maxIndex-1};
+		for (int i: rows) {
+			for (int j: rows) {
+				assertEquals("set " + i + "," + j, -1, m.set(i, j, (float)i + j/1000000.0f), 0);
+			}
+		}
+		assertEquals("nRows", maxIndex, m.getNrows());
+		assertEquals("nCols", maxIndex, m.getNcols());
+		for (int i: rows) {
+			for (int j: rows) {
+				assertEquals("get " + i + "," + j, (float)i + j/1000000.0f, m.get(i, j), 0);
+				assertTrue("isSet " + i + "," + j, m.isSet(i, j));
+				int unsetCol = (j + 7) % maxIndex;
+				assertFalse("isSet " + i + "," + unsetCol, m.isSet(i, unsetCol));
+				assertEquals("get " + i + "," + unsetCol, -1, m.get(i, unsetCol), 0);
+			}
+		}
+		assertEquals("unset", maxIndex-1, m.unset(maxIndex-1, 0), 0);
+		assertFalse("unset", m.isSet(maxIndex-1, 0));
+		
+		// Memory depends on the populated blocks, not maxIndex.
+		assertTrue("lvl2 arrays", m.getLvl2Arrays() <= rows.length);
+		assertTrue("lvl3 arrays", m.getLvl3Arrays() <= rows.length*rows.length);
+		
+		float[] row = new float[maxIndex];
+		assertEquals("getRow", rows.length, m.getRow(123456, row));
+		assertEquals("getRow", 123456.25f, row[250000], 0);
+		assertEquals("getRow", -1, row[250001], 0);
+		
+		float[] src = new float[100000];
+		Arrays.fill(src, 5);
+		m.setRow(maxIndex-2, src);
+		assertEquals("setRow", 5, m.get(maxIndex-2, 99999), 0);
+		assertEquals("setRow", -1, m.get(maxIndex-2, 100000), 0);
+		assertEquals("setRow", src.length, m.getRow(maxIndex-2, row));
+		
+		assertEquals("default max", FloatMatrix.DEF_MAX_INDEX, new FloatMatrix().getMaxIndex());
+		try {
+			new FloatMatrix(Integer.MAX_VALUE, 1, 1);
+			fail("Too many level 1 entries");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
 	public static void main(String[] args)
 	{
 		Runtime rt = Runtime.getRuntime();
@@ -0,0 +1,75 @@
+package com.wdroome.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class MappedFloatMatrixTest
+{
+	@Test
+	public void testDirect()
+	{
+		MappedFloatMatrix m = MappedFloatMatrix.allocateDirect(4);
+		assertEquals(4, m.size());
+		assertNull(m.getFile());
+		m.fill(1.5f);
+		m.set(2, 3, 7);
+		assertEquals(7.0f, m.get(2, 3), 0);
+		assertEquals(1.5f, m.get(3, 2), 0);
+		float[] row = new float[4];
+		m.getRow(2, row);
+		assertArrayEquals(new float[] {1.5f, 1.5f, 1.5f, 7}, row, 0);
+		m.setRow(0, new float[] {0, 1, 2, 3});
+		assertEquals(2.0f, m.get(0, 2), 0);
+		try {
+			m.get(0, 4);
+			fail("get(0,4) did not throw an exception");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		m.force();
+	}
+
+	@Test
+	public void testFile() throws IOException
+	{
+		File file = File.createTempFile("matrix", ".fmat");
+		try {
+			MappedFloatMatrix m = MappedFloatMatrix.create(file, 3);
+			assertEquals(0.0f, m.get(1, 1), 0);
+			m.set(1, 2, 12);
+			m.set(2, 0, Float.NaN);
+			m.setTimestamp(1234);
+			m.setTag(-5);
+			m.force();
+			assertEquals(MappedFloatMatrix.HEADER_SIZE + 36, file.length());
+
+			MappedFloatMatrix m2 = MappedFloatMatrix.open(file);
+			assertEquals(file, m2.getFile());
+			assertEquals(3, m2.size());
+			assertEquals(12.0f, m2.get(1, 2), 0);
+			assertTrue(Float.isNaN(m2.get(2, 0)));
+			assertEquals(1234, m2.getTimestamp());
+			assertEquals(-5, m2.getTag());
+
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(file.length() - 4);
+			}
+			try {
+				MappedFloatMatrix.open(file);
+				fail("opened truncated file");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -40,4 +40,31 @@ public class OrdinalizerTest
 			assertEquals("unordinalized value " + v, -1, ord.getOrdinal(v));
 		}
 	}
+	
+	@Test
+	public void testManyValues()
+	{
+		Ordinalizer ord = new Ordinalizer();
+		float[][] values = new float[300][300];
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values[i].length; j++) {
+				values[i][j] = ((i * 7 + j * 13) % 5000) / 2.0f;
+			}
+		}
+		values[3][4] = Float.NaN;
+		for (float[] row: values)
+			ord.addValues(row);
+		ord.addValue(-0.0);
+		ord.doneAdding();
+		assertEquals("getMaxOrdinal()", 5001, ord.getMaxOrdinal());
+		assertEquals("-0.0", 1, ord.getOrdinal(-0.0));
+		assertEquals("0.0", 2, ord.getOrdinal(0.0));
+		assertEquals("getValue()", 2499.5, ord.getValue(5001), 0);
+		
+		float v = values[17][42];
+		ord.toOrdinals(values);
+		assertEquals("toOrdinals()", ord.getOrdinal(v), values[17][42], 0);
+		assertTrue("NaN", Float.isNaN(values[3][4]));
+		assertEquals("toOrdinals()", 2, values[0][0], 0);
+	}
 }
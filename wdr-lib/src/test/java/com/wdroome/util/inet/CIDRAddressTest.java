@@ -608,6 +608,44 @@ public class CIDRAddressTest
 		assertArrayEquals(expected, actual);
 	}
 
+	@Test
+	public void testPacked() throws UnknownHostException
+	{
+		CIDRAddress v4 = new CIDRAddress("192.168.37.200/20");
+		assertEquals("192.168.32.0/20", v4.toString());
+		assertArrayEquals(new byte[] {(byte)192, (byte)168, 32, 0}, v4.getAddrBytes());
+		assertEquals(31*(31 + Arrays.hashCode(v4.getAddrBytes())) + 20, v4.hashCode());
+		assertTrue(v4.containsIPV4(0xc0a82f01));
+		assertFalse(v4.containsIPV4(0xc0a83001));
+		assertFalse(v4.containsIPV6(0xc0a82f0100000000L, 0));
+		assertTrue(new CIDRAddress("0.0.0.0/0").containsIPV4(-1));
+
+		CIDRAddress v6 = new CIDRAddress("2001:db8:1:2:3:4:5:6/100");
+		assertEquals("2001:db8:1:2:3:4::/100", v6.toString());
+		assertEquals(31*(31 + Arrays.hashCode(v6.getAddrBytes())) + 100, v6.hashCode());
+		assertTrue(v6.containsIPV6(0x20010db800010002L, 0x0003000400000000L));
+		assertTrue(v6.containsIPV6(0x20010db800010002L, 0x000300040fffffffL));
+		assertFalse(v6.containsIPV6(0x20010db800010002L, 0x0003000410000000L));
+		assertFalse(v6.containsIPV6(0x20010db800010003L, 0x0003000400000000L));
+		assertTrue(v6.contains("2001:db8:1:2:3:4:fff:ffff"));
+		assertFalse(v6.containsIPV4(0x20010db8));
+
+		// Prefixes that end on either side of the 64 bit boundary.
+		CIDRAddress a = new CIDRAddress("2001:db8:1:2:8000::/65");
+		CIDRAddress b = new CIDRAddress("2001:db8:1:2::/65");
+		assertEquals(64, a.commonPrefixLen(b));
+		assertTrue(a.addrBitsMatch(b, 64));
+		assertFalse(a.addrBitsMatch(b, 65));
+		assertEquals(1, a.getAddrBit(64));
+		assertEquals(0, b.getAddrBit(64));
+		assertTrue(new CIDRAddress(a, 64).covers(b));
+		assertFalse(a.covers(b));
+		assertTrue(a.compareTo(b) > 0);
+		assertEquals(new CIDRAddress(a, 64), new CIDRAddress(b, 64));
+		assertEquals(127, new CIDRAddress("2001:db8:1:2:8000::/128")
+								.commonPrefixLen(new CIDRAddress("2001:db8:1:2:8000::1/128")));
+	}
+
 	public static void main(String[] args) throws Exception
 	{
 		TreeSet<CIDRAddress> cidrSet = new TreeSet<CIDRAddress>();
@@ -0,0 +1,154 @@
+package com.wdroome.util.inet;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class CIDRAggregatorTest
+{
+	/**
+	 * Verify that an aggregated list is sorted, has no covered CIDRs,
+	 * and has no pairs of CIDRs that could be combined.
+	 */
+	private static void checkMinimal(CIDRAddress[] cidrs) throws UnknownHostException
+	{
+		CIDRAddress.AddressByteComparator comp = new CIDRAddress.AddressByteComparator();
+		for (int i = 1; i < cidrs.length; i++) {
+			CIDRAddress prev = cidrs[i-1];
+			CIDRAddress cidr = cidrs[i];
+			assertTrue(prev + " " + cidr, comp.compare(prev, cidr) < 0);
+			assertFalse(prev + " covers " + cidr, prev.covers(cidr));
+			if (prev.getAddressLen() == cidr.getAddressLen()
+					&& prev.getMaskLen() == cidr.getMaskLen()
+					&& prev.getMaskLen() > 0) {
+				assertFalse(prev + " " + cidr + " are siblings",
+						new CIDRAddress(prev, prev.getMaskLen()-1).covers(cidr));
+			}
+		}
+	}
+
+	@Test
+	public void testIPV4() throws UnknownHostException
+	{
+		// Random CIDRs in 10.0.0.0/16, so we can compare
+		// the addresses covered before and after aggregation.
+		Random rand = new Random(42);
+		CIDRAggregator aggregator = new CIDRAggregator();
+		BitSet expected = new BitSet(65536);
+		for (int i = 0; i < 5000; i++) {
+			int maskLen = 18 + rand.nextInt(15);
+			int addr = 0x0a000000 | rand.nextInt(65536);
+			int host = addr & ((1 << (32 - maskLen)) - 1);
+			int start = (addr - host) & 0xffff;
+			expected.set(start, start + (1 << (32 - maskLen)));
+			if ((i & 1) == 0) {
+				aggregator.addIPV4(addr, maskLen);
+			} else {
+				aggregator.add(new CIDRAddress(new byte[] {10, 0, (byte)(addr >> 8), (byte)addr}, maskLen));
+			}
+		}
+		assertEquals(5000, aggregator.getNumAdded());
+		CIDRAddress[] cidrs = aggregator.getCIDRs();
+		assertEquals(cidrs.length, aggregator.size());
+		checkMinimal(cidrs);
+		BitSet actual = new BitSet(65536);
+		for (CIDRAddress cidr: cidrs) {
+			byte[] bytes = cidr.getAddrBytes();
+			assertEquals(10, bytes[0]);
+			assertEquals(0, bytes[1]);
+			int start = ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+			actual.set(start, start + (1 << (32 - cidr.getMaskLen())));
+		}
+		assertEquals(expected, actual);
+
+		// Adding the result again must not change it.
+		for (CIDRAddress cidr: cidrs) {
+			aggregator.add(cidr);
+		}
+		assertArrayEquals(cidrs, aggregator.getCIDRs());
+	}
+
+	@Test
+	public void testMerge() throws UnknownHostException
+	{
+		CIDRAggregator aggregator = new CIDRAggregator();
+		for (String cidr: new String[] {
+					"10.0.0.0/26", "10.0.0.64/26", "10.0.0.128/25", "10.0.0.192/27",
+					"10.0.1.0/24", "10.0.2.0/24", "0.0.0.0/1", "128.0.0.0/2", "192.0.0.0/2",
+					"2001:db8::/65", "2001:db8::8000:0:0:0/65", "2001:db8:0:1::/64",
+					"::1/128", "::/128", "ipv6:ffff::/17", "ipv6:ffff:8000::/17"}) {
+			aggregator.add(cidr);
+		}
+		List<String> actual = new ArrayList<String>();
+		aggregator.forEach(cidr -> actual.add(cidr.toString()));
+		assertEquals("[0.0.0.0/0, ::/127, 2001:db8::/63, ffff::/16]", actual.toString());
+	}
+
+	@Test
+	public void testCompaction() throws UnknownHostException
+	{
+		// Many more CIDRs than the initial array size, but only a few distinct ones.
+		CIDRAggregator aggregator = new CIDRAggregator();
+		for (int i = 0; i < 100000; i++) {
+			aggregator.addIPV4(0x0a000000 | ((i % 64) << 8), 24);
+			aggregator.addIPV6(0x20010db800000000L | (i % 4), (long)(i % 4) << 62, 66);
+		}
+		assertEquals(200000, aggregator.getNumAdded());
+		CIDRAddress[] cidrs = aggregator.getCIDRs();
+		assertEquals(5, cidrs.length);
+		assertEquals("10.0.0.0/18", cidrs[0].toString());
+		assertEquals("2001:db8::/66", cidrs[1].toString());
+		assertEquals("2001:db8:0:1:4000::/66", cidrs[2].toString());
+		checkMinimal(cidrs);
+	}
+
+	@Test
+	public void testCIDRSetFreeze() throws UnknownHostException
+	{
+		Random rand = new Random(7);
+		CIDRSet set = new CIDRSet();
+		for (int i = 0; i < 2000; i++) {
+			byte[] bytes = new byte[16];
+			bytes[0] = 0x20;
+			bytes[1] = 0x01;
+			bytes[8] = (byte)rand.nextInt(4);
+			bytes[9] = (byte)rand.nextInt(256);
+			set.add(new CIDRAddress(bytes, 60 + rand.nextInt(20)));
+		}
+		CIDRSet frozen = new CIDRSet(set);
+		assertTrue(frozen.freeze(true));
+		CIDRAddress[] cidrs = frozen.getCIDRs();
+		checkMinimal(cidrs);
+		for (CIDRAddress cidr: set) {
+			assertTrue(cidr.toString(), frozen.covers(cidr));
+		}
+		for (CIDRAddress cidr: frozen) {
+			for (int bit = 0; bit < 2; bit++) {
+				// Each half of an aggregated CIDR has some of the original addresses.
+				if (cidr.getMaskLen() < 128) {
+					byte[] bytes = cidr.getAddrBytes();
+					int n = cidr.getMaskLen();
+					bytes[n >> 3] |= (byte)(bit << (7 - (n & 7)));
+					CIDRAddress half = new CIDRAddress(bytes, n + 1);
+					boolean found = false;
+					for (CIDRAddress orig: set) {
+						if (half.covers(orig) || orig.covers(half)) {
+							found = true;
+							break;
+						}
+					}
+					assertTrue(half.toString(), found);
+				}
+			}
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package com.wdroome.util.inet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import com.wdroome.util.inet.CIDRAddress;
@@ -267,4 +271,70 @@ public class CIDRSetTest
 		assertFalse("!s2 fully covers s3", s2.fullyCovers(s3));
 		assertFalse("!s2 partially covers s3", s2.partiallyCovers(s3));
 	}
+
+	@Test
+	public void testBinary() throws UnknownHostException, IOException
+	{
+		CIDRSet set = new CIDRSet("10.0.0.0/8 192.0.2.128/25 2001:db8::/48 0.0.0.0/0");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		set.writeBinary(new DataOutputStream(bytes));
+		assertEquals(4 + 3*(2+4) + (2+16), bytes.size());
+		ByteBuffer buff = ByteBuffer.wrap(bytes.toByteArray());
+		CIDRSet set2 = CIDRSet.readBinary(buff);
+		assertEquals(0, buff.remaining());
+		assertTrue(set2.isFrozen());
+		assertEquals(set, set2);
+		assertEquals(set.hashCode(), set2.hashCode());
+		assertTrue(set2.contains(new CIDRAddress("2001:db8::/48")));
+	}
+
+	@Test
+	public void testFrozenSearch() throws UnknownHostException
+	{
+		Random rand = new Random(17);
+		CIDRSet mutable = new CIDRSet();
+		for (int i = 0; i < 300; i++) {
+			mutable.add(new CIDRAddress(new byte[] {10, (byte)rand.nextInt(4), (byte)rand.nextInt(256), 0},
+									8 + rand.nextInt(17)));
+		}
+		mutable.add("2001:db8::/32");
+		CIDRSet frozen = new CIDRSet(mutable);
+		frozen.freeze();
+		assertEquals(mutable, frozen);
+
+		CIDRAddress prev = null;
+		for (CIDRAddress cidr: frozen) {
+			assertTrue("sorted", prev == null
+						|| new CIDRAddress.AddressByteComparator().compare(prev, cidr) < 0);
+			prev = cidr;
+		}
+		for (int i = 0; i < 2000; i++) {
+			CIDRAddress cidr = new CIDRAddress(new byte[] {10, (byte)rand.nextInt(5), (byte)rand.nextInt(256), 0},
+									8 + rand.nextInt(17));
+			assertEquals(cidr.toString(), mutable.contains(cidr), frozen.contains(cidr));
+			assertEquals(cidr.toString(), mutable.covers(cidr, true), frozen.covers(cidr, true));
+			assertEquals(cidr.toString(), mutable.covers(cidr, false), frozen.covers(cidr, false));
+		}
+		assertTrue(frozen.covers(new CIDRAddress("2001:db8:1::/48")));
+		assertFalse(frozen.covers(new CIDRAddress("2001:db8::/32"), false));
+		assertFalse(frozen.covers(new CIDRAddress("11.0.0.0/24")));
+	}
+
+	@Test
+	public void testSetOps() throws UnknownHostException
+	{
+		CIDRSet a = new CIDRSet("10.0.0.0/8 10.1.0.0/16 192.0.2.0/24 2001:db8::/32");
+		CIDRSet b = new CIDRSet("10.1.0.0/16 10.2.0.0/16 2001:db8::/32 ::/0");
+		b.freeze();
+		assertEquals(new CIDRSet("10.0.0.0/8 10.1.0.0/16 10.2.0.0/16 192.0.2.0/24 2001:db8::/32 ::/0"),
+					a.union(b));
+		assertEquals(new CIDRSet("10.1.0.0/16 2001:db8::/32"), a.intersection(b));
+		assertEquals(new CIDRSet("10.0.0.0/8 192.0.2.0/24"), a.difference(b));
+		assertEquals(new CIDRSet("10.2.0.0/16 ::/0"), b.difference(a));
+		assertTrue(a.union(b).isFrozen());
+		assertEquals(a.union(b).hashCode(), b.union(a).hashCode());
+		assertEquals(0, a.difference(a).size());
+		assertTrue(a.union(b).covers(new CIDRAddress("10.2.3.0/24")));
+		assertTrue(a.union(b).fullyCovers(new CIDRSet("10.9.0.0/16 2001:db9::/32")));
+	}
 }
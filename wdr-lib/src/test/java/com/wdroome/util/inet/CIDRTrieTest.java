@@ -0,0 +1,111 @@
+package com.wdroome.util.inet;
+
+import java.net.*;
+import java.util.*;
+
+import com.wdroome.util.inet.CIDRAddress;
+import com.wdroome.util.inet.CIDRTrie;
+import com.wdroome.util.inet.EndpointAddress;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author wdr
+ */
+public class CIDRTrieTest
+{
+	private static CIDRTrie<String> makeTrie(String... cidrs) throws UnknownHostException
+	{
+		CIDRTrie<String> trie = new CIDRTrie<String>();
+		for (String cidr: cidrs) {
+			trie.put(new CIDRAddress(cidr), cidr);
+		}
+		return trie;
+	}
+
+	@Test
+	public void testLongestMatch() throws UnknownHostException
+	{
+		CIDRTrie<String> trie = makeTrie(
+				"10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24", "10.1.3.0/24",
+				"192.168.0.0/16", "0.0.0.0/0", "2001:db8::/32", "2001:db8:1::/48");
+		assertEquals("size", 8, trie.size());
+		assertEquals("10.1.2.3", "10.1.2.0/24", trie.longestMatch(new EndpointAddress("10.1.2.3")));
+		assertEquals("10.1.3.3", "10.1.3.0/24", trie.longestMatch(new EndpointAddress("10.1.3.3")));
+		assertEquals("10.1.4.3", "10.1.0.0/16", trie.longestMatch(new EndpointAddress("10.1.4.3")));
+		assertEquals("10.2.4.3", "10.0.0.0/8", trie.longestMatch(new EndpointAddress("10.2.4.3")));
+		assertEquals("11.2.4.3", "0.0.0.0/0", trie.longestMatch(new EndpointAddress("11.2.4.3")));
+		assertEquals("192.168.1.1", "192.168.0.0/16",
+					trie.longestMatch(new EndpointAddress("192.168.1.1")));
+		assertEquals("2001:db8:1::1", "2001:db8:1::/48",
+					trie.longestMatch(new EndpointAddress("2001:db8:1::1")));
+		assertEquals("2001:db8:2::1", "2001:db8::/32",
+					trie.longestMatch(new EndpointAddress("2001:db8:2::1")));
+		assertEquals("2001:db9::1", null, trie.longestMatch(new EndpointAddress("2001:db9::1")));
+	}
+
+	@Test
+	public void testPutGet() throws UnknownHostException
+	{
+		CIDRTrie<String> trie = makeTrie("10.1.2.0/24", "10.1.3.0/24", "10.0.0.0/8");
+		assertEquals("get 10.0.0.0/8", "10.0.0.0/8", trie.get(new CIDRAddress("10.0.0.0/8")));
+		assertEquals("get 10.1.0.0/16", null, trie.get(new CIDRAddress("10.1.0.0/16")));
+		assertEquals("get 10.1.2.0/23", null, trie.get(new CIDRAddress("10.1.2.0/23")));
+		assertEquals("put 10.1.3.0/24", "10.1.3.0/24", trie.put(new CIDRAddress("10.1.3.0/24"), "X"));
+		assertEquals("get 10.1.3.0/24", "X", trie.get(new CIDRAddress("10.1.3.0/24")));
+		assertEquals("put 10.1.2.0/23", null, trie.put(new CIDRAddress("10.1.2.0/23"), "Y"));
+		assertEquals("size", 4, trie.size());
+		assertEquals("10.1.3.1", "X", trie.longestMatch(new EndpointAddress("10.1.3.1")));
+		assertEquals("10.1.2.1", "10.1.2.0/24", trie.longestMatch(new EndpointAddress("10.1.2.1")));
+		assertEquals("10.1.1.1", "10.0.0.0/8", trie.longestMatch(new EndpointAddress("10.1.1.1")));
+	}
+
+	@Test
+	public void testLongestCover() throws UnknownHostException
+	{
+		CIDRTrie<String> trie = makeTrie("10.0.0.0/8", "10.1.2.0/24", "10.1.2.128/25", "::/0");
+		assertEquals("10.1.2.128/25", "10.1.2.0/24",
+					trie.longestCover(new CIDRAddress("10.1.2.128/25"), false));
+		assertEquals("10.1.2.128/25 =", "10.1.2.128/25",
+					trie.longestCover(new CIDRAddress("10.1.2.128/25"), true));
+		assertEquals("10.1.2.0/24", "10.0.0.0/8",
+					trie.longestCover(new CIDRAddress("10.1.2.0/24"), false));
+		assertEquals("10.1.2.0/23", "10.0.0.0/8",
+					trie.longestCover(new CIDRAddress("10.1.2.0/23"), false));
+		assertEquals("10.1.2.192/26", "10.1.2.128/25",
+					trie.longestCover(new CIDRAddress("10.1.2.192/26"), false));
+		assertEquals("10.0.0.0/8", null, trie.longestCover(new CIDRAddress("10.0.0.0/8"), false));
+		assertEquals("11.0.0.0/8", null, trie.longestCover(new CIDRAddress("11.0.0.0/8"), true));
+		assertEquals("2001:db8::/32", "::/0",
+					trie.longestCover(new CIDRAddress("2001:db8::/32"), false));
+	}
+
+	@Test
+	public void testRandom() throws UnknownHostException
+	{
+		Random rand = new Random(12345);
+		List<CIDRAddress> cidrs = new ArrayList<CIDRAddress>();
+		CIDRTrie<String> trie = new CIDRTrie<String>();
+		for (int i = 0; i < 500; i++) {
+			byte[] bytes = new byte[] {10, (byte)rand.nextInt(4), (byte)rand.nextInt(256), 0};
+			CIDRAddress cidr = new CIDRAddress(bytes, 8 + rand.nextInt(17));
+			cidrs.add(cidr);
+			trie.put(cidr, cidr.toString());
+		}
+		Collections.sort(cidrs);
+		for (int i = 0; i < 2000; i++) {
+			byte[] bytes = new byte[] {10, (byte)rand.nextInt(4),
+							(byte)rand.nextInt(256), (byte)rand.nextInt(256)};
+			String expected = null;
+			for (CIDRAddress cidr: cidrs) {
+				if (cidr.contains(bytes)) {
+					expected = cidr.toString();
+					break;
+				}
+			}
+			assertEquals("addr " + new EndpointAddress(bytes), expected, trie.longestMatch(bytes));
+		}
+	}
+}
@@ -213,6 +213,66 @@ public class EndpointAddressTest
 		}
 	}
 	
+	@Test
+	public void testParseIPAddr() throws UnknownHostException
+	{
+		String[] addrStrs = new String[] {
+				"1.2.3.4",
+				"ipv4:255.255.0.10",
+				"0.0.0.0",
+				"1:2:3:4:5:6:7:8",
+				"ipv6:f:e:d:c:b:a:9:8",
+				"::",
+				"::1",
+				"1::",
+				"2001:db8::ff00:42:8329",
+				"2001:DB8:0:0:1::1",
+				"fe80::1:2:3:4:5:6",
+				"1:2:3:4:5:6::8",
+				"::ffff:192.0.2.128",
+				"1:2:3:4:5:6:10.0.0.1",
+			};
+		long[] packed = new long[3];
+		for (String a:addrStrs) {
+			EndpointAddress addr = new EndpointAddress(a);
+			assertEquals(a, addr.size(), EndpointAddress.parseIPAddr("x" + a + "y", 1, a.length() + 1, packed, 1));
+			assertEquals(a, addr.getPackedHigh(), packed[1]);
+			assertEquals(a, addr.getPackedLow(), packed[2]);
+			assertEquals(a, addr.size(), EndpointAddress.parseIPAddr(a, packed));
+			assertEquals(a, addr.getPackedHigh(), packed[0]);
+		}
+		String[] badAddrStrs = new String[] {
+				"",
+				"1.2.3",
+				"1.2.3.",
+				"1.2.3.4.5",
+				"1..2.3",
+				"1.2.3.256",
+				"1.2.3.0004",
+				"ipv4:1:2::",
+				"ipv6:1.2.3.4",
+				"1:2:3:4:5:6:7",
+				"1:2:3:4:5:6:7:8:9",
+				"1:2:3:4:5:6:7::8",
+				"1:2:3:4:5:6:7:8::",
+				"::1:2:3:4:5:6:7:8",
+				"1:2:3:4::5:6:7:8",
+				"1::2::3",
+				":1::",
+				"1::2:",
+				"12345::",
+				"g::",
+				"::1.2.3.4:5",
+				"1:2:3:4:5:6:7:1.2.3.4",
+				"mac:01:02:03:04:05:06",
+			};
+		packed[0] = 17;
+		for (String a:badAddrStrs) {
+			assertEquals("'" + a + "'", -1, EndpointAddress.parseIPAddr(a, packed));
+			assertEquals("'" + a + "'", 17, packed[0]);
+		}
+	}
+	
 	@Test(expected=java.net.UnknownHostException.class)
 	public void testError1() throws UnknownHostException
 	{